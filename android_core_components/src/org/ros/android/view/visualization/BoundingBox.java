@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import org.ros.rosjava_geometry.Transform;
+import org.ros.rosjava_geometry.Vector3;
+
+/**
+ * An immutable axis-aligned rectangle in the xy-plane of a frame.
+ */
+public class BoundingBox {
+
+  private final double minimumX;
+  private final double minimumY;
+  private final double maximumX;
+  private final double maximumY;
+
+  public BoundingBox(double minimumX, double minimumY, double maximumX, double maximumY) {
+    this.minimumX = minimumX;
+    this.minimumY = minimumY;
+    this.maximumX = maximumX;
+    this.maximumY = maximumY;
+  }
+
+  /**
+   * @return the smallest {@link BoundingBox} that contains all of the
+   *         specified points
+   */
+  public static BoundingBox fromPoints(Vector3... points) {
+    double minimumX = Double.POSITIVE_INFINITY;
+    double minimumY = Double.POSITIVE_INFINITY;
+    double maximumX = Double.NEGATIVE_INFINITY;
+    double maximumY = Double.NEGATIVE_INFINITY;
+    for (Vector3 point : points) {
+      minimumX = Math.min(minimumX, point.getX());
+      minimumY = Math.min(minimumY, point.getY());
+      maximumX = Math.max(maximumX, point.getX());
+      maximumY = Math.max(maximumY, point.getY());
+    }
+    return new BoundingBox(minimumX, minimumY, maximumX, maximumY);
+  }
+
+  /**
+   * @return the smallest {@link BoundingBox} that contains this box after
+   *         applying the specified {@link Transform}
+   */
+  public BoundingBox transform(Transform transform) {
+    return fromPoints(transform.apply(new Vector3(minimumX, minimumY, 0)),
+        transform.apply(new Vector3(maximumX, minimumY, 0)),
+        transform.apply(new Vector3(maximumX, maximumY, 0)),
+        transform.apply(new Vector3(minimumX, maximumY, 0)));
+  }
+
+  /**
+   * @return a {@link BoundingBox} that is larger by the specified margin on
+   *         every side
+   */
+  public BoundingBox expand(double margin) {
+    return new BoundingBox(minimumX - margin, minimumY - margin, maximumX + margin, maximumY
+        + margin);
+  }
+
+  public boolean contains(double x, double y) {
+    return minimumX <= x && x <= maximumX && minimumY <= y && y <= maximumY;
+  }
+
+  public boolean intersects(double minimumX, double minimumY, double maximumX, double maximumY) {
+    return this.minimumX <= maximumX && minimumX <= this.maximumX && this.minimumY <= maximumY
+        && minimumY <= this.maximumY;
+  }
+
+  public boolean intersects(BoundingBox other) {
+    return intersects(other.minimumX, other.minimumY, other.maximumX, other.maximumY);
+  }
+
+  public double getMinimumX() {
+    return minimumX;
+  }
+
+  public double getMinimumY() {
+    return minimumY;
+  }
+
+  public double getMaximumX() {
+    return maximumX;
+  }
+
+  public double getMaximumY() {
+    return maximumY;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("BoundingBox<[%f, %f], [%f, %f]>", minimumX, minimumY, maximumX,
+        maximumY);
+  }
+}
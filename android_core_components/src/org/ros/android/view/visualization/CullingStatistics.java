@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+/**
+ * Counts the elements (map tiles, points, path vertices, grid cells) that
+ * layers skipped because they were outside the visible area.
+ * <p>
+ * Layers add to the counts while drawing on the GL thread. The counts of the
+ * last completed frame may be read from any thread.
+ *
+ * @see XYOrthographicCamera#getVisibleBounds(org.ros.namespace.GraphName)
+ */
+public class CullingStatistics {
+
+  private int culledCount;
+  private int drawnCount;
+
+  private volatile int previousCulledCount;
+  private volatile int previousDrawnCount;
+  private volatile long totalCulledCount;
+
+  /**
+   * Must be called on the GL thread while drawing.
+   *
+   * @param drawn
+   *          the number of elements that were drawn
+   * @param culled
+   *          the number of elements that were skipped
+   */
+  public void record(int drawn, int culled) {
+    drawnCount += drawn;
+    culledCount += culled;
+  }
+
+  void beginFrame() {
+    culledCount = 0;
+    drawnCount = 0;
+  }
+
+  void endFrame() {
+    previousCulledCount = culledCount;
+    previousDrawnCount = drawnCount;
+    totalCulledCount += culledCount;
+  }
+
+  /**
+   * @return the number of elements culled in the last frame
+   */
+  public int getCulledCount() {
+    return previousCulledCount;
+  }
+
+  /**
+   * @return the number of cullable elements drawn in the last frame
+   */
+  public int getDrawnCount() {
+    return previousDrawnCount;
+  }
+
+  /**
+   * @return the number of elements culled in all frames
+   */
+  public long getTotalCulledCount() {
+    return totalCulledCount;
+  }
+}
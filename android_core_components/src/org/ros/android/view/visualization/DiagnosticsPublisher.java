@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import org.ros.android.view.visualization.layer.Layer;
+import org.ros.android.view.visualization.layer.SubscriberLayer;
+import org.ros.android.view.visualization.layer.SubscriptionStatistics;
+import org.ros.message.MessageFactory;
+import org.ros.namespace.GraphName;
+import org.ros.node.ConnectedNode;
+import org.ros.node.topic.Publisher;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import diagnostic_msgs.DiagnosticArray;
+import diagnostic_msgs.DiagnosticStatus;
+import diagnostic_msgs.KeyValue;
+
+/**
+ * Periodically publishes the performance statistics of a
+ * {@link VisualizationView} as a diagnostic_msgs/DiagnosticArray.
+ */
+public class DiagnosticsPublisher {
+
+  private static final long PERIOD_MILLIS = 1000;
+
+  private final VisualizationView view;
+  private final GraphName topic;
+
+  private ConnectedNode connectedNode;
+  private MessageFactory messageFactory;
+  private Publisher<DiagnosticArray> publisher;
+  private ScheduledFuture<?> future;
+
+  public DiagnosticsPublisher(VisualizationView view, GraphName topic) {
+    this.view = view;
+    this.topic = topic;
+  }
+
+  public void start(ConnectedNode connectedNode) {
+    Preconditions.checkState(publisher == null);
+    this.connectedNode = connectedNode;
+    messageFactory = connectedNode.getTopicMessageFactory();
+    publisher = connectedNode.newPublisher(topic, DiagnosticArray._TYPE);
+    future = connectedNode.getScheduledExecutorService().scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        publish();
+      }
+    }, PERIOD_MILLIS, PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  public void shutdown() {
+    if (future != null) {
+      future.cancel(false);
+      future = null;
+    }
+    if (publisher != null) {
+      publisher.shutdown();
+      publisher = null;
+    }
+    connectedNode = null;
+  }
+
+  private void publish() {
+    DiagnosticArray array = publisher.newMessage();
+    array.getHeader().setStamp(connectedNode.getCurrentTime());
+    List<DiagnosticStatus> statuses = Lists.newArrayList();
+    FrameStatistics frameStatistics = view.getFrameStatistics();
+    if (frameStatistics.isEnabled()) {
+      statuses.add(newFrameTimeStatus("frame", frameStatistics.getFrameTimes()));
+      for (Map.Entry<Layer, FrameTimeHistogram> entry : frameStatistics.getAllLayerTimes()
+          .entrySet()) {
+        statuses.add(newFrameTimeStatus(entry.getKey().toString(), entry.getValue()));
+      }
+    }
+    for (Layer layer : view.getLayers()) {
+      if (layer instanceof SubscriberLayer) {
+        SubscriberLayer<?> subscriberLayer = (SubscriberLayer<?>) layer;
+        SubscriptionStatistics statistics = subscriberLayer.getSubscriptionStatistics();
+        DiagnosticStatus status = newStatus(layer + " subscription");
+        addValue(status, "received", Long.toString(statistics.getReceivedCount()));
+        addValue(status, "processed", Long.toString(statistics.getProcessedCount()));
+        addValue(status, "dropped", Long.toString(statistics.getDroppedCount()));
+        addValue(status, "enabled", Boolean.toString(subscriberLayer.isEnabled()));
+        addValue(status, "active", Boolean.toString(subscriberLayer.isActive()));
+        statuses.add(status);
+      }
+    }
+    PreparationExecutor preparationExecutor = view.getPreparationExecutor();
+    for (Map.Entry<Object, PreparationStatistics> entry : preparationExecutor.getAllStatistics()
+        .entrySet()) {
+      statuses.add(newPreparationStatus(entry.getKey() + " preparation", entry.getValue()));
+    }
+    XYOrthographicRenderer renderer = view.getRenderer();
+    if (renderer != null) {
+      DiagnosticStatus status = newStatus("rendering");
+      addValue(status, "rendered frames", Long.toString(renderer.getRenderedFrameCount()));
+      addValue(status, "skipped frames", Long.toString(renderer.getSkippedFrameCount()));
+      addValue(status, "render requests", Long.toString(view.getRenderRequestCount()));
+      StaticLayerCache staticLayerCache = renderer.getStaticLayerCache();
+      addValue(status, "static layer cache hits", Long.toString(staticLayerCache.getHitCount()));
+      addValue(status, "static layer cache misses",
+          Long.toString(staticLayerCache.getMissCount()));
+      RenderQueue queue = view.getRenderQueue();
+      addValue(status, "queued draw commands", Integer.toString(queue.getSubmittedCommandCount()));
+      addValue(status, "queue draw calls", Integer.toString(queue.getDrawCallCount()));
+      FrameTransformCache frameTransformCache = view.getCamera().getFrameTransformCache();
+      addValue(status, "transform cache hits", Long.toString(frameTransformCache.getHitCount()));
+      addValue(status, "transform cache misses",
+          Long.toString(frameTransformCache.getMissCount()));
+      addValue(status, "transform cache hit rate",
+          String.format(Locale.US, "%.3f", frameTransformCache.getHitRate()));
+      CullingStatistics cullingStatistics = view.getCullingStatistics();
+      addValue(status, "culled elements", Integer.toString(cullingStatistics.getCulledCount()));
+      addValue(status, "drawn cullable elements",
+          Integer.toString(cullingStatistics.getDrawnCount()));
+      QualityGovernor qualityGovernor = view.getQualityGovernor();
+      addValue(status, "target frame rate",
+          String.format(Locale.US, "%.1f", qualityGovernor.getTargetFrameRate()));
+      addValue(status, "level of detail",
+          String.format(Locale.US, "%.2f", qualityGovernor.getLevelOfDetail()));
+      addValue(status, "average frame time [ms]", toMillis(qualityGovernor.getAverageFrameTime()));
+      addValue(status, "preparation queue depth",
+          Integer.toString(preparationExecutor.getQueueDepth()));
+      statuses.add(status);
+    }
+    MemoryUsage totalMemoryUsage = MemoryUsage.NONE;
+    for (Map.Entry<Layer, MemoryUsage> entry : view.getLayerMemoryUsage().entrySet()) {
+      statuses.add(newMemoryStatus(entry.getKey() + " memory", entry.getValue()));
+      totalMemoryUsage = totalMemoryUsage.plus(entry.getValue());
+    }
+    statuses.add(newMemoryStatus("layer memory", totalMemoryUsage));
+    DirectBufferPool directBufferPool = DirectBufferPool.getDefault();
+    DiagnosticStatus bufferStatus = newStatus("direct buffers");
+    addValue(bufferStatus, "outstanding bytes",
+        Long.toString(directBufferPool.getOutstandingBytes()));
+    addValue(bufferStatus, "peak outstanding bytes",
+        Long.toString(directBufferPool.getPeakOutstandingBytes()));
+    addValue(bufferStatus, "pooled bytes", Long.toString(directBufferPool.getPooledBytes()));
+    addValue(bufferStatus, "allocated bytes", Long.toString(directBufferPool.getAllocatedBytes()));
+    addValue(bufferStatus, "acquired buffers", Long.toString(directBufferPool.getAcquireCount()));
+    addValue(bufferStatus, "reused buffers", Long.toString(directBufferPool.getReuseCount()));
+    statuses.add(bufferStatus);
+    TexturePool texturePool = TexturePool.getDefault();
+    DiagnosticStatus textureStatus = newStatus("texture storage");
+    addValue(textureStatus, "outstanding bytes", Long.toString(texturePool.getOutstandingBytes()));
+    addValue(textureStatus, "pooled bytes", Long.toString(texturePool.getPooledBytes()));
+    addValue(textureStatus, "allocated bytes", Long.toString(texturePool.getAllocatedBytes()));
+    addValue(textureStatus, "acquired storage", Long.toString(texturePool.getAcquireCount()));
+    addValue(textureStatus, "reused storage", Long.toString(texturePool.getReuseCount()));
+    statuses.add(textureStatus);
+    array.setStatus(statuses);
+    publisher.publish(array);
+  }
+
+  private DiagnosticStatus newStatus(String name) {
+    DiagnosticStatus status = messageFactory.newFromType(DiagnosticStatus._TYPE);
+    status.setName(topic + ": " + name);
+    status.setHardwareId(view.getDefaultNodeName().toString());
+    status.setLevel(DiagnosticStatus.OK);
+    return status;
+  }
+
+  private DiagnosticStatus newFrameTimeStatus(String name, FrameTimeHistogram histogram) {
+    DiagnosticStatus status = newStatus(name);
+    addValue(status, "count", Long.toString(histogram.getCount()));
+    addValue(status, "mean [ms]", toMillis(histogram.getMean()));
+    addValue(status, "p50 [ms]", toMillis(histogram.getPercentile(50)));
+    addValue(status, "p95 [ms]", toMillis(histogram.getPercentile(95)));
+    addValue(status, "p99 [ms]", toMillis(histogram.getPercentile(99)));
+    addValue(status, "max [ms]", toMillis(histogram.getMaximum()));
+    return status;
+  }
+
+  private DiagnosticStatus newMemoryStatus(String name, MemoryUsage memoryUsage) {
+    DiagnosticStatus status = newStatus(name);
+    addValue(status, "heap bytes", Long.toString(memoryUsage.getHeapBytes()));
+    addValue(status, "direct bytes", Long.toString(memoryUsage.getDirectBytes()));
+    addValue(status, "bitmap bytes", Long.toString(memoryUsage.getBitmapBytes()));
+    addValue(status, "gpu bytes", Long.toString(memoryUsage.getGpuBytes()));
+    addValue(status, "total bytes", Long.toString(memoryUsage.getTotalBytes()));
+    return status;
+  }
+
+  private DiagnosticStatus newPreparationStatus(String name, PreparationStatistics statistics) {
+    DiagnosticStatus status = newStatus(name);
+    addValue(status, "submitted", Long.toString(statistics.getSubmittedCount()));
+    addValue(status, "completed", Long.toString(statistics.getCompletedCount()));
+    addValue(status, "dropped as stale", Long.toString(statistics.getDiscardedCount()));
+    addValue(status, "failed", Long.toString(statistics.getFailedCount()));
+    addValue(status, "pending", Long.toString(statistics.getPendingCount()));
+    addValue(status, "conversion mean [ms]", toMillis(statistics.getConversionTimes().getMean()));
+    addValue(status, "conversion p95 [ms]",
+        toMillis(statistics.getConversionTimes().getPercentile(95)));
+    addValue(status, "latency mean [ms]", toMillis(statistics.getLatencies().getMean()));
+    addValue(status, "latency p95 [ms]", toMillis(statistics.getLatencies().getPercentile(95)));
+    return status;
+  }
+
+  private void addValue(DiagnosticStatus status, String key, String value) {
+    KeyValue keyValue = messageFactory.newFromType(KeyValue._TYPE);
+    keyValue.setKey(key);
+    keyValue.setValue(value);
+    status.getValues().add(keyValue);
+  }
+
+  private static String toMillis(long nanos) {
+    return String.format(Locale.US, "%.3f", nanos / 1e6);
+  }
+}
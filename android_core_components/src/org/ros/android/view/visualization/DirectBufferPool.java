@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayDeque;
+import java.util.Map;
+
+/**
+ * A pool of native ordered direct {@link ByteBuffer}s for vertex data.
+ * <p>
+ * Direct memory is only returned to the system once the garbage collector
+ * finalizes the buffer that owns it, which may take arbitrarily long. Buffers
+ * that are replaced often (growing vertex arrays, render batches) are
+ * therefore released back to this pool explicitly and handed out again
+ * instead of being allocated anew.
+ * <p>
+ * Buffers are pooled in power of two size classes. Released buffers are kept
+ * until {@link #getMaximumPooledBytes()} are pooled, further ones are left to
+ * the garbage collector. Buffers that are never released are not kept alive
+ * by the pool and are collected as usual. Instances are thread-safe.
+ */
+public class DirectBufferPool {
+
+  /**
+   * The smallest size class in bytes.
+   */
+  private static final int MINIMUM_CLASS_SIZE = 64;
+
+  private static final int DEFAULT_MAXIMUM_POOLED_BYTES = 8 * 1024 * 1024;
+
+  private static final DirectBufferPool DEFAULT = new DirectBufferPool(
+      DEFAULT_MAXIMUM_POOLED_BYTES);
+
+  private final int maximumPooledBytes;
+
+  /**
+   * Idle buffers by the base 2 logarithm of their size class.
+   */
+  private final Map<Integer, ArrayDeque<ByteBuffer>> pooled;
+
+  /**
+   * An acquired buffer. Must not reference the buffer or view it is stored
+   * for, which would keep that from being collected.
+   */
+  private static final class Acquired {
+
+    /**
+     * The buffer behind a {@link FloatBuffer} view, {@code null} for buffers
+     * acquired as bytes.
+     */
+    private final ByteBuffer buffer;
+    private final int bytes;
+
+    Acquired(ByteBuffer buffer, int bytes) {
+      this.buffer = buffer;
+      this.bytes = bytes;
+    }
+  }
+
+  /**
+   * Acquired buffers and {@link FloatBuffer} views by identity. Weak keys let
+   * buffers that are dropped without being released be collected.
+   */
+  private final Map<Object, Acquired> outstanding;
+
+  private long peakOutstandingBytes;
+  private long pooledBytes;
+  private long allocatedBytes;
+  private long acquireCount;
+  private long reuseCount;
+
+  /**
+   * @param maximumPooledBytes
+   *          the number of bytes of idle buffers to keep for reuse
+   */
+  public DirectBufferPool(int maximumPooledBytes) {
+    Preconditions.checkArgument(maximumPooledBytes >= 0);
+    this.maximumPooledBytes = maximumPooledBytes;
+    pooled = Maps.newHashMap();
+    outstanding = new MapMaker().weakKeys().makeMap();
+  }
+
+  /**
+   * @return the pool shared by all visualization layers and shapes
+   */
+  public static DirectBufferPool getDefault() {
+    return DEFAULT;
+  }
+
+  private static int getSizeClass(int bytes) {
+    int size = Math.max(MINIMUM_CLASS_SIZE, bytes);
+    return 32 - Integer.numberOfLeadingZeros(size - 1);
+  }
+
+  private ByteBuffer take(int bytes) {
+    Preconditions.checkArgument(bytes >= 0);
+    int sizeClass = getSizeClass(bytes);
+    acquireCount++;
+    ArrayDeque<ByteBuffer> buffers = pooled.get(sizeClass);
+    ByteBuffer buffer = buffers != null ? buffers.pollFirst() : null;
+    if (buffer != null) {
+      reuseCount++;
+      pooledBytes -= buffer.capacity();
+    } else {
+      buffer = ByteBuffer.allocateDirect(1 << sizeClass);
+      buffer.order(ByteOrder.nativeOrder());
+      allocatedBytes += buffer.capacity();
+    }
+    buffer.clear();
+    return buffer;
+  }
+
+  private void acquired(Object key, Acquired acquired) {
+    outstanding.put(key, acquired);
+    peakOutstandingBytes = Math.max(peakOutstandingBytes, getOutstandingBytes());
+  }
+
+  private void put(Object key) {
+    Acquired acquired = outstanding.remove(key);
+    Preconditions.checkArgument(acquired != null, "Buffer was not acquired from this pool.");
+    ByteBuffer buffer = acquired.buffer != null ? acquired.buffer : (ByteBuffer) key;
+    if (pooledBytes + buffer.capacity() <= maximumPooledBytes) {
+      int sizeClass = getSizeClass(buffer.capacity());
+      ArrayDeque<ByteBuffer> buffers = pooled.get(sizeClass);
+      if (buffers == null) {
+        buffers = new ArrayDeque<ByteBuffer>();
+        pooled.put(sizeClass, buffers);
+      }
+      buffers.addFirst(buffer);
+      pooledBytes += buffer.capacity();
+    }
+  }
+
+  /**
+   * @param bytes
+   *          the number of bytes needed
+   * @return a native ordered direct buffer with a capacity of at least the
+   *         specified number of bytes, positioned at 0 with its limit at the
+   *         specified number of bytes
+   */
+  public synchronized ByteBuffer acquire(int bytes) {
+    ByteBuffer buffer = take(bytes);
+    buffer.limit(bytes);
+    acquired(buffer, new Acquired(null, buffer.capacity()));
+    return buffer;
+  }
+
+  /**
+   * @param size
+   *          the number of floats needed
+   * @return a {@link FloatBuffer} view of a native ordered direct buffer with
+   *         a capacity of at least the specified number of floats, positioned
+   *         at 0 with its limit at the specified number of floats
+   */
+  public synchronized FloatBuffer acquireFloats(int size) {
+    ByteBuffer buffer = take(size * (Float.SIZE / 8));
+    FloatBuffer floatBuffer = buffer.asFloatBuffer();
+    floatBuffer.limit(size);
+    acquired(floatBuffer, new Acquired(buffer, buffer.capacity()));
+    return floatBuffer;
+  }
+
+  /**
+   * Returns a buffer acquired with {@link #acquire(int)} to the pool. The
+   * buffer must not be used afterwards.
+   */
+  public synchronized void release(ByteBuffer buffer) {
+    put(buffer);
+  }
+
+  /**
+   * Returns a buffer acquired with {@link #acquireFloats(int)} to the pool.
+   * The buffer must not be used afterwards.
+   */
+  public synchronized void release(FloatBuffer buffer) {
+    put(buffer);
+  }
+
+  /**
+   * @return the number of bytes of idle buffers to keep for reuse
+   */
+  public int getMaximumPooledBytes() {
+    return maximumPooledBytes;
+  }
+
+  /**
+   * @return the number of bytes of buffers that are acquired, not released
+   *         and still reachable
+   */
+  public synchronized long getOutstandingBytes() {
+    long outstandingBytes = 0;
+    for (Acquired acquired : outstanding.values()) {
+      outstandingBytes += acquired.bytes;
+    }
+    return outstandingBytes;
+  }
+
+  /**
+   * @return the highest number of outstanding bytes so far
+   */
+  public synchronized long getPeakOutstandingBytes() {
+    return peakOutstandingBytes;
+  }
+
+  /**
+   * @return the number of bytes of idle buffers kept for reuse
+   */
+  public synchronized long getPooledBytes() {
+    return pooledBytes;
+  }
+
+  /**
+   * @return the number of bytes of direct memory allocated so far
+   */
+  public synchronized long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+
+  /**
+   * @return the number of acquired buffers
+   */
+  public synchronized long getAcquireCount() {
+    return acquireCount;
+  }
+
+  /**
+   * @return the number of acquired buffers that were reused from the pool
+   */
+  public synchronized long getReuseCount() {
+    return reuseCount;
+  }
+}
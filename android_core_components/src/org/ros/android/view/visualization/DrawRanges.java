@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * The ranges of vertices in a {@link VertexBuffer} that remain after culling,
+ * computed by {@link PointChunks#cull(BoundingBox, DrawRanges)} and drawn
+ * later, possibly on another thread. The storage is reused.
+ */
+public class DrawRanges {
+
+  /**
+   * First vertex and vertex count of each range.
+   */
+  private int[] ranges;
+  private int rangeCount;
+  private int culledCount;
+
+  public DrawRanges() {
+    ranges = new int[0];
+  }
+
+  /**
+   * Removes all ranges.
+   */
+  public void clear() {
+    rangeCount = 0;
+    culledCount = 0;
+  }
+
+  void add(int first, int count) {
+    if (ranges.length < (rangeCount + 1) * 2) {
+      int[] grown = new int[Math.max(8, ranges.length * 2)];
+      System.arraycopy(ranges, 0, grown, 0, rangeCount * 2);
+      ranges = grown;
+    }
+    ranges[rangeCount * 2] = first;
+    ranges[rangeCount * 2 + 1] = count;
+    rangeCount++;
+  }
+
+  void addCulled(int count) {
+    culledCount += count;
+  }
+
+  /**
+   * Draws all ranges with a single call each.
+   *
+   * @param mode
+   *          the primitive type, e.g. {@link GL10#GL_POINTS}
+   */
+  public void draw(GL10 gl, VertexBuffer vertices, int mode) {
+    for (int i = 0; i < rangeCount; i++) {
+      vertices.draw(gl, mode, ranges[i * 2], ranges[i * 2 + 1]);
+    }
+  }
+
+  /**
+   * @return the number of ranges
+   */
+  public int getRangeCount() {
+    return rangeCount;
+  }
+
+  /**
+   * @return the number of vertices that were culled
+   */
+  public int getCulledCount() {
+    return culledCount;
+  }
+}
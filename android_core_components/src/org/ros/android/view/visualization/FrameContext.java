@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import com.google.common.base.Preconditions;
+
+import org.ros.namespace.GraphName;
+import org.ros.rosjava_geometry.Transform;
+
+/**
+ * The camera as seen by all layers while a frame is prepared. It is captured
+ * once per frame so that layers preparing in parallel agree on what is
+ * visible even if the camera moves in the meantime. Moving the camera
+ * requests another frame.
+ *
+ * @see org.ros.android.view.visualization.layer.PreparedLayer
+ */
+public class FrameContext {
+
+  private final VisualizationView view;
+
+  private long frameNumber;
+  private GraphName cameraFrame;
+  private BoundingBox visibleBounds;
+  private double zoom;
+
+  FrameContext(VisualizationView view) {
+    this.view = view;
+  }
+
+  /**
+   * Captures the camera for the next frame. Must be called on the GL thread
+   * before the frame is prepared.
+   */
+  void begin(long frameNumber) {
+    XYOrthographicCamera camera = view.getCamera();
+    this.frameNumber = frameNumber;
+    cameraFrame = camera.getFrame();
+    visibleBounds = camera.getVisibleBounds();
+    zoom = camera.getZoom();
+  }
+
+  public VisualizationView getView() {
+    return view;
+  }
+
+  /**
+   * @return the number of the frame being prepared, starting at 1
+   */
+  public long getFrameNumber() {
+    return frameNumber;
+  }
+
+  /**
+   * @return the zoom level in pixels per meter
+   * @see XYOrthographicCamera#getZoom()
+   */
+  public double getZoom() {
+    return zoom;
+  }
+
+  /**
+   * @param frame
+   *          the frame to return the visible area in
+   * @return the area of the xy-plane of the specified frame that is visible in
+   *         the viewport, or {@code null} if it is not known
+   * @see XYOrthographicCamera#getVisibleBounds(GraphName)
+   */
+  public BoundingBox getVisibleBounds(GraphName frame) {
+    if (frame == null || cameraFrame == null || visibleBounds == null) {
+      return null;
+    }
+    Transform transform = view.getCamera().getFrameTransformCache().get(frame, cameraFrame);
+    return transform != null ? visibleBounds.transform(transform.invert()) : null;
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import org.ros.android.view.visualization.layer.Layer;
+import org.ros.android.view.visualization.layer.PreparedLayer;
+
+import java.util.List;
+
+/**
+ * Runs {@link PreparedLayer#prepare(FrameContext)} of all layers of a frame in
+ * parallel on a {@link ParallelLoop} and waits until all of them are done.
+ * <p>
+ * The GL thread takes part: it prepares every layer that no worker thread has
+ * picked up yet, so a frame never waits for a worker to start and single
+ * layer frames never leave the GL thread.
+ */
+public class FramePreparer {
+
+  private final FrameContext context;
+  private final ParallelLoop.Loop loop;
+
+  /**
+   * The layers to prepare. Only written on the GL thread while the loop is
+   * not running.
+   */
+  private final List<PreparedLayer> layers;
+  private long frameNumber;
+
+  FramePreparer(VisualizationView view) {
+    this(view, ParallelLoop.getDefault());
+  }
+
+  /**
+   * @param parallelLoop
+   *          the threads to prepare the layers on
+   */
+  FramePreparer(VisualizationView view, ParallelLoop parallelLoop) {
+    Preconditions.checkNotNull(parallelLoop);
+    context = new FrameContext(view);
+    layers = Lists.newArrayList();
+    loop = parallelLoop.newLoop(new ParallelLoop.Body() {
+      @Override
+      public void run(int index) {
+        PreparedLayer layer = layers.get(index);
+        if (XYOrthographicRenderer.isActive(layer)) {
+          layer.prepare(context);
+        }
+      }
+    });
+  }
+
+  /**
+   * Prepares all {@link PreparedLayer}s of the specified layers. Must be called
+   * on the GL thread before the layers are drawn.
+   */
+  void prepare(List<Layer> layers) {
+    if (!isCurrent(layers)) {
+      this.layers.clear();
+      for (Layer layer : layers) {
+        if (layer instanceof PreparedLayer) {
+          this.layers.add((PreparedLayer) layer);
+        }
+      }
+    }
+    if (this.layers.isEmpty()) {
+      return;
+    }
+    context.begin(++frameNumber);
+    loop.run(this.layers.size());
+  }
+
+  /**
+   * @return {@code true} if {@link #layers} are exactly the
+   *         {@link PreparedLayer}s of the specified layers, in order
+   */
+  private boolean isCurrent(List<Layer> layers) {
+    int preparedIndex = 0;
+    for (int i = 0; i < layers.size(); i++) {
+      Layer layer = layers.get(i);
+      if (layer instanceof PreparedLayer) {
+        if (preparedIndex >= this.layers.size() || this.layers.get(preparedIndex) != layer) {
+          return false;
+        }
+        preparedIndex++;
+      }
+    }
+    return preparedIndex == this.layers.size();
+  }
+
+  /**
+   * @return the {@link FrameContext} of the last prepared frame
+   */
+  public FrameContext getFrameContext() {
+    return context;
+  }
+}
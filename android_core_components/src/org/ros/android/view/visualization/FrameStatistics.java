@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import com.google.common.collect.Maps;
+
+import org.ros.android.view.visualization.layer.Layer;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the time it takes to draw each frame and each {@link Layer}.
+ * <p>
+ * Durations are measured on the GL thread and reflect the CPU time spent
+ * issuing commands (including texture uploads), not the time the GPU spends
+ * executing them. Collection is disabled by default and costs nothing until
+ * enabled. The {@link FrameTimeHistogram}s only keep recent durations, and the
+ * durations of layers that were removed from the view are dropped.
+ */
+public class FrameStatistics {
+
+  private final FrameTimeHistogram frameTimes;
+  private final Map<Layer, FrameTimeHistogram> layerTimes;
+
+  private volatile boolean enabled;
+
+  public FrameStatistics() {
+    frameTimes = new FrameTimeHistogram();
+    layerTimes = Maps.newConcurrentMap();
+    enabled = false;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * @param layers
+   *          the layers of the view, which all drawn layers belong to
+   */
+  void recordFrame(long nanos, List<Layer> layers) {
+    frameTimes.record(nanos);
+    // More histograms than layers means that some of them belong to removed
+    // layers. Layers that have not been drawn yet may hide a few of those, but
+    // there are never more histograms than layers for long.
+    if (layerTimes.size() > layers.size()) {
+      layerTimes.keySet().retainAll(layers);
+    }
+  }
+
+  void recordLayer(Layer layer, long nanos) {
+    FrameTimeHistogram histogram = layerTimes.get(layer);
+    if (histogram == null) {
+      histogram = new FrameTimeHistogram();
+      layerTimes.put(layer, histogram);
+    }
+    histogram.record(nanos);
+  }
+
+  /**
+   * @return the {@link FrameTimeHistogram} of total frame times
+   */
+  public FrameTimeHistogram getFrameTimes() {
+    return frameTimes;
+  }
+
+  /**
+   * @return the {@link FrameTimeHistogram} of draw times of the specified
+   *         {@link Layer} or {@code null} if it has not been drawn yet
+   */
+  public FrameTimeHistogram getLayerTimes(Layer layer) {
+    return layerTimes.get(layer);
+  }
+
+  /**
+   * @return the {@link FrameTimeHistogram}s of all {@link Layer}s that have
+   *         been drawn
+   */
+  public Map<Layer, FrameTimeHistogram> getAllLayerTimes() {
+    return Collections.unmodifiableMap(layerTimes);
+  }
+
+  /**
+   * Discards all recorded durations.
+   */
+  public void reset() {
+    frameTimes.reset();
+    for (FrameTimeHistogram histogram : layerTimes.values()) {
+      histogram.reset();
+    }
+  }
+}
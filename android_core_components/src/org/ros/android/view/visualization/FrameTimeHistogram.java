@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A fixed-bucket histogram of recent durations.
+ * <p>
+ * Durations are recorded into one of two windows of {@code windowSize}
+ * durations each. When the current window is full, the older one is cleared
+ * and becomes the current one, so percentiles, the mean and the maximum cover
+ * between {@code windowSize} and {@code 2 * windowSize} of the most recent
+ * durations and follow changes in performance during long sessions.
+ * <p>
+ * Durations are bucketed in microseconds with four linear sub-buckets per
+ * power of two, which bounds the relative error of reported percentiles to
+ * 25%. Recording a duration never allocates and costs a handful of integer
+ * operations. Recording is expected to happen on a single thread (i.e. the GL
+ * thread) while other threads may read approximate values at any time.
+ */
+public class FrameTimeHistogram {
+
+  /**
+   * Durations below this many microseconds get a bucket each.
+   */
+  private static final int LINEAR_BUCKETS = 8;
+
+  /**
+   * Number of sub-buckets per power of two above {@link #LINEAR_BUCKETS}.
+   */
+  private static final int SUB_BUCKETS = 4;
+
+  /**
+   * The largest power of two (in microseconds) that is resolved. Longer
+   * durations (more than a minute) are counted in the last bucket.
+   */
+  private static final int MAXIMUM_EXPONENT = 26;
+
+  private static final int BUCKET_COUNT = LINEAR_BUCKETS + (MAXIMUM_EXPONENT - 2) * SUB_BUCKETS;
+
+  /**
+   * About 17 seconds of frames at 60 frames per second.
+   */
+  private static final int DEFAULT_WINDOW_SIZE = 1024;
+
+  private final int windowSize;
+  private final long[][] buckets;
+  private final long[] counts;
+  private final long[] totalNanos;
+  private final long[] maximumNanos;
+
+  /**
+   * The index of the window that durations are recorded into.
+   */
+  private volatile int current;
+
+  public FrameTimeHistogram() {
+    this(DEFAULT_WINDOW_SIZE);
+  }
+
+  /**
+   * @param windowSize
+   *          the number of durations per window
+   */
+  public FrameTimeHistogram(int windowSize) {
+    Preconditions.checkArgument(windowSize > 0);
+    this.windowSize = windowSize;
+    buckets = new long[2][BUCKET_COUNT];
+    counts = new long[2];
+    totalNanos = new long[2];
+    maximumNanos = new long[2];
+    current = 0;
+  }
+
+  /**
+   * @param nanos the duration to record in nanoseconds
+   */
+  public void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    int current = this.current;
+    if (counts[current] == windowSize) {
+      current = 1 - current;
+      clear(current);
+      this.current = current;
+    }
+    buckets[current][bucketIndex(nanos / 1000)]++;
+    counts[current]++;
+    totalNanos[current] += nanos;
+    if (nanos > maximumNanos[current]) {
+      maximumNanos[current] = nanos;
+    }
+  }
+
+  private void clear(int window) {
+    long[] windowBuckets = buckets[window];
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      windowBuckets[i] = 0;
+    }
+    counts[window] = 0;
+    totalNanos[window] = 0;
+    maximumNanos[window] = 0;
+  }
+
+  private static int bucketIndex(long micros) {
+    if (micros < LINEAR_BUCKETS) {
+      return (int) micros;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(micros);
+    if (exponent > MAXIMUM_EXPONENT) {
+      return BUCKET_COUNT - 1;
+    }
+    int subBucket = (int) (micros >> (exponent - 2)) & (SUB_BUCKETS - 1);
+    return LINEAR_BUCKETS + (exponent - 3) * SUB_BUCKETS + subBucket;
+  }
+
+  /**
+   * @return the exclusive upper bound of the specified bucket in microseconds
+   */
+  private static long bucketUpperBound(int index) {
+    if (index < LINEAR_BUCKETS) {
+      return index + 1;
+    }
+    int exponent = (index - LINEAR_BUCKETS) / SUB_BUCKETS + 3;
+    int subBucket = (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+    return (1L << exponent) + (subBucket + 1) * (1L << (exponent - 2));
+  }
+
+  /**
+   * @param percentile
+   *          the percentile to compute in the range [0, 100]
+   * @return an upper bound of the specified percentile of the recent
+   *         durations in nanoseconds, or 0 if nothing has been recorded
+   */
+  public long getPercentile(double percentile) {
+    Preconditions.checkArgument(0 <= percentile && percentile <= 100);
+    long count = getCount();
+    if (count == 0) {
+      return 0;
+    }
+    long maximumNanos = getMaximum();
+    long rank = (long) Math.ceil(percentile / 100 * count);
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += buckets[0][i] + buckets[1][i];
+      if (seen >= rank && seen > 0) {
+        return Math.min(bucketUpperBound(i) * 1000, maximumNanos);
+      }
+    }
+    return maximumNanos;
+  }
+
+  /**
+   * @return the longest recent duration in nanoseconds
+   */
+  public long getMaximum() {
+    return Math.max(maximumNanos[0], maximumNanos[1]);
+  }
+
+  /**
+   * @return the mean of the recent durations in nanoseconds
+   */
+  public long getMean() {
+    long count = getCount();
+    return count == 0 ? 0 : (totalNanos[0] + totalNanos[1]) / count;
+  }
+
+  /**
+   * @return the number of recent durations, at most {@code 2 * windowSize}
+   */
+  public long getCount() {
+    return counts[0] + counts[1];
+  }
+
+  /**
+   * Discards all recorded durations.
+   */
+  public void reset() {
+    clear(0);
+    clear(1);
+    current = 0;
+  }
+}
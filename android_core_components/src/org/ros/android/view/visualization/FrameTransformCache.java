@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import org.ros.namespace.GraphName;
+import org.ros.rosjava_geometry.FrameTransform;
+import org.ros.rosjava_geometry.FrameTransformTree;
+import org.ros.rosjava_geometry.Transform;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Caches the results of {@link FrameTransformTree#transform(GraphName, GraphName)}
+ * by source and target frame.
+ * <p>
+ * Each entry remembers the frames on the paths from its source and target
+ * frames to their roots. An entry is only discarded when the transform of one
+ * of those frames is updated (see {@link #invalidate(GraphName)}), so layers in
+ * the same frame share a single tree walk per change instead of one per layer
+ * and frame. Failed lookups are cached as well and are retried once a frame on
+ * their path is updated.
+ */
+public class FrameTransformCache {
+
+  /**
+   * Upper bound on the depth of the transform tree. Guards against cycles while
+   * walking up from a frame to its root.
+   */
+  private static final int MAXIMUM_FRAME_DEPTH = 64;
+
+  private static final class Entry {
+
+    /**
+     * {@code null} if the transform was not available.
+     */
+    private final Transform transform;
+
+    /**
+     * The column major matrix of {@link #transform} or {@code null}.
+     */
+    private final float[] matrix;
+
+    /**
+     * The frames whose transforms the result depends on.
+     */
+    private final Set<GraphName> frames;
+
+    Entry(Transform transform, Set<GraphName> frames) {
+      this.transform = transform;
+      this.frames = frames;
+      matrix = transform != null
+          ? OpenGlTransform.toMatrix(transform, new float[OpenGlTransform.MATRIX_SIZE]) : null;
+    }
+  }
+
+  private final FrameTransformTree frameTransformTree;
+  /**
+   * Entries by source and then target frame. Nested maps avoid allocating a
+   * key per lookup.
+   */
+  private final Map<GraphName, Map<GraphName, Entry>> entries;
+
+  private long hitCount;
+  private long missCount;
+
+  public FrameTransformCache(FrameTransformTree frameTransformTree) {
+    this.frameTransformTree = frameTransformTree;
+    entries = Maps.newHashMap();
+  }
+
+  /**
+   * @return the {@link Transform} from the source frame to the target frame or
+   *         {@code null} if it is not available
+   */
+  public synchronized Transform get(GraphName source, GraphName target) {
+    return getEntry(source, target).transform;
+  }
+
+  /**
+   * Like {@link #get(GraphName, GraphName)} but returns the column major
+   * matrix of the {@link Transform}. The matrix is converted once per cache
+   * entry and must not be modified.
+   *
+   * @return the matrix of the {@link Transform} from the source frame to the
+   *         target frame or {@code null} if it is not available
+   */
+  public synchronized float[] getMatrix(GraphName source, GraphName target) {
+    return getEntry(source, target).matrix;
+  }
+
+  private Entry getEntry(GraphName source, GraphName target) {
+    Preconditions.checkNotNull(source);
+    Preconditions.checkNotNull(target);
+    Map<GraphName, Entry> targetEntries = entries.get(source);
+    if (targetEntries == null) {
+      targetEntries = Maps.newHashMap();
+      entries.put(source, targetEntries);
+    }
+    Entry entry = targetEntries.get(target);
+    if (entry != null) {
+      hitCount++;
+      return entry;
+    }
+    missCount++;
+    FrameTransform frameTransform = frameTransformTree.transform(source, target);
+    Set<GraphName> frames = Sets.newHashSet();
+    addPathToRoot(source, frames);
+    addPathToRoot(target, frames);
+    entry = new Entry(frameTransform != null ? frameTransform.getTransform() : null, frames);
+    targetEntries.put(target, entry);
+    return entry;
+  }
+
+  private void addPathToRoot(GraphName frame, Set<GraphName> frames) {
+    for (int depth = 0; frame != null && depth < MAXIMUM_FRAME_DEPTH; depth++) {
+      // Like the FrameTransformTree, frames are compared by their relative
+      // names.
+      if (!frames.add(frame.toRelative())) {
+        return;
+      }
+      FrameTransform frameTransform = frameTransformTree.lookUp(frame);
+      frame = frameTransform == null ? null : frameTransform.getTargetFrame();
+    }
+  }
+
+  /**
+   * Discards all entries that depend on the transform of the specified frame.
+   * Must be called after the transform of the frame was updated in the
+   * {@link FrameTransformTree}.
+   *
+   * @param frame
+   *          the child frame of the updated transform
+   */
+  public synchronized void invalidate(GraphName frame) {
+    GraphName relativeFrame = frame.toRelative();
+    for (Map<GraphName, Entry> targetEntries : entries.values()) {
+      Iterator<Entry> iterator = targetEntries.values().iterator();
+      while (iterator.hasNext()) {
+        if (iterator.next().frames.contains(relativeFrame)) {
+          iterator.remove();
+        }
+      }
+    }
+  }
+
+  /**
+   * Discards all entries.
+   */
+  public synchronized void clear() {
+    entries.clear();
+  }
+
+  /**
+   * @return the number of lookups answered from the cache
+   */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * @return the number of lookups that walked the {@link FrameTransformTree}
+   */
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  /**
+   * @return the fraction of lookups answered from the cache, 0 if there were
+   *         none
+   */
+  public synchronized double getHitRate() {
+    long lookUpCount = hitCount + missCount;
+    return lookUpCount == 0 ? 0 : (double) hitCount / lookUpCount;
+  }
+
+  /**
+   * @return the number of cached source and target frame pairs
+   */
+  public synchronized int size() {
+    int size = 0;
+    for (Map<GraphName, Entry> targetEntries : entries.values()) {
+      size += targetEntries.size();
+    }
+    return size;
+  }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import android.opengl.GLSurfaceView;
+
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * Renders with the OpenGL ES 1.x fixed-function pipeline. This is the default
+ * backend and the fallback on devices without OpenGL ES 2.0.
+ */
+public class Gles1RenderBackend implements RenderBackend {
+
+  @Override
+  public void configure(GLSurfaceView view) {
+  }
+
+  @Override
+  public GL10 onSurfaceCreated(GL10 gl) {
+    return gl;
+  }
+
+  @Override
+  public int getContextClientVersion() {
+    return 1;
+  }
+}
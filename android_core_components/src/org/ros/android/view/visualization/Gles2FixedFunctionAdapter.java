@@ -0,0 +1,1445 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Sets;
+
+import android.opengl.GLES20;
+import android.opengl.Matrix;
+import android.util.Log;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.BitSet;
+import java.util.Set;
+
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
+
+/**
+ * Implements the subset of the OpenGL ES 1.x fixed-function pipeline used by
+ * layers on top of OpenGL ES 2.0 shaders.
+ * <p>
+ * The matrix stacks are kept on the CPU and only the combined
+ * model-view-projection matrix is passed to the shaders as a uniform. The
+ * current color is the constant value of the color attribute, so colors set
+ * with {@code glColor4f} and color arrays go through the same program. Points
+ * are drawn as round point sprites and {@link GL10#GL_ALPHA} textures are
+ * modulated like the fixed-function {@code GL_MODULATE} environment. Calls
+ * without an OpenGL ES 2.0 equivalent (e.g. lighting, fog,
+ * {@code glTexEnvf}) are ignored.
+ * <p>
+ * Instances must only be used on the GL thread of the context they were
+ * created in.
+ */
+class Gles2FixedFunctionAdapter implements GL11 {
+
+  private static final String TAG = "Gles2FixedFunctionAdapter";
+
+  private static final int POSITION_ATTRIBUTE = 0;
+  private static final int TEXTURE_COORDINATE_ATTRIBUTE = 1;
+  private static final int COLOR_ATTRIBUTE = 2;
+
+  private static final int MODELVIEW_STACK_DEPTH = 32;
+  private static final int PROJECTION_STACK_DEPTH = 4;
+
+  private static final String VERTEX_SHADER =
+      "uniform mat4 u_mvp;\n"
+      + "uniform float u_pointSize;\n"
+      + "attribute vec4 a_position;\n"
+      + "attribute vec2 a_textureCoordinate;\n"
+      + "attribute vec4 a_color;\n"
+      + "varying vec2 v_textureCoordinate;\n"
+      + "varying vec4 v_color;\n"
+      + "void main() {\n"
+      + "  gl_Position = u_mvp * a_position;\n"
+      + "  gl_PointSize = u_pointSize;\n"
+      + "  v_textureCoordinate = a_textureCoordinate;\n"
+      + "  v_color = a_color;\n"
+      + "}\n";
+
+  private static final String COLOR_FRAGMENT_SHADER =
+      "precision mediump float;\n"
+      + "uniform bool u_points;\n"
+      + "varying vec4 v_color;\n"
+      + "void main() {\n"
+      + "  if (u_points) {\n"
+      + "    vec2 offset = gl_PointCoord - vec2(0.5);\n"
+      + "    if (dot(offset, offset) > 0.25) {\n"
+      + "      discard;\n"
+      + "    }\n"
+      + "  }\n"
+      + "  gl_FragColor = v_color;\n"
+      + "}\n";
+
+  /**
+   * Samples {@link GL10#GL_ALPHA} textures as (0, 0, 0, alpha), so their
+   * alpha is expanded here to keep the color of the fragment.
+   */
+  private static final String TEXTURE_FRAGMENT_SHADER =
+      "precision mediump float;\n"
+      + "uniform sampler2D u_texture;\n"
+      + "uniform bool u_alphaTexture;\n"
+      + "varying vec2 v_textureCoordinate;\n"
+      + "varying vec4 v_color;\n"
+      + "void main() {\n"
+      + "  vec4 texel = texture2D(u_texture, v_textureCoordinate);\n"
+      + "  if (u_alphaTexture) {\n"
+      + "    gl_FragColor = vec4(v_color.rgb, v_color.a * texel.a);\n"
+      + "  } else {\n"
+      + "    gl_FragColor = texel * v_color;\n"
+      + "  }\n"
+      + "}\n";
+
+  /**
+   * A linked shader program and the locations of its uniforms. Uniform values
+   * are cached since they are part of the program's state.
+   */
+  private static final class Program {
+
+    private final int handle;
+    private final int mvpLocation;
+    private final int pointSizeLocation;
+    private final int pointsLocation;
+    private final int alphaTextureLocation;
+
+    private int matrixVersion = -1;
+    private float pointSize = -1;
+    private int points = -1;
+    private int alphaTexture = -1;
+
+    /**
+     * @throws IllegalStateException
+     *           if the shaders fail to compile or link
+     */
+    Program(String vertexShaderSource, String fragmentShaderSource) {
+      int vertexShader = compile(GLES20.GL_VERTEX_SHADER, vertexShaderSource);
+      int fragmentShader;
+      try {
+        fragmentShader = compile(GLES20.GL_FRAGMENT_SHADER, fragmentShaderSource);
+      } catch (IllegalStateException e) {
+        GLES20.glDeleteShader(vertexShader);
+        throw e;
+      }
+      handle = GLES20.glCreateProgram();
+      GLES20.glAttachShader(handle, vertexShader);
+      GLES20.glAttachShader(handle, fragmentShader);
+      // All programs share the attribute locations so that pointers set through
+      // the GL10 interface stay valid when switching programs.
+      GLES20.glBindAttribLocation(handle, POSITION_ATTRIBUTE, "a_position");
+      GLES20.glBindAttribLocation(handle, TEXTURE_COORDINATE_ATTRIBUTE, "a_textureCoordinate");
+      GLES20.glBindAttribLocation(handle, COLOR_ATTRIBUTE, "a_color");
+      GLES20.glLinkProgram(handle);
+      GLES20.glDeleteShader(vertexShader);
+      GLES20.glDeleteShader(fragmentShader);
+      int[] status = new int[1];
+      GLES20.glGetProgramiv(handle, GLES20.GL_LINK_STATUS, status, 0);
+      if (status[0] != GLES20.GL_TRUE) {
+        String log = GLES20.glGetProgramInfoLog(handle);
+        GLES20.glDeleteProgram(handle);
+        throw new IllegalStateException("Failed to link shader program: " + log);
+      }
+      mvpLocation = GLES20.glGetUniformLocation(handle, "u_mvp");
+      pointSizeLocation = GLES20.glGetUniformLocation(handle, "u_pointSize");
+      pointsLocation = GLES20.glGetUniformLocation(handle, "u_points");
+      alphaTextureLocation = GLES20.glGetUniformLocation(handle, "u_alphaTexture");
+    }
+
+    private static int compile(int type, String source) {
+      int shader = GLES20.glCreateShader(type);
+      GLES20.glShaderSource(shader, source);
+      GLES20.glCompileShader(shader);
+      int[] status = new int[1];
+      GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
+      if (status[0] != GLES20.GL_TRUE) {
+        String log = GLES20.glGetShaderInfoLog(shader);
+        GLES20.glDeleteShader(shader);
+        throw new IllegalStateException("Failed to compile shader: " + log);
+      }
+      return shader;
+    }
+
+    void delete() {
+      GLES20.glDeleteProgram(handle);
+    }
+  }
+
+  private final Program colorProgram;
+  private final Program textureProgram;
+  private final float[][] modelviewStack;
+  private final float[][] projectionStack;
+  private final float[] mvp;
+  private final float[] scratch;
+  private final Set<String> ignoredMethods;
+
+  /**
+   * The names of the textures whose level 0 image is {@link GL10#GL_ALPHA}.
+   */
+  private final BitSet alphaTextures;
+
+  private Program currentProgram;
+  private int matrixMode;
+  private int modelviewTop;
+  private int projectionTop;
+  private int matrixVersion;
+  private int mvpVersion;
+  private float pointSize;
+  private boolean texture2dEnabled;
+  private boolean textureCoordinateArrayEnabled;
+  private int activeTexture;
+  private int boundTexture;
+
+  /**
+   * Must be called on the GL thread of an OpenGL ES 2.0 context.
+   *
+   * @throws IllegalStateException
+   *           if the shaders fail to compile or link, e.g. because of a driver
+   *           bug
+   */
+  Gles2FixedFunctionAdapter() {
+    colorProgram = new Program(VERTEX_SHADER, COLOR_FRAGMENT_SHADER);
+    try {
+      textureProgram = new Program(VERTEX_SHADER, TEXTURE_FRAGMENT_SHADER);
+    } catch (IllegalStateException e) {
+      colorProgram.delete();
+      throw e;
+    }
+    modelviewStack = new float[MODELVIEW_STACK_DEPTH][16];
+    projectionStack = new float[PROJECTION_STACK_DEPTH][16];
+    Matrix.setIdentityM(modelviewStack[0], 0);
+    Matrix.setIdentityM(projectionStack[0], 0);
+    mvp = new float[16];
+    scratch = new float[16];
+    ignoredMethods = Sets.newHashSet();
+    alphaTextures = new BitSet();
+    matrixMode = GL10.GL_MODELVIEW;
+    mvpVersion = -1;
+    pointSize = 1;
+    activeTexture = GL10.GL_TEXTURE0;
+    // Matches the initial fixed-function color.
+    GLES20.glVertexAttrib4f(COLOR_ATTRIBUTE, 1, 1, 1, 1);
+  }
+
+  @Override
+  public void glActiveTexture(int texture) {
+    activeTexture = texture;
+    GLES20.glActiveTexture(texture);
+  }
+
+  @Override
+  public void glAlphaFunc(int func, float ref) {
+    unsupported("glAlphaFunc");
+  }
+
+  @Override
+  public void glAlphaFuncx(int func, int ref) {
+    unsupported("glAlphaFuncx");
+  }
+
+  @Override
+  public void glBindTexture(int target, int texture) {
+    if (activeTexture == GL10.GL_TEXTURE0 && target == GL10.GL_TEXTURE_2D) {
+      boundTexture = texture;
+    }
+    GLES20.glBindTexture(target, texture);
+  }
+
+  @Override
+  public void glBlendFunc(int sfactor, int dfactor) {
+    GLES20.glBlendFunc(sfactor, dfactor);
+  }
+
+  @Override
+  public void glClear(int mask) {
+    GLES20.glClear(mask);
+  }
+
+  @Override
+  public void glClearColor(float red, float green, float blue, float alpha) {
+    GLES20.glClearColor(red, green, blue, alpha);
+  }
+
+  @Override
+  public void glClearColorx(int red, int green, int blue, int alpha) {
+    GLES20.glClearColor(fixedToFloat(red), fixedToFloat(green), fixedToFloat(blue),
+        fixedToFloat(alpha));
+  }
+
+  @Override
+  public void glClearDepthf(float depth) {
+    GLES20.glClearDepthf(depth);
+  }
+
+  @Override
+  public void glClearDepthx(int depth) {
+    GLES20.glClearDepthf(fixedToFloat(depth));
+  }
+
+  @Override
+  public void glClearStencil(int s) {
+    GLES20.glClearStencil(s);
+  }
+
+  @Override
+  public void glClientActiveTexture(int texture) {
+    if (texture != GL10.GL_TEXTURE0) {
+      unsupported("glClientActiveTexture");
+    }
+  }
+
+  @Override
+  public void glColor4f(float red, float green, float blue, float alpha) {
+    GLES20.glVertexAttrib4f(COLOR_ATTRIBUTE, red, green, blue, alpha);
+  }
+
+  @Override
+  public void glColor4x(int red, int green, int blue, int alpha) {
+    GLES20.glVertexAttrib4f(COLOR_ATTRIBUTE, fixedToFloat(red), fixedToFloat(green),
+        fixedToFloat(blue), fixedToFloat(alpha));
+  }
+
+  @Override
+  public void glColorMask(boolean red, boolean green, boolean blue, boolean alpha) {
+    GLES20.glColorMask(red, green, blue, alpha);
+  }
+
+  @Override
+  public void glColorPointer(int size, int type, int stride, Buffer pointer) {
+    GLES20.glVertexAttribPointer(COLOR_ATTRIBUTE, size, type, type != GL10.GL_FLOAT, stride,
+        pointer);
+  }
+
+  @Override
+  public void glCompressedTexImage2D(int target, int level, int internalformat, int width,
+      int height, int border, int imageSize, Buffer data) {
+    textureFormatChanged(target, level, internalformat);
+    GLES20.glCompressedTexImage2D(target, level, internalformat, width, height, border, imageSize,
+        data);
+  }
+
+  @Override
+  public void glCompressedTexSubImage2D(int target, int level, int xoffset, int yoffset, int width,
+      int height, int format, int imageSize, Buffer data) {
+    GLES20.glCompressedTexSubImage2D(target, level, xoffset, yoffset, width, height, format,
+        imageSize, data);
+  }
+
+  @Override
+  public void glCopyTexImage2D(int target, int level, int internalformat, int x, int y, int width,
+      int height, int border) {
+    textureFormatChanged(target, level, internalformat);
+    GLES20.glCopyTexImage2D(target, level, internalformat, x, y, width, height, border);
+  }
+
+  @Override
+  public void glCopyTexSubImage2D(int target, int level, int xoffset, int yoffset, int x, int y,
+      int width, int height) {
+    GLES20.glCopyTexSubImage2D(target, level, xoffset, yoffset, x, y, width, height);
+  }
+
+  @Override
+  public void glCullFace(int mode) {
+    GLES20.glCullFace(mode);
+  }
+
+  @Override
+  public void glDeleteTextures(int n, int[] textures, int offset) {
+    for (int i = 0; i < n; i++) {
+      alphaTextures.clear(textures[offset + i]);
+    }
+    GLES20.glDeleteTextures(n, textures, offset);
+  }
+
+  @Override
+  public void glDeleteTextures(int n, IntBuffer textures) {
+    for (int i = 0; i < n; i++) {
+      alphaTextures.clear(textures.get(textures.position() + i));
+    }
+    GLES20.glDeleteTextures(n, textures);
+  }
+
+  @Override
+  public void glDepthFunc(int func) {
+    GLES20.glDepthFunc(func);
+  }
+
+  @Override
+  public void glDepthMask(boolean flag) {
+    GLES20.glDepthMask(flag);
+  }
+
+  @Override
+  public void glDepthRangef(float zNear, float zFar) {
+    GLES20.glDepthRangef(zNear, zFar);
+  }
+
+  @Override
+  public void glDepthRangex(int zNear, int zFar) {
+    GLES20.glDepthRangef(fixedToFloat(zNear), fixedToFloat(zFar));
+  }
+
+  @Override
+  public void glDisable(int cap) {
+    setCapability(cap, false);
+  }
+
+  @Override
+  public void glDisableClientState(int array) {
+    setClientState(array, false);
+  }
+
+  @Override
+  public void glDrawArrays(int mode, int first, int count) {
+    prepareDraw(mode);
+    GLES20.glDrawArrays(mode, first, count);
+  }
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, Buffer indices) {
+    prepareDraw(mode);
+    GLES20.glDrawElements(mode, count, type, indices);
+  }
+
+  @Override
+  public void glEnable(int cap) {
+    setCapability(cap, true);
+  }
+
+  @Override
+  public void glEnableClientState(int array) {
+    setClientState(array, true);
+  }
+
+  @Override
+  public void glFinish() {
+    GLES20.glFinish();
+  }
+
+  @Override
+  public void glFlush() {
+    GLES20.glFlush();
+  }
+
+  @Override
+  public void glFogf(int pname, float param) {
+    unsupported("glFogf");
+  }
+
+  @Override
+  public void glFogfv(int pname, float[] params, int offset) {
+    unsupported("glFogfv");
+  }
+
+  @Override
+  public void glFogfv(int pname, FloatBuffer params) {
+    unsupported("glFogfv");
+  }
+
+  @Override
+  public void glFogx(int pname, int param) {
+    unsupported("glFogx");
+  }
+
+  @Override
+  public void glFogxv(int pname, int[] params, int offset) {
+    unsupported("glFogxv");
+  }
+
+  @Override
+  public void glFogxv(int pname, IntBuffer params) {
+    unsupported("glFogxv");
+  }
+
+  @Override
+  public void glFrontFace(int mode) {
+    GLES20.glFrontFace(mode);
+  }
+
+  @Override
+  public void glFrustumf(float left, float right, float bottom, float top, float zNear,
+      float zFar) {
+    Matrix.frustumM(scratch, 0, left, right, bottom, top, zNear, zFar);
+    multiplyCurrentMatrix(scratch);
+  }
+
+  @Override
+  public void glFrustumx(int left, int right, int bottom, int top, int zNear, int zFar) {
+    glFrustumf(fixedToFloat(left), fixedToFloat(right), fixedToFloat(bottom), fixedToFloat(top),
+        fixedToFloat(zNear), fixedToFloat(zFar));
+  }
+
+  @Override
+  public void glGenTextures(int n, int[] textures, int offset) {
+    GLES20.glGenTextures(n, textures, offset);
+  }
+
+  @Override
+  public void glGenTextures(int n, IntBuffer textures) {
+    GLES20.glGenTextures(n, textures);
+  }
+
+  @Override
+  public int glGetError() {
+    return GLES20.glGetError();
+  }
+
+  @Override
+  public void glGetIntegerv(int pname, int[] params, int offset) {
+    if (pname == GL11.GL_MATRIX_MODE) {
+      params[offset] = matrixMode;
+    } else {
+      GLES20.glGetIntegerv(pname, params, offset);
+    }
+  }
+
+  @Override
+  public void glGetIntegerv(int pname, IntBuffer params) {
+    if (pname == GL11.GL_MATRIX_MODE) {
+      params.put(params.position(), matrixMode);
+    } else {
+      GLES20.glGetIntegerv(pname, params);
+    }
+  }
+
+  @Override
+  public String glGetString(int name) {
+    return GLES20.glGetString(name);
+  }
+
+  @Override
+  public void glHint(int target, int mode) {
+    // The fixed-function hints (e.g. GL_PERSPECTIVE_CORRECTION_HINT) do not
+    // exist in OpenGL ES 2.0.
+    if (target == GL11.GL_GENERATE_MIPMAP_HINT) {
+      GLES20.glHint(target, mode);
+    }
+  }
+
+  @Override
+  public void glLightModelf(int pname, float param) {
+    unsupported("glLightModelf");
+  }
+
+  @Override
+  public void glLightModelfv(int pname, float[] params, int offset) {
+    unsupported("glLightModelfv");
+  }
+
+  @Override
+  public void glLightModelfv(int pname, FloatBuffer params) {
+    unsupported("glLightModelfv");
+  }
+
+  @Override
+  public void glLightModelx(int pname, int param) {
+    unsupported("glLightModelx");
+  }
+
+  @Override
+  public void glLightModelxv(int pname, int[] params, int offset) {
+    unsupported("glLightModelxv");
+  }
+
+  @Override
+  public void glLightModelxv(int pname, IntBuffer params) {
+    unsupported("glLightModelxv");
+  }
+
+  @Override
+  public void glLightf(int light, int pname, float param) {
+    unsupported("glLightf");
+  }
+
+  @Override
+  public void glLightfv(int light, int pname, float[] params, int offset) {
+    unsupported("glLightfv");
+  }
+
+  @Override
+  public void glLightfv(int light, int pname, FloatBuffer params) {
+    unsupported("glLightfv");
+  }
+
+  @Override
+  public void glLightx(int light, int pname, int param) {
+    unsupported("glLightx");
+  }
+
+  @Override
+  public void glLightxv(int light, int pname, int[] params, int offset) {
+    unsupported("glLightxv");
+  }
+
+  @Override
+  public void glLightxv(int light, int pname, IntBuffer params) {
+    unsupported("glLightxv");
+  }
+
+  @Override
+  public void glLineWidth(float width) {
+    GLES20.glLineWidth(width);
+  }
+
+  @Override
+  public void glLineWidthx(int width) {
+    GLES20.glLineWidth(fixedToFloat(width));
+  }
+
+  @Override
+  public void glLoadIdentity() {
+    Matrix.setIdentityM(currentMatrix(), 0);
+    matrixChanged();
+  }
+
+  @Override
+  public void glLoadMatrixf(float[] m, int offset) {
+    System.arraycopy(m, offset, currentMatrix(), 0, 16);
+    matrixChanged();
+  }
+
+  @Override
+  public void glLoadMatrixf(FloatBuffer m) {
+    m.duplicate().get(currentMatrix(), 0, 16);
+    matrixChanged();
+  }
+
+  @Override
+  public void glLoadMatrixx(int[] m, int offset) {
+    float[] current = currentMatrix();
+    for (int i = 0; i < 16; i++) {
+      current[i] = fixedToFloat(m[offset + i]);
+    }
+    matrixChanged();
+  }
+
+  @Override
+  public void glLoadMatrixx(IntBuffer m) {
+    float[] current = currentMatrix();
+    for (int i = 0; i < 16; i++) {
+      current[i] = fixedToFloat(m.get(m.position() + i));
+    }
+    matrixChanged();
+  }
+
+  @Override
+  public void glLogicOp(int opcode) {
+    unsupported("glLogicOp");
+  }
+
+  @Override
+  public void glMaterialf(int face, int pname, float param) {
+    unsupported("glMaterialf");
+  }
+
+  @Override
+  public void glMaterialfv(int face, int pname, float[] params, int offset) {
+    unsupported("glMaterialfv");
+  }
+
+  @Override
+  public void glMaterialfv(int face, int pname, FloatBuffer params) {
+    unsupported("glMaterialfv");
+  }
+
+  @Override
+  public void glMaterialx(int face, int pname, int param) {
+    unsupported("glMaterialx");
+  }
+
+  @Override
+  public void glMaterialxv(int face, int pname, int[] params, int offset) {
+    unsupported("glMaterialxv");
+  }
+
+  @Override
+  public void glMaterialxv(int face, int pname, IntBuffer params) {
+    unsupported("glMaterialxv");
+  }
+
+  @Override
+  public void glMatrixMode(int mode) {
+    matrixMode = mode;
+  }
+
+  @Override
+  public void glMultMatrixf(float[] m, int offset) {
+    System.arraycopy(m, offset, scratch, 0, 16);
+    multiplyCurrentMatrix(scratch);
+  }
+
+  @Override
+  public void glMultMatrixf(FloatBuffer m) {
+    m.duplicate().get(scratch, 0, 16);
+    multiplyCurrentMatrix(scratch);
+  }
+
+  @Override
+  public void glMultMatrixx(int[] m, int offset) {
+    for (int i = 0; i < 16; i++) {
+      scratch[i] = fixedToFloat(m[offset + i]);
+    }
+    multiplyCurrentMatrix(scratch);
+  }
+
+  @Override
+  public void glMultMatrixx(IntBuffer m) {
+    for (int i = 0; i < 16; i++) {
+      scratch[i] = fixedToFloat(m.get(m.position() + i));
+    }
+    multiplyCurrentMatrix(scratch);
+  }
+
+  @Override
+  public void glMultiTexCoord4f(int target, float s, float t, float r, float q) {
+    if (target == GL10.GL_TEXTURE0) {
+      GLES20.glVertexAttrib4f(TEXTURE_COORDINATE_ATTRIBUTE, s, t, r, q);
+    } else {
+      unsupported("glMultiTexCoord4f");
+    }
+  }
+
+  @Override
+  public void glMultiTexCoord4x(int target, int s, int t, int r, int q) {
+    glMultiTexCoord4f(target, fixedToFloat(s), fixedToFloat(t), fixedToFloat(r), fixedToFloat(q));
+  }
+
+  @Override
+  public void glNormal3f(float nx, float ny, float nz) {
+    unsupported("glNormal3f");
+  }
+
+  @Override
+  public void glNormal3x(int nx, int ny, int nz) {
+    unsupported("glNormal3x");
+  }
+
+  @Override
+  public void glNormalPointer(int type, int stride, Buffer pointer) {
+    unsupported("glNormalPointer");
+  }
+
+  @Override
+  public void glOrthof(float left, float right, float bottom, float top, float zNear, float zFar) {
+    Matrix.orthoM(scratch, 0, left, right, bottom, top, zNear, zFar);
+    multiplyCurrentMatrix(scratch);
+  }
+
+  @Override
+  public void glOrthox(int left, int right, int bottom, int top, int zNear, int zFar) {
+    glOrthof(fixedToFloat(left), fixedToFloat(right), fixedToFloat(bottom), fixedToFloat(top),
+        fixedToFloat(zNear), fixedToFloat(zFar));
+  }
+
+  @Override
+  public void glPixelStorei(int pname, int param) {
+    GLES20.glPixelStorei(pname, param);
+  }
+
+  @Override
+  public void glPointSize(float size) {
+    pointSize = size;
+  }
+
+  @Override
+  public void glPointSizex(int size) {
+    pointSize = fixedToFloat(size);
+  }
+
+  @Override
+  public void glPolygonOffset(float factor, float units) {
+    GLES20.glPolygonOffset(factor, units);
+  }
+
+  @Override
+  public void glPolygonOffsetx(int factor, int units) {
+    GLES20.glPolygonOffset(fixedToFloat(factor), fixedToFloat(units));
+  }
+
+  @Override
+  public void glPopMatrix() {
+    popMatrix();
+  }
+
+  @Override
+  public void glPushMatrix() {
+    pushMatrix();
+  }
+
+  @Override
+  public void glReadPixels(int x, int y, int width, int height, int format, int type,
+      Buffer pixels) {
+    GLES20.glReadPixels(x, y, width, height, format, type, pixels);
+  }
+
+  @Override
+  public void glRotatef(float angle, float x, float y, float z) {
+    Matrix.rotateM(currentMatrix(), 0, angle, x, y, z);
+    matrixChanged();
+  }
+
+  @Override
+  public void glRotatex(int angle, int x, int y, int z) {
+    glRotatef(fixedToFloat(angle), fixedToFloat(x), fixedToFloat(y), fixedToFloat(z));
+  }
+
+  @Override
+  public void glSampleCoverage(float value, boolean invert) {
+    GLES20.glSampleCoverage(value, invert);
+  }
+
+  @Override
+  public void glSampleCoveragex(int value, boolean invert) {
+    GLES20.glSampleCoverage(fixedToFloat(value), invert);
+  }
+
+  @Override
+  public void glScalef(float x, float y, float z) {
+    Matrix.scaleM(currentMatrix(), 0, x, y, z);
+    matrixChanged();
+  }
+
+  @Override
+  public void glScalex(int x, int y, int z) {
+    glScalef(fixedToFloat(x), fixedToFloat(y), fixedToFloat(z));
+  }
+
+  @Override
+  public void glScissor(int x, int y, int width, int height) {
+    GLES20.glScissor(x, y, width, height);
+  }
+
+  @Override
+  public void glShadeModel(int mode) {
+    unsupported("glShadeModel");
+  }
+
+  @Override
+  public void glStencilFunc(int func, int ref, int mask) {
+    GLES20.glStencilFunc(func, ref, mask);
+  }
+
+  @Override
+  public void glStencilMask(int mask) {
+    GLES20.glStencilMask(mask);
+  }
+
+  @Override
+  public void glStencilOp(int fail, int zfail, int zpass) {
+    GLES20.glStencilOp(fail, zfail, zpass);
+  }
+
+  @Override
+  public void glTexCoordPointer(int size, int type, int stride, Buffer pointer) {
+    GLES20.glVertexAttribPointer(TEXTURE_COORDINATE_ATTRIBUTE, size, type, false, stride, pointer);
+  }
+
+  @Override
+  public void glTexEnvf(int target, int pname, float param) {
+    unsupported("glTexEnvf");
+  }
+
+  @Override
+  public void glTexEnvfv(int target, int pname, float[] params, int offset) {
+    unsupported("glTexEnvfv");
+  }
+
+  @Override
+  public void glTexEnvfv(int target, int pname, FloatBuffer params) {
+    unsupported("glTexEnvfv");
+  }
+
+  @Override
+  public void glTexEnvx(int target, int pname, int param) {
+    unsupported("glTexEnvx");
+  }
+
+  @Override
+  public void glTexEnvxv(int target, int pname, int[] params, int offset) {
+    unsupported("glTexEnvxv");
+  }
+
+  @Override
+  public void glTexEnvxv(int target, int pname, IntBuffer params) {
+    unsupported("glTexEnvxv");
+  }
+
+  @Override
+  public void glTexImage2D(int target, int level, int internalformat, int width, int height,
+      int border, int format, int type, Buffer pixels) {
+    textureFormatChanged(target, level, internalformat);
+    GLES20.glTexImage2D(target, level, internalformat, width, height, border, format, type, pixels);
+  }
+
+  @Override
+  public void glTexParameterf(int target, int pname, float param) {
+    GLES20.glTexParameterf(target, pname, param);
+  }
+
+  @Override
+  public void glTexParameterx(int target, int pname, int param) {
+    // Texture parameters are enums, which are not scaled like fixed-point values.
+    GLES20.glTexParameteri(target, pname, param);
+  }
+
+  @Override
+  public void glTexSubImage2D(int target, int level, int xoffset, int yoffset, int width,
+      int height, int format, int type, Buffer pixels) {
+    GLES20.glTexSubImage2D(target, level, xoffset, yoffset, width, height, format, type, pixels);
+  }
+
+  @Override
+  public void glTranslatef(float x, float y, float z) {
+    Matrix.translateM(currentMatrix(), 0, x, y, z);
+    matrixChanged();
+  }
+
+  @Override
+  public void glTranslatex(int x, int y, int z) {
+    glTranslatef(fixedToFloat(x), fixedToFloat(y), fixedToFloat(z));
+  }
+
+  @Override
+  public void glVertexPointer(int size, int type, int stride, Buffer pointer) {
+    GLES20.glVertexAttribPointer(POSITION_ATTRIBUTE, size, type, false, stride, pointer);
+  }
+
+  @Override
+  public void glViewport(int x, int y, int width, int height) {
+    GLES20.glViewport(x, y, width, height);
+  }
+
+  @Override
+  public void glBindBuffer(int target, int buffer) {
+    GLES20.glBindBuffer(target, buffer);
+  }
+
+  @Override
+  public void glBufferData(int target, int size, Buffer data, int usage) {
+    GLES20.glBufferData(target, size, data, usage);
+  }
+
+  @Override
+  public void glBufferSubData(int target, int offset, int size, Buffer data) {
+    GLES20.glBufferSubData(target, offset, size, data);
+  }
+
+  @Override
+  public void glClipPlanef(int plane, float[] equation, int offset) {
+    unsupported("glClipPlanef");
+  }
+
+  @Override
+  public void glClipPlanef(int plane, FloatBuffer equation) {
+    unsupported("glClipPlanef");
+  }
+
+  @Override
+  public void glClipPlanex(int plane, int[] equation, int offset) {
+    unsupported("glClipPlanex");
+  }
+
+  @Override
+  public void glClipPlanex(int plane, IntBuffer equation) {
+    unsupported("glClipPlanex");
+  }
+
+  @Override
+  public void glColor4ub(byte red, byte green, byte blue, byte alpha) {
+    GLES20.glVertexAttrib4f(COLOR_ATTRIBUTE, (red & 0xff) / 255.f, (green & 0xff) / 255.f,
+        (blue & 0xff) / 255.f, (alpha & 0xff) / 255.f);
+  }
+
+  @Override
+  public void glColorPointer(int size, int type, int stride, int offset) {
+    GLES20.glVertexAttribPointer(COLOR_ATTRIBUTE, size, type, type != GL10.GL_FLOAT, stride,
+        offset);
+  }
+
+  @Override
+  public void glDeleteBuffers(int n, int[] buffers, int offset) {
+    GLES20.glDeleteBuffers(n, buffers, offset);
+  }
+
+  @Override
+  public void glDeleteBuffers(int n, IntBuffer buffers) {
+    GLES20.glDeleteBuffers(n, buffers);
+  }
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, int offset) {
+    prepareDraw(mode);
+    GLES20.glDrawElements(mode, count, type, offset);
+  }
+
+  @Override
+  public void glGenBuffers(int n, int[] buffers, int offset) {
+    GLES20.glGenBuffers(n, buffers, offset);
+  }
+
+  @Override
+  public void glGenBuffers(int n, IntBuffer buffers) {
+    GLES20.glGenBuffers(n, buffers);
+  }
+
+  @Override
+  public void glGetBooleanv(int pname, boolean[] params, int offset) {
+    GLES20.glGetBooleanv(pname, params, offset);
+  }
+
+  @Override
+  public void glGetBooleanv(int pname, IntBuffer params) {
+    GLES20.glGetBooleanv(pname, params);
+  }
+
+  @Override
+  public void glGetBufferParameteriv(int target, int pname, int[] params, int offset) {
+    GLES20.glGetBufferParameteriv(target, pname, params, offset);
+  }
+
+  @Override
+  public void glGetBufferParameteriv(int target, int pname, IntBuffer params) {
+    GLES20.glGetBufferParameteriv(target, pname, params);
+  }
+
+  @Override
+  public void glGetClipPlanef(int pname, float[] eqn, int offset) {
+    unsupported("glGetClipPlanef");
+  }
+
+  @Override
+  public void glGetClipPlanef(int pname, FloatBuffer eqn) {
+    unsupported("glGetClipPlanef");
+  }
+
+  @Override
+  public void glGetClipPlanex(int pname, int[] eqn, int offset) {
+    unsupported("glGetClipPlanex");
+  }
+
+  @Override
+  public void glGetClipPlanex(int pname, IntBuffer eqn) {
+    unsupported("glGetClipPlanex");
+  }
+
+  @Override
+  public void glGetFixedv(int pname, int[] params, int offset) {
+    unsupported("glGetFixedv");
+  }
+
+  @Override
+  public void glGetFixedv(int pname, IntBuffer params) {
+    unsupported("glGetFixedv");
+  }
+
+  @Override
+  public void glGetFloatv(int pname, float[] params, int offset) {
+    switch (pname) {
+      case GL11.GL_MODELVIEW_MATRIX:
+        System.arraycopy(modelviewStack[modelviewTop], 0, params, offset, 16);
+        return;
+      case GL11.GL_PROJECTION_MATRIX:
+        System.arraycopy(projectionStack[projectionTop], 0, params, offset, 16);
+        return;
+      default:
+        GLES20.glGetFloatv(pname, params, offset);
+    }
+  }
+
+  @Override
+  public void glGetFloatv(int pname, FloatBuffer params) {
+    switch (pname) {
+      case GL11.GL_MODELVIEW_MATRIX:
+        params.duplicate().put(modelviewStack[modelviewTop], 0, 16);
+        return;
+      case GL11.GL_PROJECTION_MATRIX:
+        params.duplicate().put(projectionStack[projectionTop], 0, 16);
+        return;
+      default:
+        GLES20.glGetFloatv(pname, params);
+    }
+  }
+
+  @Override
+  public void glGetLightfv(int light, int pname, float[] params, int offset) {
+    unsupported("glGetLightfv");
+  }
+
+  @Override
+  public void glGetLightfv(int light, int pname, FloatBuffer params) {
+    unsupported("glGetLightfv");
+  }
+
+  @Override
+  public void glGetLightxv(int light, int pname, int[] params, int offset) {
+    unsupported("glGetLightxv");
+  }
+
+  @Override
+  public void glGetLightxv(int light, int pname, IntBuffer params) {
+    unsupported("glGetLightxv");
+  }
+
+  @Override
+  public void glGetMaterialfv(int face, int pname, float[] params, int offset) {
+    unsupported("glGetMaterialfv");
+  }
+
+  @Override
+  public void glGetMaterialfv(int face, int pname, FloatBuffer params) {
+    unsupported("glGetMaterialfv");
+  }
+
+  @Override
+  public void glGetMaterialxv(int face, int pname, int[] params, int offset) {
+    unsupported("glGetMaterialxv");
+  }
+
+  @Override
+  public void glGetMaterialxv(int face, int pname, IntBuffer params) {
+    unsupported("glGetMaterialxv");
+  }
+
+  @Override
+  public void glGetPointerv(int pname, Buffer[] params) {
+    unsupported("glGetPointerv");
+  }
+
+  @Override
+  public void glGetTexEnviv(int env, int pname, int[] params, int offset) {
+    unsupported("glGetTexEnviv");
+  }
+
+  @Override
+  public void glGetTexEnviv(int env, int pname, IntBuffer params) {
+    unsupported("glGetTexEnviv");
+  }
+
+  @Override
+  public void glGetTexEnvxv(int env, int pname, int[] params, int offset) {
+    unsupported("glGetTexEnvxv");
+  }
+
+  @Override
+  public void glGetTexEnvxv(int env, int pname, IntBuffer params) {
+    unsupported("glGetTexEnvxv");
+  }
+
+  @Override
+  public void glGetTexParameterfv(int target, int pname, float[] params, int offset) {
+    GLES20.glGetTexParameterfv(target, pname, params, offset);
+  }
+
+  @Override
+  public void glGetTexParameterfv(int target, int pname, FloatBuffer params) {
+    GLES20.glGetTexParameterfv(target, pname, params);
+  }
+
+  @Override
+  public void glGetTexParameteriv(int target, int pname, int[] params, int offset) {
+    GLES20.glGetTexParameteriv(target, pname, params, offset);
+  }
+
+  @Override
+  public void glGetTexParameteriv(int target, int pname, IntBuffer params) {
+    GLES20.glGetTexParameteriv(target, pname, params);
+  }
+
+  @Override
+  public void glGetTexParameterxv(int target, int pname, int[] params, int offset) {
+    unsupported("glGetTexParameterxv");
+  }
+
+  @Override
+  public void glGetTexParameterxv(int target, int pname, IntBuffer params) {
+    unsupported("glGetTexParameterxv");
+  }
+
+  @Override
+  public boolean glIsBuffer(int buffer) {
+    return GLES20.glIsBuffer(buffer);
+  }
+
+  @Override
+  public boolean glIsEnabled(int cap) {
+    if (cap == GL10.GL_TEXTURE_2D) {
+      return texture2dEnabled;
+    }
+    return isGles20Capability(cap) && GLES20.glIsEnabled(cap);
+  }
+
+  @Override
+  public boolean glIsTexture(int texture) {
+    return GLES20.glIsTexture(texture);
+  }
+
+  @Override
+  public void glNormalPointer(int type, int stride, int offset) {
+    unsupported("glNormalPointer");
+  }
+
+  @Override
+  public void glPointParameterf(int pname, float param) {
+    unsupported("glPointParameterf");
+  }
+
+  @Override
+  public void glPointParameterfv(int pname, float[] params, int offset) {
+    unsupported("glPointParameterfv");
+  }
+
+  @Override
+  public void glPointParameterfv(int pname, FloatBuffer params) {
+    unsupported("glPointParameterfv");
+  }
+
+  @Override
+  public void glPointParameterx(int pname, int param) {
+    unsupported("glPointParameterx");
+  }
+
+  @Override
+  public void glPointParameterxv(int pname, int[] params, int offset) {
+    unsupported("glPointParameterxv");
+  }
+
+  @Override
+  public void glPointParameterxv(int pname, IntBuffer params) {
+    unsupported("glPointParameterxv");
+  }
+
+  @Override
+  public void glPointSizePointerOES(int type, int stride, Buffer pointer) {
+    unsupported("glPointSizePointerOES");
+  }
+
+  @Override
+  public void glTexCoordPointer(int size, int type, int stride, int offset) {
+    GLES20.glVertexAttribPointer(TEXTURE_COORDINATE_ATTRIBUTE, size, type, false, stride, offset);
+  }
+
+  @Override
+  public void glTexEnvi(int target, int pname, int param) {
+    unsupported("glTexEnvi");
+  }
+
+  @Override
+  public void glTexEnviv(int target, int pname, int[] params, int offset) {
+    unsupported("glTexEnviv");
+  }
+
+  @Override
+  public void glTexEnviv(int target, int pname, IntBuffer params) {
+    unsupported("glTexEnviv");
+  }
+
+  @Override
+  public void glTexParameterfv(int target, int pname, float[] params, int offset) {
+    GLES20.glTexParameterfv(target, pname, params, offset);
+  }
+
+  @Override
+  public void glTexParameterfv(int target, int pname, FloatBuffer params) {
+    GLES20.glTexParameterfv(target, pname, params);
+  }
+
+  @Override
+  public void glTexParameteri(int target, int pname, int param) {
+    GLES20.glTexParameteri(target, pname, param);
+  }
+
+  @Override
+  public void glTexParameteriv(int target, int pname, int[] params, int offset) {
+    GLES20.glTexParameteriv(target, pname, params, offset);
+  }
+
+  @Override
+  public void glTexParameteriv(int target, int pname, IntBuffer params) {
+    GLES20.glTexParameteriv(target, pname, params);
+  }
+
+  @Override
+  public void glTexParameterxv(int target, int pname, int[] params, int offset) {
+    unsupported("glTexParameterxv");
+  }
+
+  @Override
+  public void glTexParameterxv(int target, int pname, IntBuffer params) {
+    unsupported("glTexParameterxv");
+  }
+
+  @Override
+  public void glVertexPointer(int size, int type, int stride, int offset) {
+    GLES20.glVertexAttribPointer(POSITION_ATTRIBUTE, size, type, false, stride, offset);
+  }
+
+  private void unsupported(String name) {
+    if (ignoredMethods.add(name)) {
+      Log.w(TAG, "Ignoring unsupported call to " + name + ".");
+    }
+  }
+
+  private static float fixedToFloat(int value) {
+    return value / 65536.f;
+  }
+
+  private float[] currentMatrix() {
+    if (matrixMode == GL10.GL_PROJECTION) {
+      return projectionStack[projectionTop];
+    }
+    // The texture matrix is not supported and aliases the model view matrix
+    // like any other unsupported mode would.
+    return modelviewStack[modelviewTop];
+  }
+
+  private void matrixChanged() {
+    matrixVersion++;
+  }
+
+  private void pushMatrix() {
+    if (matrixMode == GL10.GL_PROJECTION) {
+      Preconditions.checkState(projectionTop + 1 < PROJECTION_STACK_DEPTH,
+          "Projection matrix stack overflow.");
+      System.arraycopy(projectionStack[projectionTop], 0, projectionStack[projectionTop + 1], 0, 16);
+      projectionTop++;
+    } else {
+      Preconditions.checkState(modelviewTop + 1 < MODELVIEW_STACK_DEPTH,
+          "Model view matrix stack overflow.");
+      System.arraycopy(modelviewStack[modelviewTop], 0, modelviewStack[modelviewTop + 1], 0, 16);
+      modelviewTop++;
+    }
+  }
+
+  private void popMatrix() {
+    if (matrixMode == GL10.GL_PROJECTION) {
+      Preconditions.checkState(projectionTop > 0, "Projection matrix stack underflow.");
+      projectionTop--;
+    } else {
+      Preconditions.checkState(modelviewTop > 0, "Model view matrix stack underflow.");
+      modelviewTop--;
+    }
+    matrixChanged();
+  }
+
+  /**
+   * Post-multiplies the current matrix with the specified matrix, which must
+   * not be the current matrix.
+   */
+  private void multiplyCurrentMatrix(float[] matrix) {
+    float[] current = currentMatrix();
+    Matrix.multiplyMM(mvp, 0, current, 0, matrix, 0);
+    System.arraycopy(mvp, 0, current, 0, 16);
+    // mvp was used as a temporary.
+    mvpVersion = -1;
+    matrixChanged();
+  }
+
+  private static boolean isGles20Capability(int capability) {
+    switch (capability) {
+      case GL10.GL_BLEND:
+      case GL10.GL_CULL_FACE:
+      case GL10.GL_DEPTH_TEST:
+      case GL10.GL_DITHER:
+      case GL10.GL_POLYGON_OFFSET_FILL:
+      case GL10.GL_SCISSOR_TEST:
+      case GL10.GL_STENCIL_TEST:
+        return true;
+      default:
+        // Fixed-function capabilities (e.g. lighting, point smoothing) have no
+        // equivalent.
+        return false;
+    }
+  }
+
+  private void setCapability(int capability, boolean enabled) {
+    if (capability == GL10.GL_TEXTURE_2D) {
+      // Texturing is selected by program in OpenGL ES 2.0.
+      texture2dEnabled = enabled;
+    } else if (isGles20Capability(capability)) {
+      if (enabled) {
+        GLES20.glEnable(capability);
+      } else {
+        GLES20.glDisable(capability);
+      }
+    }
+  }
+
+  private void setClientState(int array, boolean enabled) {
+    int attribute;
+    switch (array) {
+      case GL10.GL_VERTEX_ARRAY:
+        attribute = POSITION_ATTRIBUTE;
+        break;
+      case GL10.GL_TEXTURE_COORD_ARRAY:
+        attribute = TEXTURE_COORDINATE_ATTRIBUTE;
+        textureCoordinateArrayEnabled = enabled;
+        break;
+      case GL10.GL_COLOR_ARRAY:
+        attribute = COLOR_ATTRIBUTE;
+        break;
+      default:
+        // Normals are only used for lighting, which is not supported.
+        return;
+    }
+    if (enabled) {
+      GLES20.glEnableVertexAttribArray(attribute);
+    } else {
+      GLES20.glDisableVertexAttribArray(attribute);
+    }
+  }
+
+  private void textureFormatChanged(int target, int level, int internalFormat) {
+    if (activeTexture == GL10.GL_TEXTURE0 && target == GL10.GL_TEXTURE_2D && level == 0) {
+      alphaTextures.set(boundTexture, internalFormat == GL10.GL_ALPHA);
+    }
+  }
+
+  private void prepareDraw(int mode) {
+    boolean textured = texture2dEnabled && textureCoordinateArrayEnabled;
+    Program program = textured ? textureProgram : colorProgram;
+    if (program != currentProgram) {
+      GLES20.glUseProgram(program.handle);
+      currentProgram = program;
+    }
+    if (program.matrixVersion != matrixVersion) {
+      if (mvpVersion != matrixVersion) {
+        Matrix.multiplyMM(mvp, 0, projectionStack[projectionTop], 0, modelviewStack[modelviewTop],
+            0);
+        mvpVersion = matrixVersion;
+      }
+      GLES20.glUniformMatrix4fv(program.mvpLocation, 1, false, mvp, 0);
+      program.matrixVersion = matrixVersion;
+    }
+    if (program.pointSize != pointSize) {
+      GLES20.glUniform1f(program.pointSizeLocation, pointSize);
+      program.pointSize = pointSize;
+    }
+    int points = mode == GL10.GL_POINTS ? 1 : 0;
+    if (program.pointsLocation != -1 && program.points != points) {
+      GLES20.glUniform1i(program.pointsLocation, points);
+      program.points = points;
+    }
+    if (textured) {
+      int alphaTexture = alphaTextures.get(boundTexture) ? 1 : 0;
+      if (program.alphaTexture != alphaTexture) {
+        GLES20.glUniform1i(program.alphaTextureLocation, alphaTexture);
+        program.alphaTexture = alphaTexture;
+      }
+    }
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import com.google.common.base.Preconditions;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.opengl.GLSurfaceView;
+import android.util.Log;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLDisplay;
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * Renders with OpenGL ES 2.0 shaders. Layers keep drawing through {@link GL10};
+ * the fixed-function subset they use is translated to shader programs with
+ * the transforms passed as uniforms and points drawn as round point sprites.
+ * <p>
+ * If the shaders fail to compile or link (e.g. because of a driver bug), the
+ * backend falls back to a {@link Gles1RenderBackend} and the view recreates
+ * its context as an OpenGL ES 1.x context. The EGL configuration is therefore
+ * chosen to support both versions where possible.
+ *
+ * @see Gles2FixedFunctionAdapter
+ */
+public class Gles2RenderBackend implements RenderBackend {
+
+  private static final String TAG = "Gles2RenderBackend";
+
+  private static final int GLES2_VERSION = 0x20000;
+  private static final int EGL_OPENGL_ES_BIT = 0x0001;
+  private static final int EGL_OPENGL_ES2_BIT = 0x0004;
+
+  /**
+   * Chooses an RGBA8888 configuration that OpenGL ES 2.0 contexts, and
+   * preferably also OpenGL ES 1.x contexts, can render to.
+   */
+  private static final class ConfigChooser implements GLSurfaceView.EGLConfigChooser {
+
+    @Override
+    public EGLConfig chooseConfig(EGL10 egl, EGLDisplay display) {
+      EGLConfig config = chooseConfig(egl, display, EGL_OPENGL_ES2_BIT | EGL_OPENGL_ES_BIT);
+      if (config == null) {
+        config = chooseConfig(egl, display, EGL_OPENGL_ES2_BIT);
+      }
+      Preconditions.checkState(config != null, "No EGL configuration supports OpenGL ES 2.0.");
+      return config;
+    }
+
+    private static EGLConfig chooseConfig(EGL10 egl, EGLDisplay display, int renderableType) {
+      int[] attributes =
+          { EGL10.EGL_RED_SIZE, 8, EGL10.EGL_GREEN_SIZE, 8, EGL10.EGL_BLUE_SIZE, 8,
+              EGL10.EGL_ALPHA_SIZE, 8, EGL10.EGL_RENDERABLE_TYPE, renderableType, EGL10.EGL_NONE };
+      EGLConfig[] configs = new EGLConfig[1];
+      int[] configCount = new int[1];
+      if (!egl.eglChooseConfig(display, attributes, configs, 1, configCount)
+          || configCount[0] == 0) {
+        return null;
+      }
+      return configs[0];
+    }
+  }
+
+  private final Gles1RenderBackend fallback;
+
+  /**
+   * {@code true} once the shaders failed to compile or link. Written on the GL
+   * thread and read when the next context is created.
+   */
+  private volatile boolean fellBack;
+
+  public Gles2RenderBackend() {
+    fallback = new Gles1RenderBackend();
+  }
+
+  /**
+   * @return {@code true} if the device supports OpenGL ES 2.0
+   */
+  public static boolean isSupported(Context context) {
+    ActivityManager activityManager =
+        (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+    return activityManager.getDeviceConfigurationInfo().reqGlEsVersion >= GLES2_VERSION;
+  }
+
+  /**
+   * @return a {@link Gles2RenderBackend} if the device supports OpenGL ES 2.0,
+   *         a {@link Gles1RenderBackend} otherwise
+   */
+  public static RenderBackend newPreferredBackend(Context context) {
+    if (isSupported(context)) {
+      return new Gles2RenderBackend();
+    }
+    return new Gles1RenderBackend();
+  }
+
+  @Override
+  public void configure(GLSurfaceView view) {
+    view.setEGLContextClientVersion(2);
+    view.setEGLConfigChooser(new ConfigChooser());
+  }
+
+  @Override
+  public GL10 onSurfaceCreated(GL10 gl) {
+    if (fellBack) {
+      return fallback.onSurfaceCreated(gl);
+    }
+    try {
+      // Shader programs belong to the context, a new context needs new ones.
+      return new Gles2FixedFunctionAdapter();
+    } catch (IllegalStateException e) {
+      Log.e(TAG, "Falling back to OpenGL ES 1.x.", e);
+      fellBack = true;
+      return null;
+    }
+  }
+
+  @Override
+  public int getContextClientVersion() {
+    return fellBack ? fallback.getContextClientVersion() : 2;
+  }
+
+  /**
+   * @return {@code true} if the shaders failed to compile or link and the
+   *         view renders with OpenGL ES 1.x instead
+   */
+  public boolean hasFallenBack() {
+    return fellBack;
+  }
+}
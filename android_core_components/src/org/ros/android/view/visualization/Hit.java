@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import org.ros.android.view.visualization.layer.HitTestLayer;
+import org.ros.namespace.GraphName;
+
+/**
+ * An item of a {@link HitTestLayer} found near a position on the screen.
+ * 
+ * @see VisualizationView#findNearest(int, int, float)
+ */
+public class Hit {
+
+  private final HitTestLayer layer;
+  private final SpatialIndex spatialIndex;
+  private final int item;
+  private final double distance;
+
+  public Hit(HitTestLayer layer, SpatialIndex spatialIndex, int item, double distance) {
+    this.layer = layer;
+    this.spatialIndex = spatialIndex;
+    this.item = item;
+    this.distance = distance;
+  }
+
+  public HitTestLayer getLayer() {
+    return layer;
+  }
+
+  /**
+   * @return the index of the item in the layer's {@link SpatialIndex}, e.g.
+   *         the index of a point or path vertex
+   */
+  public int getItem() {
+    return item;
+  }
+
+  /**
+   * @return the frame of {@link #getX()} and {@link #getY()}
+   */
+  public GraphName getFrame() {
+    return spatialIndex.getFrame();
+  }
+
+  public float getX() {
+    return spatialIndex.getX(item);
+  }
+
+  public float getY() {
+    return spatialIndex.getY(item);
+  }
+
+  /**
+   * @return the distance from the position on the screen to the item in
+   *         meters, 0 if the item covers the position
+   */
+  public double getDistance() {
+    return distance;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Hit<%s, %d, %f>", layer, item, distance);
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import java.util.Locale;
+
+/**
+ * An estimate of the memory held by a layer or a part of it, by kind of
+ * memory. Instances are immutable.
+ *
+ * @see org.ros.android.view.visualization.layer.MemoryAccountingLayer
+ */
+public class MemoryUsage {
+
+  public static final MemoryUsage NONE = new MemoryUsage(0, 0, 0, 0);
+
+  private final long heapBytes;
+  private final long directBytes;
+  private final long bitmapBytes;
+  private final long gpuBytes;
+
+  /**
+   * @param heapBytes
+   *          bytes of Java arrays and heap buffers
+   * @param directBytes
+   *          bytes of direct buffers
+   * @param bitmapBytes
+   *          bytes of bitmap pixels
+   * @param gpuBytes
+   *          estimated bytes of textures and buffer objects
+   */
+  public MemoryUsage(long heapBytes, long directBytes, long bitmapBytes, long gpuBytes) {
+    this.heapBytes = heapBytes;
+    this.directBytes = directBytes;
+    this.bitmapBytes = bitmapBytes;
+    this.gpuBytes = gpuBytes;
+  }
+
+  public static MemoryUsage heap(long bytes) {
+    return new MemoryUsage(bytes, 0, 0, 0);
+  }
+
+  public static MemoryUsage direct(long bytes) {
+    return new MemoryUsage(0, bytes, 0, 0);
+  }
+
+  public static MemoryUsage gpu(long bytes) {
+    return new MemoryUsage(0, 0, 0, bytes);
+  }
+
+  /**
+   * @return the sum of this and the specified usage
+   */
+  public MemoryUsage plus(MemoryUsage other) {
+    return new MemoryUsage(heapBytes + other.heapBytes, directBytes + other.directBytes,
+        bitmapBytes + other.bitmapBytes, gpuBytes + other.gpuBytes);
+  }
+
+  public long getHeapBytes() {
+    return heapBytes;
+  }
+
+  public long getDirectBytes() {
+    return directBytes;
+  }
+
+  public long getBitmapBytes() {
+    return bitmapBytes;
+  }
+
+  public long getGpuBytes() {
+    return gpuBytes;
+  }
+
+  /**
+   * @return the bytes held by this process, i.e. all but the GPU bytes
+   */
+  public long getProcessBytes() {
+    return heapBytes + directBytes + bitmapBytes;
+  }
+
+  /**
+   * @return the bytes of all kinds of memory
+   */
+  public long getTotalBytes() {
+    return getProcessBytes() + gpuBytes;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.US, "MemoryUsage<heap: %d, direct: %d, bitmap: %d, gpu: %d>",
+        heapBytes, directBytes, bitmapBytes, gpuBytes);
+  }
+}
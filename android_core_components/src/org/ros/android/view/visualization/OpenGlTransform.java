@@ -16,31 +16,32 @@
 
 package org.ros.android.view.visualization;
 
+import org.ros.rosjava_geometry.Quaternion;
 import org.ros.rosjava_geometry.Transform;
-
-import java.nio.FloatBuffer;
+import org.ros.rosjava_geometry.Vector3;
 
 import javax.microedition.khronos.opengles.GL10;
 
 /**
  * An adapter for applying {@link Transform}s in an OpenGL context.
+ * <p>
+ * None of the methods allocate. Transforms that are applied repeatedly should
+ * be converted once with a {@link TransformMatrix}.
  * 
  * @author damonkohler@google.com (Damon Kohler)
  * @author moesenle@google.com (Lorenz Moesenlechner)
  */
 public class OpenGlTransform {
 
-  private static final ThreadLocal<FloatBuffer> buffer = new ThreadLocal<FloatBuffer>() {
-    @Override
-    protected FloatBuffer initialValue() {
-      return FloatBuffer.allocate(16);
-    };
+  /**
+   * The number of elements of a 4x4 matrix.
+   */
+  public static final int MATRIX_SIZE = 16;
 
+  private static final ThreadLocal<float[]> matrix = new ThreadLocal<float[]>() {
     @Override
-    public FloatBuffer get() {
-      FloatBuffer buffer = super.get();
-      buffer.clear();
-      return buffer;
+    protected float[] initialValue() {
+      return new float[MATRIX_SIZE];
     };
   };
 
@@ -57,11 +58,46 @@ public class OpenGlTransform {
    *          the {@link Transform} to apply
    */
   public static void apply(GL10 gl, Transform transform) {
-    FloatBuffer matrix = buffer.get();
-    for (double value : transform.toMatrix()) {
-      matrix.put((float) value);
-    }
-    matrix.position(0);
-    gl.glMultMatrixf(matrix);
+    float[] matrix = OpenGlTransform.matrix.get();
+    toMatrix(transform, matrix);
+    gl.glMultMatrixf(matrix, 0);
+  }
+
+  /**
+   * Writes a {@link Transform} into a column major 4x4 matrix. Equivalent to
+   * {@link Transform#toMatrix()} without allocating.
+   *
+   * @param transform
+   *          the {@link Transform} to convert
+   * @param matrix
+   *          receives the 16 matrix elements
+   * @return the specified matrix
+   */
+  public static float[] toMatrix(Transform transform, float[] matrix) {
+    Quaternion rotationAndScale = transform.getRotationAndScale();
+    Vector3 translation = transform.getTranslation();
+    double x = rotationAndScale.getX();
+    double y = rotationAndScale.getY();
+    double z = rotationAndScale.getZ();
+    double w = rotationAndScale.getW();
+    // The squared magnitude of the quaternion is the scale of the transform.
+    double mm = x * x + y * y + z * z + w * w;
+    matrix[0] = (float) (mm - 2 * y * y - 2 * z * z);
+    matrix[1] = (float) (2 * x * y + 2 * z * w);
+    matrix[2] = (float) (2 * x * z - 2 * y * w);
+    matrix[3] = 0;
+    matrix[4] = (float) (2 * x * y - 2 * z * w);
+    matrix[5] = (float) (mm - 2 * x * x - 2 * z * z);
+    matrix[6] = (float) (2 * y * z + 2 * x * w);
+    matrix[7] = 0;
+    matrix[8] = (float) (2 * x * z + 2 * y * w);
+    matrix[9] = (float) (2 * y * z - 2 * x * w);
+    matrix[10] = (float) (mm - 2 * x * x - 2 * y * y);
+    matrix[11] = 0;
+    matrix[12] = (float) translation.getX();
+    matrix[13] = (float) translation.getY();
+    matrix[14] = (float) translation.getZ();
+    matrix[15] = 1;
+    return matrix;
   }
 }
@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.ros.exception.RosRuntimeException;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs the iterations of a loop on several threads and waits until all of
+ * them are done, e.g. to convert the tiles of a map or to prepare the layers
+ * of a frame on all cores.
+ * <p>
+ * The calling thread takes part and runs every iteration that no worker
+ * thread has picked up yet. Loops therefore never wait for a busy worker and
+ * may be run by several threads at once.
+ */
+public class ParallelLoop {
+
+  /**
+   * Upper bound on the number of worker threads of {@link #getDefault()} in
+   * addition to the calling thread.
+   */
+  private static final int MAXIMUM_THREAD_COUNT = 3;
+
+  private static final long KEEP_ALIVE_SECONDS = 30;
+
+  /**
+   * Iterations that do not fit the queue of the workers are run by the
+   * calling thread.
+   */
+  private static final int QUEUE_CAPACITY = 256;
+
+  private static ParallelLoop defaultInstance;
+
+  /**
+   * The body of a loop.
+   */
+  public interface Body {
+
+    /**
+     * Runs one iteration. Called from any of the threads of the loop.
+     */
+    void run(int index);
+  }
+
+  /**
+   * A loop whose iterations are kept across runs, so that running it again
+   * does not allocate, e.g. once per frame. A loop must only be run by one
+   * thread at a time.
+   */
+  public final class Loop {
+
+    /**
+     * Runs one index once. Claimed by whichever thread gets to it first.
+     */
+    private final class Iteration implements Runnable {
+
+      private final int index;
+      private final AtomicBoolean claimed;
+
+      private RuntimeException failure;
+
+      Iteration(int index) {
+        this.index = index;
+        // Iterations that were never dispatched must not run.
+        claimed = new AtomicBoolean(true);
+      }
+
+      @Override
+      public void run() {
+        if (!claimed.compareAndSet(false, true)) {
+          return;
+        }
+        try {
+          body.run(index);
+        } catch (RuntimeException e) {
+          failure = e;
+        } finally {
+          done.release();
+        }
+      }
+    }
+
+    private final Body body;
+    private final List<Iteration> iterations;
+    private final Semaphore done;
+
+    private Loop(Body body) {
+      this.body = body;
+      iterations = Lists.newArrayList();
+      done = new Semaphore(0);
+    }
+
+    /**
+     * Runs the body for each index from 0 to {@code count - 1} in no
+     * particular order and returns once all of them are done.
+     *
+     * @throws RosRuntimeException
+     *           if an iteration failed, after all iterations are done
+     */
+    public void run(int count) {
+      Preconditions.checkArgument(count >= 0);
+      while (iterations.size() < count) {
+        iterations.add(new Iteration(iterations.size()));
+      }
+      // Iterations of a previous run that a worker picks up only now find
+      // themselves claimed until they are reset.
+      for (int i = 0; i < count; i++) {
+        Iteration iteration = iterations.get(i);
+        iteration.failure = null;
+        iteration.claimed.set(false);
+      }
+      if (executor != null) {
+        // The last iteration is always left to the calling thread.
+        for (int i = 0; i < count - 1; i++) {
+          executor.execute(iterations.get(i));
+        }
+      }
+      for (int i = count - 1; i >= 0; i--) {
+        iterations.get(i).run();
+      }
+      // Iterations picked up by workers release their permit when they
+      // finish, ones run by the calling thread already did.
+      done.acquireUninterruptibly(count);
+      for (int i = 0; i < count; i++) {
+        RuntimeException failure = iterations.get(i).failure;
+        if (failure != null) {
+          throw new RosRuntimeException(failure);
+        }
+      }
+    }
+  }
+
+  /**
+   * {@code null} if all iterations run on the calling thread.
+   */
+  private final Executor executor;
+  private final int threadCount;
+
+  /**
+   * @param threadCount
+   *          the number of worker threads, 0 to run all iterations on the
+   *          calling thread
+   */
+  public ParallelLoop(int threadCount) {
+    Preconditions.checkArgument(threadCount >= 0);
+    this.threadCount = threadCount;
+    if (threadCount > 0) {
+      // Unlike a linked queue, an array queue does not allocate per
+      // iteration.
+      ThreadPoolExecutor threadPool =
+          new ThreadPoolExecutor(threadCount, threadCount, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+              new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY), new ThreadFactoryBuilder()
+                  .setDaemon(true).setNameFormat("visualization_loop_%d").build(),
+              new ThreadPoolExecutor.DiscardPolicy());
+      threadPool.allowCoreThreadTimeOut(true);
+      executor = threadPool;
+    } else {
+      executor = null;
+    }
+  }
+
+  /**
+   * @return a loop shared by all callers with one worker thread per
+   *         additional core
+   */
+  public static synchronized ParallelLoop getDefault() {
+    if (defaultInstance == null) {
+      defaultInstance =
+          new ParallelLoop(Math.max(0, Math.min(MAXIMUM_THREAD_COUNT,
+              Runtime.getRuntime().availableProcessors() - 1)));
+    }
+    return defaultInstance;
+  }
+
+  /**
+   * @return a {@link Loop} that runs the specified body on the threads of this
+   *         instance
+   */
+  public Loop newLoop(Body body) {
+    return new Loop(Preconditions.checkNotNull(body));
+  }
+
+  /**
+   * Runs {@code body} for each index from 0 to {@code count - 1} in no
+   * particular order and returns once all of them are done.
+   *
+   * @throws RosRuntimeException
+   *           if an iteration failed, after all iterations are done
+   */
+  public void run(int count, Body body) {
+    newLoop(body).run(count);
+  }
+
+  /**
+   * @return the number of worker threads in addition to the calling thread
+   */
+  public int getThreadCount() {
+    return threadCount;
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.FloatBuffer;
+
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * Bounding boxes of consecutive runs (chunks) of vertices in a
+ * {@link VertexBuffer}. Only the chunks that intersect the visible area are
+ * drawn, which culls points or line strips outside the viewport without
+ * touching the uploaded vertices.
+ * <p>
+ * Computing the chunks is linear in the number of vertices and should happen
+ * when the vertices change, not per frame. Instances are not thread-safe.
+ */
+public class PointChunks {
+
+  /**
+   * The number of vertices per chunk unless specified otherwise.
+   */
+  public static final int DEFAULT_CHUNK_SIZE = 256;
+
+  private static final int VERTEX_SIZE = 3;
+
+  private final int chunkSize;
+  private final int overlap;
+
+  /**
+   * Scratch space of {@link #draw(GL10, VertexBuffer, int, BoundingBox)}.
+   */
+  private final DrawRanges ranges;
+
+  /**
+   * Minimum x, minimum y, maximum x and maximum y of each chunk.
+   */
+  private float[] chunkBounds;
+  private int chunkCount;
+  private int first;
+  private int vertexCount;
+  private BoundingBox bounds;
+
+  /**
+   * @param chunkSize
+   *          the number of vertices per chunk
+   * @param overlap
+   *          the number of vertices following a chunk that are drawn with it
+   *          (e.g. 1 for line strips so that the segment to the next chunk is
+   *          included)
+   */
+  public PointChunks(int chunkSize, int overlap) {
+    Preconditions.checkArgument(chunkSize > 0);
+    Preconditions.checkArgument(overlap >= 0);
+    this.chunkSize = chunkSize;
+    this.overlap = overlap;
+    chunkBounds = new float[0];
+    ranges = new DrawRanges();
+  }
+
+  /**
+   * Chunks of {@link #DEFAULT_CHUNK_SIZE} points.
+   */
+  public PointChunks() {
+    this(DEFAULT_CHUNK_SIZE, 0);
+  }
+
+  /**
+   * Computes the chunks of the specified x, y, z vertices. The buffer's
+   * position is not changed.
+   *
+   * @param vertices
+   *          the same vertices passed to {@link VertexBuffer#update(FloatBuffer)}
+   * @param first
+   *          the index of the first vertex to chunk, preceding vertices are
+   *          never drawn by {@link #draw}
+   */
+  public void update(FloatBuffer vertices, int first) {
+    Preconditions.checkArgument(vertices.remaining() % VERTEX_SIZE == 0);
+    int count = vertices.remaining() / VERTEX_SIZE;
+    Preconditions.checkArgument(0 <= first && first <= count);
+    this.first = first;
+    vertexCount = count - first;
+    chunkCount = (vertexCount + chunkSize - 1) / chunkSize;
+    if (chunkBounds.length < chunkCount * 4) {
+      chunkBounds = new float[chunkCount * 4];
+    }
+    int offset = vertices.position();
+    float totalMinimumX = Float.POSITIVE_INFINITY;
+    float totalMinimumY = Float.POSITIVE_INFINITY;
+    float totalMaximumX = Float.NEGATIVE_INFINITY;
+    float totalMaximumY = Float.NEGATIVE_INFINITY;
+    // The vertices preceding the chunks (e.g. the origin of a triangle fan)
+    // are part of the overall bounds.
+    for (int i = 0; i < first; i++) {
+      float x = vertices.get(offset + i * VERTEX_SIZE);
+      float y = vertices.get(offset + i * VERTEX_SIZE + 1);
+      totalMinimumX = Math.min(totalMinimumX, x);
+      totalMinimumY = Math.min(totalMinimumY, y);
+      totalMaximumX = Math.max(totalMaximumX, x);
+      totalMaximumY = Math.max(totalMaximumY, y);
+    }
+    for (int chunk = 0; chunk < chunkCount; chunk++) {
+      int start = first + chunk * chunkSize;
+      int end = Math.min(start + chunkSize + overlap, count);
+      float minimumX = Float.POSITIVE_INFINITY;
+      float minimumY = Float.POSITIVE_INFINITY;
+      float maximumX = Float.NEGATIVE_INFINITY;
+      float maximumY = Float.NEGATIVE_INFINITY;
+      for (int i = start; i < end; i++) {
+        float x = vertices.get(offset + i * VERTEX_SIZE);
+        float y = vertices.get(offset + i * VERTEX_SIZE + 1);
+        minimumX = Math.min(minimumX, x);
+        minimumY = Math.min(minimumY, y);
+        maximumX = Math.max(maximumX, x);
+        maximumY = Math.max(maximumY, y);
+      }
+      chunkBounds[chunk * 4] = minimumX;
+      chunkBounds[chunk * 4 + 1] = minimumY;
+      chunkBounds[chunk * 4 + 2] = maximumX;
+      chunkBounds[chunk * 4 + 3] = maximumY;
+      totalMinimumX = Math.min(totalMinimumX, minimumX);
+      totalMinimumY = Math.min(totalMinimumY, minimumY);
+      totalMaximumX = Math.max(totalMaximumX, maximumX);
+      totalMaximumY = Math.max(totalMaximumY, maximumY);
+    }
+    bounds = count > 0
+        ? new BoundingBox(totalMinimumX, totalMinimumY, totalMaximumX, totalMaximumY) : null;
+  }
+
+  /**
+   * @param visible
+   *          the visible area in the frame of the vertices or {@code null} if
+   *          it is unknown
+   * @return {@code true} if any of the vertices, including those preceding the
+   *         chunks, may be visible
+   */
+  public boolean isVisible(BoundingBox visible) {
+    return visible == null || (bounds != null && visible.intersects(bounds));
+  }
+
+  /**
+   * Draws the chunks that intersect the visible area. Adjacent visible chunks
+   * are drawn with a single call.
+   *
+   * @param visible
+   *          the visible area in the frame of the vertices or {@code null} to
+   *          draw all chunks
+   * @return the number of vertices that were culled
+   */
+  public int draw(GL10 gl, VertexBuffer vertices, int mode, BoundingBox visible) {
+    cull(visible, ranges);
+    ranges.draw(gl, vertices, mode);
+    return ranges.getCulledCount();
+  }
+
+  /**
+   * Computes the ranges of vertices of the chunks that intersect the visible
+   * area without drawing them. Adjacent visible chunks form a single range.
+   *
+   * @param visible
+   *          the visible area in the frame of the vertices or {@code null} to
+   *          keep all chunks
+   * @param ranges
+   *          cleared and filled with the ranges to draw
+   */
+  public void cull(BoundingBox visible, DrawRanges ranges) {
+    ranges.clear();
+    int total = first + vertexCount;
+    if (visible == null) {
+      if (vertexCount > 0) {
+        ranges.add(first, vertexCount);
+      }
+      return;
+    }
+    int runStart = -1;
+    for (int chunk = 0; chunk <= chunkCount; chunk++) {
+      boolean chunkVisible = chunk < chunkCount
+          && visible.intersects(chunkBounds[chunk * 4], chunkBounds[chunk * 4 + 1],
+              chunkBounds[chunk * 4 + 2], chunkBounds[chunk * 4 + 3]);
+      if (chunkVisible) {
+        if (runStart < 0) {
+          runStart = chunk;
+        }
+        continue;
+      }
+      if (runStart >= 0) {
+        int start = first + runStart * chunkSize;
+        int end = Math.min(first + chunk * chunkSize + overlap, total);
+        ranges.add(start, end - start);
+        runStart = -1;
+      }
+      if (chunk < chunkCount) {
+        ranges.addCulled(Math.min(chunkSize, total - (first + chunk * chunkSize)));
+      }
+    }
+  }
+
+  /**
+   * @return the number of vertices that were chunked
+   */
+  public int getVertexCount() {
+    return vertexCount;
+  }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs the conversion of messages into drawable data (vertices, texture
+ * pixels) on a small pool of background threads instead of the subscriber
+ * threads.
+ * <p>
+ * Jobs are submitted per key, usually the layer they belong to. Each key has
+ * at most one pending job: a job that has not started yet when a newer one
+ * is submitted for the same key is discarded as stale. Jobs of the same key
+ * never run concurrently and run in the order they were submitted, so a job
+ * may act as the single writer of a layer's
+ * {@link org.ros.android.view.visualization.layer.TripleBuffer}.
+ */
+public class PreparationExecutor {
+
+  private static final String TAG = "PreparationExecutor";
+
+  /**
+   * Upper bound on the number of worker threads. Rendering and message
+   * deserialization need the remaining cores.
+   */
+  private static final int MAXIMUM_THREAD_COUNT = 2;
+
+  private static final long KEEP_ALIVE_SECONDS = 30;
+
+  /**
+   * The jobs of one key.
+   */
+  private final class Queue implements Runnable {
+
+    private final AtomicReference<Job> pending;
+    private final AtomicBoolean scheduled;
+    private final PreparationStatistics statistics;
+
+    Queue() {
+      pending = new AtomicReference<Job>();
+      scheduled = new AtomicBoolean();
+      statistics = new PreparationStatistics();
+    }
+
+    void submit(Job job) {
+      statistics.submitted();
+      if (pending.getAndSet(job) != null) {
+        statistics.discarded();
+      }
+      schedule();
+    }
+
+    void cancel() {
+      if (pending.getAndSet(null) != null) {
+        statistics.discarded();
+      }
+    }
+
+    private void schedule() {
+      if (scheduled.compareAndSet(false, true)) {
+        executor.execute(this);
+      }
+    }
+
+    @Override
+    public void run() {
+      Job job = pending.getAndSet(null);
+      if (job != null) {
+        long startNanos = System.nanoTime();
+        try {
+          job.runnable.run();
+        } catch (RuntimeException e) {
+          statistics.failed();
+          Log.e(TAG, "Preparation failed.", e);
+        }
+        long endNanos = System.nanoTime();
+        statistics.completed(endNanos - startNanos, endNanos - job.submitNanos);
+      }
+      scheduled.set(false);
+      // A job may have been submitted after the pending job was taken but
+      // before this queue was unscheduled.
+      if (pending.get() != null) {
+        schedule();
+      }
+    }
+  }
+
+  private static final class Job {
+
+    private final Runnable runnable;
+    private final long submitNanos;
+
+    Job(Runnable runnable) {
+      this.runnable = runnable;
+      submitNanos = System.nanoTime();
+    }
+  }
+
+  private final Executor executor;
+
+  /**
+   * {@code null} if jobs run on the submitting thread.
+   */
+  private final ThreadPoolExecutor threadPool;
+  private final Map<Object, Queue> queues;
+
+  public PreparationExecutor() {
+    this(Math.max(1,
+        Math.min(MAXIMUM_THREAD_COUNT, Runtime.getRuntime().availableProcessors() - 1)));
+  }
+
+  /**
+   * @param threadCount
+   *          the number of worker threads, which are only started when needed
+   *          and stop when idle
+   */
+  public PreparationExecutor(int threadCount) {
+    Preconditions.checkArgument(threadCount > 0);
+    threadPool =
+        new ThreadPoolExecutor(threadCount, threadCount, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactoryBuilder().setDaemon(true)
+                .setPriority(Thread.NORM_PRIORITY - 1)
+                .setNameFormat("visualization_preparation_%d").build());
+    threadPool.allowCoreThreadTimeOut(true);
+    executor = threadPool;
+    queues = Maps.newConcurrentMap();
+  }
+
+  private PreparationExecutor(Executor executor) {
+    this.executor = executor;
+    threadPool = null;
+    queues = Maps.newConcurrentMap();
+  }
+
+  /**
+   * @return a {@link PreparationExecutor} that runs each job on the
+   *         submitting thread before {@link #submit(Object, Runnable)}
+   *         returns, e.g. for benchmarks that need deterministic frames
+   */
+  public static PreparationExecutor newInlineExecutor() {
+    return new PreparationExecutor(new Executor() {
+      @Override
+      public void execute(Runnable runnable) {
+        runnable.run();
+      }
+    });
+  }
+
+  private Queue getQueue(Object key) {
+    Preconditions.checkNotNull(key);
+    Queue queue = queues.get(key);
+    if (queue == null) {
+      synchronized (queues) {
+        queue = queues.get(key);
+        if (queue == null) {
+          queue = new Queue();
+          queues.put(key, queue);
+        }
+      }
+    }
+    return queue;
+  }
+
+  /**
+   * Runs the specified job in the background unless a newer job is submitted
+   * for the same key before it starts.
+   *
+   * @param key
+   *          identifies the jobs that replace each other (e.g. a layer)
+   * @param runnable
+   *          the job
+   */
+  public void submit(Object key, Runnable runnable) {
+    Preconditions.checkNotNull(runnable);
+    getQueue(key).submit(new Job(runnable));
+  }
+
+  /**
+   * Discards the pending job of the specified key, if any. A running job is
+   * not interrupted.
+   */
+  public void cancel(Object key) {
+    Queue queue = queues.get(key);
+    if (queue != null) {
+      queue.cancel();
+    }
+  }
+
+  /**
+   * Discards the pending job and the statistics of the specified key, e.g.
+   * when its layer shuts down. A running job is not interrupted. Jobs that
+   * are submitted for the key afterwards start over with new statistics.
+   */
+  public void remove(Object key) {
+    Queue queue = queues.remove(key);
+    if (queue != null) {
+      queue.cancel();
+    }
+  }
+
+  /**
+   * @return the {@link PreparationStatistics} of the specified key or
+   *         {@code null} if nothing was submitted for it
+   */
+  public PreparationStatistics getStatistics(Object key) {
+    Queue queue = queues.get(key);
+    return queue == null ? null : queue.statistics;
+  }
+
+  /**
+   * @return the {@link PreparationStatistics} of all keys that jobs were
+   *         submitted for
+   */
+  public Map<Object, PreparationStatistics> getAllStatistics() {
+    Map<Object, PreparationStatistics> statistics = Maps.newHashMap();
+    for (Map.Entry<Object, Queue> entry : queues.entrySet()) {
+      statistics.put(entry.getKey(), entry.getValue().statistics);
+    }
+    return Collections.unmodifiableMap(statistics);
+  }
+
+  /**
+   * @return the number of keys whose pending job is waiting for a worker
+   *         thread
+   */
+  public int getQueueDepth() {
+    return threadPool == null ? 0 : threadPool.getQueue().size();
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the jobs of one key of a {@link PreparationExecutor} and how long
+ * they took. May be read from any thread.
+ */
+public class PreparationStatistics {
+
+  private final AtomicLong submittedCount;
+  private final AtomicLong discardedCount;
+  private final AtomicLong failedCount;
+  private final AtomicLong completedCount;
+  private final FrameTimeHistogram conversionTimes;
+  private final FrameTimeHistogram latencies;
+
+  PreparationStatistics() {
+    submittedCount = new AtomicLong();
+    discardedCount = new AtomicLong();
+    failedCount = new AtomicLong();
+    completedCount = new AtomicLong();
+    conversionTimes = new FrameTimeHistogram();
+    latencies = new FrameTimeHistogram();
+  }
+
+  void submitted() {
+    submittedCount.incrementAndGet();
+  }
+
+  void discarded() {
+    discardedCount.incrementAndGet();
+  }
+
+  void failed() {
+    failedCount.incrementAndGet();
+  }
+
+  /**
+   * Only called by the job's worker thread. Jobs of one key never run
+   * concurrently.
+   */
+  void completed(long conversionNanos, long latencyNanos) {
+    conversionTimes.record(conversionNanos);
+    latencies.record(latencyNanos);
+    completedCount.incrementAndGet();
+  }
+
+  /**
+   * @return the number of submitted jobs
+   */
+  public long getSubmittedCount() {
+    return submittedCount.get();
+  }
+
+  /**
+   * @return the number of jobs that were discarded as stale before they ran
+   */
+  public long getDiscardedCount() {
+    return discardedCount.get();
+  }
+
+  /**
+   * @return the number of jobs that threw an exception
+   */
+  public long getFailedCount() {
+    return failedCount.get();
+  }
+
+  /**
+   * @return the number of jobs that ran
+   */
+  public long getCompletedCount() {
+    return completedCount.get();
+  }
+
+  /**
+   * @return the number of jobs that are waiting to run or running, at most
+   *         one of each
+   */
+  public long getPendingCount() {
+    return Math.max(0, getSubmittedCount() - getDiscardedCount() - getCompletedCount());
+  }
+
+  /**
+   * @return the {@link FrameTimeHistogram} of the time recent jobs took to
+   *         run
+   */
+  public FrameTimeHistogram getConversionTimes() {
+    return conversionTimes;
+  }
+
+  /**
+   * @return the {@link FrameTimeHistogram} of the time from submitting to
+   *         completing recent jobs
+   */
+  public FrameTimeHistogram getLatencies() {
+    return latencies;
+  }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import com.google.common.base.Preconditions;
+
+import org.ros.android.view.visualization.layer.Layer;
+import org.ros.android.view.visualization.layer.LevelOfDetailLayer;
+
+/**
+ * Adjusts the level of detail of {@link LevelOfDetailLayer}s to hold a target
+ * frame rate.
+ * <p>
+ * The governor keeps a moving average of the wall-clock time between frames
+ * that are drawn back to back, which includes the time the GL thread waits
+ * for the GPU to finish the previous frame. A frame that starts after the
+ * view was idle only counts the time spent drawing it. When the average
+ * exceeds the frame budget, the level of detail is lowered step by step.
+ * Once frames take well below the budget again, it is raised back towards
+ * full detail. Adjustments are spaced out in time so that layers have time to
+ * apply the previous one.
+ * <p>
+ * Views that only draw when something changes may stop drawing while detail
+ * is reduced. The view therefore calls {@link #restore(long)} periodically,
+ * which raises the detail a step after the view has been idle.
+ * <p>
+ * The governor is disabled until a target frame rate is set.
+ */
+public class QualityGovernor {
+
+  /**
+   * The lowest level of detail the governor selects.
+   */
+  public static final float MINIMUM_LEVEL_OF_DETAIL = 0.25f;
+
+  /**
+   * How often the view calls {@link #restore(long)} while detail is reduced.
+   */
+  public static final long RESTORE_INTERVAL_MILLIS = 1000;
+
+  /**
+   * Weight of the latest frame in the moving average.
+   */
+  private static final double SMOOTHING = 0.1;
+
+  /**
+   * The level of detail is multiplied by this factor when frames are too slow
+   * and divided by it when there is headroom.
+   */
+  private static final float STEP = 0.75f;
+
+  /**
+   * The level of detail is raised when frames take less than this fraction of
+   * the budget.
+   */
+  private static final double HEADROOM = 0.6;
+
+  /**
+   * The minimum time between adjustments.
+   */
+  private static final long ADJUSTMENT_INTERVAL_NANOS = 500 * 1000 * 1000L;
+
+  private volatile long frameBudgetNanos;
+  private volatile float levelOfDetail;
+  private volatile double averageFrameNanos;
+
+  /**
+   * The end of the most recently drawn frame, 0 if none.
+   */
+  private volatile long lastFrameEndNanos;
+
+  private long previousFrameStartNanos;
+  private boolean previousFrameContinued;
+  private long lastAdjustmentNanos;
+  private float appliedLevelOfDetail;
+
+  public QualityGovernor() {
+    levelOfDetail = 1;
+    appliedLevelOfDetail = 1;
+  }
+
+  /**
+   * @param frameRate
+   *          the frame rate to hold in frames per second, 0 to disable the
+   *          governor and restore full detail
+   */
+  public void setTargetFrameRate(double frameRate) {
+    Preconditions.checkArgument(frameRate >= 0);
+    frameBudgetNanos = frameRate == 0 ? 0 : (long) (1e9 / frameRate);
+    if (frameBudgetNanos == 0) {
+      levelOfDetail = 1;
+    }
+  }
+
+  /**
+   * @return the target frame rate in frames per second, 0 if the governor is
+   *         disabled
+   */
+  public double getTargetFrameRate() {
+    long frameBudgetNanos = this.frameBudgetNanos;
+    return frameBudgetNanos == 0 ? 0 : 1e9 / frameBudgetNanos;
+  }
+
+  /**
+   * @return the current level of detail between
+   *         {@link #MINIMUM_LEVEL_OF_DETAIL} and 1
+   */
+  public float getLevelOfDetail() {
+    return levelOfDetail;
+  }
+
+  /**
+   * @return the moving average of the frame time in nanoseconds
+   */
+  public long getAverageFrameTime() {
+    return (long) averageFrameNanos;
+  }
+
+  /**
+   * Records a frame and passes any change of the level of detail on to the
+   * layers. Called on the GL thread after each frame.
+   *
+   * @param startNanos
+   *          the {@link System#nanoTime()} the frame started at
+   * @param endNanos
+   *          the {@link System#nanoTime()} the frame ended at
+   * @param continued
+   *          {@code true} if another frame was requested while this one was
+   *          drawn, so that the next one follows without idling
+   */
+  void recordFrame(long startNanos, long endNanos, boolean continued, Iterable<Layer> layers) {
+    long nanos = endNanos - startNanos;
+    if (previousFrameContinued) {
+      // Includes waiting for the GPU to finish the previous frame.
+      nanos = Math.max(nanos, startNanos - previousFrameStartNanos);
+    }
+    previousFrameStartNanos = startNanos;
+    previousFrameContinued = continued;
+    lastFrameEndNanos = endNanos;
+    double average = averageFrameNanos;
+    averageFrameNanos = average == 0 ? nanos : average + SMOOTHING * (nanos - average);
+    long frameBudgetNanos = this.frameBudgetNanos;
+    if (frameBudgetNanos > 0 && endNanos - lastAdjustmentNanos >= ADJUSTMENT_INTERVAL_NANOS) {
+      synchronized (this) {
+        if (averageFrameNanos > frameBudgetNanos) {
+          levelOfDetail = Math.max(MINIMUM_LEVEL_OF_DETAIL, levelOfDetail * STEP);
+          lastAdjustmentNanos = endNanos;
+        } else if (averageFrameNanos < frameBudgetNanos * HEADROOM) {
+          levelOfDetail = Math.min(1, levelOfDetail / STEP);
+          lastAdjustmentNanos = endNanos;
+        }
+      }
+    }
+    float levelOfDetail = this.levelOfDetail;
+    if (levelOfDetail != appliedLevelOfDetail) {
+      for (Layer layer : layers) {
+        if (layer instanceof LevelOfDetailLayer) {
+          ((LevelOfDetailLayer) layer).setLevelOfDetail(levelOfDetail);
+        }
+      }
+      appliedLevelOfDetail = levelOfDetail;
+    }
+  }
+
+  /**
+   * @return {@code true} if the governor is enabled and detail is reduced
+   */
+  public boolean isReduced() {
+    return frameBudgetNanos > 0 && levelOfDetail < 1;
+  }
+
+  /**
+   * Raises the level of detail a step if no frame was drawn for
+   * {@link #RESTORE_INTERVAL_MILLIS}. Frames drawn while the view is idle take
+   * no longer than a single frame, so the reduced detail is no longer needed.
+   * May be called from any thread.
+   *
+   * @param nowNanos
+   *          the current {@link System#nanoTime()}
+   * @return {@code true} if the level of detail was raised and a frame has to
+   *         be drawn to pass it on to the layers
+   */
+  public boolean restore(long nowNanos) {
+    if (!isReduced() || nowNanos - lastFrameEndNanos < RESTORE_INTERVAL_MILLIS * 1000 * 1000) {
+      return false;
+    }
+    synchronized (this) {
+      levelOfDetail = Math.min(1, levelOfDetail / STEP);
+      // The average was measured at the lower detail.
+      averageFrameNanos = 0;
+    }
+    return true;
+  }
+}
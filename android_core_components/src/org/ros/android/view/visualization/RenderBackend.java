@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import android.opengl.GLSurfaceView;
+
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * Selects the OpenGL ES version a {@link VisualizationView} renders with.
+ * Layers always draw through the {@link GL10} interface; a backend decides
+ * what implementation of that interface they draw with.
+ *
+ * @see Gles1RenderBackend
+ * @see Gles2RenderBackend
+ */
+public interface RenderBackend {
+
+  /**
+   * Configures the EGL context and configuration of the view. Called before
+   * the view's renderer is set.
+   *
+   * @param view
+   *          the view that will be rendered by this backend
+   */
+  void configure(GLSurfaceView view);
+
+  /**
+   * Called on the GL thread whenever a new EGL context was created.
+   *
+   * @param gl
+   *          the {@link GL10} instance of the new context
+   * @return the {@link GL10} instance that layers draw with until the next
+   *         context is created, or {@code null} if this backend cannot render
+   *         to the context; the view then recreates its context with the
+   *         version returned by {@link #getContextClientVersion()}
+   */
+  GL10 onSurfaceCreated(GL10 gl);
+
+  /**
+   * @return the OpenGL ES major version of the next context this backend
+   *         renders to, queried whenever a context is created
+   * @see GLSurfaceView#setEGLContextClientVersion(int)
+   */
+  int getContextClientVersion();
+}
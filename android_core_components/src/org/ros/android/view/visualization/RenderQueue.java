@@ -0,0 +1,435 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import org.ros.rosjava_geometry.Transform;
+
+import java.nio.FloatBuffer;
+import java.util.List;
+
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * A retained queue of draw commands that are merged by GL state before they are
+ * submitted.
+ * <p>
+ * Geometry is submitted together with a {@link Color} and point size or line
+ * width. The queue transforms it on the CPU by its own matrix stack, which
+ * mirrors the OpenGL model view matrix, and appends it to the most recent
+ * batch if that batch shares its primitive type, point size or line width,
+ * and color. Triangle fans, line strips and line loops are converted to
+ * independent triangles and lines so that they can be concatenated. On
+ * {@link #flush(GL10)} the batches are drawn in submission order with a single
+ * {@link GL10#glDrawArrays(int, int, int)} each, so overlapping translucent
+ * geometry blends as if it had been drawn directly.
+ * <p>
+ * Textured geometry is not queued.
+ * <p>
+ * The queue must only be used on the GL thread.
+ */
+public class RenderQueue {
+
+  private static final int MAXIMUM_STACK_DEPTH = 32;
+  private static final int MATRIX_SIZE = 16;
+
+  /**
+   * Number of coordinates per vertex (x, y, z).
+   */
+  private static final int VERTEX_SIZE = 3;
+
+  private static final int INITIAL_BATCH_CAPACITY = 64 * VERTEX_SIZE;
+
+  private static final class Batch {
+
+    private int mode;
+    private float size;
+
+    /**
+     * RGBA packed with 8 bits per channel.
+     */
+    private int color;
+
+    private FloatBuffer vertices;
+
+    private Batch() {
+      vertices = Vertices.acquireBuffer(INITIAL_BATCH_CAPACITY);
+    }
+
+    private void reset(int mode, float size, int color) {
+      this.mode = mode;
+      this.size = size;
+      this.color = color;
+      vertices.clear();
+    }
+
+    private void ensureRemaining(int floats) {
+      if (vertices.remaining() < floats) {
+        int capacity = Math.max(vertices.capacity() * 2, vertices.position() + floats);
+        FloatBuffer grown = Vertices.acquireBuffer(capacity);
+        vertices.flip();
+        grown.put(vertices);
+        Vertices.releaseBuffer(vertices);
+        vertices = grown;
+      }
+    }
+  }
+
+  private final float[] matrixStack;
+  private final float[] scratch;
+  private final float[] transformMatrix;
+  private final List<Batch> activeBatches;
+  private final List<Batch> freeBatches;
+
+  private int stackTop;
+
+  /**
+   * {@code true} while the OpenGL model view matrix is known to equal the
+   * current matrix of this queue.
+   */
+  private boolean mirroringGl;
+
+  /**
+   * The stack index from which on matrices are relative to the OpenGL model
+   * view matrix, or -1.
+   *
+   * @see #pushGlRelativeMatrix()
+   */
+  private int glRelativeTop;
+  private int submittedCommandCount;
+  private int drawCallCount;
+  private volatile int lastSubmittedCommandCount;
+  private volatile int lastDrawCallCount;
+
+  public RenderQueue() {
+    matrixStack = new float[MAXIMUM_STACK_DEPTH * MATRIX_SIZE];
+    scratch = new float[MATRIX_SIZE];
+    transformMatrix = new float[MATRIX_SIZE];
+    activeBatches = Lists.newArrayList();
+    freeBatches = Lists.newArrayList();
+    glRelativeTop = -1;
+    loadIdentity();
+  }
+
+  /**
+   * Replaces the current matrix with the identity.
+   */
+  public void loadIdentity() {
+    int offset = stackTop * MATRIX_SIZE;
+    for (int i = 0; i < MATRIX_SIZE; i++) {
+      matrixStack[offset + i] = i % 5 == 0 ? 1.f : 0.f;
+    }
+  }
+
+  /**
+   * Draws the queued geometry and pushes an identity matrix that stands for
+   * the current OpenGL model view matrix, e.g. to submit geometry that a
+   * caller positioned by transforming GL directly. Until the matching
+   * {@link #popGlRelativeMatrix(GL10)}, {@link #flush(GL10)} draws in the
+   * coordinate system of the OpenGL model view matrix and
+   * {@link #applyMatrix(GL10)} multiplies it.
+   */
+  public void pushGlRelativeMatrix(GL10 gl) {
+    Preconditions.checkState(glRelativeTop < 0, "Already relative to the OpenGL matrix.");
+    flush(gl);
+    pushMatrix();
+    loadIdentity();
+    glRelativeTop = stackTop;
+  }
+
+  /**
+   * Draws the geometry queued since {@link #pushGlRelativeMatrix(GL10)},
+   * which must not have changed the OpenGL model view matrix since, and pops
+   * the matrix.
+   */
+  public void popGlRelativeMatrix(GL10 gl) {
+    Preconditions.checkState(glRelativeTop == stackTop, "Not relative to the OpenGL matrix.");
+    flush(gl);
+    glRelativeTop = -1;
+    popMatrix();
+  }
+
+  /**
+   * Marks whether the OpenGL model view matrix equals the current matrix of
+   * this queue. The renderer keeps both in sync while it draws a
+   * {@link org.ros.android.view.visualization.layer.BatchedLayer}, which must
+   * not transform GL directly. Other layers may transform GL directly, which
+   * the queue does not track.
+   */
+  void setMirroringGl(boolean mirroringGl) {
+    this.mirroringGl = mirroringGl;
+  }
+
+  /**
+   * @return {@code true} if the current matrix is known to equal the OpenGL
+   *         model view matrix, otherwise callers that may have transformed GL
+   *         directly should submit their geometry between
+   *         {@link #pushGlRelativeMatrix(GL10)} and
+   *         {@link #popGlRelativeMatrix(GL10)}
+   */
+  public boolean isMirroringGl() {
+    return mirroringGl;
+  }
+
+  /**
+   * Equivalent of {@link GL10#glPushMatrix()}.
+   */
+  public void pushMatrix() {
+    Preconditions.checkState(stackTop + 1 < MAXIMUM_STACK_DEPTH, "Matrix stack overflow.");
+    System.arraycopy(matrixStack, stackTop * MATRIX_SIZE, matrixStack, (stackTop + 1)
+        * MATRIX_SIZE, MATRIX_SIZE);
+    stackTop++;
+  }
+
+  /**
+   * Equivalent of {@link GL10#glPopMatrix()}.
+   */
+  public void popMatrix() {
+    Preconditions.checkState(stackTop > 0, "Matrix stack underflow.");
+    Preconditions.checkState(stackTop != glRelativeTop, "Use popGlRelativeMatrix().");
+    stackTop--;
+  }
+
+  /**
+   * Multiplies the current matrix by the specified {@link Transform}.
+   */
+  public void multiply(Transform transform) {
+    multiply(OpenGlTransform.toMatrix(transform, transformMatrix));
+  }
+
+  /**
+   * Multiplies the current matrix by a column major 4x4 matrix.
+   */
+  public void multiply(float[] matrix) {
+    int offset = stackTop * MATRIX_SIZE;
+    for (int column = 0; column < 4; column++) {
+      float m0 = matrix[column * 4];
+      float m1 = matrix[column * 4 + 1];
+      float m2 = matrix[column * 4 + 2];
+      float m3 = matrix[column * 4 + 3];
+      for (int row = 0; row < 4; row++) {
+        scratch[column * 4 + row] =
+            matrixStack[offset + row] * m0 + matrixStack[offset + 4 + row] * m1
+                + matrixStack[offset + 8 + row] * m2 + matrixStack[offset + 12 + row] * m3;
+      }
+    }
+    System.arraycopy(scratch, 0, matrixStack, offset, MATRIX_SIZE);
+  }
+
+  /**
+   * Equivalent of {@link GL10#glScalef(float, float, float)}.
+   */
+  public void scale(float x, float y, float z) {
+    int offset = stackTop * MATRIX_SIZE;
+    for (int row = 0; row < 4; row++) {
+      matrixStack[offset + row] *= x;
+      matrixStack[offset + 4 + row] *= y;
+      matrixStack[offset + 8 + row] *= z;
+    }
+  }
+
+  /**
+   * Loads the current matrix of this queue into the OpenGL model view matrix,
+   * e.g. to draw textured geometry directly in the same coordinate system.
+   * Multiplies the OpenGL model view matrix by it instead between
+   * {@link #pushGlRelativeMatrix(GL10)} and
+   * {@link #popGlRelativeMatrix(GL10)}.
+   */
+  public void applyMatrix(GL10 gl) {
+    if (glRelativeTop >= 0) {
+      gl.glMultMatrixf(matrixStack, stackTop * MATRIX_SIZE);
+    } else {
+      gl.glLoadMatrixf(matrixStack, stackTop * MATRIX_SIZE);
+    }
+  }
+
+  public void drawTriangleFan(FloatBuffer vertices, Color color) {
+    int count = countVertices(vertices);
+    if (count < 3) {
+      return;
+    }
+    Batch batch = getBatch(GL10.GL_TRIANGLES, 0.f, color, (count - 2) * 3);
+    int first = vertices.position();
+    for (int i = 1; i < count - 1; i++) {
+      putVertex(batch, vertices, first);
+      putVertex(batch, vertices, first + i * VERTEX_SIZE);
+      putVertex(batch, vertices, first + (i + 1) * VERTEX_SIZE);
+    }
+    submittedCommandCount++;
+  }
+
+  public void drawPoints(FloatBuffer vertices, Color color, float size) {
+    int count = countVertices(vertices);
+    Batch batch = getBatch(GL10.GL_POINTS, size, color, count);
+    int first = vertices.position();
+    for (int i = 0; i < count; i++) {
+      putVertex(batch, vertices, first + i * VERTEX_SIZE);
+    }
+    submittedCommandCount++;
+  }
+
+  /**
+   * Draws a line strip.
+   */
+  public void drawLines(FloatBuffer vertices, Color color, float width) {
+    drawLineStrip(vertices, color, width, false);
+  }
+
+  public void drawLineLoop(FloatBuffer vertices, Color color, float width) {
+    drawLineStrip(vertices, color, width, true);
+  }
+
+  private void drawLineStrip(FloatBuffer vertices, Color color, float width, boolean closed) {
+    int count = countVertices(vertices);
+    if (count < 2) {
+      return;
+    }
+    int segments = closed ? count : count - 1;
+    Batch batch = getBatch(GL10.GL_LINES, width, color, segments * 2);
+    int first = vertices.position();
+    for (int i = 0; i < segments; i++) {
+      putVertex(batch, vertices, first + i * VERTEX_SIZE);
+      putVertex(batch, vertices, first + ((i + 1) % count) * VERTEX_SIZE);
+    }
+    submittedCommandCount++;
+  }
+
+  private static int countVertices(FloatBuffer vertices) {
+    int remaining = vertices.remaining();
+    // Only builds the message on failure since this runs for every command.
+    if (remaining % VERTEX_SIZE != 0) {
+      throw new IllegalArgumentException("Number of vertices: " + remaining);
+    }
+    return remaining / VERTEX_SIZE;
+  }
+
+  private void putVertex(Batch batch, FloatBuffer vertices, int index) {
+    float x = vertices.get(index);
+    float y = vertices.get(index + 1);
+    float z = vertices.get(index + 2);
+    float[] m = matrixStack;
+    int offset = stackTop * MATRIX_SIZE;
+    batch.vertices.put(m[offset] * x + m[offset + 4] * y + m[offset + 8] * z + m[offset + 12]);
+    batch.vertices.put(m[offset + 1] * x + m[offset + 5] * y + m[offset + 9] * z + m[offset + 13]);
+    batch.vertices.put(m[offset + 2] * x + m[offset + 6] * y + m[offset + 10] * z + m[offset + 14]);
+  }
+
+  private static int packColor(Color color) {
+    return Math.round(color.getRed() * 255) << 24 | Math.round(color.getGreen() * 255) << 16
+        | Math.round(color.getBlue() * 255) << 8 | Math.round(color.getAlpha() * 255);
+  }
+
+  private Batch getBatch(int mode, float size, Color color, int vertexCount) {
+    int packedColor = packColor(color);
+    // Only the most recent batch may be extended without drawing geometry out
+    // of order.
+    Batch batch = null;
+    if (!activeBatches.isEmpty()) {
+      Batch last = activeBatches.get(activeBatches.size() - 1);
+      if (last.mode == mode && last.size == size && last.color == packedColor) {
+        batch = last;
+      }
+    }
+    if (batch == null) {
+      batch = freeBatches.isEmpty() ? new Batch() : freeBatches.remove(freeBatches.size() - 1);
+      batch.reset(mode, size, packedColor);
+      activeBatches.add(batch);
+    }
+    batch.ensureRemaining(vertexCount * VERTEX_SIZE);
+    return batch;
+  }
+
+  /**
+   * Draws and discards all queued geometry. The OpenGL model view matrix is
+   * left unchanged.
+   */
+  public void flush(GL10 gl) {
+    if (activeBatches.isEmpty()) {
+      return;
+    }
+    gl.glPushMatrix();
+    if (glRelativeTop < 0) {
+      gl.glLoadIdentity();
+    }
+    gl.glEnableClientState(GL10.GL_VERTEX_ARRAY);
+    int color = 0;
+    float pointSize = -1.f;
+    float lineWidth = -1.f;
+    for (int i = 0; i < activeBatches.size(); i++) {
+      Batch batch = activeBatches.get(i);
+      if (i == 0 || batch.color != color) {
+        color = batch.color;
+        gl.glColor4f((color >>> 24) / 255.f, (color >>> 16 & 0xff) / 255.f,
+            (color >>> 8 & 0xff) / 255.f, (color & 0xff) / 255.f);
+      }
+      if (batch.mode == GL10.GL_POINTS && batch.size != pointSize) {
+        pointSize = batch.size;
+        gl.glPointSize(pointSize);
+      } else if (batch.mode == GL10.GL_LINES && batch.size != lineWidth) {
+        lineWidth = batch.size;
+        gl.glLineWidth(lineWidth);
+      }
+      batch.vertices.flip();
+      gl.glVertexPointer(VERTEX_SIZE, GL10.GL_FLOAT, 0, batch.vertices);
+      gl.glDrawArrays(batch.mode, 0, batch.vertices.limit() / VERTEX_SIZE);
+      drawCallCount++;
+      freeBatches.add(batch);
+    }
+    activeBatches.clear();
+    gl.glDisableClientState(GL10.GL_VERTEX_ARRAY);
+    gl.glPopMatrix();
+  }
+
+  /**
+   * Starts a new frame and resets the matrix stack.
+   */
+  public void beginFrame() {
+    Preconditions.checkState(activeBatches.isEmpty());
+    stackTop = 0;
+    mirroringGl = false;
+    glRelativeTop = -1;
+    loadIdentity();
+    submittedCommandCount = 0;
+    drawCallCount = 0;
+  }
+
+  /**
+   * Ends the current frame. All geometry must have been flushed.
+   */
+  public void endFrame() {
+    Preconditions.checkState(activeBatches.isEmpty());
+    lastSubmittedCommandCount = submittedCommandCount;
+    lastDrawCallCount = drawCallCount;
+  }
+
+  /**
+   * @return the number of draw commands submitted during the last frame
+   */
+  public int getSubmittedCommandCount() {
+    return lastSubmittedCommandCount;
+  }
+
+  /**
+   * @return the number of draw calls that the commands of the last frame were
+   *         merged into
+   */
+  public int getDrawCallCount() {
+    return lastDrawCallCount;
+  }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+/**
+ * Receives notifications when something that affects the rendered scene has
+ * changed and a new frame should be drawn.
+ */
+public interface RenderRequestListener {
+
+  /**
+   * Called when a new frame should be rendered. Multiple requests that arrive
+   * before the next frame is drawn are coalesced into a single frame.
+   */
+  void onRenderRequested();
+}
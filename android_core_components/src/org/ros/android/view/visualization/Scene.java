@@ -0,0 +1,384 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import android.opengl.GLSurfaceView;
+
+import org.ros.message.MessageListener;
+import org.ros.namespace.GraphName;
+import org.ros.node.ConnectedNode;
+import org.ros.node.Node;
+import org.ros.node.NodeMain;
+import org.ros.node.topic.Subscriber;
+import org.ros.rosjava_geometry.FrameTransform;
+import org.ros.rosjava_geometry.FrameTransformTree;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.egl.EGLDisplay;
+
+/**
+ * The data shared by one or more {@link VisualizationView}s: the
+ * {@link FrameTransformTree}, the subscriptions of their layers and data that
+ * layers convert from messages (see {@link #acquireSharedData(Object, Supplier)}).
+ * Each view keeps its own {@link XYOrthographicCamera} and layers.
+ * <p>
+ * The EGL contexts of the views share their objects. Currently only
+ * {@link TextureBitmap}s (e.g. the tiles of an
+ * {@link org.ros.android.view.visualization.layer.OccupancyGridLayer}) make use
+ * of that and are uploaded once for all views. Layers that draw from
+ * {@link VertexBuffer}s keep and upload one buffer per view.
+ * <p>
+ * Every view has a private scene by default. To show the same scene in
+ * several views (e.g. an overview and a zoomed view), pass a scene to
+ * {@link VisualizationView#setScene(Scene)} of each view and execute the scene
+ * instead of the views. The scene then starts and shuts down all of its views
+ * with a single node, so that layers of different views that subscribe to the
+ * same topic share one subscription and transforms are received only once.
+ */
+public class Scene implements NodeMain {
+
+  /**
+   * Changes of a transform smaller than this do not trigger a new frame.
+   */
+  private static final double TRANSFORM_EPSILON = 1e-6;
+
+  private static final int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
+
+  /**
+   * A {@link Subscriber} and the number of layers using it.
+   */
+  private static final class SharedSubscriber {
+
+    private final Subscriber<?> subscriber;
+    private int referenceCount;
+
+    SharedSubscriber(Subscriber<?> subscriber) {
+      this.subscriber = subscriber;
+    }
+  }
+
+  /**
+   * Layer data and the number of layers using it.
+   */
+  private static final class SharedData {
+
+    private final Object data;
+    private int referenceCount;
+
+    SharedData(Object data) {
+      this.data = data;
+    }
+  }
+
+  /**
+   * Creates EGL contexts that share their objects (textures, buffer objects)
+   * with the other live contexts of the scene that have the same OpenGL ES
+   * version.
+   */
+  private final class SharedContextFactory implements GLSurfaceView.EGLContextFactory {
+
+    private final RenderBackend renderBackend;
+
+    SharedContextFactory(RenderBackend renderBackend) {
+      this.renderBackend = renderBackend;
+    }
+
+    @Override
+    public EGLContext createContext(EGL10 egl, EGLDisplay display, EGLConfig config) {
+      // The backend may have fallen back to a different version since the last
+      // context was created.
+      int clientVersion = renderBackend.getContextClientVersion();
+      int[] attributes =
+          clientVersion > 1 ? new int[] { EGL_CONTEXT_CLIENT_VERSION, clientVersion,
+              EGL10.EGL_NONE } : null;
+      synchronized (contexts) {
+        EGLContext sharedContext = EGL10.EGL_NO_CONTEXT;
+        ShareGroup shareGroup = null;
+        for (Map.Entry<EGLContext, ShareGroup> entry : contexts.entrySet()) {
+          if (entry.getValue().getClientVersion() == clientVersion) {
+            sharedContext = entry.getKey();
+            shareGroup = entry.getValue();
+            break;
+          }
+        }
+        if (shareGroup == null) {
+          shareGroup = new ShareGroup(clientVersion);
+        }
+        EGLContext context = egl.eglCreateContext(display, config, sharedContext, attributes);
+        if (context != null && context != EGL10.EGL_NO_CONTEXT) {
+          contexts.put(context, shareGroup);
+          shareGroup.addContext();
+          // Contexts are created on the GL thread that renders to them.
+          ShareGroup.setCurrent(shareGroup);
+        }
+        return context;
+      }
+    }
+
+    @Override
+    public void destroyContext(EGL10 egl, EGLDisplay display, EGLContext context) {
+      synchronized (contexts) {
+        ShareGroup shareGroup = contexts.remove(context);
+        if (shareGroup != null) {
+          shareGroup.removeContext();
+        }
+        ShareGroup.setCurrent(null);
+      }
+      if (!egl.eglDestroyContext(display, context)) {
+        throw new RuntimeException("eglDestroyContext failed.");
+      }
+    }
+  }
+
+  private final Object mutex;
+  private final FrameTransformTree frameTransformTree;
+  private final List<VisualizationView> views;
+  private final Map<GraphName, SharedSubscriber> subscribers;
+  private final Map<Object, SharedData> sharedData;
+  /**
+   * The live contexts of the views and the groups they share objects with, in
+   * the order they were created.
+   */
+  private final Map<EGLContext, ShareGroup> contexts;
+
+  private ConnectedNode connectedNode;
+  private Subscriber<tf2_msgs.TFMessage> tfSubscriber;
+  private Subscriber<tf2_msgs.TFMessage> tfStaticSubscriber;
+
+  public Scene() {
+    mutex = new Object();
+    frameTransformTree = new FrameTransformTree();
+    views = Lists.newCopyOnWriteArrayList();
+    subscribers = Maps.newHashMap();
+    sharedData = Maps.newHashMap();
+    contexts = Maps.newLinkedHashMap();
+  }
+
+  public FrameTransformTree getFrameTransformTree() {
+    return frameTransformTree;
+  }
+
+  /**
+   * @return the views showing this scene
+   */
+  public List<VisualizationView> getViews() {
+    return Collections.unmodifiableList(views);
+  }
+
+  void addView(VisualizationView view) {
+    Preconditions.checkState(connectedNode == null);
+    views.add(view);
+  }
+
+  void removeView(VisualizationView view) {
+    views.remove(view);
+  }
+
+  /**
+   * @param renderBackend
+   *          the backend of the view that will use the factory
+   * @return a factory of EGL contexts that share their objects with the other
+   *         contexts of this scene
+   */
+  GLSurfaceView.EGLContextFactory newContextFactory(RenderBackend renderBackend) {
+    return new SharedContextFactory(renderBackend);
+  }
+
+  @Override
+  public GraphName getDefaultNodeName() {
+    return GraphName.of("android_15/visualization_scene");
+  }
+
+  @Override
+  public void onStart(ConnectedNode connectedNode) {
+    start(connectedNode);
+    for (VisualizationView view : views) {
+      view.onStart(connectedNode);
+    }
+  }
+
+  @Override
+  public void onShutdown(Node node) {
+    for (VisualizationView view : views) {
+      view.onShutdown(node);
+    }
+    shutdown();
+  }
+
+  @Override
+  public void onShutdownComplete(Node node) {
+  }
+
+  @Override
+  public void onError(Node node, Throwable throwable) {
+  }
+
+  /**
+   * Starts receiving transforms with the specified node, which is also used for
+   * all subscriptions of layers.
+   */
+  void start(ConnectedNode connectedNode) {
+    synchronized (mutex) {
+      Preconditions.checkState(this.connectedNode == null);
+      this.connectedNode = connectedNode;
+    }
+    MessageListener<tf2_msgs.TFMessage> listener = new MessageListener<tf2_msgs.TFMessage>() {
+      @Override
+      public void onNewMessage(tf2_msgs.TFMessage message) {
+        updateTransforms(message);
+      }
+    };
+    tfSubscriber = connectedNode.newSubscriber("tf", tf2_msgs.TFMessage._TYPE);
+    tfSubscriber.addMessageListener(listener);
+    tfStaticSubscriber = connectedNode.newSubscriber("tf_static", tf2_msgs.TFMessage._TYPE);
+    tfStaticSubscriber.addMessageListener(listener);
+  }
+
+  void shutdown() {
+    synchronized (mutex) {
+      if (tfSubscriber != null) {
+        tfSubscriber.shutdown();
+        tfStaticSubscriber.shutdown();
+        tfSubscriber = null;
+        tfStaticSubscriber = null;
+      }
+      for (SharedSubscriber sharedSubscriber : subscribers.values()) {
+        sharedSubscriber.subscriber.shutdown();
+      }
+      subscribers.clear();
+      connectedNode = null;
+    }
+  }
+
+  private void updateTransforms(tf2_msgs.TFMessage message) {
+    List<GraphName> updatedFrames = Lists.newArrayList();
+    List<GraphName> movedFrames = Lists.newArrayList();
+    synchronized (mutex) {
+      for (geometry_msgs.TransformStamped transform : message.getTransforms()) {
+        GraphName frame = GraphName.of(transform.getChildFrameId());
+        FrameTransform previous = frameTransformTree.lookUp(frame);
+        frameTransformTree.update(transform);
+        updatedFrames.add(frame);
+        FrameTransform current = frameTransformTree.lookUp(frame);
+        if (previous == null || current == null
+            || !previous.getTargetFrame().equals(current.getTargetFrame())
+            || !previous.getTransform().almostEquals(current.getTransform(), TRANSFORM_EPSILON)) {
+          movedFrames.add(frame);
+        }
+      }
+    }
+    for (VisualizationView view : views) {
+      view.onTransformsUpdated(updatedFrames, movedFrames);
+    }
+  }
+
+  /**
+   * Subscribes to the specified topic or returns the existing subscription of
+   * another layer. Each call must be paired with a call to
+   * {@link #releaseSubscriber(GraphName, Subscriber, Iterable)}.
+   *
+   * @return the {@link Subscriber} of the topic
+   */
+  @SuppressWarnings("unchecked")
+  public <T> Subscriber<T> acquireSubscriber(GraphName topicName, String messageType) {
+    synchronized (mutex) {
+      Preconditions.checkState(connectedNode != null, "The scene has not been started.");
+      SharedSubscriber sharedSubscriber = subscribers.get(topicName);
+      if (sharedSubscriber == null) {
+        sharedSubscriber =
+            new SharedSubscriber(connectedNode.<T>newSubscriber(topicName, messageType));
+        subscribers.put(topicName, sharedSubscriber);
+      }
+      sharedSubscriber.referenceCount++;
+      return (Subscriber<T>) sharedSubscriber.subscriber;
+    }
+  }
+
+  /**
+   * Removes the specified message listeners of a layer from a subscription and
+   * shuts the subscription down once no layer uses it anymore.
+   */
+  public <T> void releaseSubscriber(GraphName topicName, Subscriber<T> subscriber,
+      Iterable<MessageListener<T>> messageListeners) {
+    synchronized (mutex) {
+      SharedSubscriber sharedSubscriber = subscribers.get(topicName);
+      if (sharedSubscriber == null || sharedSubscriber.subscriber != subscriber) {
+        // Already shut down with the scene.
+        return;
+      }
+      if (--sharedSubscriber.referenceCount == 0) {
+        subscriber.shutdown();
+        subscribers.remove(topicName);
+      } else {
+        for (MessageListener<T> messageListener : messageListeners) {
+          subscriber.removeMessageListener(messageListener);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the data that layers of the views of this scene keep under the
+   * specified key, e.g. the converted map and textures of a topic, so that it
+   * is only converted and stored once. Each call must be paired with a call to
+   * {@link #releaseSharedData(Object)}.
+   *
+   * @param key
+   *          identifies the data, e.g. the layer class and its topics
+   * @param supplier
+   *          creates the data if no layer uses it yet
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T acquireSharedData(Object key, Supplier<T> supplier) {
+    synchronized (mutex) {
+      SharedData data = sharedData.get(key);
+      if (data == null) {
+        data = new SharedData(Preconditions.checkNotNull(supplier.get()));
+        sharedData.put(key, data);
+      }
+      data.referenceCount++;
+      return (T) data.data;
+    }
+  }
+
+  /**
+   * @return {@code true} if no layer uses the data of the specified key
+   *         anymore, in which case the caller releases its resources
+   */
+  public boolean releaseSharedData(Object key) {
+    synchronized (mutex) {
+      SharedData data = sharedData.get(key);
+      Preconditions.checkState(data != null, "The data is not in use.");
+      if (--data.referenceCount == 0) {
+        sharedData.remove(key);
+        return true;
+      }
+      return false;
+    }
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+/**
+ * The EGL contexts of a {@link Scene} that share their objects (textures,
+ * buffer objects), i.e. the live contexts of its views with the same OpenGL
+ * ES version. An object created in one of them may be used in all of them
+ * until the last one is destroyed.
+ */
+final class ShareGroup {
+
+  private static final ThreadLocal<ShareGroup> current = new ThreadLocal<ShareGroup>();
+
+  private final int clientVersion;
+
+  /**
+   * Only written while holding the {@link Scene}'s contexts.
+   */
+  private volatile int contextCount;
+  private volatile boolean alive;
+
+  ShareGroup(int clientVersion) {
+    this.clientVersion = clientVersion;
+    alive = true;
+  }
+
+  /**
+   * @return the {@link ShareGroup} of the context that was created on the
+   *         calling GL thread, or {@code null} if it was not created by a
+   *         {@link Scene}
+   */
+  static ShareGroup getCurrent() {
+    return current.get();
+  }
+
+  static void setCurrent(ShareGroup shareGroup) {
+    current.set(shareGroup);
+  }
+
+  int getClientVersion() {
+    return clientVersion;
+  }
+
+  void addContext() {
+    contextCount++;
+  }
+
+  void removeContext() {
+    if (--contextCount == 0) {
+      // The objects of the group were destroyed with its last context.
+      alive = false;
+    }
+  }
+
+  /**
+   * May be called from any thread.
+   *
+   * @return {@code true} if more than one context uses the objects of the
+   *         group
+   */
+  boolean isShared() {
+    return alive && contextCount > 1;
+  }
+
+  /**
+   * May be called from any thread.
+   *
+   * @return {@code false} once all contexts of the group were destroyed
+   */
+  boolean isAlive() {
+    return alive;
+  }
+}
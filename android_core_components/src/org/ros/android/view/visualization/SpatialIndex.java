@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import com.google.common.base.Preconditions;
+
+import org.ros.namespace.GraphName;
+
+import java.nio.FloatBuffer;
+import java.util.List;
+
+/**
+ * An immutable k-d tree over the items of a layer (e.g. points, path vertices
+ * or grid cells) in the xy-plane of a frame. Finds the items near a position
+ * without scanning all of them, e.g. to determine what is under a finger.
+ * <p>
+ * Each item is a square around its center whose half side length is the
+ * index's extent, which is 0 for points. The tree is balanced and each node
+ * splits its items along the axis in which they spread the most, so that
+ * queries visit about O(log n) items even if the items lie on a line, e.g. a
+ * straight path. Building the index takes O(n log n) and should happen when
+ * the geometry changes, not per frame.
+ */
+public class SpatialIndex {
+
+  private static final int VERTEX_SIZE = 3;
+
+  /**
+   * The best item found so far by {@link SpatialIndex#findNearest}.
+   */
+  private static final class Nearest {
+
+    private int item;
+    private double distance;
+
+    Nearest(double maximumDistance) {
+      item = -1;
+      distance = maximumDistance;
+    }
+  }
+
+  private final GraphName frame;
+  private final float extent;
+  private final int itemCount;
+
+  /**
+   * Coordinates of each item.
+   */
+  private final float[] x;
+  private final float[] y;
+
+  /**
+   * The items in tree order. The node of the range {@code [first, last)} is
+   * the item at its middle, the items before it form the left subtree and
+   * the items after it the right subtree.
+   */
+  private final int[] tree;
+
+  /**
+   * Whether the node at each position of {@link #tree} splits its subtree
+   * along x rather than y. Items of the left subtree are not greater than the
+   * node along that axis, items of the right subtree are not less.
+   */
+  private final boolean[] splitsX;
+
+  /**
+   * Indexes x, y, z vertices. The buffer's position is not changed.
+   *
+   * @param frame
+   *          the frame of the vertices
+   * @param vertices
+   *          the vertices of the items, e.g. the same vertices passed to
+   *          {@link VertexBuffer#update(FloatBuffer)}
+   * @param first
+   *          the index of the first vertex to index, it becomes item 0
+   * @param extent
+   *          half the side length of the square each item covers, 0 for
+   *          points
+   */
+  public static SpatialIndex fromVertices(GraphName frame, FloatBuffer vertices, int first,
+      float extent) {
+    Preconditions.checkArgument(vertices.remaining() % VERTEX_SIZE == 0);
+    int count = vertices.remaining() / VERTEX_SIZE;
+    Preconditions.checkArgument(0 <= first && first <= count);
+    int offset = vertices.position();
+    float[] x = new float[count - first];
+    float[] y = new float[count - first];
+    for (int i = first; i < count; i++) {
+      x[i - first] = vertices.get(offset + i * VERTEX_SIZE);
+      y[i - first] = vertices.get(offset + i * VERTEX_SIZE + 1);
+    }
+    return new SpatialIndex(frame, x, y, extent);
+  }
+
+  /**
+   * Indexes a single item, e.g. the position of a shape.
+   *
+   * @param frame
+   *          the frame of the position
+   * @param extent
+   *          half the side length of the square the item covers, 0 for a
+   *          point
+   */
+  public static SpatialIndex fromPoint(GraphName frame, double x, double y, float extent) {
+    return new SpatialIndex(frame, new float[] { (float) x }, new float[] { (float) y }, extent);
+  }
+
+  /**
+   * @param x
+   *          the x coordinate of each item, owned by the index afterwards
+   * @param y
+   *          the y coordinate of each item, owned by the index afterwards
+   * @param extent
+   *          half the side length of the square each item covers, 0 for
+   *          points
+   */
+  public SpatialIndex(GraphName frame, float[] x, float[] y, float extent) {
+    Preconditions.checkArgument(x.length == y.length);
+    Preconditions.checkArgument(extent >= 0);
+    this.frame = Preconditions.checkNotNull(frame);
+    this.x = x;
+    this.y = y;
+    this.extent = extent;
+    itemCount = x.length;
+    tree = new int[itemCount];
+    for (int i = 0; i < itemCount; i++) {
+      tree[i] = i;
+    }
+    splitsX = new boolean[itemCount];
+    build(0, itemCount);
+  }
+
+  private float getCoordinate(int item, boolean alongX) {
+    return alongX ? x[item] : y[item];
+  }
+
+  /**
+   * Arranges the items of {@code tree[first] ... tree[last - 1]} into a
+   * subtree.
+   */
+  private void build(int first, int last) {
+    if (last - first <= 1) {
+      return;
+    }
+    float minimumX = Float.POSITIVE_INFINITY;
+    float minimumY = Float.POSITIVE_INFINITY;
+    float maximumX = Float.NEGATIVE_INFINITY;
+    float maximumY = Float.NEGATIVE_INFINITY;
+    for (int i = first; i < last; i++) {
+      int item = tree[i];
+      minimumX = Math.min(minimumX, x[item]);
+      minimumY = Math.min(minimumY, y[item]);
+      maximumX = Math.max(maximumX, x[item]);
+      maximumY = Math.max(maximumY, y[item]);
+    }
+    boolean alongX = maximumX - minimumX >= maximumY - minimumY;
+    int middle = (first + last) >>> 1;
+    select(first, last - 1, middle, alongX);
+    splitsX[middle] = alongX;
+    build(first, middle);
+    build(middle + 1, last);
+  }
+
+  /**
+   * Partially sorts {@code tree[first] ... tree[last]} so that the item at
+   * {@code k} is preceded by items that are not greater and followed by items
+   * that are not less along the specified axis.
+   */
+  private void select(int first, int last, int k, boolean alongX) {
+    while (first < last) {
+      float pivot = getCoordinate(tree[(first + last) >>> 1], alongX);
+      int i = first;
+      int j = last;
+      while (i <= j) {
+        while (getCoordinate(tree[i], alongX) < pivot) {
+          i++;
+        }
+        while (getCoordinate(tree[j], alongX) > pivot) {
+          j--;
+        }
+        if (i <= j) {
+          int item = tree[i];
+          tree[i] = tree[j];
+          tree[j] = item;
+          i++;
+          j--;
+        }
+      }
+      if (k <= j) {
+        last = j;
+      } else if (k >= i) {
+        first = i;
+      } else {
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return the distance from the specified position to the square of the
+   *         specified item, 0 if the item contains the position
+   */
+  public double getDistance(int item, double x, double y) {
+    double dx = Math.max(0, Math.abs(x - this.x[item]) - extent);
+    double dy = Math.max(0, Math.abs(y - this.y[item]) - extent);
+    return Math.sqrt(dx * dx + dy * dy);
+  }
+
+  /**
+   * @param x
+   *          the x coordinate in {@link #getFrame()}
+   * @param y
+   *          the y coordinate in {@link #getFrame()}
+   * @param maximumDistance
+   *          items further away than this are ignored
+   * @return the item closest to the specified position or -1 if there is no
+   *         item within the maximum distance, of equally close items the one
+   *         with the lowest index
+   */
+  public int findNearest(double x, double y, double maximumDistance) {
+    Nearest nearest = new Nearest(maximumDistance);
+    findNearest(0, itemCount, x, y, nearest);
+    return nearest.item;
+  }
+
+  private void findNearest(int first, int last, double x, double y, Nearest nearest) {
+    if (first >= last) {
+      return;
+    }
+    int middle = (first + last) >>> 1;
+    int item = tree[middle];
+    double distance = getDistance(item, x, y);
+    if (distance < nearest.distance
+        || (distance == nearest.distance && (nearest.item < 0 || item < nearest.item))) {
+      nearest.item = item;
+      nearest.distance = distance;
+    }
+    boolean alongX = splitsX[middle];
+    double offset = (alongX ? x : y) - getCoordinate(item, alongX);
+    // Search the side of the position first. Items on the other side are at
+    // least as far away as the splitting line.
+    if (offset < 0) {
+      findNearest(first, middle, x, y, nearest);
+      if (-offset - extent <= nearest.distance) {
+        findNearest(middle + 1, last, x, y, nearest);
+      }
+    } else {
+      findNearest(middle + 1, last, x, y, nearest);
+      if (offset - extent <= nearest.distance) {
+        findNearest(first, middle, x, y, nearest);
+      }
+    }
+  }
+
+  /**
+   * Adds the items within the specified distance of a position to
+   * {@code items}.
+   *
+   * @param x
+   *          the x coordinate in {@link #getFrame()}
+   * @param y
+   *          the y coordinate in {@link #getFrame()}
+   * @param maximumDistance
+   *          0 to find the items containing the position
+   * @param items
+   *          receives the indices of the items found, in no particular order
+   */
+  public void findWithin(double x, double y, double maximumDistance, List<Integer> items) {
+    findWithin(0, itemCount, x, y, maximumDistance, items);
+  }
+
+  private void findWithin(int first, int last, double x, double y, double maximumDistance,
+      List<Integer> items) {
+    if (first >= last) {
+      return;
+    }
+    int middle = (first + last) >>> 1;
+    int item = tree[middle];
+    if (getDistance(item, x, y) <= maximumDistance) {
+      items.add(item);
+    }
+    boolean alongX = splitsX[middle];
+    double offset = (alongX ? x : y) - getCoordinate(item, alongX);
+    double margin = maximumDistance + extent;
+    if (offset <= margin) {
+      findWithin(first, middle, x, y, maximumDistance, items);
+    }
+    if (offset >= -margin) {
+      findWithin(middle + 1, last, x, y, maximumDistance, items);
+    }
+  }
+
+  /**
+   * @return the frame of the item coordinates
+   */
+  public GraphName getFrame() {
+    return frame;
+  }
+
+  public int getItemCount() {
+    return itemCount;
+  }
+
+  public float getX(int item) {
+    return x[item];
+  }
+
+  public float getY(int item) {
+    return y[item];
+  }
+
+  public float getExtent() {
+    return extent;
+  }
+
+  /**
+   * @return the memory held by the index
+   */
+  public MemoryUsage getMemoryUsage() {
+    return MemoryUsage.heap(4L * (x.length + y.length + tree.length) + splitsX.length);
+  }
+}
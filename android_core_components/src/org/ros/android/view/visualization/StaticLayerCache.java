@@ -0,0 +1,410 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import com.google.common.base.Preconditions;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+import org.ros.android.view.visualization.layer.Layer;
+import org.ros.android.view.visualization.layer.StaticLayer;
+import org.ros.android.view.visualization.layer.TfLayer;
+import org.ros.namespace.GraphName;
+import org.ros.rosjava_geometry.Transform;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11ExtensionPack;
+
+/**
+ * Renders the {@link StaticLayer}s at the bottom of the layer stack, together
+ * with the background, into an offscreen texture. The texture is drawn
+ * instead of clearing the screen and drawing those layers, and it is only
+ * rendered again when the camera, the viewport, a layer's transform or a
+ * layer's content changes.
+ * <p>
+ * Framebuffer objects are part of OpenGL ES 2.0 and an extension
+ * (GL_OES_framebuffer_object) in OpenGL ES 1.x. If they are not supported,
+ * all layers are drawn every frame as before.
+ * <p>
+ * All methods except the statistics must be called on the GL thread.
+ */
+public class StaticLayerCache {
+
+  private static final String TAG = "StaticLayerCache";
+
+  private static final String EXTENSION = "GL_OES_framebuffer_object";
+
+  /**
+   * The framebuffer object calls of either OpenGL ES version.
+   */
+  private interface Framebuffers {
+
+    void generate(int[] framebuffer);
+
+    void bind(int framebuffer);
+
+    /**
+     * Attaches the texture to the bound framebuffer.
+     *
+     * @return {@code true} if the bound framebuffer is complete
+     */
+    boolean attach(int texture);
+
+    void delete(int[] framebuffer);
+  }
+
+  private static final class OesFramebuffers implements Framebuffers {
+
+    private final GL11ExtensionPack extensionPack;
+
+    OesFramebuffers(GL11ExtensionPack extensionPack) {
+      this.extensionPack = extensionPack;
+    }
+
+    @Override
+    public void generate(int[] framebuffer) {
+      extensionPack.glGenFramebuffersOES(1, framebuffer, 0);
+    }
+
+    @Override
+    public void bind(int framebuffer) {
+      extensionPack.glBindFramebufferOES(GL11ExtensionPack.GL_FRAMEBUFFER_OES, framebuffer);
+    }
+
+    @Override
+    public boolean attach(int texture) {
+      extensionPack.glFramebufferTexture2DOES(GL11ExtensionPack.GL_FRAMEBUFFER_OES,
+          GL11ExtensionPack.GL_COLOR_ATTACHMENT0_OES, GL10.GL_TEXTURE_2D, texture, 0);
+      int status = extensionPack.glCheckFramebufferStatusOES(GL11ExtensionPack.GL_FRAMEBUFFER_OES);
+      if (status != GL11ExtensionPack.GL_FRAMEBUFFER_COMPLETE_OES) {
+        Log.w(TAG, "Framebuffer incomplete (" + status + "), drawing all layers every frame.");
+        return false;
+      }
+      return true;
+    }
+
+    @Override
+    public void delete(int[] framebuffer) {
+      extensionPack.glDeleteFramebuffersOES(1, framebuffer, 0);
+    }
+  }
+
+  /**
+   * Used with the {@link Gles2FixedFunctionAdapter}, which shares the bound
+   * texture and framebuffer state with {@link GLES20}.
+   */
+  private static final class Gles20Framebuffers implements Framebuffers {
+
+    @Override
+    public void generate(int[] framebuffer) {
+      GLES20.glGenFramebuffers(1, framebuffer, 0);
+    }
+
+    @Override
+    public void bind(int framebuffer) {
+      GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffer);
+    }
+
+    @Override
+    public boolean attach(int texture) {
+      GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
+          GLES20.GL_TEXTURE_2D, texture, 0);
+      int status = GLES20.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER);
+      if (status != GLES20.GL_FRAMEBUFFER_COMPLETE) {
+        Log.w(TAG, "Framebuffer incomplete (" + status + "), drawing all layers every frame.");
+        return false;
+      }
+      return true;
+    }
+
+    @Override
+    public void delete(int[] framebuffer) {
+      GLES20.glDeleteFramebuffers(1, framebuffer, 0);
+    }
+  }
+
+  private final FloatBuffer surfaceVertices;
+  private final FloatBuffer textureVertices;
+
+  private GL10 previousGl;
+
+  /**
+   * {@code null} if the current context does not support framebuffer objects.
+   */
+  private Framebuffers framebuffers;
+  private int[] framebuffer;
+  private int[] texture;
+  private int textureWidth;
+  private int textureHeight;
+  private boolean valid;
+
+  private Viewport viewport;
+  private Transform cameraToRosTransform;
+  private GraphName cameraFrame;
+  private int layerCount;
+  private long[] contentVersions;
+  private float[][] frameTransformMatrices;
+
+  private volatile long hitCount;
+  private volatile long missCount;
+
+  public StaticLayerCache() {
+    surfaceVertices = Vertices.toFloatBuffer(new float[] {
+        // Triangle strip covering the viewport.
+        -1.0f, -1.0f, 0.0f, // Bottom left
+        1.0f, -1.0f, 0.0f, // Bottom right
+        -1.0f, 1.0f, 0.0f, // Top left
+        1.0f, 1.0f, 0.0f, // Top right
+    });
+    textureVertices = Vertices.allocateBuffer(8);
+    contentVersions = new long[0];
+    frameTransformMatrices = new float[0][];
+  }
+
+  /**
+   * @return the number of {@link StaticLayer}s at the bottom of the specified
+   *         layers, which are the ones that can be cached without changing the
+   *         order in which layers are composed
+   */
+  public static int getStaticLayerCount(List<Layer> layers) {
+    int count = 0;
+    while (count < layers.size() && layers.get(count) instanceof StaticLayer) {
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Draws the background and the first {@code layerCount} layers, from the
+   * cache if possible.
+   *
+   * @param renderer
+   *          draws the layers into the cache if it is out of date
+   * @return {@code false} if the cache is not supported, in which case nothing
+   *         was drawn
+   */
+  boolean draw(GL10 gl, VisualizationView view, List<Layer> layers, int layerCount,
+      Runnable renderer) {
+    Preconditions.checkArgument(layerCount > 0);
+    if (previousGl != gl) {
+      // Names from the previous context are gone with it.
+      framebuffer = null;
+      texture = null;
+      valid = false;
+      framebuffers = getFramebuffers(gl);
+      previousGl = gl;
+    }
+    if (framebuffers == null) {
+      return false;
+    }
+    Viewport viewport = view.getCamera().getViewport();
+    if (!valid || !isCurrent(view, layers, layerCount, viewport)) {
+      if (!render(gl, viewport, renderer)) {
+        return false;
+      }
+      remember(view, layers, layerCount, viewport);
+      missCount++;
+    } else {
+      hitCount++;
+    }
+    drawTexture(gl, viewport);
+    return true;
+  }
+
+  private static Framebuffers getFramebuffers(GL10 gl) {
+    if (gl instanceof Gles2FixedFunctionAdapter) {
+      return new Gles20Framebuffers();
+    }
+    if (!(gl instanceof GL11ExtensionPack)) {
+      return null;
+    }
+    String extensions = gl.glGetString(GL10.GL_EXTENSIONS);
+    if (extensions == null || !extensions.contains(EXTENSION)) {
+      return null;
+    }
+    return new OesFramebuffers((GL11ExtensionPack) gl);
+  }
+
+  private boolean isCurrent(VisualizationView view, List<Layer> layers, int layerCount,
+      Viewport viewport) {
+    XYOrthographicCamera camera = view.getCamera();
+    if (viewport != this.viewport || camera.getCameraToRosTransform() != cameraToRosTransform
+        || camera.getFrame() != cameraFrame || layerCount != this.layerCount) {
+      return false;
+    }
+    for (int i = 0; i < layerCount; i++) {
+      Layer layer = layers.get(i);
+      if (getContentVersion(layer) != contentVersions[i]
+          || getFrameTransformMatrix(camera, layer) != frameTransformMatrices[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void remember(VisualizationView view, List<Layer> layers, int layerCount,
+      Viewport viewport) {
+    XYOrthographicCamera camera = view.getCamera();
+    this.viewport = viewport;
+    cameraToRosTransform = camera.getCameraToRosTransform();
+    cameraFrame = camera.getFrame();
+    this.layerCount = layerCount;
+    if (contentVersions.length < layerCount) {
+      contentVersions = new long[layerCount];
+      frameTransformMatrices = new float[layerCount][];
+    }
+    for (int i = 0; i < layerCount; i++) {
+      Layer layer = layers.get(i);
+      contentVersions[i] = getContentVersion(layer);
+      frameTransformMatrices[i] = getFrameTransformMatrix(camera, layer);
+    }
+    Arrays.fill(frameTransformMatrices, layerCount, frameTransformMatrices.length, null);
+  }
+
+  /**
+   * @return the layer's content version or -1 while it is inactive, so that
+   *         enabling or disabling a layer renders the cache again
+   */
+  private static long getContentVersion(Layer layer) {
+    return XYOrthographicRenderer.isActive(layer) ? ((StaticLayer) layer).getContentVersion()
+        : -1;
+  }
+
+  /**
+   * The camera returns the same matrix instance until the transform changes.
+   */
+  private static float[] getFrameTransformMatrix(XYOrthographicCamera camera, Layer layer) {
+    if (layer instanceof TfLayer) {
+      GraphName frame = ((TfLayer) layer).getFrame();
+      return frame != null ? camera.getFrameTransformMatrix(frame) : null;
+    }
+    return null;
+  }
+
+  private boolean render(GL10 gl, Viewport viewport, Runnable renderer) {
+    int width = viewport.getWidth();
+    int height = viewport.getHeight();
+    if (framebuffer == null || textureWidth < width || textureHeight < height) {
+      if (!allocate(gl, width, height)) {
+        return false;
+      }
+    }
+    framebuffers.bind(framebuffer[0]);
+    try {
+      renderer.run();
+    } finally {
+      framebuffers.bind(0);
+    }
+    valid = true;
+    return true;
+  }
+
+  private boolean allocate(GL10 gl, int width, int height) {
+    release(gl);
+    // Textures without power of two dimensions are an extension in OpenGL ES
+    // 1.x.
+    textureWidth = Integer.highestOneBit(Math.max(1, width - 1)) << 1;
+    textureHeight = Integer.highestOneBit(Math.max(1, height - 1)) << 1;
+    texture = new int[1];
+    gl.glGenTextures(1, texture, 0);
+    gl.glBindTexture(GL10.GL_TEXTURE_2D, texture[0]);
+    gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MIN_FILTER, GL10.GL_NEAREST);
+    gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MAG_FILTER, GL10.GL_NEAREST);
+    gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_S, GL10.GL_CLAMP_TO_EDGE);
+    gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_T, GL10.GL_CLAMP_TO_EDGE);
+    gl.glTexImage2D(GL10.GL_TEXTURE_2D, 0, GL10.GL_RGBA, textureWidth, textureHeight, 0,
+        GL10.GL_RGBA, GL10.GL_UNSIGNED_BYTE, null);
+    gl.glBindTexture(GL10.GL_TEXTURE_2D, 0);
+    framebuffer = new int[1];
+    framebuffers.generate(framebuffer);
+    framebuffers.bind(framebuffer[0]);
+    boolean complete = framebuffers.attach(texture[0]);
+    framebuffers.bind(0);
+    if (!complete) {
+      release(gl);
+      framebuffers = null;
+      return false;
+    }
+    // Only the part of the texture covered by the viewport is drawn.
+    textureVertices.clear();
+    float maximumS = width / (float) textureWidth;
+    float maximumT = height / (float) textureHeight;
+    textureVertices.put(new float[] { 0, 0, maximumS, 0, 0, maximumT, maximumS, maximumT });
+    textureVertices.flip();
+    return true;
+  }
+
+  private void drawTexture(GL10 gl, Viewport viewport) {
+    gl.glMatrixMode(GL10.GL_PROJECTION);
+    gl.glPushMatrix();
+    gl.glLoadIdentity();
+    gl.glMatrixMode(GL10.GL_MODELVIEW);
+    gl.glPushMatrix();
+    gl.glLoadIdentity();
+    // The texture already contains the blended background and layers.
+    gl.glDisable(GL10.GL_BLEND);
+    gl.glEnable(GL10.GL_TEXTURE_2D);
+    gl.glBindTexture(GL10.GL_TEXTURE_2D, texture[0]);
+    gl.glColor4f(1.0f, 1.0f, 1.0f, 1.0f);
+    gl.glEnableClientState(GL10.GL_VERTEX_ARRAY);
+    gl.glEnableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+    gl.glVertexPointer(3, GL10.GL_FLOAT, 0, surfaceVertices);
+    gl.glTexCoordPointer(2, GL10.GL_FLOAT, 0, textureVertices);
+    gl.glDrawArrays(GL10.GL_TRIANGLE_STRIP, 0, 4);
+    gl.glDisableClientState(GL10.GL_VERTEX_ARRAY);
+    gl.glDisableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+    gl.glBindTexture(GL10.GL_TEXTURE_2D, 0);
+    gl.glDisable(GL10.GL_TEXTURE_2D);
+    gl.glEnable(GL10.GL_BLEND);
+    gl.glMatrixMode(GL10.GL_PROJECTION);
+    gl.glPopMatrix();
+    gl.glMatrixMode(GL10.GL_MODELVIEW);
+    gl.glPopMatrix();
+  }
+
+  /**
+   * Releases the framebuffer and texture of the current context.
+   */
+  void release(GL10 gl) {
+    if (framebuffer != null && gl == previousGl) {
+      framebuffers.delete(framebuffer);
+      gl.glDeleteTextures(1, texture, 0);
+    }
+    framebuffer = null;
+    texture = null;
+    valid = false;
+  }
+
+  /**
+   * @return the number of frames that reused the cached texture
+   */
+  public long getHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * @return the number of frames that rendered the cached layers again
+   */
+  public long getMissCount() {
+    return missCount;
+  }
+}
@@ -18,18 +18,26 @@ package org.ros.android.view.visualization;
 
 import com.google.common.base.Preconditions;
 
-import android.graphics.Bitmap;
-import android.opengl.GLUtils;
-
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.ros.android.view.visualization.layer.TripleBuffer;
 import org.ros.rosjava_geometry.Transform;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 
 import javax.microedition.khronos.opengles.GL10;
 
 /**
  * Renders a texture.
+ * <p>
+ * Views of a {@link Scene} whose contexts share objects draw the same texture
+ * object, which is uploaded once by whichever view draws an update first.
  * 
  * @author moesenle@google.com (Lorenz Moesenlechner)
  * @author damonkohler@google.com (Damon Kohler)
@@ -46,21 +54,238 @@ public class TextureBitmap implements OpenGlDrawable {
    */
   public final static int STRIDE = 1024;
 
-  private final int[] pixels;
+  /**
+   * The smallest width and height of a texture.
+   */
+  private static final int MINIMUM_SIZE = 16;
+
+  /**
+   * The number of updates whose changed regions are remembered. A texture
+   * that is more updates behind is copied and uploaded completely.
+   */
+  private static final int HISTORY_SIZE = 4;
+
+  /**
+   * Changed regions larger than this fraction of the texture are uploaded
+   * completely, which avoids copying their rows into a buffer.
+   */
+  private static final float MAXIMUM_PARTIAL_UPLOAD = 0.5f;
+
+  private static final boolean LITTLE_ENDIAN =
+      ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+  /**
+   * A rectangle of pixels. Empty if {@link #left} is not less than
+   * {@link #right}.
+   */
+  private static final class Region {
+
+    private int left;
+    private int top;
+    private int right;
+    private int bottom;
+
+    void clear() {
+      left = top = right = bottom = 0;
+    }
+
+    void setAll() {
+      set(0, 0, STRIDE, HEIGHT);
+    }
+
+    void set(int left, int top, int right, int bottom) {
+      this.left = left;
+      this.top = top;
+      this.right = right;
+      this.bottom = bottom;
+    }
+
+    /**
+     * Limits the region to a texture of the specified size.
+     */
+    void clip(int width, int height) {
+      right = Math.min(right, width);
+      bottom = Math.min(bottom, height);
+    }
+
+    void set(Region other) {
+      set(other.left, other.top, other.right, other.bottom);
+    }
+
+    void union(Region other) {
+      if (other.isEmpty()) {
+        return;
+      }
+      if (isEmpty()) {
+        set(other);
+        return;
+      }
+      set(Math.min(left, other.left), Math.min(top, other.top), Math.max(right, other.right),
+          Math.max(bottom, other.bottom));
+    }
+
+    boolean isEmpty() {
+      return left >= right || top >= bottom;
+    }
+
+    int getArea() {
+      return isEmpty() ? 0 : (right - left) * (bottom - top);
+    }
+  }
+
+  /**
+   * The regions that changed in the most recent updates. The region of update
+   * {@code v} is stored at {@code v % HISTORY_SIZE}.
+   */
+  private static final class History {
+
+    private final Region[] regions;
+
+    History() {
+      regions = new Region[HISTORY_SIZE];
+      for (int i = 0; i < HISTORY_SIZE; i++) {
+        regions[i] = new Region();
+      }
+    }
+
+    Region get(long version) {
+      return regions[(int) (version % HISTORY_SIZE)];
+    }
+
+    void set(History other) {
+      for (int i = 0; i < HISTORY_SIZE; i++) {
+        regions[i].set(other.regions[i]);
+      }
+    }
+
+    /**
+     * Sets {@code region} to the union of the regions that changed after
+     * {@code from} up to and including {@code to}, or to the entire texture
+     * if they are no longer known.
+     */
+    void getChangesSince(long from, long to, Region region) {
+      if (to - from > HISTORY_SIZE) {
+        region.setAll();
+        return;
+      }
+      region.clear();
+      for (long version = from + 1; version <= to; version++) {
+        region.union(get(version));
+      }
+    }
+  }
+
+  /**
+   * The pixels of an update as they are uploaded, where to draw them and
+   * which regions of them changed.
+   */
+  private static final class Texture {
+
+    /**
+     * Premultiplied RGBA pixels in native byte order, i.e. the bytes
+     * {@code glTexImage2D} expects. Acquired from the {@link TexturePool} when
+     * the slot is first written and replaced when the size of the texture
+     * changes.
+     */
+    private int[] texels;
+    private int width;
+    private int height;
+    private final History history;
+
+    private Transform origin;
+    private double scaledWidth;
+    private double scaledHeight;
+    private BoundingBox bounds;
+
+    /**
+     * The update the {@link #texels} reflect.
+     */
+    private long version;
+
+    Texture() {
+      history = new History();
+    }
+  }
+
+  /**
+   * The texture object of a {@link ShareGroup} and the update it reflects.
+   */
+  private static final class TextureObject {
+
+    /**
+     * {@code null} for contexts that were not created by a {@link Scene}.
+     */
+    private final ShareGroup shareGroup;
+    private final int[] handle;
+    private long version;
+    private int width;
+    private int height;
+    private boolean reload;
+
+    /**
+     * The GL thread, i.e. the context, that uploaded the current content and
+     * whether another context drew the texture since.
+     */
+    private Thread uploadThread;
+    private boolean drawnElsewhere;
+
+    TextureObject(ShareGroup shareGroup) {
+      this.shareGroup = shareGroup;
+      handle = new int[1];
+      reload = true;
+    }
+  }
+
   private final FloatBuffer surfaceVertices;
   private final FloatBuffer textureVertices;
-  private final Object mutex;
+  private final TripleBuffer<Texture> textures;
+  private final TransformMatrix originMatrix;
 
-  private Bitmap bitmapFront;
-  private Bitmap bitmapBack;
-  private int[] handle;
+  /**
+   * The regions changed by the most recent updates, the number of updates and
+   * scratch space. Only accessed by the writer.
+   */
+  private final History history;
+  private final Region changed;
+  private long version;
   private Transform origin;
-  private double scaledWidth;
-  private double scaledHeight;
-  private boolean reload;
+  private float resolution;
+
+  /**
+   * The pixels of the most recent update and the size of the texture, the
+   * powers of two that fit its content. Only accessed by the writer.
+   */
+  private int[] pixels;
+  private int width;
+  private int height;
+
+  /**
+   * Serializes the readers, i.e. the GL threads of the views that draw the
+   * texture and the threads that prepare their frames. Guards the state
+   * below.
+   */
+  private final Object readerMutex;
+
+  /**
+   * Scratch space for uploads.
+   */
+  private final Region upload;
+
+  /**
+   * The texture objects of the share groups the texture is drawn in, usually
+   * only one.
+   */
+  private final List<TextureObject> textureObjects;
+
+  /**
+   * The sizes of {@link #pixels}, the texels of all three slots and the
+   * uploaded texture for memory accounting.
+   */
+  private volatile long pixelBytes;
+  private volatile long texelBytes;
+  private volatile long uploadedBytes;
 
   public TextureBitmap() {
-    pixels = new int[HEIGHT * STRIDE];
     surfaceVertices = Vertices.toFloatBuffer(new float[] {
         // Triangle strip
         0.0f, 0.0f, 0.0f, // Bottom left
@@ -75,93 +300,482 @@ public class TextureBitmap implements OpenGlDrawable {
         0.0f, 1.0f, // Top left
         1.0f, 1.0f, // Top right
     });
-    bitmapFront = Bitmap.createBitmap(STRIDE, HEIGHT, Bitmap.Config.ARGB_8888);
-    bitmapBack = Bitmap.createBitmap(STRIDE, HEIGHT, Bitmap.Config.ARGB_8888);
-    mutex = new Object();
-    reload = true;
+    textures = new TripleBuffer<Texture>(new Texture(), new Texture(), new Texture());
+    originMatrix = new TransformMatrix();
+    history = new History();
+    changed = new Region();
+    readerMutex = new Object();
+    upload = new Region();
+    textureObjects = new ArrayList<TextureObject>(1);
   }
 
   public void updateFromPixelArray(int[] pixels, int stride, float resolution, Transform origin,
       int fillColor) {
     Preconditions.checkArgument(pixels.length % stride == 0);
-    int height = pixels.length / stride;
-    for (int y = 0; y < HEIGHT; y++) {
-      for (int x = 0; x < STRIDE; x++) {
-        // If the pixel is within the bounds of the specified pixel array then
-        // we copy the specified value. Otherwise, we use the specified fill
-        // color.
-        int sourceIndex = y * stride + x;
-        int targetIndex = y * STRIDE + x;
-        if (x < stride && y < height) {
-          this.pixels[targetIndex] = pixels[sourceIndex];
-        } else {
-          this.pixels[targetIndex] = fillColor;
-        }
+    updateFromPixelArray(pixels, 0, stride, Math.min(stride, STRIDE),
+        Math.min(pixels.length / stride, HEIGHT), resolution, origin, fillColor);
+  }
+
+  /**
+   * Copies a rectangle of pixels to the top left of the texture and fills the
+   * rest of the texture with the specified color. Only the pixels that changed
+   * are copied. The texture is resized to the smallest powers of two that fit
+   * the rectangle.
+   *
+   * @param pixels
+   *          the pixels row by row
+   * @param offset
+   *          the index of the first pixel
+   * @param stride
+   *          the distance between the first pixels of two rows
+   * @param width
+   *          the number of pixels per row, at most {@link #STRIDE}
+   * @param height
+   *          the number of rows, at most {@link #HEIGHT}
+   */
+  public void updateFromPixelArray(int[] pixels, int offset, int stride, int width, int height,
+      float resolution, Transform origin, int fillColor) {
+    Preconditions.checkNotNull(origin);
+    Preconditions.checkArgument(0 <= width && width <= STRIDE && width <= stride);
+    Preconditions.checkArgument(0 <= height && height <= HEIGHT);
+    beginChanges();
+    resize(width, height);
+    for (int y = 0; y < this.height; y++) {
+      if (y < height) {
+        copyRow(pixels, offset + y * stride, 0, y, width);
+        fillRow(width, y, this.width - width, fillColor);
+      } else {
+        fillRow(0, y, this.width, fillColor);
       }
     }
-    update(origin, stride, resolution, fillColor);
+    update(origin, resolution);
   }
 
   public void updateFromPixelBuffer(ChannelBuffer pixels, int stride, float resolution,
       Transform origin, int fillColor) {
     Preconditions.checkNotNull(pixels);
     Preconditions.checkNotNull(origin);
-    for (int y = 0, i = 0; y < HEIGHT; y++) {
-      for (int x = 0; x < STRIDE; x++, i++) {
+    beginChanges();
+    int rows = (pixels.readableBytes() / 4 + stride - 1) / stride;
+    resize(Math.min(stride, STRIDE), Math.min(rows, HEIGHT));
+    for (int y = 0, i = 0; y < height; y++) {
+      for (int x = 0; x < width; x++, i++) {
         // If the pixel is within the bounds of the specified pixel array then
         // we copy the specified value. Otherwise, we use the specified fill
         // color.
-        if (x < stride && pixels.readable()) {
-          this.pixels[i] = pixels.readInt();
-        } else {
-          this.pixels[i] = fillColor;
+        int pixel = x < stride && pixels.readable() ? pixels.readInt() : fillColor;
+        if (this.pixels[i] != pixel) {
+          this.pixels[i] = pixel;
+          addChange(x, y);
+        }
+      }
+    }
+    update(origin, resolution);
+  }
+
+  /**
+   * Replaces a rectangle of the pixels of the previous update and keeps its
+   * origin and resolution, e.g. to apply a small change to a large map.
+   *
+   * @param pixels
+   *          the new pixels of the rectangle, row by row
+   * @param left
+   *          the column of the first pixel
+   * @param top
+   *          the row of the first pixel
+   */
+  public void updateRegion(int[] pixels, int left, int top, int width, int height) {
+    Preconditions.checkState(origin != null, "The texture has not been updated yet.");
+    Preconditions.checkArgument(0 <= left && 0 <= width && left + width <= this.width);
+    Preconditions.checkArgument(0 <= top && 0 <= height && top + height <= this.height);
+    Preconditions.checkArgument(pixels.length >= width * height);
+    beginChanges();
+    for (int y = 0; y < height; y++) {
+      copyRow(pixels, y * width, left, top + y, width);
+    }
+    update(origin, resolution);
+  }
+
+  /**
+   * May be called from any thread.
+   *
+   * @return the pixel array, the texels of all three texture slots and the
+   *         uploaded texture
+   */
+  public MemoryUsage getMemoryUsage() {
+    return new MemoryUsage(pixelBytes + texelBytes, 0, 0, uploadedBytes);
+  }
+
+  /**
+   * Returns the pixel arrays to the {@link TexturePool}. Must
+   * be called by the thread that updates the texture, or once it is no longer
+   * updated. Views that still draw the texture draw nothing afterwards. Texture
+   * objects that were not {@link #delete(GL10) deleted} are freed with their
+   * contexts. The texture must not be updated afterwards.
+   */
+  public void release() {
+    TexturePool pool = TexturePool.getDefault();
+    if (pixels != null) {
+      pool.release(pixels);
+      pixels = null;
+    }
+    synchronized (readerMutex) {
+      for (Texture texture : textures.getSlots()) {
+        if (texture.texels != null) {
+          pool.release(texture.texels);
+          texture.texels = null;
         }
       }
     }
-    update(origin, stride, resolution, fillColor);
+    width = 0;
+    height = 0;
+    pixelBytes = 0;
+    texelBytes = 0;
   }
 
+  /**
+   * Deletes the texture object of the calling GL thread's context. It is
+   * uploaded again when drawn next. Must be called on the GL thread.
+   */
+  public void delete(GL10 gl) {
+    synchronized (readerMutex) {
+      TextureObject textureObject = findTextureObject(ShareGroup.getCurrent());
+      if (textureObject != null) {
+        gl.glDeleteTextures(1, textureObject.handle, 0);
+        textureObjects.remove(textureObject);
+        updateUploadedBytes();
+      }
+    }
+  }
+
+  /**
+   * May be called from any thread.
+   *
+   * @return {@code true} if a texture object exists in a context that is
+   *         still alive and was not {@link #delete(GL10) deleted}
+   */
+  public boolean isUploaded() {
+    synchronized (readerMutex) {
+      for (TextureObject textureObject : textureObjects) {
+        if (textureObject.shareGroup == null || textureObject.shareGroup.isAlive()) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Forgets the texture objects, e.g. because their contexts were lost.
+   */
   public void clearHandle() {
-    handle = null;
+    synchronized (readerMutex) {
+      textureObjects.clear();
+      updateUploadedBytes();
+    }
   }
 
-  private void update(Transform origin, int stride, float resolution, int fillColor) {
+  /**
+   * Must be called while holding {@link #readerMutex}.
+   */
+  private TextureObject findTextureObject(ShareGroup shareGroup) {
+    for (Iterator<TextureObject> iterator = textureObjects.iterator(); iterator.hasNext();) {
+      TextureObject textureObject = iterator.next();
+      if (textureObject.shareGroup == shareGroup) {
+        return textureObject;
+      }
+      if (textureObject.shareGroup != null && !textureObject.shareGroup.isAlive()) {
+        // Destroyed together with the last context of its group.
+        iterator.remove();
+      }
+    }
+    return null;
+  }
+
+  private void updateUploadedBytes() {
+    long uploadedBytes = 0;
+    for (TextureObject textureObject : textureObjects) {
+      uploadedBytes += textureObject.width * textureObject.height * 4L;
+    }
+    this.uploadedBytes = uploadedBytes;
+  }
+
+  private void beginChanges() {
+    changed.set(STRIDE, HEIGHT, 0, 0);
+  }
+
+  private static int getTextureSize(int size) {
+    return Integer.highestOneBit(Math.max(MINIMUM_SIZE, size) - 1) << 1;
+  }
+
+  /**
+   * Sizes the texture to fit content of the specified size. A resized texture
+   * has changed entirely.
+   */
+  private void resize(int contentWidth, int contentHeight) {
+    int width = getTextureSize(contentWidth);
+    int height = getTextureSize(contentHeight);
+    if (width == this.width && height == this.height) {
+      return;
+    }
+    TexturePool pool = TexturePool.getDefault();
+    if (pixels != null) {
+      pool.release(pixels);
+    }
+    pixels = pool.acquirePixels(width * height);
+    pixelBytes = pixels.length * 4L;
+    this.width = width;
+    this.height = height;
+    changed.set(0, 0, width, height);
+  }
+
+  private void addChange(int x, int y) {
+    changed.left = Math.min(changed.left, x);
+    changed.top = Math.min(changed.top, y);
+    changed.right = Math.max(changed.right, x + 1);
+    changed.bottom = Math.max(changed.bottom, y + 1);
+  }
+
+  /**
+   * Copies pixels to a row of {@link #pixels} and records the changed ones.
+   */
+  private void copyRow(int[] source, int sourceIndex, int x, int y, int length) {
+    final int target = y * width + x;
+    int first = 0;
+    while (first < length && pixels[target + first] == source[sourceIndex + first]) {
+      first++;
+    }
+    if (first == length) {
+      return;
+    }
+    int last = length - 1;
+    while (pixels[target + last] == source[sourceIndex + last]) {
+      last--;
+    }
+    System.arraycopy(source, sourceIndex + first, pixels, target + first, last - first + 1);
+    addChange(x + first, y);
+    addChange(x + last, y);
+  }
+
+  /**
+   * Fills a row of {@link #pixels} with a color and records the changed
+   * pixels.
+   */
+  private void fillRow(int x, int y, int length, int color) {
+    final int target = y * width + x;
+    int first = 0;
+    while (first < length && pixels[target + first] == color) {
+      first++;
+    }
+    if (first == length) {
+      return;
+    }
+    int last = length - 1;
+    while (pixels[target + last] == color) {
+      last--;
+    }
+    Arrays.fill(pixels, target + first, target + last + 1, color);
+    addChange(x + first, y);
+    addChange(x + last, y);
+  }
+
+  private void update(Transform origin, float resolution) {
+    if (changed.isEmpty()) {
+      changed.clear();
+    }
     this.origin = origin;
-    scaledWidth = STRIDE * resolution;
-    scaledHeight = HEIGHT * resolution;
-    bitmapBack.setPixels(pixels, 0, STRIDE, 0, 0, STRIDE, HEIGHT);
-    synchronized (mutex) {
-      Bitmap tmp = bitmapFront;
-      bitmapFront = bitmapBack;
-      bitmapBack = tmp;
-      reload = true;
+    this.resolution = resolution;
+    version++;
+    history.get(version).set(changed);
+    Texture texture = textures.getWriteBuffer();
+    texture.origin = origin;
+    texture.scaledWidth = width * resolution;
+    texture.scaledHeight = height * resolution;
+    texture.bounds =
+        new BoundingBox(0, 0, texture.scaledWidth, texture.scaledHeight).transform(origin);
+    if (texture.texels == null || texture.width != width || texture.height != height) {
+      // The slot's texels are replaced by ones of the new size, which are
+      // written completely.
+      TexturePool pool = TexturePool.getDefault();
+      long texelBytes = this.texelBytes;
+      if (texture.texels != null) {
+        pool.release(texture.texels);
+        texelBytes -= texture.texels.length * 4L;
+      }
+      texture.texels = pool.acquirePixels(width * height);
+      texture.width = width;
+      texture.height = height;
+      this.texelBytes = texelBytes + width * height * 4L;
+      changed.set(0, 0, width, height);
+    } else {
+      // The slot's texels are behind by the updates published since they
+      // were last written. Only the regions they changed are converted.
+      history.getChangesSince(texture.version, version, changed);
+      changed.clip(width, height);
+    }
+    for (int y = changed.top; y < changed.bottom; y++) {
+      for (int i = y * width + changed.left; i < y * width + changed.right; i++) {
+        texture.texels[i] = toTexel(pixels[i]);
+      }
     }
+    texture.history.set(history);
+    texture.version = version;
+    textures.publish();
   }
 
-  private void bind(GL10 gl) {
-    if (handle == null) {
-      handle = new int[1];
-      gl.glGenTextures(1, handle, 0);
-      reload = true;
+  /**
+   * Converts an unpremultiplied ARGB color to a premultiplied RGBA texel.
+   */
+  private static int toTexel(int color) {
+    int alpha = color >>> 24;
+    int red = (color >> 16) & 0xff;
+    int green = (color >> 8) & 0xff;
+    int blue = color & 0xff;
+    if (alpha != 0xff) {
+      red = red * alpha / 0xff;
+      green = green * alpha / 0xff;
+      blue = blue * alpha / 0xff;
+    }
+    if (LITTLE_ENDIAN) {
+      return (alpha << 24) | (blue << 16) | (green << 8) | red;
+    }
+    return (red << 24) | (green << 16) | (blue << 8) | alpha;
+  }
+
+  /**
+   * Picks up the most recent update. Must be called while holding
+   * {@link #readerMutex}.
+   *
+   * @return {@code true} if there is a texture to draw
+   */
+  private boolean acquire() {
+    if (textures.update()) {
+      for (TextureObject textureObject : textureObjects) {
+        textureObject.reload = true;
+      }
+    }
+    // A released texture has no texels left to draw.
+    return textures.hasReadBuffer() && textures.getReadBuffer().texels != null;
+  }
+
+  /**
+   * @return the area covered by the texture in the frame of its origin or
+   *         {@code null} if it has not been updated yet
+   */
+  public BoundingBox getBounds() {
+    synchronized (readerMutex) {
+      return acquire() ? textures.getReadBuffer().bounds : null;
     }
-    gl.glBindTexture(GL10.GL_TEXTURE_2D, handle[0]);
+  }
+
+  /**
+   * @param visible
+   *          the visible area in the frame of the texture's origin or
+   *          {@code null} if it is unknown
+   * @return {@code true} if the texture may be visible
+   */
+  public boolean isVisible(BoundingBox visible) {
+    BoundingBox bounds = getBounds();
+    return visible == null || bounds == null || visible.intersects(bounds);
+  }
+
+  private void bind(GL10 gl, Texture texture) {
+    ShareGroup shareGroup = ShareGroup.getCurrent();
+    TextureObject textureObject = findTextureObject(shareGroup);
+    boolean newTexture = textureObject == null;
+    if (newTexture) {
+      textureObject = new TextureObject(shareGroup);
+      gl.glGenTextures(1, textureObject.handle, 0);
+      textureObjects.add(textureObject);
+    }
+    Thread thread = Thread.currentThread();
+    if (textureObject.uploadThread != null && textureObject.uploadThread != thread) {
+      textureObject.drawnElsewhere = true;
+    }
+    gl.glBindTexture(GL10.GL_TEXTURE_2D, textureObject.handle[0]);
     gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MIN_FILTER, GL10.GL_NEAREST);
     gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MAG_FILTER, GL10.GL_NEAREST);
-    synchronized (mutex) {
-      if (reload) {
-        GLUtils.texImage2D(GL10.GL_TEXTURE_2D, 0, bitmapFront, 0);
-        reload = false;
+    if (textureObject.reload) {
+      // The writer never touches the texture that is being read.
+      int width = texture.width;
+      int height = texture.height;
+      texture.history.getChangesSince(textureObject.version, texture.version, upload);
+      upload.clip(width, height);
+      if (newTexture || width != textureObject.width || height != textureObject.height) {
+        gl.glTexImage2D(GL10.GL_TEXTURE_2D, 0, GL10.GL_RGBA, width, height, 0, GL10.GL_RGBA,
+            GL10.GL_UNSIGNED_BYTE, IntBuffer.wrap(texture.texels));
+        textureObject.width = width;
+        textureObject.height = height;
+        updateUploadedBytes();
+      } else if (upload.getArea() > MAXIMUM_PARTIAL_UPLOAD * width * height) {
+        gl.glTexSubImage2D(GL10.GL_TEXTURE_2D, 0, 0, 0, width, height, GL10.GL_RGBA,
+            GL10.GL_UNSIGNED_BYTE, IntBuffer.wrap(texture.texels));
+      } else if (!upload.isEmpty()) {
+        uploadRegion(gl, texture, upload);
+      }
+      if (shareGroup != null && shareGroup.isShared()) {
+        // Other contexts only see the new content once the upload completed.
+        // Waiting for it is only worth it while they draw the texture, too.
+        // Otherwise the upload is merely submitted so that it completes
+        // before another context draws the texture for the first time.
+        if (textureObject.drawnElsewhere) {
+          gl.glFinish();
+        } else {
+          gl.glFlush();
+        }
       }
+      textureObject.uploadThread = thread;
+      textureObject.drawnElsewhere = false;
+      textureObject.version = texture.version;
+      textureObject.reload = false;
+    }
+  }
+
+  /**
+   * Uploads a region of the texels to the bound texture with
+   * {@code glTexSubImage2D}. Rows that span the texture are uploaded in place,
+   * others are copied into a buffer first.
+   */
+  private void uploadRegion(GL10 gl, Texture texture, Region region) {
+    int width = region.right - region.left;
+    int height = region.bottom - region.top;
+    if (width == texture.width) {
+      gl.glTexSubImage2D(GL10.GL_TEXTURE_2D, 0, 0, region.top, width, height, GL10.GL_RGBA,
+          GL10.GL_UNSIGNED_BYTE,
+          IntBuffer.wrap(texture.texels, region.top * width, width * height));
+      return;
+    }
+    DirectBufferPool pool = DirectBufferPool.getDefault();
+    ByteBuffer buffer = pool.acquire(width * height * 4);
+    try {
+      IntBuffer texels = buffer.asIntBuffer();
+      for (int y = region.top; y < region.bottom; y++) {
+        texels.put(texture.texels, y * texture.width + region.left, width);
+      }
+      texels.flip();
+      gl.glTexSubImage2D(GL10.GL_TEXTURE_2D, 0, region.left, region.top, width, height,
+          GL10.GL_RGBA, GL10.GL_UNSIGNED_BYTE, texels);
+    } finally {
+      pool.release(buffer);
     }
   }
 
   @Override
   public void draw(VisualizationView view, GL10 gl) {
+    synchronized (readerMutex) {
+      if (acquire()) {
+        draw(gl, textures.getReadBuffer());
+      }
+    }
+  }
+
+  private void draw(GL10 gl, Texture texture) {
     gl.glEnable(GL10.GL_TEXTURE_2D);
-    bind(gl);
+    bind(gl, texture);
     gl.glPushMatrix();
-    OpenGlTransform.apply(gl, origin);
-    gl.glScalef((float) scaledWidth, (float) scaledHeight, 1.0f);
+    originMatrix.set(texture.origin);
+    originMatrix.apply(gl);
+    gl.glScalef((float) texture.scaledWidth, (float) texture.scaledHeight, 1.0f);
     gl.glColor4f(1.0f, 1.0f, 1.0f, 1.0f);
     gl.glEnableClientState(GL10.GL_VERTEX_ARRAY);
     gl.glEnableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
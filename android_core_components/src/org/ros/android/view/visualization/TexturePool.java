@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.ros.android.view.visualization;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+
+
+import java.util.ArrayDeque;
+import java.util.Map;
+
+/**
+ * A pool of the pixel arrays that {@link TextureBitmap}s store their pixels
+ * in.
+ * <p>
+ * Textures are sized to powers of two, so storage released by one texture
+ * (a tile of a map that shrank, a layer that was removed) usually fits
+ * another one. Released storage is kept until {@link #getMaximumPooledBytes()}
+ * are pooled, further storage is left to the garbage collector. Storage that
+ * is never released is not kept alive by the pool and is collected as usual.
+ * Instances are thread-safe.
+ */
+public class TexturePool {
+
+  private static final int BYTES_PER_PIXEL = 4;
+
+  private static final int DEFAULT_MAXIMUM_POOLED_BYTES = 16 * 1024 * 1024;
+
+  private static final TexturePool DEFAULT = new TexturePool(DEFAULT_MAXIMUM_POOLED_BYTES);
+
+  private final int maximumPooledBytes;
+
+  /**
+   * Idle pixel arrays by length.
+   */
+  private final Map<Integer, ArrayDeque<int[]>> pooledPixels;
+
+  /**
+   * Acquired pixel arrays by identity and their sizes in bytes.
+   * Weak keys let storage that is dropped without being released be
+   * collected.
+   */
+  private final Map<Object, Long> outstanding;
+
+  private long pooledBytes;
+  private long allocatedBytes;
+  private long acquireCount;
+  private long reuseCount;
+
+  /**
+   * @param maximumPooledBytes
+   *          the number of bytes of idle storage to keep for reuse
+   */
+  public TexturePool(int maximumPooledBytes) {
+    Preconditions.checkArgument(maximumPooledBytes >= 0);
+    this.maximumPooledBytes = maximumPooledBytes;
+    pooledPixels = Maps.newHashMap();
+    outstanding = new MapMaker().weakKeys().makeMap();
+  }
+
+  /**
+   * @return the pool shared by all textures
+   */
+  public static TexturePool getDefault() {
+    return DEFAULT;
+  }
+
+  private static <K, T> T poll(Map<K, ArrayDeque<T>> pooled, K key) {
+    ArrayDeque<T> idle = pooled.get(key);
+    return idle != null ? idle.pollFirst() : null;
+  }
+
+  private static <K, T> void add(Map<K, ArrayDeque<T>> pooled, K key, T storage) {
+    ArrayDeque<T> idle = pooled.get(key);
+    if (idle == null) {
+      idle = new ArrayDeque<T>();
+      pooled.put(key, idle);
+    }
+    idle.addFirst(storage);
+  }
+
+  private void acquired(Object storage, long bytes, boolean reused) {
+    acquireCount++;
+    if (reused) {
+      reuseCount++;
+      pooledBytes -= bytes;
+    } else {
+      allocatedBytes += bytes;
+    }
+    outstanding.put(storage, bytes);
+  }
+
+  /**
+   * @return {@code true} if the released storage should be pooled
+   */
+  private boolean released(Object storage) {
+    Long bytes = outstanding.remove(storage);
+    Preconditions.checkArgument(bytes != null, "Storage was not acquired from this pool.");
+    if (pooledBytes + bytes <= maximumPooledBytes) {
+      pooledBytes += bytes;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return an array of the specified number of pixels with undefined
+   *         contents
+   */
+  public synchronized int[] acquirePixels(int length) {
+    Preconditions.checkArgument(length >= 0);
+    int[] pixels = poll(pooledPixels, length);
+    boolean reused = pixels != null;
+    if (!reused) {
+      pixels = new int[length];
+    }
+    acquired(pixels, (long) length * BYTES_PER_PIXEL, reused);
+    return pixels;
+  }
+
+  /**
+   * Returns an array acquired with {@link #acquirePixels(int)} to the pool.
+   * The array must not be used afterwards.
+   */
+  public synchronized void release(int[] pixels) {
+    if (released(pixels)) {
+      add(pooledPixels, pixels.length, pixels);
+    }
+  }
+
+  /**
+   * @return the number of bytes of idle storage to keep for reuse
+   */
+  public int getMaximumPooledBytes() {
+    return maximumPooledBytes;
+  }
+
+  /**
+   * @return the number of bytes of storage that is acquired and neither
+   *         released nor collected
+   */
+  public synchronized long getOutstandingBytes() {
+    long outstandingBytes = 0;
+    for (long bytes : outstanding.values()) {
+      outstandingBytes += bytes;
+    }
+    return outstandingBytes;
+  }
+
+  /**
+   * @return the number of bytes of idle storage kept for reuse
+   */
+  public synchronized long getPooledBytes() {
+    return pooledBytes;
+  }
+
+  /**
+   * @return the number of bytes of storage allocated so far
+   */
+  public synchronized long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+
+  /**
+   * @return the number of acquired arrays
+   */
+  public synchronized long getAcquireCount() {
+    return acquireCount;
+  }
+
+  /**
+   * @return the number of acquired arrays that were reused from the pool
+   */
+  public synchronized long getReuseCount() {
+    return reuseCount;
+  }
+}
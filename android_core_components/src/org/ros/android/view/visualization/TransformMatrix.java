@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import com.google.common.base.Preconditions;
+
+import org.ros.rosjava_geometry.Transform;
+
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * The column major 4x4 matrix of a {@link Transform}, converted only when the
+ * {@link Transform} changes.
+ * <p>
+ * {@link Transform}s are immutable, so a different matrix is only needed for a
+ * different instance. Setting the same instance again (e.g. a shape's pose on
+ * every frame) neither converts nor allocates.
+ */
+public class TransformMatrix {
+
+  private final float[] matrix;
+
+  private Transform transform;
+
+  public TransformMatrix() {
+    matrix = new float[OpenGlTransform.MATRIX_SIZE];
+  }
+
+  /**
+   * @param transform
+   *          the {@link Transform} to represent
+   * @return {@code true} if the matrix was converted, {@code false} if it
+   *         already represented the specified instance
+   */
+  public boolean set(Transform transform) {
+    Preconditions.checkNotNull(transform);
+    if (transform == this.transform) {
+      return false;
+    }
+    OpenGlTransform.toMatrix(transform, matrix);
+    this.transform = transform;
+    return true;
+  }
+
+  /**
+   * @return the represented {@link Transform} or {@code null} if none was set
+   */
+  public Transform getTransform() {
+    return transform;
+  }
+
+  /**
+   * @return the matrix, which must not be modified
+   */
+  public float[] getMatrix() {
+    return matrix;
+  }
+
+  /**
+   * Multiplies the current OpenGL matrix by this matrix.
+   */
+  public void apply(GL10 gl) {
+    Preconditions.checkState(transform != null);
+    gl.glMultMatrixf(matrix, 0);
+  }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.FloatBuffer;
+
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
+
+/**
+ * Vertex data that is kept in a GPU-resident vertex buffer object (VBO) where
+ * available.
+ * <p>
+ * New vertices are uploaded once on the next draw after
+ * {@link #update(FloatBuffer)}. Subsequent draws only bind the buffer. If the
+ * context does not support OpenGL ES 1.1 buffer objects, vertices are drawn
+ * from the client-side {@link FloatBuffer} instead.
+ * <p>
+ * All methods must be called on the GL thread or while holding the same lock
+ * that guards drawing.
+ */
+public class VertexBuffer {
+
+  private static final int FLOAT_BYTE_SIZE = Float.SIZE / 8;
+
+  /**
+   * Number of coordinates per vertex (x, y, z).
+   */
+  private static final int VERTEX_SIZE = 3;
+
+  private FloatBuffer vertices;
+  private int vertexCount;
+  private boolean dirty;
+
+  private GL10 previousGl;
+  private boolean bufferObjectsSupported;
+  private int[] handle;
+  /**
+   * The size of the GPU buffer in bytes, 0 if there is none.
+   */
+  private volatile int capacity;
+
+  /**
+   * Replaces the vertices of this buffer. The {@link FloatBuffer}'s remaining
+   * elements are used and it must not be modified until the next draw.
+   *
+   * @param vertices
+   *          x, y, z triplets
+   */
+  public void update(FloatBuffer vertices) {
+    Preconditions.checkArgument(vertices.remaining() % VERTEX_SIZE == 0,
+        "Number of vertices: " + vertices.remaining());
+    this.vertices = vertices;
+    vertexCount = vertices.remaining() / VERTEX_SIZE;
+    dirty = true;
+  }
+
+  /**
+   * @return the number of vertices in this buffer
+   */
+  public int getVertexCount() {
+    return vertexCount;
+  }
+
+  /**
+   * May be called from any thread.
+   *
+   * @return the estimated size of the GPU buffer
+   */
+  public MemoryUsage getMemoryUsage() {
+    return MemoryUsage.gpu(capacity);
+  }
+
+  /**
+   * Discards the GPU buffer, e.g. because the GL context was lost. The
+   * vertices will be uploaded again on the next draw.
+   */
+  public void clearHandle() {
+    handle = null;
+    capacity = 0;
+    dirty = true;
+  }
+
+  /**
+   * Releases the GPU buffer. Must be called on the GL thread.
+   */
+  public void delete(GL10 gl) {
+    if (handle != null && gl == previousGl && bufferObjectsSupported) {
+      ((GL11) gl).glDeleteBuffers(1, handle, 0);
+    }
+    clearHandle();
+  }
+
+  /**
+   * Binds the vertices as the current vertex array. Callers must enable
+   * {@link GL10#GL_VERTEX_ARRAY} and call {@link #unbind(GL10)} when done.
+   */
+  public void bind(GL10 gl) {
+    Preconditions.checkNotNull(vertices);
+    if (previousGl != gl) {
+      bufferObjectsSupported = areBufferObjectsSupported(gl);
+      clearHandle();
+      previousGl = gl;
+    }
+    if (!bufferObjectsSupported) {
+      gl.glVertexPointer(VERTEX_SIZE, GL10.GL_FLOAT, 0, vertices);
+      return;
+    }
+    GL11 gl11 = (GL11) gl;
+    if (handle == null) {
+      handle = new int[1];
+      gl11.glGenBuffers(1, handle, 0);
+    }
+    gl11.glBindBuffer(GL11.GL_ARRAY_BUFFER, handle[0]);
+    if (dirty) {
+      upload(gl11);
+      dirty = false;
+    }
+    gl11.glVertexPointer(VERTEX_SIZE, GL10.GL_FLOAT, 0, 0);
+  }
+
+  private void upload(GL11 gl) {
+    int size = vertices.remaining() * FLOAT_BYTE_SIZE;
+    if (size > capacity) {
+      gl.glBufferData(GL11.GL_ARRAY_BUFFER, size, vertices, GL11.GL_DYNAMIC_DRAW);
+      capacity = size;
+    } else {
+      // Orphan the previous storage so that the driver does not have to wait
+      // for pending draws that still use it.
+      gl.glBufferData(GL11.GL_ARRAY_BUFFER, capacity, null, GL11.GL_DYNAMIC_DRAW);
+      gl.glBufferSubData(GL11.GL_ARRAY_BUFFER, 0, size, vertices);
+    }
+  }
+
+  public void unbind(GL10 gl) {
+    if (bufferObjectsSupported) {
+      ((GL11) gl).glBindBuffer(GL11.GL_ARRAY_BUFFER, 0);
+    }
+  }
+
+  /**
+   * Draws a range of the vertices in this buffer.
+   *
+   * @param mode
+   *          the primitive type, e.g. {@link GL10#GL_POINTS}
+   * @param first
+   *          index of the first vertex to draw
+   * @param count
+   *          number of vertices to draw
+   */
+  public void draw(GL10 gl, int mode, int first, int count) {
+    Preconditions.checkArgument(first >= 0 && first + count <= vertexCount);
+    if (count == 0) {
+      return;
+    }
+    gl.glEnableClientState(GL10.GL_VERTEX_ARRAY);
+    bind(gl);
+    gl.glDrawArrays(mode, first, count);
+    unbind(gl);
+    gl.glDisableClientState(GL10.GL_VERTEX_ARRAY);
+  }
+
+  private static boolean areBufferObjectsSupported(GL10 gl) {
+    if (!(gl instanceof GL11)) {
+      return false;
+    }
+    // Buffer objects are core in OpenGL ES 1.1, e.g. "OpenGL ES-CM 1.1".
+    String version = gl.glGetString(GL10.GL_VERSION);
+    return version != null && !version.contains(" 1.0");
+  }
+}
@@ -16,8 +16,6 @@
 
 package org.ros.android.view.visualization;
 
-import com.google.common.base.Preconditions;
-
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
@@ -41,6 +39,30 @@ public class Vertices {
     return byteBuffer.asFloatBuffer();
   }
 
+  /**
+   * For buffers that are replaced at runtime, e.g. when they grow. Buffers
+   * that live as long as their owner should use
+   * {@link #allocateBuffer(int)} instead.
+   *
+   * @param size
+   *          the number of floats needed
+   * @return a direct buffer from the {@link DirectBufferPool} with room for at
+   *         least the specified number of floats and its limit at that number
+   * @see #releaseBuffer(FloatBuffer)
+   */
+  public static FloatBuffer acquireBuffer(int size) {
+    return DirectBufferPool.getDefault().acquireFloats(size);
+  }
+
+  /**
+   * Returns a buffer returned by {@link #acquireBuffer(int)} to the
+   * {@link DirectBufferPool}. Buffers that are replaced must be released so
+   * that their direct memory is reused.
+   */
+  public static void releaseBuffer(FloatBuffer buffer) {
+    DirectBufferPool.getDefault().release(buffer);
+  }
+
   public static FloatBuffer toFloatBuffer(float[] floats) {
     FloatBuffer floatBuffer = allocateBuffer(floats.length);
     floatBuffer.put(floats);
@@ -91,10 +113,82 @@ public class Vertices {
     vertices.reset();
   }
 
+  public static void drawPoints(GL10 gl, VertexBuffer vertices, int first, Color color,
+      float size) {
+    color.apply(gl);
+    gl.glPointSize(size);
+    vertices.draw(gl, GL10.GL_POINTS, first, vertices.getVertexCount() - first);
+  }
+
+  public static void drawTriangleFan(GL10 gl, VertexBuffer vertices, Color color) {
+    color.apply(gl);
+    vertices.draw(gl, GL10.GL_TRIANGLE_FAN, 0, vertices.getVertexCount());
+  }
+
+  public static void drawLines(GL10 gl, VertexBuffer vertices, Color color, float width) {
+    color.apply(gl);
+    gl.glLineWidth(width);
+    vertices.draw(gl, GL10.GL_LINE_STRIP, 0, vertices.getVertexCount());
+  }
+
+  /**
+   * Draws the points of the chunks that intersect the visible area.
+   *
+   * @return the number of points that were culled
+   * @see PointChunks#draw(GL10, VertexBuffer, int, BoundingBox)
+   */
+  public static int drawPoints(GL10 gl, VertexBuffer vertices, PointChunks chunks,
+      BoundingBox visible, Color color, float size) {
+    color.apply(gl);
+    gl.glPointSize(size);
+    return chunks.draw(gl, vertices, GL10.GL_POINTS, visible);
+  }
+
+  /**
+   * Draws the line strip segments of the chunks that intersect the visible
+   * area. The chunks must overlap by one vertex.
+   *
+   * @return the number of vertices that were culled
+   * @see PointChunks#draw(GL10, VertexBuffer, int, BoundingBox)
+   */
+  public static int drawLines(GL10 gl, VertexBuffer vertices, PointChunks chunks,
+      BoundingBox visible, Color color, float width) {
+    color.apply(gl);
+    gl.glLineWidth(width);
+    return chunks.draw(gl, vertices, GL10.GL_LINE_STRIP, visible);
+  }
+
+  /**
+   * Draws the points of the ranges that remained after culling.
+   *
+   * @see PointChunks#cull(BoundingBox, DrawRanges)
+   */
+  public static void drawPoints(GL10 gl, VertexBuffer vertices, DrawRanges ranges, Color color,
+      float size) {
+    color.apply(gl);
+    gl.glPointSize(size);
+    ranges.draw(gl, vertices, GL10.GL_POINTS);
+  }
+
+  /**
+   * Draws the line strip segments of the ranges that remained after culling.
+   * The chunks must overlap by one vertex.
+   *
+   * @see PointChunks#cull(BoundingBox, DrawRanges)
+   */
+  public static void drawLines(GL10 gl, VertexBuffer vertices, DrawRanges ranges, Color color,
+      float width) {
+    color.apply(gl);
+    gl.glLineWidth(width);
+    ranges.draw(gl, vertices, GL10.GL_LINE_STRIP);
+  }
+
   private static int countVertices(FloatBuffer vertices, int size) {
     // FloatBuffer accounts for the size of each float when calling remaining().
-    Preconditions.checkArgument(vertices.remaining() % size == 0,
-        "Number of vertices: " + vertices.remaining());
-    return vertices.remaining() / size;
+    int remaining = vertices.remaining();
+    if (remaining % size != 0) {
+      throw new IllegalArgumentException("Number of vertices: " + remaining);
+    }
+    return remaining / size;
   }
 }
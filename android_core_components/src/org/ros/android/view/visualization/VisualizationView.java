@@ -18,6 +18,7 @@ package org.ros.android.view.visualization;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 import android.app.Activity;
 import android.content.Context;
@@ -26,20 +27,29 @@ import android.opengl.GLSurfaceView;
 import android.os.Bundle;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
+import android.view.View;
 
 import org.ros.android.RosActivity;
+import org.ros.android.view.visualization.layer.HitTestLayer;
 import org.ros.android.view.visualization.layer.Layer;
-import org.ros.message.MessageListener;
+import org.ros.android.view.visualization.layer.MemoryAccountingLayer;
+import org.ros.android.view.visualization.layer.TfLayer;
+import org.ros.android.view.visualization.layer.ToggleableLayer;
 import org.ros.namespace.GraphName;
 import org.ros.node.ConnectedNode;
 import org.ros.node.Node;
 import org.ros.node.NodeMain;
 import org.ros.node.NodeMainExecutor;
-import org.ros.node.topic.Subscriber;
+import org.ros.rosjava_geometry.FrameTransform;
 import org.ros.rosjava_geometry.FrameTransformTree;
+import org.ros.rosjava_geometry.Transform;
 
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author damonkohler@google.com (Damon Kohler)
@@ -49,13 +59,58 @@ public class VisualizationView extends GLSurfaceView implements NodeMain {
 
   private static final boolean DEBUG = false;
 
-  private final Object mutex = new Object();
-  private final FrameTransformTree frameTransformTree = new FrameTransformTree();
-  private final XYOrthographicCamera camera = new XYOrthographicCamera(frameTransformTree);
+  /**
+   * Upper bound on the depth of the transform tree. Guards against cycles while
+   * walking up from a frame to its root.
+   */
+  private static final int MAXIMUM_FRAME_DEPTH = 64;
+
+  private final AtomicLong renderRequestCount = new AtomicLong();
+  private final FrameStatistics frameStatistics = new FrameStatistics();
+  private final RenderQueue renderQueue = new RenderQueue();
+  private final CullingStatistics cullingStatistics = new CullingStatistics();
+  private final QualityGovernor qualityGovernor = new QualityGovernor();
+  private final AtomicBoolean qualityRestoreScheduled = new AtomicBoolean();
+
+  /**
+   * Raises the level of detail while no frames are drawn, which the
+   * {@link QualityGovernor} cannot notice on its own.
+   */
+  private final Runnable qualityRestorer = new Runnable() {
+    @Override
+    public void run() {
+      qualityRestoreScheduled.set(false);
+      if (qualityGovernor.restore(System.nanoTime())) {
+        // Passes the new level of detail on to the layers.
+        requestRender();
+      }
+      if (qualityGovernor.isReduced()) {
+        scheduleQualityRestore();
+      }
+    }
+  };
 
+  private Scene scene = new Scene();
+  private boolean ownsScene = true;
+  private XYOrthographicCamera camera = new XYOrthographicCamera(scene.getFrameTransformTree());
   private List<Layer> layers;
+  private RenderBackend renderBackend = new Gles1RenderBackend();
+  private PreparationExecutor preparationExecutor = new PreparationExecutor();
   private XYOrthographicRenderer renderer;
   private ConnectedNode connectedNode;
+  private DiagnosticsPublisher diagnosticsPublisher;
+
+  /**
+   * {@code true} while the view is attached to a window. Only accessed on the
+   * UI thread.
+   */
+  private boolean attached;
+
+  /**
+   * {@code true} between {@link #onPause()} and {@link #onResume()}. Only
+   * accessed on the UI thread.
+   */
+  private boolean paused;
 
   public VisualizationView(Context context) {
     super(context);
@@ -77,10 +132,66 @@ public class VisualizationView extends GLSurfaceView implements NodeMain {
       // Turn on OpenGL logging.
       setDebugFlags(getDebugFlags() | DEBUG_LOG_GL_CALLS);
     }
+    // The backend may replace the configuration chooser to select
+    // configurations its context version can render to.
     setEGLConfigChooser(8, 8, 8, 8, 0, 0);
+    renderBackend.configure(this);
+    // The factory asks the backend for the context version whenever a context
+    // is created, so that the backend can fall back to a different version.
+    setEGLContextFactory(scene.newContextFactory(renderBackend));
     getHolder().setFormat(PixelFormat.TRANSLUCENT);
     renderer = new XYOrthographicRenderer(this);
     setRenderer(renderer);
+    // Only draw a new frame when a layer, the camera or a relevant transform
+    // has changed.
+    setRenderMode(RENDERMODE_WHEN_DIRTY);
+    camera.setRenderRequestListener(new RenderRequestListener() {
+      @Override
+      public void onRenderRequested() {
+        requestRender();
+      }
+    });
+  }
+
+  /**
+   * Selects the OpenGL ES version used to render this view. Defaults to a
+   * {@link Gles1RenderBackend}. Must be called before
+   * {@link #onCreate(List)}.
+   *
+   * @param renderBackend
+   * @see Gles2RenderBackend#newPreferredBackend(Context)
+   */
+  public void setRenderBackend(RenderBackend renderBackend) {
+    Preconditions.checkState(renderer == null);
+    this.renderBackend = Preconditions.checkNotNull(renderBackend);
+  }
+
+  public RenderBackend getRenderBackend() {
+    return renderBackend;
+  }
+
+  /**
+   * Shows the specified {@link Scene} in this view, e.g. to display the same
+   * transforms and topics in several views. The view and the scene are then
+   * started by executing the scene instead of the view. Must be called before
+   * {@link #onCreate(List)}.
+   *
+   * @param scene
+   */
+  public void setScene(Scene scene) {
+    Preconditions.checkState(renderer == null);
+    Preconditions.checkState(connectedNode == null);
+    if (!ownsScene) {
+      this.scene.removeView(this);
+    }
+    this.scene = Preconditions.checkNotNull(scene);
+    ownsScene = false;
+    camera = new XYOrthographicCamera(scene.getFrameTransformTree());
+    scene.addView(this);
+  }
+
+  public Scene getScene() {
+    return scene;
   }
 
   /**
@@ -95,6 +206,90 @@ public class VisualizationView extends GLSurfaceView implements NodeMain {
     }
   }
 
+  @Override
+  protected void onAttachedToWindow() {
+    super.onAttachedToWindow();
+    attached = true;
+    updateLayerSuspension();
+  }
+
+  @Override
+  protected void onDetachedFromWindow() {
+    attached = false;
+    updateLayerSuspension();
+    super.onDetachedFromWindow();
+  }
+
+  @Override
+  public void onPause() {
+    paused = true;
+    super.onPause();
+  }
+
+  @Override
+  public void onResume() {
+    paused = false;
+    super.onResume();
+  }
+
+  /**
+   * Checks periodically whether the {@link QualityGovernor} can restore
+   * detail until it is no longer reduced. May be called on any thread.
+   */
+  void scheduleQualityRestore() {
+    if (qualityRestoreScheduled.compareAndSet(false, true)) {
+      postDelayed(qualityRestorer, QualityGovernor.RESTORE_INTERVAL_MILLIS);
+    }
+  }
+
+  /**
+   * Destroys the EGL context and creates a new one, e.g. after the
+   * {@link RenderBackend} fell back to a different OpenGL ES version. May be
+   * called on any thread.
+   */
+  void recreateContext() {
+    post(new Runnable() {
+      @Override
+      public void run() {
+        // A paused view has released its context and creates a new one when it
+        // is resumed.
+        if (!paused) {
+          VisualizationView.super.onPause();
+          VisualizationView.super.onResume();
+        }
+      }
+    });
+  }
+
+  @Override
+  protected void onVisibilityChanged(View changedView, int visibility) {
+    super.onVisibilityChanged(changedView, visibility);
+    updateLayerSuspension();
+  }
+
+  @Override
+  protected void onWindowVisibilityChanged(int visibility) {
+    super.onWindowVisibilityChanged(visibility);
+    updateLayerSuspension();
+  }
+
+  /**
+   * Suspends all {@link ToggleableLayer}s while nothing of this view can be
+   * seen so that they do not receive data nobody looks at.
+   */
+  private void updateLayerSuspension() {
+    if (layers == null) {
+      // Called while the view is constructed.
+      return;
+    }
+    boolean suspended = !attached || !isShown() || getWindowVisibility() != VISIBLE;
+    for (Layer layer : layers) {
+      if (layer instanceof ToggleableLayer) {
+        ((ToggleableLayer) layer).setSuspended(suspended);
+      }
+    }
+  }
+
   @Override
   public GraphName getDefaultNodeName() {
     return GraphName.of("android_15/visualization_view");
@@ -110,6 +305,28 @@ public class VisualizationView extends GLSurfaceView implements NodeMain {
     return super.onTouchEvent(event);
   }
 
+  /**
+   * Requests that a new frame is drawn. Layers call this whenever the data they
+   * draw has changed. Requests that arrive before the next frame is drawn are
+   * coalesced into that frame.
+   */
+  @Override
+  public void requestRender() {
+    if (renderer == null) {
+      // The rendering thread has not been started yet.
+      return;
+    }
+    renderRequestCount.incrementAndGet();
+    super.requestRender();
+  }
+
+  /**
+   * @return the number of times a new frame has been requested
+   */
+  public long getRenderRequestCount() {
+    return renderRequestCount.get();
+  }
+
   public XYOrthographicRenderer getRenderer() {
     return renderer;
   }
@@ -118,46 +335,265 @@ public class VisualizationView extends GLSurfaceView implements NodeMain {
     return camera;
   }
 
+  /**
+   * @return the {@link FrameStatistics} of this view, which must be enabled
+   *         before any durations are recorded
+   */
+  public FrameStatistics getFrameStatistics() {
+    return frameStatistics;
+  }
+
+  /**
+   * Periodically publishes performance statistics as
+   * diagnostic_msgs/DiagnosticArray messages on the specified topic once the
+   * node has started.
+   *
+   * @param topic
+   *          the diagnostics topic (e.g. "/diagnostics")
+   */
+  public void setDiagnosticsTopic(GraphName topic) {
+    Preconditions.checkState(connectedNode == null);
+    diagnosticsPublisher = new DiagnosticsPublisher(this, topic);
+  }
+
+  /**
+   * @see #setDiagnosticsTopic(GraphName)
+   */
+  public void setDiagnosticsTopic(String topic) {
+    setDiagnosticsTopic(GraphName.of(topic));
+  }
+
+  /**
+   * @return the {@link RenderQueue} that shapes and batched layers submit
+   *         their geometry to, only to be used on the GL thread
+   */
+  public RenderQueue getRenderQueue() {
+    return renderQueue;
+  }
+
+  /**
+   * @return the {@link CullingStatistics} that layers report skipped geometry
+   *         to
+   */
+  public CullingStatistics getCullingStatistics() {
+    return cullingStatistics;
+  }
+
+  /**
+   * @return the {@link QualityGovernor} that adjusts the level of detail of
+   *         layers, disabled until a target frame rate is set
+   */
+  public QualityGovernor getQualityGovernor() {
+    return qualityGovernor;
+  }
+
+  /**
+   * @return the {@link PreparationExecutor} that layers convert messages on
+   */
+  public PreparationExecutor getPreparationExecutor() {
+    return preparationExecutor;
+  }
+
+  /**
+   * Replaces the {@link PreparationExecutor}. Must be called before the node
+   * is started.
+   *
+   * @param preparationExecutor
+   */
+  public void setPreparationExecutor(PreparationExecutor preparationExecutor) {
+    Preconditions.checkState(connectedNode == null);
+    this.preparationExecutor = Preconditions.checkNotNull(preparationExecutor);
+  }
+
   public FrameTransformTree getFrameTransformTree() {
-    return frameTransformTree;
+    return scene.getFrameTransformTree();
   }
 
   public List<Layer> getLayers() {
     return Collections.unmodifiableList(layers);
   }
 
+  /**
+   * Finds the item of a {@link HitTestLayer} that is closest to a position on
+   * the screen, e.g. to select what was touched. May be called from any
+   * thread.
+   *
+   * @param pixelX
+   *          the x coordinate on the screen (origin top left) in pixels
+   * @param pixelY
+   *          the y coordinate on the screen (origin top left) in pixels
+   * @param radius
+   *          items further away than this many pixels are ignored
+   * @return the closest item or {@code null} if there is none within the radius
+   */
+  public Hit findNearest(int pixelX, int pixelY, float radius) {
+    double maximumDistance = radius / camera.getZoom();
+    Hit nearest = null;
+    for (Layer layer : layers) {
+      SpatialIndex spatialIndex = getSpatialIndex(layer);
+      if (spatialIndex == null) {
+        continue;
+      }
+      Transform position = camera.toFrame(pixelX, pixelY, spatialIndex.getFrame());
+      if (position == null) {
+        continue;
+      }
+      double x = position.getTranslation().getX();
+      double y = position.getTranslation().getY();
+      int item = spatialIndex.findNearest(x, y, maximumDistance);
+      if (item >= 0) {
+        double distance = spatialIndex.getDistance(item, x, y);
+        // Of equally close items, those of upper layers win.
+        if (nearest == null || distance <= nearest.getDistance()) {
+          nearest = new Hit((HitTestLayer) layer, spatialIndex, item, distance);
+        }
+      }
+    }
+    return nearest;
+  }
+
+  /**
+   * Like {@link #findNearest(int, int, float)} but finds all items within the
+   * radius.
+   *
+   * @param radius
+   *          the maximum distance in pixels, 0 to find the items covering the
+   *          position
+   * @return the items ordered by increasing distance
+   */
+  public List<Hit> findAll(int pixelX, int pixelY, float radius) {
+    double maximumDistance = radius / camera.getZoom();
+    List<Hit> hits = Lists.newArrayList();
+    List<Integer> items = Lists.newArrayList();
+    for (Layer layer : layers) {
+      SpatialIndex spatialIndex = getSpatialIndex(layer);
+      if (spatialIndex == null) {
+        continue;
+      }
+      Transform position = camera.toFrame(pixelX, pixelY, spatialIndex.getFrame());
+      if (position == null) {
+        continue;
+      }
+      double x = position.getTranslation().getX();
+      double y = position.getTranslation().getY();
+      items.clear();
+      spatialIndex.findWithin(x, y, maximumDistance, items);
+      for (int item : items) {
+        hits.add(new Hit((HitTestLayer) layer, spatialIndex, item, spatialIndex.getDistance(item,
+            x, y)));
+      }
+    }
+    Collections.sort(hits, new Comparator<Hit>() {
+      @Override
+      public int compare(Hit lhs, Hit rhs) {
+        return Double.compare(lhs.getDistance(), rhs.getDistance());
+      }
+    });
+    return hits;
+  }
+
+  /**
+   * @return the {@link SpatialIndex} of the specified layer if it is a visible
+   *         {@link HitTestLayer}
+   */
+  private static SpatialIndex getSpatialIndex(Layer layer) {
+    if (!(layer instanceof HitTestLayer) || !XYOrthographicRenderer.isActive(layer)) {
+      return null;
+    }
+    return ((HitTestLayer) layer).getSpatialIndex();
+  }
+
+  /**
+   * May be called from any thread.
+   *
+   * @return the memory reported by each {@link MemoryAccountingLayer}, in
+   *         layer order
+   */
+  public Map<Layer, MemoryUsage> getLayerMemoryUsage() {
+    Map<Layer, MemoryUsage> memoryUsage = Maps.newLinkedHashMap();
+    for (Layer layer : layers) {
+      if (layer instanceof MemoryAccountingLayer) {
+        memoryUsage.put(layer, ((MemoryAccountingLayer) layer).getMemoryUsage());
+      }
+    }
+    return Collections.unmodifiableMap(memoryUsage);
+  }
+
+  /**
+   * May be called from any thread. Layers that do not implement
+   * {@link MemoryAccountingLayer} are not included.
+   *
+   * @return the sum of the memory reported by all layers
+   */
+  public MemoryUsage getMemoryUsage() {
+    MemoryUsage total = MemoryUsage.NONE;
+    for (MemoryUsage memoryUsage : getLayerMemoryUsage().values()) {
+      total = total.plus(memoryUsage);
+    }
+    return total;
+  }
+
   @Override
   public void onStart(ConnectedNode connectedNode) {
     this.connectedNode = connectedNode;
-    startTransformListener();
+    if (ownsScene) {
+      scene.start(connectedNode);
+    }
     startLayers();
+    if (diagnosticsPublisher != null) {
+      diagnosticsPublisher.start(connectedNode);
+    }
   }
 
-  private void startTransformListener() {
-    final Subscriber<tf2_msgs.TFMessage> tfSubscriber =
-        connectedNode.newSubscriber("tf", tf2_msgs.TFMessage._TYPE);
-    tfSubscriber.addMessageListener(new MessageListener<tf2_msgs.TFMessage>() {
-      @Override
-      public void onNewMessage(tf2_msgs.TFMessage message) {
-        synchronized (mutex) {
-          for (geometry_msgs.TransformStamped transform : message.getTransforms()) {
-            frameTransformTree.update(transform);
-          }
-        }
+  /**
+   * Called by the {@link Scene} after it received transforms. May be called
+   * from any thread.
+   *
+   * @param updatedFrames
+   *          the frames whose transforms were received
+   * @param movedFrames
+   *          the subset of {@code updatedFrames} whose transforms changed
+   */
+  void onTransformsUpdated(List<GraphName> updatedFrames, List<GraphName> movedFrames) {
+    for (GraphName frame : updatedFrames) {
+      camera.getFrameTransformCache().invalidate(frame);
+    }
+    for (GraphName frame : movedFrames) {
+      if (isDrawnFrame(frame)) {
+        requestRender();
+        return;
       }
-    });
-    final Subscriber<tf2_msgs.TFMessage> tfStaticSubscriber =
-        connectedNode.newSubscriber("tf_static", tf2_msgs.TFMessage._TYPE);
-    tfStaticSubscriber.addMessageListener(new MessageListener<tf2_msgs.TFMessage>() {
-      @Override
-      public void onNewMessage(tf2_msgs.TFMessage message) {
-        synchronized (mutex) {
-          for (geometry_msgs.TransformStamped transform : message.getTransforms()) {
-            frameTransformTree.update(transform);
-          }
-        }
+    }
+  }
+
+  /**
+   * @return {@code true} if the specified frame is the camera frame, the frame
+   *         of a {@link TfLayer} or one of their ancestors
+   */
+  private boolean isDrawnFrame(GraphName frame) {
+    if (layers == null) {
+      return false;
+    }
+    if (isAncestorOrSelf(frame, camera.getFrame())) {
+      return true;
+    }
+    for (Layer layer : layers) {
+      if (layer instanceof TfLayer && isAncestorOrSelf(frame, ((TfLayer) layer).getFrame())) {
+        return true;
       }
-    });
+    }
+    return false;
+  }
+
+  private boolean isAncestorOrSelf(GraphName ancestor, GraphName frame) {
+    for (int depth = 0; frame != null && depth < MAXIMUM_FRAME_DEPTH; depth++) {
+      if (frame.equals(ancestor)) {
+        return true;
+      }
+      FrameTransform frameTransform = scene.getFrameTransformTree().lookUp(frame);
+      frame = frameTransform == null ? null : frameTransform.getTargetFrame();
+    }
+    return false;
   }
 
   private void startLayers() {
@@ -172,9 +608,15 @@ public class VisualizationView extends GLSurfaceView implements NodeMain {
 
   @Override
   public void onShutdown(Node node) {
+    if (diagnosticsPublisher != null) {
+      diagnosticsPublisher.shutdown();
+    }
     for (Layer layer : layers) {
       layer.onShutdown(this, node);
     }
+    if (ownsScene) {
+      scene.shutdown();
+    }
     this.connectedNode = null;
   }
 
@@ -28,6 +28,12 @@ import org.ros.rosjava_geometry.Vector3;
 import javax.microedition.khronos.opengles.GL10;
 
 /**
+ * The camera state (transform, frame and viewport) is published as immutable
+ * snapshots through a single volatile reference. Gestures and frame changes
+ * replace the snapshot while rendering and screen to world conversions read
+ * it without locking, so drawing never waits for gesture handling. Each
+ * snapshot caches the inverse of its camera to screen transform.
+ *
  * @author damonkohler@google.com (Damon Kohler)
  * @author moesenle@google.com (Lorenz Moesenlechner)
  */
@@ -48,6 +54,8 @@ public class XYOrthographicCamera {
   private static final Transform ROS_TO_SCREEN_TRANSFORM = Transform.zRotation(Math.PI / 2).scale(
       PIXELS_PER_METER);
 
+  private static final Transform SCREEN_TO_ROS_TRANSFORM = ROS_TO_SCREEN_TRANSFORM.invert();
+
   /**
    * Most the user can zoom in.
    */
@@ -58,54 +66,217 @@ public class XYOrthographicCamera {
    */
   private static final float MAXIMUM_ZOOM_FACTOR = 5.f;
 
-  private final FrameTransformTree frameTransformTree;
-  private final Object mutex;
+  /**
+   * An immutable snapshot of the camera.
+   */
+  private static final class State {
+
+    /**
+     * Transforms from camera frame (our data frame) to the ROS frame (our
+     * target frame). See {@link XYOrthographicCamera#ROS_TO_SCREEN_TRANSFORM}.
+     */
+    final Transform cameraToRosTransform;
+
+    /**
+     * The inverse of the camera to screen transform, used to convert pixel
+     * coordinates.
+     */
+    final Transform screenToCameraTransform;
+
+    /**
+     * The zoom level in pixels per meter.
+     */
+    final double zoom;
+
+    /**
+     * The frame in which to render everything. If this is, for instance,
+     * base_link, the view follows the robot and the robot itself is in the
+     * origin. {@code null} until a frame is set.
+     */
+    final GraphName frame;
+
+    /**
+     * {@code null} until the surface was created.
+     */
+    final Viewport viewport;
+
+    /**
+     * The visible area in the camera {@link #frame}, computed on demand. Racing
+     * threads compute equal results.
+     */
+    volatile BoundingBox visibleBounds;
+
+    State(Transform cameraToRosTransform, GraphName frame, Viewport viewport) {
+      this.cameraToRosTransform = cameraToRosTransform;
+      this.frame = frame;
+      this.viewport = viewport;
+      screenToCameraTransform = ROS_TO_SCREEN_TRANSFORM.multiply(cameraToRosTransform).invert();
+      zoom = cameraToRosTransform.getScale() * PIXELS_PER_METER;
+    }
+
+    State withTransform(Transform cameraToRosTransform) {
+      return new State(cameraToRosTransform, frame, viewport);
+    }
+
+    State withFrame(GraphName frame, Transform cameraToRosTransform) {
+      return new State(cameraToRosTransform, frame, viewport);
+    }
+
+    State withViewport(Viewport viewport) {
+      return new State(cameraToRosTransform, frame, viewport);
+    }
+
+    Vector3 toCameraFrame(int pixelX, int pixelY) {
+      final double centeredX = pixelX - viewport.getWidth() / 2.0d;
+      final double centeredY = viewport.getHeight() / 2.0d - pixelY;
+      return screenToCameraTransform.apply(new Vector3(centeredX, centeredY, 0));
+    }
+  }
 
-  private Viewport viewport;
+  private final FrameTransformTree frameTransformTree;
+  private final FrameTransformCache frameTransformCache;
+  private final TransformMatrix rosToScreenMatrix;
 
   /**
-   * Transforms from camera frame (our data frame) to the ROS frame (our target
-   * frame). See {@link #ROS_TO_SCREEN_TRANSFORM}.
+   * Only used on the GL thread.
    */
-  private Transform cameraToRosTransform;
+  private final TransformMatrix cameraToRosMatrix;
 
   /**
-   * The frame in which to render everything. The default value is /map which
-   * indicates that everything is rendered in map. If this is changed to, for
-   * instance, base_link, the view follows the robot and the robot itself is in
-   * the origin.
+   * Serializes writers so that concurrent gestures do not lose updates.
+   * Readers never take it.
    */
-  private GraphName frame;
+  private final Object mutex;
+
+  private volatile State state;
+
+  private RenderRequestListener renderRequestListener;
 
   public XYOrthographicCamera(FrameTransformTree frameTransformTree) {
     this.frameTransformTree = frameTransformTree;
+    frameTransformCache = new FrameTransformCache(frameTransformTree);
+    rosToScreenMatrix = new TransformMatrix();
+    rosToScreenMatrix.set(ROS_TO_SCREEN_TRANSFORM);
+    cameraToRosMatrix = new TransformMatrix();
     mutex = new Object();
-    resetTransform();
+    state = new State(Transform.identity(), null, null);
   }
 
-  private void resetTransform() {
-    cameraToRosTransform = Transform.identity();
+  /**
+   * @param listener notified whenever the camera moves and the scene needs to
+   *                 be redrawn
+   */
+  public void setRenderRequestListener(RenderRequestListener listener) {
+    renderRequestListener = listener;
   }
 
-  public void apply(GL10 gl) {
-    synchronized (mutex) {
-      OpenGlTransform.apply(gl, ROS_TO_SCREEN_TRANSFORM);
-      OpenGlTransform.apply(gl, cameraToRosTransform);
+  private void requestRender() {
+    RenderRequestListener listener = renderRequestListener;
+    if (listener != null) {
+      listener.onRenderRequested();
     }
   }
 
+  public void apply(GL10 gl) {
+    // The camera transform is only converted to a matrix after it changed.
+    cameraToRosMatrix.set(state.cameraToRosTransform);
+    rosToScreenMatrix.apply(gl);
+    cameraToRosMatrix.apply(gl);
+  }
+
+  /**
+   * Applies the camera transform to a {@link RenderQueue}.
+   */
+  public void apply(RenderQueue queue) {
+    cameraToRosMatrix.set(state.cameraToRosTransform);
+    queue.multiply(rosToScreenMatrix.getMatrix());
+    queue.multiply(cameraToRosMatrix.getMatrix());
+  }
+
   public boolean applyFrameTransform(GL10 gl, GraphName frame) {
-    Preconditions.checkNotNull(frame);
-    if (this.frame != null) {
-      FrameTransform frameTransform = frameTransformTree.transform(frame, this.frame);
-      if (frameTransform != null) {
-        OpenGlTransform.apply(gl, frameTransform.getTransform());
-        return true;
-      }
+    Transform transform = getFrameTransform(frame);
+    if (transform != null) {
+      OpenGlTransform.apply(gl, transform);
+      return true;
     }
     return false;
   }
 
+  /**
+   * @return the {@link Transform} from the specified frame to the camera
+   *         {@link #frame} or {@code null} if it is not available
+   */
+  public Transform getFrameTransform(GraphName frame) {
+    Preconditions.checkNotNull(frame);
+    GraphName cameraFrame = state.frame;
+    if (cameraFrame != null) {
+      return frameTransformCache.get(frame, cameraFrame);
+    }
+    return null;
+  }
+
+  /**
+   * @return the column major matrix of the {@link Transform} from the
+   *         specified frame to the camera {@link #frame}, which must not be
+   *         modified, or {@code null} if it is not available
+   * @see #getFrameTransform(GraphName)
+   */
+  public float[] getFrameTransformMatrix(GraphName frame) {
+    Preconditions.checkNotNull(frame);
+    GraphName cameraFrame = state.frame;
+    if (cameraFrame != null) {
+      return frameTransformCache.getMatrix(frame, cameraFrame);
+    }
+    return null;
+  }
+
+  /**
+   * @return the cache of the transforms looked up by this camera, which must
+   *         be invalidated whenever a transform in the
+   *         {@link FrameTransformTree} is updated
+   */
+  public FrameTransformCache getFrameTransformCache() {
+    return frameTransformCache;
+  }
+
+  /**
+   * @return the area of the xy-plane that is visible in the viewport, in the
+   *         camera {@link #frame}, or {@code null} if the viewport is not known
+   *         yet
+   */
+  public BoundingBox getVisibleBounds() {
+    State state = this.state;
+    BoundingBox visibleBounds = state.visibleBounds;
+    if (visibleBounds == null && state.viewport != null) {
+      int width = state.viewport.getWidth();
+      int height = state.viewport.getHeight();
+      visibleBounds = BoundingBox.fromPoints(state.toCameraFrame(0, 0),
+          state.toCameraFrame(width, 0), state.toCameraFrame(width, height),
+          state.toCameraFrame(0, height));
+      state.visibleBounds = visibleBounds;
+    }
+    return visibleBounds;
+  }
+
+  /**
+   * Layers use this to skip geometry that would not be visible. The result may
+   * be larger than the visible area if the frame is rotated relative to the
+   * camera.
+   *
+   * @param frame
+   *          the frame to return the visible area in
+   * @return the area of the xy-plane of the specified frame that is visible
+   *         in the viewport, or {@code null} if it is not known
+   */
+  public BoundingBox getVisibleBounds(GraphName frame) {
+    BoundingBox bounds = getVisibleBounds();
+    Transform transform = frame != null ? getFrameTransform(frame) : null;
+    if (bounds == null || transform == null) {
+      return null;
+    }
+    return bounds.transform(transform.invert());
+  }
+
   /**
    * Translates the camera.
    *
@@ -114,19 +285,19 @@ public class XYOrthographicCamera {
    */
   public void translate(double deltaX, double deltaY) {
     synchronized (mutex) {
-      cameraToRosTransform =
-          ROS_TO_SCREEN_TRANSFORM.invert().multiply(Transform.translation(deltaX, deltaY, 0))
-              .multiply(getCameraToScreenTransform());
+      State state = this.state;
+      this.state =
+          state.withTransform(SCREEN_TO_ROS_TRANSFORM
+              .multiply(Transform.translation(deltaX, deltaY, 0))
+              .multiply(ROS_TO_SCREEN_TRANSFORM).multiply(state.cameraToRosTransform));
     }
-  }
-
-  private Transform getCameraToScreenTransform() {
-    return ROS_TO_SCREEN_TRANSFORM.multiply(cameraToRosTransform);
+    requestRender();
   }
 
   public Transform getScreenTransform(GraphName targetFrame) {
-    FrameTransform frameTransform = frameTransformTree.transform(frame, targetFrame);
-    return frameTransform.getTransform().multiply(getCameraToScreenTransform().invert());
+    State state = this.state;
+    Transform transform = frameTransformCache.get(state.frame, targetFrame);
+    return transform.multiply(state.screenToCameraTransform);
   }
 
   /**
@@ -138,11 +309,13 @@ public class XYOrthographicCamera {
    */
   public void rotate(double focusX, double focusY, double deltaAngle) {
     synchronized (mutex) {
-      Transform focus = Transform.translation(toCameraFrame((int) focusX, (int) focusY));
-      cameraToRosTransform =
-          cameraToRosTransform.multiply(focus).multiply(Transform.zRotation(deltaAngle))
-              .multiply(focus.invert());
+      State state = this.state;
+      Transform focus = Transform.translation(state.toCameraFrame((int) focusX, (int) focusY));
+      this.state =
+          state.withTransform(state.cameraToRosTransform.multiply(focus)
+              .multiply(Transform.zRotation(deltaAngle)).multiply(focus.invert()));
     }
+    requestRender();
   }
 
   /**
@@ -154,19 +327,22 @@ public class XYOrthographicCamera {
    */
   public void zoom(double focusX, double focusY, double factor) {
     synchronized (mutex) {
-      Transform focus = Transform.translation(toCameraFrame((int) focusX, (int) focusY));
-      double scale = cameraToRosTransform.getScale();
+      State state = this.state;
+      Transform focus = Transform.translation(state.toCameraFrame((int) focusX, (int) focusY));
+      double scale = state.cameraToRosTransform.getScale();
       double zoom = RosMath.clamp(scale * factor, MINIMUM_ZOOM_FACTOR, MAXIMUM_ZOOM_FACTOR) / scale;
-      cameraToRosTransform =
-          cameraToRosTransform.multiply(focus).scale(zoom).multiply(focus.invert());
+      this.state =
+          state.withTransform(state.cameraToRosTransform.multiply(focus).scale(zoom)
+              .multiply(focus.invert()));
     }
+    requestRender();
   }
 
   /**
    * @return the current zoom level in pixels per meter
    */
   public double getZoom() {
-    return cameraToRosTransform.getScale() * PIXELS_PER_METER;
+    return state.zoom;
   }
 
   /**
@@ -174,26 +350,28 @@ public class XYOrthographicCamera {
    * corner of the view) in the camera {@link #frame}
    */
   public Vector3 toCameraFrame(int pixelX, int pixelY) {
-    final double centeredX = pixelX - viewport.getWidth() / 2.0d;
-    final double centeredY = viewport.getHeight() / 2.0d - pixelY;
-    return getCameraToScreenTransform().invert().apply(new Vector3(centeredX, centeredY, 0));
+    return state.toCameraFrame(pixelX, pixelY);
   }
 
   /**
    * @param pixelX the x coordinate on the screen (origin top left) in pixels
    * @param pixelY the y coordinate on the screen (origin top left) in pixels
    * @param frame  the frame to transform the coordinates into (e.g. "map")
-   * @return the pixel coordinate in the specified frame
+   * @return the pixel coordinate in the specified frame or {@code null} if the
+   *         transform to the frame is not available
    */
   public Transform toFrame(final int pixelX, final int pixelY, final GraphName frame) {
-    final Transform translation = Transform.translation(toCameraFrame(pixelX, pixelY));
-    final FrameTransform cameraToFrame =
-        frameTransformTree.transform(this.frame, frame);
-    return cameraToFrame.getTransform().multiply(translation);
+    final State state = this.state;
+    final Transform translation = Transform.translation(state.toCameraFrame(pixelX, pixelY));
+    final Transform cameraToFrame = frameTransformCache.get(state.frame, frame);
+    if (cameraToFrame == null) {
+      return null;
+    }
+    return cameraToFrame.multiply(translation);
   }
 
   public GraphName getFrame() {
-    return frame;
+    return state.frame;
   }
 
   /**
@@ -206,16 +384,19 @@ public class XYOrthographicCamera {
   public void setFrame(GraphName frame) {
     Preconditions.checkNotNull(frame);
     synchronized (mutex) {
-      if (this.frame != null && this.frame != frame) {
-        FrameTransform frameTransform = frameTransformTree.transform(frame, this.frame);
+      State state = this.state;
+      Transform cameraToRosTransform = state.cameraToRosTransform;
+      if (state.frame != null && state.frame != frame) {
+        FrameTransform frameTransform = frameTransformTree.transform(frame, state.frame);
         if (frameTransform != null) {
           // Best effort to prevent the camera from jumping. If we don't have
           // the transform yet, we can't help matters.
           cameraToRosTransform = cameraToRosTransform.multiply(frameTransform.getTransform());
         }
       }
-      this.frame = frame;
+      this.state = state.withFrame(frame, cameraToRosTransform);
     }
+    requestRender();
   }
 
   /**
@@ -233,11 +414,12 @@ public class XYOrthographicCamera {
    */
   public void jumpToFrame(GraphName frame) {
     synchronized (mutex) {
-      this.frame = frame;
-      final double scale = cameraToRosTransform.getScale();
-      resetTransform();
-      cameraToRosTransform = cameraToRosTransform.scale(scale / cameraToRosTransform.getScale());
+      State state = this.state;
+      // Keep the zoom level but discard translation and rotation.
+      this.state =
+          state.withFrame(frame, Transform.identity().scale(state.cameraToRosTransform.getScale()));
     }
+    requestRender();
   }
 
   /**
@@ -249,16 +431,19 @@ public class XYOrthographicCamera {
 
   public void setViewport(Viewport viewport) {
     Preconditions.checkNotNull(viewport);
-    this.viewport = viewport;
+    synchronized (mutex) {
+      state = state.withViewport(viewport);
+    }
   }
 
   public Viewport getViewport() {
+    Viewport viewport = state.viewport;
     Preconditions.checkNotNull(viewport);
     return viewport;
   }
 
   public Transform getCameraToRosTransform() {
     // Transforms are immutable. No need for a defensive copy.
-    return cameraToRosTransform;
+    return state.cameraToRosTransform;
   }
 }
@@ -16,11 +16,18 @@
 
 package org.ros.android.view.visualization;
 
+import com.google.common.collect.Sets;
+
 import android.opengl.GLSurfaceView;
+import org.ros.android.view.visualization.layer.BatchedLayer;
 import org.ros.android.view.visualization.layer.Layer;
 import org.ros.android.view.visualization.layer.TfLayer;
+import org.ros.android.view.visualization.layer.ToggleableLayer;
 import org.ros.namespace.GraphName;
 
+import java.util.List;
+import java.util.Set;
+
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
@@ -34,14 +41,66 @@ public class XYOrthographicRenderer implements GLSurfaceView.Renderer {
 
   private static final Color BACKGROUND_COLOR = new Color(0.87f, 0.87f, 0.87f, 1.f);
 
+  /**
+   * The nominal display refresh interval used to estimate how many frames were
+   * skipped while rendering on demand (i.e. a 60 Hz display).
+   */
+  private static final long FRAME_INTERVAL_NANOS = 1000000000L / 60;
+
   private final VisualizationView view;
+  private final FramePreparer framePreparer;
+  private final StaticLayerCache staticLayerCache;
+
+  /**
+   * The {@link ToggleableLayer}s that were active in the previous frame.
+   */
+  private final Set<Layer> activeLayers;
+
+  /**
+   * Draws the background and the cached layers of the current frame into the
+   * {@link StaticLayerCache}.
+   */
+  private final Runnable staticLayerRenderer;
+
+  /**
+   * The {@link GL10} instance of the current context as returned by the view's
+   * {@link RenderBackend}.
+   */
+  private GL10 backendGl;
+
+  private volatile long renderedFrameCount;
+  private volatile long skippedFrameCount;
+  private long previousFrameTime;
+
+  /**
+   * The state of the frame being drawn, used by {@link #staticLayerRenderer}.
+   */
+  private GL10 frameGl;
+  private FrameStatistics frameFrameStatistics;
+  private int frameStaticLayerCount;
 
   public XYOrthographicRenderer(VisualizationView view) {
     this.view = view;
+    framePreparer = new FramePreparer(view);
+    staticLayerCache = new StaticLayerCache();
+    activeLayers = Sets.newIdentityHashSet();
+    staticLayerRenderer = new Runnable() {
+      @Override
+      public void run() {
+        clear(frameGl);
+        drawLayers(frameGl, XYOrthographicRenderer.this.view.getRenderQueue(), frameFrameStatistics,
+            0, frameStaticLayerCount);
+      }
+    };
   }
 
   @Override
-  public void onSurfaceChanged(GL10 gl, int width, int height) {
+  public void onSurfaceChanged(GL10 contextGl, int width, int height) {
+    GL10 gl = backendGl;
+    if (gl == null) {
+      // The context is about to be recreated.
+      return;
+    }
     Viewport viewport = new Viewport(width, height);
     viewport.apply(gl);
     view.getCamera().setViewport(viewport);
@@ -57,30 +116,194 @@ public class XYOrthographicRenderer implements GLSurfaceView.Renderer {
   }
 
   @Override
-  public void onDrawFrame(GL10 gl) {
+  public void onDrawFrame(GL10 contextGl) {
+    GL10 gl = backendGl;
+    if (gl == null) {
+      return;
+    }
+    countFrame();
+    FrameStatistics frameStatistics = view.getFrameStatistics();
+    boolean timed = frameStatistics.isEnabled();
+    long start = System.nanoTime();
+    long renderRequestCount = view.getRenderRequestCount();
+    RenderQueue queue = view.getRenderQueue();
+    CullingStatistics cullingStatistics = view.getCullingStatistics();
+    cullingStatistics.beginFrame();
+    queue.beginFrame();
+    view.getCamera().apply(queue);
+    List<Layer> layers = view.getLayers();
+    updateActiveLayers(gl, layers);
+    framePreparer.prepare(layers);
+    int staticLayerCount = StaticLayerCache.getStaticLayerCount(layers);
+    if (staticLayerCount > 0) {
+      frameGl = gl;
+      frameFrameStatistics = timed ? frameStatistics : null;
+      frameStaticLayerCount = staticLayerCount;
+      if (!staticLayerCache.draw(gl, view, layers, staticLayerCount, staticLayerRenderer)) {
+        staticLayerCount = 0;
+      }
+      frameGl = null;
+      frameFrameStatistics = null;
+    }
+    if (staticLayerCount == 0) {
+      clear(gl);
+    } else {
+      gl.glLoadIdentity();
+      view.getCamera().apply(gl);
+    }
+    drawLayers(gl, queue, timed ? frameStatistics : null, staticLayerCount, layers.size());
+    queue.endFrame();
+    cullingStatistics.endFrame();
+    long end = System.nanoTime();
+    if (timed) {
+      frameStatistics.recordFrame(end - start, layers);
+    }
+    QualityGovernor qualityGovernor = view.getQualityGovernor();
+    // A render requested during this frame draws the next one right away.
+    qualityGovernor.recordFrame(start, end, view.getRenderRequestCount() != renderRequestCount,
+        view.getLayers());
+    if (qualityGovernor.isReduced()) {
+      view.scheduleQualityRestore();
+    }
+  }
+
+  /**
+   * Clears the current framebuffer and sets up the camera.
+   */
+  private void clear(GL10 gl) {
     gl.glClear(GL10.GL_COLOR_BUFFER_BIT);
     gl.glLoadIdentity();
     view.getCamera().apply(gl);
-    drawLayers(gl);
   }
 
-  private void drawLayers(GL10 gl) {
-    for (Layer layer : view.getLayers()) {
+  /**
+   * @return {@code false} if the specified layer is a {@link ToggleableLayer}
+   *         that is currently not drawn
+   */
+  static boolean isActive(Layer layer) {
+    return !(layer instanceof ToggleableLayer) || ((ToggleableLayer) layer).isActive();
+  }
+
+  /**
+   * Lets layers that became inactive since the previous frame release their
+   * GPU resources.
+   */
+  private void updateActiveLayers(GL10 gl, List<Layer> layers) {
+    for (Layer layer : layers) {
+      if (layer instanceof ToggleableLayer) {
+        if (((ToggleableLayer) layer).isActive()) {
+          activeLayers.add(layer);
+        } else if (activeLayers.remove(layer)) {
+          ((ToggleableLayer) layer).onDeactivated(view, gl);
+        }
+      }
+    }
+  }
+
+  private void countFrame() {
+    long now = System.nanoTime();
+    if (previousFrameTime != 0) {
+      // Every refresh interval that passed without a frame being drawn is a
+      // frame that continuous rendering would have drawn.
+      long intervals = (now - previousFrameTime + FRAME_INTERVAL_NANOS / 2) / FRAME_INTERVAL_NANOS;
+      if (intervals > 1) {
+        skippedFrameCount += intervals - 1;
+      }
+    }
+    previousFrameTime = now;
+    renderedFrameCount++;
+  }
+
+  /**
+   * @return the number of frames that have been drawn
+   */
+  public long getRenderedFrameCount() {
+    return renderedFrameCount;
+  }
+
+  /**
+   * @return the estimated number of display refreshes for which no frame was
+   *         drawn because nothing in the scene changed
+   */
+  public long getSkippedFrameCount() {
+    return skippedFrameCount;
+  }
+
+  /**
+   * @return the {@link FramePreparer} that prepares the layers of each frame
+   *         before they are drawn
+   */
+  public FramePreparer getFramePreparer() {
+    return framePreparer;
+  }
+
+  /**
+   * @return the {@link StaticLayerCache} that the static layers at the bottom
+   *         of the layer stack are drawn from
+   */
+  public StaticLayerCache getStaticLayerCache() {
+    return staticLayerCache;
+  }
+
+  /**
+   * Draws the layers from index {@code first} (inclusive) to {@code last}
+   * (exclusive) and flushes the {@link RenderQueue}.
+   */
+  private void drawLayers(GL10 gl, RenderQueue queue, FrameStatistics frameStatistics, int first,
+      int last) {
+    List<Layer> layers = view.getLayers();
+    for (int i = first; i < last; i++) {
+      Layer layer = layers.get(i);
+      if (!isActive(layer)) {
+        continue;
+      }
+      long start = frameStatistics != null ? System.nanoTime() : 0;
+      // Geometry queued by batched layers may be merged across layers. It has
+      // to be drawn before any layer that draws directly to preserve the
+      // layering.
+      boolean batched = layer instanceof BatchedLayer;
+      if (!batched) {
+        queue.flush(gl);
+      }
       gl.glPushMatrix();
+      queue.pushMatrix();
+      // Batched layers only draw through the queue and leave GL untouched.
+      queue.setMirroringGl(batched);
       if (layer instanceof TfLayer) {
         GraphName layerFrame = ((TfLayer) layer).getFrame();
-        if (layerFrame != null && view.getCamera().applyFrameTransform(gl, layerFrame)) {
+        float[] matrix =
+            layerFrame != null ? view.getCamera().getFrameTransformMatrix(layerFrame) : null;
+        if (matrix != null) {
+          gl.glMultMatrixf(matrix, 0);
+          queue.multiply(matrix);
           layer.draw(view, gl);
         }
       } else {
         layer.draw(view, gl);
       }
+      queue.setMirroringGl(false);
+      queue.popMatrix();
       gl.glPopMatrix();
+      if (!batched) {
+        queue.flush(gl);
+      }
+      if (frameStatistics != null) {
+        frameStatistics.recordLayer(layer, System.nanoTime() - start);
+      }
     }
+    queue.flush(gl);
   }
 
   @Override
-  public void onSurfaceCreated(GL10 gl, EGLConfig config) {
+  public void onSurfaceCreated(GL10 contextGl, EGLConfig config) {
+    GL10 gl = view.getRenderBackend().onSurfaceCreated(contextGl);
+    backendGl = gl;
+    if (gl == null) {
+      // The backend cannot render to this context (e.g. its shaders failed to
+      // compile) and selected the version of the next one.
+      view.recreateContext();
+      return;
+    }
     for (Layer layer : view.getLayers()) {
       layer.onSurfaceCreated(view, gl, config);
     }
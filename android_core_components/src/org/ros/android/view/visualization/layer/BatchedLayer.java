@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization.layer;
+
+import org.ros.android.view.visualization.RenderQueue;
+
+/**
+ * Interface for layers that draw exclusively through the {@link RenderQueue}
+ * of the view and do not transform GL directly.
+ * <p>
+ * Adjacent geometry of consecutive batched layers that shares its GL state is
+ * merged into one draw call. Layers that do not implement this interface act
+ * as barriers to merging.
+ */
+public interface BatchedLayer extends Layer {
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization.layer;
+
+import com.google.common.base.Supplier;
+
+import org.ros.android.view.visualization.MemoryUsage;
+import org.ros.android.view.visualization.PointChunks;
+import org.ros.android.view.visualization.Vertices;
+
+import java.nio.FloatBuffer;
+
+/**
+ * A {@link TripleBuffer} slot of x, y, z vertices and their
+ * {@link PointChunks}. The vertex storage is reused while it is large enough.
+ */
+class ChunkedVertices {
+
+  private final PointChunks chunks;
+
+  private FloatBuffer vertices;
+
+  /**
+   * The size of {@link #vertices} in bytes, read by other threads for memory
+   * accounting.
+   */
+  private volatile long vertexBytes;
+
+  ChunkedVertices(PointChunks chunks) {
+    this.chunks = chunks;
+  }
+
+  /**
+   * @return a {@link Supplier} of slots with chunks of the specified size and
+   *         overlap
+   * @see PointChunks#PointChunks(int, int)
+   */
+  static Supplier<ChunkedVertices> supplier(final int chunkSize, final int overlap) {
+    return new Supplier<ChunkedVertices>() {
+      @Override
+      public ChunkedVertices get() {
+        return new ChunkedVertices(new PointChunks(chunkSize, overlap));
+      }
+    };
+  }
+
+  /**
+   * @param size
+   *          the number of floats to make room for
+   * @return the cleared vertex storage to fill and {@link #flip(int)}
+   */
+  FloatBuffer clear(int size) {
+    if (vertices == null || vertices.capacity() < size) {
+      // The reader never holds on to the vertices of the write slot.
+      if (vertices != null) {
+        Vertices.releaseBuffer(vertices);
+      }
+      vertices = Vertices.acquireBuffer(size);
+      vertexBytes = vertices.capacity() * (Float.SIZE / 8);
+    }
+    vertices.clear();
+    return vertices;
+  }
+
+  /**
+   * Flips the vertices for reading and computes their chunks.
+   *
+   * @param first
+   *          the index of the first vertex to chunk
+   * @see PointChunks#update(FloatBuffer, int)
+   */
+  void flip(int first) {
+    vertices.flip();
+    chunks.update(vertices, first);
+  }
+
+  /**
+   * May be called from any thread.
+   */
+  MemoryUsage getMemoryUsage() {
+    return MemoryUsage.direct(vertexBytes);
+  }
+
+  /**
+   * @return the sum of the memory usage of the specified slots
+   */
+  static MemoryUsage getMemoryUsage(Iterable<? extends ChunkedVertices> slots) {
+    MemoryUsage memoryUsage = MemoryUsage.NONE;
+    for (ChunkedVertices slot : slots) {
+      memoryUsage = memoryUsage.plus(slot.getMemoryUsage());
+    }
+    return memoryUsage;
+  }
+
+  FloatBuffer getVertices() {
+    return vertices;
+  }
+
+  PointChunks getChunks() {
+    return chunks;
+  }
+}
@@ -22,10 +22,12 @@ import org.ros.android.view.visualization.VisualizationView;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.ros.android.view.visualization.MemoryUsage;
 import org.ros.android.view.visualization.TextureBitmap;
 import org.ros.message.MessageListener;
 import org.ros.namespace.GraphName;
 import org.ros.node.ConnectedNode;
+import org.ros.node.Node;
 import org.ros.rosjava_geometry.Transform;
 
 import javax.microedition.khronos.opengles.GL10;
@@ -35,7 +37,7 @@ import javax.microedition.khronos.opengles.GL10;
  * @author moesenle@google.com (Lorenz Moesenlechner)
  */
 public class CompressedOccupancyGridLayer extends SubscriberLayer<nav_msgs.OccupancyGrid> implements
-    TfLayer {
+    TfLayer, StaticLayer, MemoryAccountingLayer {
 
   /**
    * Color of occupied cells in the map.
@@ -54,8 +56,21 @@ public class CompressedOccupancyGridLayer extends SubscriberLayer<nav_msgs.Occup
 
   private final TextureBitmap textureBitmap;
 
-  private boolean ready;
-  private GraphName frame;
+  /**
+   * Serializes updating the {@link #textureBitmap} on the preparation thread
+   * and releasing its storage.
+   */
+  private final Object mutex;
+
+  private volatile boolean ready;
+  private volatile GraphName frame;
+  private volatile boolean shutdown;
+
+  /**
+   * Incremented after each update is published and after the storage is
+   * released. Only written while holding {@link #mutex}.
+   */
+  private volatile long contentVersion;
 
   public CompressedOccupancyGridLayer(String topic) {
     this(GraphName.of(topic));
@@ -64,28 +79,79 @@ public class CompressedOccupancyGridLayer extends SubscriberLayer<nav_msgs.Occup
   public CompressedOccupancyGridLayer(GraphName topic) {
     super(topic, nav_msgs.OccupancyGrid._TYPE);
     textureBitmap = new TextureBitmap();
+    mutex = new Object();
     ready = false;
   }
 
   @Override
   public void draw(VisualizationView view, GL10 gl) {
     if (ready) {
-      textureBitmap.draw(view, gl);
+      if (textureBitmap.isVisible(view.getCamera().getVisibleBounds(frame))) {
+        textureBitmap.draw(view, gl);
+        view.getCullingStatistics().record(1, 0);
+      } else {
+        view.getCullingStatistics().record(0, 1);
+      }
     }
   }
 
+  @Override
+  public void onDeactivated(VisualizationView view, GL10 gl) {
+    textureBitmap.delete(gl);
+    // The map is converted again from the next message once the layer
+    // subscribes again.
+    releaseTexture();
+  }
+
+  @Override
+  public void onShutdown(VisualizationView view, Node node) {
+    super.onShutdown(view, node);
+    shutdown = true;
+    releaseTexture();
+  }
+
+  /**
+   * Returns the storage of the {@link #textureBitmap} to the pool. A running
+   * preparation job that finishes afterwards does not acquire it again.
+   */
+  private void releaseTexture() {
+    synchronized (mutex) {
+      textureBitmap.release();
+      contentVersion++;
+    }
+  }
+
+  @Override
+  public MemoryUsage getMemoryUsage() {
+    return textureBitmap.getMemoryUsage();
+  }
+
   @Override
   public GraphName getFrame() {
     return frame;
   }
 
   @Override
-  public void onStart(VisualizationView view, ConnectedNode connectedNode) {
+  public long getContentVersion() {
+    return contentVersion;
+  }
+
+  @Override
+  public void onStart(final VisualizationView view, ConnectedNode connectedNode) {
     super.onStart(view, connectedNode);
+    shutdown = false;
     getSubscriber().addMessageListener(new MessageListener<nav_msgs.OccupancyGrid>() {
       @Override
-      public void onNewMessage(nav_msgs.OccupancyGrid message) {
-        update(message);
+      public void onNewMessage(final nav_msgs.OccupancyGrid message) {
+        // Decoding a map takes long enough that newer maps may arrive in the
+        // meantime. Only the latest one is converted.
+        view.getPreparationExecutor().submit(CompressedOccupancyGridLayer.this, new Runnable() {
+          @Override
+          public void run() {
+            update(message);
+            view.requestRender();
+          }
+        });
       }
     });
   }
@@ -112,8 +178,15 @@ public class CompressedOccupancyGridLayer extends SubscriberLayer<nav_msgs.Occup
     }
     float resolution = message.getInfo().getResolution();
     Transform origin = Transform.fromPoseMessage(message.getInfo().getOrigin());
-    textureBitmap.updateFromPixelArray(pixels, stride, resolution, origin, COLOR_UNKNOWN);
-    frame = GraphName.of(message.getHeader().getFrameId());
-    ready = true;
+    synchronized (mutex) {
+      if (shutdown || !isActive()) {
+        // The storage was released while the map was decoded.
+        return;
+      }
+      textureBitmap.updateFromPixelArray(pixels, stride, resolution, origin, COLOR_UNKNOWN);
+      frame = GraphName.of(message.getHeader().getFrameId());
+      ready = true;
+      contentVersion++;
+    }
   }
 }
@@ -60,4 +60,9 @@ public abstract class DefaultLayer implements Layer {
   @Override
   public void onSurfaceCreated(VisualizationView view, GL10 gl, EGLConfig config) {
   }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName();
+  }
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization.layer;
+
+import org.ros.android.view.visualization.Color;
+import org.ros.android.view.visualization.FrameStatistics;
+import org.ros.android.view.visualization.FrameTimeHistogram;
+import org.ros.android.view.visualization.Vertices;
+import org.ros.android.view.visualization.Viewport;
+import org.ros.android.view.visualization.VisualizationView;
+import org.ros.node.ConnectedNode;
+import org.ros.node.Node;
+
+import java.nio.FloatBuffer;
+
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * Draws a compact overlay of the {@link FrameStatistics} of a
+ * {@link VisualizationView} in the top left corner of the screen.
+ * <p>
+ * The first row shows the total frame time, each following row the draw time
+ * of one {@link Layer}. Bars show the 95th percentile relative to the frame
+ * budget, which is marked by a vertical line. Bars turn yellow when the 99th
+ * percentile exceeds half the budget and red when it exceeds the budget.
+ * Adding this layer enables the {@link FrameStatistics} of the view.
+ */
+public class FrameStatisticsLayer extends DefaultLayer {
+
+  private static final Color BACKGROUND_COLOR = Color.fromHexAndAlpha("000000", 0.3f);
+  private static final Color BUDGET_COLOR = Color.fromHexAndAlpha("ffffff", 0.8f);
+  private static final Color GOOD_COLOR = Color.fromHexAndAlpha("4caf50", 0.8f);
+  private static final Color WARNING_COLOR = Color.fromHexAndAlpha("ffc107", 0.8f);
+  private static final Color BAD_COLOR = Color.fromHexAndAlpha("f44336", 0.8f);
+
+  /**
+   * Margin to the edge of the screen in pixels.
+   */
+  private static final float MARGIN = 10.f;
+
+  private static final float ROW_HEIGHT = 8.f;
+  private static final float ROW_SPACING = 3.f;
+
+  /**
+   * The width of the frame budget in pixels. Bars are clipped at twice the
+   * budget.
+   */
+  private static final float BUDGET_WIDTH = 100.f;
+
+  private final long frameBudgetNanos;
+  private final FloatBuffer quad;
+
+  public FrameStatisticsLayer() {
+    this(60);
+  }
+
+  /**
+   * @param targetFramesPerSecond
+   *          the frame rate that determines the frame budget
+   */
+  public FrameStatisticsLayer(int targetFramesPerSecond) {
+    frameBudgetNanos = 1000000000L / targetFramesPerSecond;
+    quad = Vertices.allocateBuffer(4 * 3);
+  }
+
+  @Override
+  public void onStart(VisualizationView view, ConnectedNode connectedNode) {
+    view.getFrameStatistics().setEnabled(true);
+  }
+
+  @Override
+  public void onShutdown(VisualizationView view, Node node) {
+    view.getFrameStatistics().setEnabled(false);
+  }
+
+  @Override
+  public void draw(VisualizationView view, GL10 gl) {
+    FrameStatistics frameStatistics = view.getFrameStatistics();
+    if (!frameStatistics.isEnabled()) {
+      return;
+    }
+    Viewport viewport = view.getCamera().getViewport();
+    // Draw in pixel coordinates independent of the camera.
+    gl.glLoadIdentity();
+    float left = -viewport.getWidth() / 2.f + MARGIN;
+    float top = viewport.getHeight() / 2.f - MARGIN;
+    drawRow(gl, left, top, frameStatistics.getFrameTimes());
+    for (Layer layer : view.getLayers()) {
+      FrameTimeHistogram histogram = frameStatistics.getLayerTimes(layer);
+      if (layer != this && histogram != null) {
+        top -= ROW_HEIGHT + ROW_SPACING;
+        drawRow(gl, left, top, histogram);
+      }
+    }
+  }
+
+  private void drawRow(GL10 gl, float left, float top, FrameTimeHistogram histogram) {
+    float bottom = top - ROW_HEIGHT;
+    drawQuad(gl, left, top, left + 2 * BUDGET_WIDTH, bottom, BACKGROUND_COLOR);
+    float width = Math.min(2.f, histogram.getPercentile(95) / (float) frameBudgetNanos);
+    long p99 = histogram.getPercentile(99);
+    Color color;
+    if (p99 > frameBudgetNanos) {
+      color = BAD_COLOR;
+    } else if (p99 > frameBudgetNanos / 2) {
+      color = WARNING_COLOR;
+    } else {
+      color = GOOD_COLOR;
+    }
+    drawQuad(gl, left, top, left + width * BUDGET_WIDTH, bottom, color);
+    drawQuad(gl, left + BUDGET_WIDTH, top, left + BUDGET_WIDTH + 1.f, bottom, BUDGET_COLOR);
+  }
+
+  private void drawQuad(GL10 gl, float left, float top, float right, float bottom, Color color) {
+    quad.clear();
+    quad.put(left).put(bottom).put(0.f);
+    quad.put(right).put(bottom).put(0.f);
+    quad.put(right).put(top).put(0.f);
+    quad.put(left).put(top).put(0.f);
+    quad.flip();
+    Vertices.drawTriangleFan(gl, quad, color);
+  }
+}
@@ -16,31 +16,65 @@
 
 package org.ros.android.view.visualization.layer;
 
+import org.ros.android.view.visualization.BoundingBox;
 import org.ros.android.view.visualization.Color;
+import org.ros.android.view.visualization.DrawRanges;
+import org.ros.android.view.visualization.FrameContext;
+import org.ros.android.view.visualization.MemoryUsage;
+import org.ros.android.view.visualization.PointChunks;
+import org.ros.android.view.visualization.SpatialIndex;
+import org.ros.android.view.visualization.VertexBuffer;
 import org.ros.android.view.visualization.Vertices;
 import org.ros.android.view.visualization.VisualizationView;
-import org.ros.android.view.visualization.XYOrthographicCamera;
 import org.ros.message.MessageListener;
 import org.ros.namespace.GraphName;
 import org.ros.node.ConnectedNode;
 
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.nio.FloatBuffer;
 
 import javax.microedition.khronos.opengles.GL10;
 
 /**
  * @author damonkohler@google.com (Damon Kohler)
  */
-public class GridCellsLayer extends SubscriberLayer<nav_msgs.GridCells> implements TfLayer {
+public class GridCellsLayer extends SubscriberLayer<nav_msgs.GridCells> implements TfLayer,
+    StaticLayer, PreparedLayer, MemoryAccountingLayer, HitTestLayer {
+
+  /**
+   * Vertices of the cell centers and the size of the cells.
+   */
+  private static final class Cells extends ChunkedVertices {
+
+    private float cellSize;
+
+    Cells() {
+      super(new PointChunks());
+    }
+  }
 
   private final Color color;
-  private final Lock lock;
+  private final TripleBuffer<Cells> cells;
+  private final VertexBuffer vertexBuffer;
+
+  /**
+   * The cells to draw and their size in pixels, computed by
+   * {@link #prepare(FrameContext)}.
+   */
+  private final DrawRanges ranges;
+  private float pointSize;
+
+  private volatile GraphName frame;
+
+  /**
+   * The index of the cells last published.
+   */
+  private volatile SpatialIndex spatialIndex;
 
-  private GraphName frame;
-  private XYOrthographicCamera camera;
-  private boolean ready;
-  private nav_msgs.GridCells message;
+  /**
+   * Incremented after each update is published. Only written by the
+   * subscriber thread.
+   */
+  private volatile long contentVersion;
 
   public GridCellsLayer(String topicName, Color color) {
     this(GraphName.of(topicName), color);
@@ -50,34 +84,39 @@ public class GridCellsLayer extends SubscriberLayer<nav_msgs.GridCells> implemen
     super(topicName, "nav_msgs/GridCells");
     this.color = color;
     frame = null;
-    lock = new ReentrantLock();
-    ready = false;
+    cells = new TripleBuffer<Cells>(new Cells(), new Cells(), new Cells());
+    vertexBuffer = new VertexBuffer();
+    ranges = new DrawRanges();
+  }
+
+  @Override
+  public void prepare(FrameContext context) {
+    if (cells.update()) {
+      // Uploaded to the GPU once on the next draw.
+      vertexBuffer.update(cells.getReadBuffer().getVertices());
+    }
+    if (!cells.hasReadBuffer()) {
+      return;
+    }
+    Cells current = cells.getReadBuffer();
+    pointSize = (float) (current.cellSize * context.getZoom());
+    BoundingBox visible = context.getVisibleBounds(frame);
+    if (visible != null) {
+      visible = visible.expand(current.cellSize / 2);
+    }
+    current.getChunks().cull(visible, ranges);
   }
 
   @Override
   public void draw(VisualizationView view, GL10 gl) {
-    if (!ready) {
+    if (!cells.hasReadBuffer()) {
       return;
     }
     super.draw(view, gl);
-    lock.lock();
-    float pointSize =
-        (float) (Math.max(message.getCellWidth(), message.getCellHeight()) * camera.getZoom());
-    float[] vertices = new float[3 * message.getCells().size()];
-    int i = 0;
-    for (geometry_msgs.Point cell : message.getCells()) {
-      vertices[i] = (float) cell.getX();
-      vertices[i + 1] = (float) cell.getY();
-      vertices[i + 2] = 0.0f;
-      i += 3;
-    }
-    gl.glEnableClientState(GL10.GL_VERTEX_ARRAY);
-    gl.glVertexPointer(3, GL10.GL_FLOAT, 0, Vertices.toFloatBuffer(vertices));
-    color.apply(gl);
-    gl.glPointSize(pointSize);
-    gl.glDrawArrays(GL10.GL_POINTS, 0, message.getCells().size());
-    gl.glDisableClientState(GL10.GL_VERTEX_ARRAY);
-    lock.unlock();
+    Vertices.drawPoints(gl, vertexBuffer, ranges, color, pointSize);
+    int culled = ranges.getCulledCount();
+    view.getCullingStatistics().record(
+        cells.getReadBuffer().getChunks().getVertexCount() - culled, culled);
   }
 
   @Override
@@ -88,18 +127,53 @@ public class GridCellsLayer extends SubscriberLayer<nav_msgs.GridCells> implemen
       public void onNewMessage(nav_msgs.GridCells data) {
         frame = GraphName.of(data.getHeader().getFrameId());
         if (view.getFrameTransformTree().lookUp(frame) != null) {
-          if (lock.tryLock()) {
-            message = data;
-            ready = true;
-            lock.unlock();
-          }
+          Cells slot = cells.getWriteBuffer();
+          toVertices(data, slot.clear(3 * data.getCells().size()));
+          slot.flip(0);
+          slot.cellSize = Math.max(data.getCellWidth(), data.getCellHeight());
+          spatialIndex =
+              SpatialIndex.fromVertices(frame, slot.getVertices(), 0, slot.cellSize / 2);
+          cells.publish();
+          contentVersion++;
+          view.requestRender();
         }
       }
     });
   }
 
+  private static void toVertices(nav_msgs.GridCells data, FloatBuffer vertices) {
+    for (geometry_msgs.Point cell : data.getCells()) {
+      vertices.put((float) cell.getX());
+      vertices.put((float) cell.getY());
+      vertices.put(0.0f);
+    }
+  }
+
+  @Override
+  public void onDeactivated(VisualizationView view, GL10 gl) {
+    vertexBuffer.delete(gl);
+  }
+
+  @Override
+  public MemoryUsage getMemoryUsage() {
+    MemoryUsage memoryUsage =
+        ChunkedVertices.getMemoryUsage(cells.getSlots()).plus(vertexBuffer.getMemoryUsage());
+    SpatialIndex spatialIndex = this.spatialIndex;
+    return spatialIndex == null ? memoryUsage : memoryUsage.plus(spatialIndex.getMemoryUsage());
+  }
+
   @Override
   public GraphName getFrame() {
     return frame;
   }
+
+  @Override
+  public long getContentVersion() {
+    return contentVersion;
+  }
+
+  @Override
+  public SpatialIndex getSpatialIndex() {
+    return spatialIndex;
+  }
 }
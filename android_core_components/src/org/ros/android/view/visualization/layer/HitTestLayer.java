@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization.layer;
+
+import org.ros.android.view.visualization.SpatialIndex;
+import org.ros.android.view.visualization.VisualizationView;
+
+/**
+ * Interface for layers whose items can be found by their position, e.g. to
+ * determine what is under a finger. See
+ * {@link VisualizationView#findNearest(int, int, float)}.
+ */
+public interface HitTestLayer extends Layer {
+
+  /**
+   * May be called from any thread.
+   * 
+   * @return the index of the most recently received geometry or {@code null}
+   *         if there is none
+   */
+  SpatialIndex getSpatialIndex();
+}
@@ -16,7 +16,14 @@
 
 package org.ros.android.view.visualization.layer;
 
+import org.ros.android.view.visualization.BoundingBox;
 import org.ros.android.view.visualization.Color;
+import org.ros.android.view.visualization.DrawRanges;
+import org.ros.android.view.visualization.FrameContext;
+import org.ros.android.view.visualization.MemoryUsage;
+import org.ros.android.view.visualization.PointChunks;
+import org.ros.android.view.visualization.SpatialIndex;
+import org.ros.android.view.visualization.VertexBuffer;
 import org.ros.android.view.visualization.Vertices;
 import org.ros.android.view.visualization.VisualizationView;
 import org.ros.message.MessageListener;
@@ -36,18 +43,35 @@ import sensor_msgs.LaserScan;
  * @author munjaldesai@google.com (Munjal Desai)
  * @author damonkohler@google.com (Damon Kohler)
  */
-public class LaserScanLayer extends SubscriberLayer<sensor_msgs.LaserScan> implements TfLayer {
+public class LaserScanLayer extends SubscriberLayer<sensor_msgs.LaserScan> implements TfLayer,
+    LevelOfDetailLayer, PreparedLayer, MemoryAccountingLayer, HitTestLayer {
 
   private static final Color FREE_SPACE_COLOR = Color.fromHexAndAlpha("377dfa", 0.1f);
   private static final Color OCCUPIED_SPACE_COLOR = Color.fromHexAndAlpha("377dfa", 0.3f);
   private static final float LASER_SCAN_POINT_SIZE = 10.f;
+
+  /**
+   * Only every this many ranges are drawn at full detail.
+   */
   private static final int LASER_SCAN_STRIDE = 15;
 
-  private final Object mutex;
+  private final TripleBuffer<ChunkedVertices> vertices;
+  private final VertexBuffer vertexBuffer;
+
+  /**
+   * The points to draw, computed by {@link #prepare(FrameContext)}.
+   */
+  private final DrawRanges ranges;
+  private boolean fanVisible;
 
-  private GraphName frame;
-  private FloatBuffer vertexFrontBuffer;
-  private FloatBuffer vertexBackBuffer;
+  private volatile GraphName frame;
+
+  /**
+   * The index of the vertices last published, excluding the triangle fan
+   * origin.
+   */
+  private volatile SpatialIndex spatialIndex;
+  private volatile int stride;
 
   public LaserScanLayer(String topicName) {
     this(GraphName.of(topicName));
@@ -55,49 +79,79 @@ public class LaserScanLayer extends SubscriberLayer<sensor_msgs.LaserScan> imple
 
   public LaserScanLayer(GraphName topicName) {
     super(topicName, sensor_msgs.LaserScan._TYPE);
-    mutex = new Object();
+    vertices =
+        TripleBuffer.newInstance(ChunkedVertices.supplier(PointChunks.DEFAULT_CHUNK_SIZE, 0));
+    vertexBuffer = new VertexBuffer();
+    ranges = new DrawRanges();
+    stride = LASER_SCAN_STRIDE;
+  }
+
+  @Override
+  public void setLevelOfDetail(float levelOfDetail) {
+    stride = (int) Math.ceil(LASER_SCAN_STRIDE / levelOfDetail);
+  }
+
+  @Override
+  public void prepare(FrameContext context) {
+    if (vertices.update()) {
+      // Uploaded to the GPU once on the next draw.
+      vertexBuffer.update(vertices.getReadBuffer().getVertices());
+    }
+    if (!vertices.hasReadBuffer()) {
+      return;
+    }
+    PointChunks chunks = vertices.getReadBuffer().getChunks();
+    BoundingBox visible = context.getVisibleBounds(frame);
+    if (visible != null) {
+      // Points are drawn with a size in pixels around their center.
+      visible = visible.expand(LASER_SCAN_POINT_SIZE / 2 / context.getZoom());
+    }
+    fanVisible = chunks.isVisible(visible);
+    if (fanVisible) {
+      chunks.cull(visible, ranges);
+    }
   }
 
   @Override
   public void draw(VisualizationView view, GL10 gl) {
-    if (vertexFrontBuffer != null) {
-      synchronized (mutex) {
-        Vertices.drawTriangleFan(gl, vertexFrontBuffer, FREE_SPACE_COLOR);
-        // Drop the first point which is required for the triangle fan but is
-        // not a range reading.
-        FloatBuffer pointVertices = vertexFrontBuffer.duplicate();
-        pointVertices.position(3);
-        Vertices.drawPoints(gl, pointVertices, OCCUPIED_SPACE_COLOR, LASER_SCAN_POINT_SIZE);
-      }
+    if (!vertices.hasReadBuffer()) {
+      return;
+    }
+    int pointCount = vertices.getReadBuffer().getChunks().getVertexCount();
+    int culled = pointCount;
+    if (fanVisible) {
+      Vertices.drawTriangleFan(gl, vertexBuffer, FREE_SPACE_COLOR);
+      // Drop the first point which is required for the triangle fan but is
+      // not a range reading.
+      Vertices.drawPoints(gl, vertexBuffer, ranges, OCCUPIED_SPACE_COLOR, LASER_SCAN_POINT_SIZE);
+      culled = ranges.getCulledCount();
     }
+    view.getCullingStatistics().record(pointCount - culled, culled);
   }
 
   @Override
-  public void onStart(VisualizationView view, ConnectedNode connectedNode) {
+  public void onStart(final VisualizationView view, ConnectedNode connectedNode) {
     super.onStart(view, connectedNode);
     Subscriber<LaserScan> subscriber = getSubscriber();
     subscriber.addMessageListener(new MessageListener<LaserScan>() {
       @Override
       public void onNewMessage(LaserScan laserScan) {
         frame = GraphName.of(laserScan.getHeader().getFrameId());
-        updateVertexBuffer(laserScan, LASER_SCAN_STRIDE);
+        updateVertexBuffer(laserScan, stride);
+        view.requestRender();
       }
     });
   }
 
   private void updateVertexBuffer(LaserScan laserScan, int stride) {
-    int vertexCount = 0;
     float[] ranges = laserScan.getRanges();
     int size = ((ranges.length / stride) + 2) * 3;
-    if (vertexBackBuffer == null || vertexBackBuffer.capacity() < size) {
-      vertexBackBuffer = Vertices.allocateBuffer(size);
-    }
-    vertexBackBuffer.clear();
+    ChunkedVertices slot = vertices.getWriteBuffer();
+    FloatBuffer vertexBackBuffer = slot.clear(size);
     // We start with the origin of the triangle fan.
     vertexBackBuffer.put(0);
     vertexBackBuffer.put(0);
     vertexBackBuffer.put(0);
-    vertexCount++;
     float minimumRange = laserScan.getRangeMin();
     float maximumRange = laserScan.getRangeMax();
     float angle = laserScan.getAngleMin();
@@ -113,21 +167,34 @@ public class LaserScanLayer extends SubscriberLayer<sensor_msgs.LaserScan> imple
         vertexBackBuffer.put((float) (range * Math.cos(angle)));
         vertexBackBuffer.put((float) (range * Math.sin(angle)));
         vertexBackBuffer.put(0);
-        vertexCount++;
       }
       angle += angleIncrement * stride;
     }
-    vertexBackBuffer.position(0);
-    vertexBackBuffer.limit(vertexCount * 3);
-    synchronized (mutex) {
-      FloatBuffer tmp = vertexFrontBuffer;
-      vertexFrontBuffer = vertexBackBuffer;
-      vertexBackBuffer = tmp;
-    }
+    slot.flip(1);
+    spatialIndex = SpatialIndex.fromVertices(frame, slot.getVertices(), 1, 0);
+    vertices.publish();
+  }
+
+  @Override
+  public void onDeactivated(VisualizationView view, GL10 gl) {
+    vertexBuffer.delete(gl);
+  }
+
+  @Override
+  public MemoryUsage getMemoryUsage() {
+    MemoryUsage memoryUsage =
+        ChunkedVertices.getMemoryUsage(vertices.getSlots()).plus(vertexBuffer.getMemoryUsage());
+    SpatialIndex spatialIndex = this.spatialIndex;
+    return spatialIndex == null ? memoryUsage : memoryUsage.plus(spatialIndex.getMemoryUsage());
   }
 
   @Override
   public GraphName getFrame() {
     return frame;
   }
+
+  @Override
+  public SpatialIndex getSpatialIndex() {
+    return spatialIndex;
+  }
 }
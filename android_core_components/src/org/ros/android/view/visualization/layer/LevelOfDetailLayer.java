@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization.layer;
+
+import org.ros.android.view.visualization.QualityGovernor;
+
+/**
+ * Interface for layers that can trade detail for rendering time. The
+ * {@link QualityGovernor} of the view lowers the level of detail when frames
+ * take too long and raises it again when there is headroom.
+ */
+public interface LevelOfDetailLayer extends Layer {
+
+  /**
+   * Called on the GL thread whenever the level of detail changes. Layers
+   * usually apply it when they convert their next message.
+   *
+   * @param levelOfDetail
+   *          1 for full detail down to
+   *          {@link QualityGovernor#MINIMUM_LEVEL_OF_DETAIL}
+   */
+  void setLevelOfDetail(float levelOfDetail);
+}
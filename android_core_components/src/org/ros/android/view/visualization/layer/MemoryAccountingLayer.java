@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization.layer;
+
+import org.ros.android.view.visualization.MemoryUsage;
+
+/**
+ * Interface for layers that report the memory they hold, e.g. vertex data,
+ * texture pixels and the textures uploaded from them.
+ *
+ * @see org.ros.android.view.visualization.VisualizationView#getMemoryUsage()
+ */
+public interface MemoryAccountingLayer extends Layer {
+
+  /**
+   * May be called from any thread. The result is an estimate and may lag
+   * behind concurrent updates.
+   *
+   * @return the memory currently held by this layer
+   */
+  MemoryUsage getMemoryUsage();
+}
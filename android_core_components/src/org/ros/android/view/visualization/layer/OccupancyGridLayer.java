@@ -17,61 +17,66 @@
 package org.ros.android.view.visualization.layer;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
 import com.google.common.collect.Lists;
 
+import android.util.Log;
+
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.ros.android.view.visualization.BoundingBox;
+import org.ros.android.view.visualization.FrameContext;
+import org.ros.android.view.visualization.MemoryUsage;
+import org.ros.android.view.visualization.ParallelLoop;
 import org.ros.android.view.visualization.TextureBitmap;
 import org.ros.android.view.visualization.VisualizationView;
-import org.ros.internal.message.MessageBuffers;
 import org.ros.message.MessageListener;
+import org.ros.message.Time;
 import org.ros.namespace.GraphName;
 import org.ros.node.ConnectedNode;
+import org.ros.node.Node;
 import org.ros.rosjava_geometry.Quaternion;
 import org.ros.rosjava_geometry.Transform;
 import org.ros.rosjava_geometry.Vector3;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.microedition.khronos.opengles.GL10;
 
 /**
  * @author moesenle@google.com (Lorenz Moesenlechner)
  */
-public class OccupancyGridLayer extends SubscriberLayer<nav_msgs.OccupancyGrid> implements TfLayer {
+public class OccupancyGridLayer extends SubscriberLayer<nav_msgs.OccupancyGrid> implements TfLayer,
+    LevelOfDetailLayer, StaticLayer, PreparedLayer, MemoryAccountingLayer {
 
   /**
-   * Color of occupied cells in the map.
-   */
-  private static final int COLOR_OCCUPIED = 0xff111111;
-
-  /**
-   * Color of free cells in the map.
+   * Color of transparent cells in the map.
    */
-  private static final int COLOR_FREE = 0xffffffff;
+  private static final int COLOR_TRANSPARENT = 0x00000000;
 
   /**
-   * Color of unknown cells in the map.
+   * The number of patches rosjava buffers before it drops the oldest.
    */
-  private static final int COLOR_UNKNOWN = 0xffdddddd;
+  private static final int UPDATE_QUEUE_LIMIT = 64;
 
-  /**
-   * Color of transparent cells in the map.
-   */
-  private static final int COLOR_TRANSPARENT = 0x00000000;
+  private static final String TAG = "OccupancyGridLayer";
 
   /**
    * In order to draw maps with a size outside the maximum size of a texture,
    * we split the map into multiple tiles and draw one texture per tile.
    */
-  private class Tile {
+  private static final class Tile {
 
-    private final ChannelBuffer pixelBuffer = MessageBuffers.dynamicBuffer();
-    private final TextureBitmap textureBitmap = new TextureBitmap();
+    private final TextureBitmap textureBitmap;
 
     /**
-     * Resolution of the {@link nav_msgs.OccupancyGrid}.
+     * Size of a texture pixel in meters.
      */
-    private final float resolution;
+    private float resolution;
 
     /**
      * Points to the top left of the {@link Tile}.
@@ -84,35 +89,61 @@ public class OccupancyGridLayer extends SubscriberLayer<nav_msgs.OccupancyGrid>
     private int stride;
 
     /**
-     * {@code true} when the {@link Tile} is ready to be drawn.
+     * The fingerprint of the cells the tile was last converted from.
      */
-    private boolean ready;
+    private long fingerprint;
+    private boolean converted;
 
-    public Tile(float resolution) {
-      this.resolution = resolution;
-      ready = false;
+    public Tile(TextureBitmap textureBitmap) {
+      this.textureBitmap = textureBitmap;
     }
 
     public void draw(VisualizationView view, GL10 gl) {
-      if (ready) {
-        textureBitmap.draw(view, gl);
-      }
+      // Draws nothing until the first update was published.
+      textureBitmap.draw(view, gl);
     }
 
-    public void clearHandle() {
-      textureBitmap.clearHandle();
+    public boolean isVisible(BoundingBox visible) {
+      return textureBitmap.isVisible(visible);
     }
 
-    public void writeInt(int value) {
-      pixelBuffer.writeInt(value);
+    public void delete(GL10 gl) {
+      textureBitmap.delete(gl);
     }
 
-    public void update() {
+    /**
+     * @return {@code true} if a context that is alive still holds the tile's
+     *         texture
+     */
+    public boolean isUploaded() {
+      return textureBitmap.isUploaded();
+    }
+
+    /**
+     * Replaces all pixels of the tile with the specified rows of
+     * {@link #stride} pixels each.
+     */
+    public void update(int[] pixels, int height) {
       Preconditions.checkNotNull(origin);
-      Preconditions.checkNotNull(stride);
-      textureBitmap.updateFromPixelBuffer(pixelBuffer, stride, resolution, origin, COLOR_TRANSPARENT);
-      pixelBuffer.clear();
-      ready = true;
+      textureBitmap.updateFromPixelArray(pixels, 0, stride, stride, height, resolution, origin,
+          COLOR_TRANSPARENT);
+    }
+
+    public MemoryUsage getMemoryUsage() {
+      return textureBitmap.getMemoryUsage();
+    }
+
+    /**
+     * Returns the tile's storage for other textures to use. Must be called by
+     * the thread that converts the tile. Views that still draw the tile draw
+     * nothing afterwards.
+     */
+    public void release() {
+      textureBitmap.release();
+    }
+
+    public void setResolution(float resolution) {
+      this.resolution = resolution;
     }
 
     public void setOrigin(Transform origin) {
@@ -122,108 +153,874 @@ public class OccupancyGridLayer extends SubscriberLayer<nav_msgs.OccupancyGrid>
     public void setStride(int stride) {
       this.stride = stride;
     }
+
+    /**
+     * Replaces a rectangle of the tile's pixels.
+     */
+    public void updateRegion(int[] pixels, int left, int top, int width, int height) {
+      textureBitmap.updateRegion(pixels, left, top, width, height);
+      // The tile no longer matches the cells of any map.
+      converted = false;
+    }
+
+    /**
+     * @return {@code true} if the tile has to be converted because its cells
+     *         changed since it was last converted
+     */
+    public boolean setFingerprint(long fingerprint) {
+      boolean changed = !converted || fingerprint != this.fingerprint;
+      this.fingerprint = fingerprint;
+      converted = true;
+      return changed;
+    }
+  }
+
+  /**
+   * A copy of the cells of a map that patches are applied to.
+   */
+  private static final class Grid {
+
+    private final nav_msgs.MapMetaData info;
+    private final String frameId;
+    private final int width;
+    private final int height;
+    private final byte[] cells;
+
+    /**
+     * Wraps {@link #cells} to read eight cells at once.
+     */
+    private final ByteBuffer cellBuffer;
+
+    /**
+     * The stamp of the map or of the most recently applied patch.
+     */
+    private Time stamp;
+
+    /**
+     * The sequence number of the most recently applied patch, 0 if none.
+     */
+    private int sequence;
+
+    /**
+     * {@code false} once a patch could not be applied. Patches are ignored
+     * until the next map.
+     */
+    private boolean consistent;
+
+    /**
+     * @param previous
+     *          the previous grid whose storage is reused if it has the same
+     *          size, or {@code null}
+     */
+    Grid(nav_msgs.OccupancyGrid message, Grid previous) {
+      info = message.getInfo();
+      frameId = message.getHeader().getFrameId();
+      width = info.getWidth();
+      height = info.getHeight();
+      cells =
+          previous != null && previous.cells.length == width * height ? previous.cells
+              : new byte[width * height];
+      cellBuffer = ByteBuffer.wrap(cells);
+      ChannelBuffer data = message.getData();
+      int size = data.readableBytes();
+      Preconditions.checkState(size <= width * height);
+      data.getBytes(data.readerIndex(), cells, 0, size);
+      // Missing cells are unknown.
+      Arrays.fill(cells, size, cells.length, (byte) -1);
+      stamp = message.getHeader().getStamp();
+      consistent = true;
+    }
+  }
+
+  /**
+   * A map and its tiles, shared by the layers of all views of a
+   * {@link org.ros.android.view.visualization.Scene} that show the same
+   * topics. The map is converted once for all of them and the views draw the
+   * same textures, which are uploaded once per group of contexts that share
+   * objects. The views also share the palette and draw the finest level of
+   * detail any of them asks for.
+   * <p>
+   * Messages are taken from one active layer at a time. The preparation jobs
+   * of the layers run on the executors of their views and are serialized by
+   * the monitor of the map.
+   */
+  static final class SharedMap {
+
+    /**
+     * The layers showing the map, in the order they were started.
+     */
+    private final List<OccupancyGridLayer> layers;
+
+    private final List<Tile> tiles;
+
+    /**
+     * Creates the texture of each new tile.
+     */
+    private final Supplier<TextureBitmap> textureSupplier;
+
+    /**
+     * Tiles that were removed from {@link #tiles} when the map shrank. Their
+     * storage is released by the converting thread right away. Each view
+     * deletes the texture of its context after its next frame, and the tile
+     * is dropped once no context holds its texture anymore.
+     */
+    private final Queue<Tile> retiredTiles;
+
+    private volatile boolean ready;
+    private volatile GraphName frame;
+
+    /**
+     * The number of {@link #tiles} that were converted for the current map.
+     */
+    private volatile int tileCount;
+
+    /**
+     * The number of map cells per texture pixel in each dimension, the finest
+     * level of detail of the active layers.
+     */
+    private volatile int cellsPerPixel;
+
+    /**
+     * Maps and patches that have not been processed yet, in the order they
+     * arrived.
+     */
+    private final Queue<Object> pending;
+
+    /**
+     * The most recent map with the patches received since applied, kept to
+     * convert it again when the level of detail changes. Only written by
+     * {@link #process()} and {@link #release()}.
+     */
+    private volatile Grid grid;
+
+    /**
+     * The level of detail {@link #tiles} were converted at and scratch space
+     * for patches. Only accessed by {@link #process()} and {@link #release()}.
+     */
+    private int convertedCellsPerPixel;
+    private OccupancyGridPalette convertedPalette;
+    private int[] regionPixels;
+
+    /**
+     * Pixel arrays of one tile each that conversions running in parallel take
+     * turns with.
+     */
+    private final Queue<int[]> scratchPixels;
+
+    private volatile OccupancyGridPalette palette;
+
+    /**
+     * Incremented after each update is published. Only written by
+     * {@link #process()} and {@link #release()}.
+     */
+    private volatile long contentVersion;
+
+    SharedMap() {
+      this(new Supplier<TextureBitmap>() {
+        @Override
+        public TextureBitmap get() {
+          return new TextureBitmap();
+        }
+      });
+    }
+
+    /**
+     * @param textureSupplier
+     *          creates the texture of each tile, e.g. one that records the
+     *          converted pixels in tests
+     */
+    SharedMap(Supplier<TextureBitmap> textureSupplier) {
+      this.textureSupplier = textureSupplier;
+      layers = Lists.newCopyOnWriteArrayList();
+      pending = new ConcurrentLinkedQueue<Object>();
+      scratchPixels = new ConcurrentLinkedQueue<int[]>();
+      palette = OccupancyGridPalette.newDefault();
+      tiles = Lists.newCopyOnWriteArrayList();
+      retiredTiles = new ConcurrentLinkedQueue<Tile>();
+      cellsPerPixel = 1;
+    }
+
+    void addLayer(OccupancyGridLayer layer) {
+      layers.add(layer);
+    }
+
+    void removeLayer(OccupancyGridLayer layer) {
+      layers.remove(layer);
+    }
+
+    /**
+     * Queues a map or patch for the next {@link #process()}.
+     */
+    void enqueue(Object message) {
+      Preconditions.checkArgument(message instanceof nav_msgs.OccupancyGrid
+          || message instanceof map_msgs.OccupancyGridUpdate);
+      pending.add(message);
+    }
+
+    /**
+     * @return {@code true} if the specified layer is the active layer whose
+     *         messages are processed
+     */
+    boolean isFeeding(OccupancyGridLayer layer) {
+      for (OccupancyGridLayer other : layers) {
+        if (other.isActive()) {
+          return other == layer;
+        }
+      }
+      return false;
+    }
+
+    boolean isActive() {
+      for (OccupancyGridLayer layer : layers) {
+        if (layer.isActive()) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * @return {@code true} if the map has to be converted again
+     */
+    boolean updateCellsPerPixel() {
+      int cellsPerPixel = Integer.MAX_VALUE;
+      for (OccupancyGridLayer layer : layers) {
+        if (layer.isActive()) {
+          cellsPerPixel = Math.min(cellsPerPixel, layer.cellsPerPixel);
+        }
+      }
+      if (cellsPerPixel == Integer.MAX_VALUE || cellsPerPixel == this.cellsPerPixel) {
+        return false;
+      }
+      this.cellsPerPixel = cellsPerPixel;
+      return grid != null;
+    }
+
+    /**
+     * @return {@code true} if the map has to be converted again
+     */
+    boolean setPalette(OccupancyGridPalette palette) {
+      if (palette.equals(this.palette)) {
+        return false;
+      }
+      this.palette = palette;
+      return grid != null;
+    }
+
+    /**
+     * Deletes the textures of retired tiles in the context of the calling GL
+     * thread. Called by each view that shows the map.
+     */
+    void deleteRetiredTextures(GL10 gl) {
+      for (Tile tile : retiredTiles) {
+        tile.delete(gl);
+        if (!tile.isUploaded()) {
+          retiredTiles.remove(tile);
+        }
+      }
+    }
+
+    /**
+     * Drops the map and returns the storage of its tiles once no layer shows
+     * it. The map is received again when a layer subscribes again. Texture
+     * objects that were not deleted are freed with their contexts.
+     * <p>
+     * Serialized with {@link #process()}, so layers run it as a preparation
+     * job instead of blocking the GL thread while a conversion runs.
+     */
+    synchronized void release() {
+      if (isActive()) {
+        // A layer was activated again meanwhile.
+        return;
+      }
+      pending.clear();
+      scratchPixels.clear();
+      regionPixels = null;
+      grid = null;
+      ready = false;
+      tileCount = 0;
+      convertedCellsPerPixel = 0;
+      convertedPalette = null;
+      for (Tile tile : tiles) {
+        tile.release();
+      }
+      tiles.clear();
+      // The views deleted the textures of the retired tiles when their layers
+      // were deactivated.
+      retiredTiles.clear();
+      contentVersion++;
+    }
+
+    MemoryUsage getMemoryUsage() {
+      // Retired tiles hold their textures until the views drew their next
+      // frames.
+      MemoryUsage memoryUsage = MemoryUsage.NONE;
+      for (Tile tile : tiles) {
+        memoryUsage = memoryUsage.plus(tile.getMemoryUsage());
+      }
+      for (Tile tile : retiredTiles) {
+        memoryUsage = memoryUsage.plus(tile.getMemoryUsage());
+      }
+      Grid grid = this.grid;
+      if (grid != null) {
+        memoryUsage = memoryUsage.plus(MemoryUsage.heap(grid.cells.length));
+      }
+      for (int[] pixels : scratchPixels) {
+        memoryUsage = memoryUsage.plus(MemoryUsage.heap(pixels.length * (Integer.SIZE / 8)));
+      }
+      return memoryUsage;
+    }
+
+    /**
+     * Applies the pending maps and patches. Called by the preparation jobs of
+     * all layers that share the map.
+     */
+    synchronized void process() {
+      List<Object> received = Lists.newArrayList();
+      for (Object message = pending.poll(); message != null; message = pending.poll()) {
+        received.add(message);
+      }
+      // Everything that arrived before the most recent map is superseded by it.
+      int first = 0;
+      for (int i = received.size() - 1; i >= 0; i--) {
+        if (received.get(i) instanceof nav_msgs.OccupancyGrid) {
+          first = i;
+          break;
+        }
+      }
+      Grid grid = this.grid;
+      boolean convert =
+          cellsPerPixel != convertedCellsPerPixel || !palette.equals(convertedPalette);
+      List<map_msgs.OccupancyGridUpdate> applied = Lists.newArrayList();
+      for (Object message : received.subList(first, received.size())) {
+        if (message instanceof nav_msgs.OccupancyGrid) {
+          grid = new Grid((nav_msgs.OccupancyGrid) message, grid);
+          this.grid = grid;
+          convert = true;
+          applied.clear();
+        } else if (grid != null && apply(grid, (map_msgs.OccupancyGridUpdate) message)) {
+          applied.add((map_msgs.OccupancyGridUpdate) message);
+        }
+      }
+      if (grid == null) {
+        return;
+      }
+      if (convert) {
+        update(grid);
+      } else if (!applied.isEmpty()) {
+        for (map_msgs.OccupancyGridUpdate update : applied) {
+          updateRegion(grid, update.getX(), update.getY(), update.getWidth(), update.getHeight());
+        }
+        contentVersion++;
+      }
+    }
+
+    /**
+     * Copies the cells of a patch into the grid.
+     *
+     * @return {@code false} if the patch was not applied because it arrived out
+     *         of order or does not fit the grid
+     */
+    private static boolean apply(Grid grid, map_msgs.OccupancyGridUpdate update) {
+      if (!grid.consistent) {
+        return false;
+      }
+      final Time stamp = update.getHeader().getStamp();
+      final int sequence = update.getHeader().getSeq();
+      final String frameId = update.getHeader().getFrameId();
+      final int x = update.getX();
+      final int y = update.getY();
+      final int width = update.getWidth();
+      final int height = update.getHeight();
+      final ChannelBuffer data = update.getData();
+      // A patch that is older than the grid or follows a dropped patch would
+      // leave the grid in a state that never existed.
+      boolean inOrder =
+          stamp.compareTo(grid.stamp) >= 0
+              && (grid.sequence == 0 || sequence == 0 || sequence == grid.sequence + 1);
+      boolean fits =
+          (frameId.isEmpty() || frameId.equals(grid.frameId)) && x >= 0 && y >= 0 && width >= 0
+              && height >= 0 && x + width <= grid.width && y + height <= grid.height
+              && data.readableBytes() == width * height;
+      if (!inOrder || !fits) {
+        Log.w(TAG, "Ignoring map patches until the next map, patch " + sequence
+            + (inOrder ? " does not fit the map." : " arrived out of order."));
+        grid.consistent = false;
+        return false;
+      }
+      for (int row = 0; row < height; row++) {
+        data.getBytes(data.readerIndex() + row * width, grid.cells, (y + row) * grid.width + x,
+            width);
+      }
+      grid.stamp = stamp;
+      grid.sequence = sequence;
+      return true;
+    }
+
+    /**
+     * Converts the pixels of the tiles that show the specified rectangle of
+     * cells.
+     */
+    private void updateRegion(Grid grid, int x, int y, int width, int height) {
+      final int cellsPerPixel = convertedCellsPerPixel;
+      final OccupancyGridPalette palette = convertedPalette;
+      final int pixelsWide = (grid.width + cellsPerPixel - 1) / cellsPerPixel;
+      final int numTilesWide = (int) Math.ceil(pixelsWide / (float) TextureBitmap.STRIDE);
+      // The pixels whose cells lie in the rectangle.
+      final int left = (x + cellsPerPixel - 1) / cellsPerPixel;
+      final int top = (y + cellsPerPixel - 1) / cellsPerPixel;
+      final int right = (x + width + cellsPerPixel - 1) / cellsPerPixel;
+      final int bottom = (y + height + cellsPerPixel - 1) / cellsPerPixel;
+      if (left >= right || top >= bottom) {
+        return;
+      }
+      final int lastTileX = (right - 1) / TextureBitmap.STRIDE;
+      final int lastTileY = (bottom - 1) / TextureBitmap.HEIGHT;
+      for (int tileY = top / TextureBitmap.HEIGHT; tileY <= lastTileY; ++tileY) {
+        for (int tileX = left / TextureBitmap.STRIDE; tileX <= lastTileX; ++tileX) {
+          final int tileLeft = tileX * TextureBitmap.STRIDE;
+          final int tileTop = tileY * TextureBitmap.HEIGHT;
+          final int regionLeft = Math.max(left, tileLeft);
+          final int regionTop = Math.max(top, tileTop);
+          final int regionRight = Math.min(right, tileLeft + TextureBitmap.STRIDE);
+          final int regionBottom = Math.min(bottom, tileTop + TextureBitmap.HEIGHT);
+          final int regionWidth = regionRight - regionLeft;
+          final int regionHeight = regionBottom - regionTop;
+          if (regionPixels == null || regionPixels.length < regionWidth * regionHeight) {
+            regionPixels = new int[regionWidth * regionHeight];
+          }
+          palette.apply(grid.cells, (regionTop * grid.width + regionLeft) * cellsPerPixel,
+              cellsPerPixel * grid.width, cellsPerPixel, regionWidth, regionHeight, regionPixels, 0,
+              regionWidth);
+          tiles.get(tileY * numTilesWide + tileX).updateRegion(regionPixels, regionLeft - tileLeft,
+              regionTop - tileTop, regionWidth, regionHeight);
+        }
+      }
+    }
+
+    private void update(final Grid grid) {
+      final int cellsPerPixel = this.cellsPerPixel;
+      final float resolution = grid.info.getResolution() * cellsPerPixel;
+      final int width = grid.width;
+      final int height = grid.height;
+      final int pixelsWide = (width + cellsPerPixel - 1) / cellsPerPixel;
+      final int pixelsHigh = (height + cellsPerPixel - 1) / cellsPerPixel;
+      final int numTilesWide = (int) Math.ceil(pixelsWide / (float) TextureBitmap.STRIDE);
+      final int numTilesHigh = (int) Math.ceil(pixelsHigh / (float) TextureBitmap.HEIGHT);
+      final int numTiles = numTilesWide * numTilesHigh;
+      final Transform origin = Transform.fromPoseMessage(grid.info.getOrigin());
+
+      while (tiles.size() < numTiles) {
+        tiles.add(new Tile(textureSupplier.get()));
+      }
+      // Tiles of a larger map are no longer needed. They are removed before
+      // they are retired so that frames prepared afterwards do not draw them.
+      while (tiles.size() > numTiles) {
+        Tile tile = tiles.remove(tiles.size() - 1);
+        tile.release();
+        retiredTiles.add(tile);
+      }
+
+      for (int y = 0; y < numTilesHigh; ++y) {
+        for (int x = 0; x < numTilesWide; ++x) {
+          final int tileIndex = y * numTilesWide + x;
+          tiles.get(tileIndex).setOrigin(origin.multiply(new Transform(new Vector3(x *
+              resolution * TextureBitmap.STRIDE,
+              y * resolution * TextureBitmap.HEIGHT, 0.), Quaternion.identity())));
+          tiles.get(tileIndex).setResolution(resolution);
+          // Tiles in the last column only receive the remaining columns of each
+          // row.
+          tiles.get(tileIndex).setStride(
+              Math.min(TextureBitmap.STRIDE, pixelsWide - x * TextureBitmap.STRIDE));
+        }
+      }
+
+      // During mapping only a few tiles change between updates. Tiles whose
+      // cells, placement and palette are unchanged are neither converted nor
+      // uploaded. Tiles are independent of each other and converted in
+      // parallel.
+      final OccupancyGridPalette palette = this.palette;
+      final long seed = mix(fingerprint(grid, cellsPerPixel), palette.hashCode());
+      final AtomicInteger changed = new AtomicInteger();
+      ParallelLoop.getDefault().run(numTiles, new ParallelLoop.Body() {
+        @Override
+        public void run(int index) {
+          final int left = (index % numTilesWide) * TextureBitmap.STRIDE;
+          final int top = (index / numTilesWide) * TextureBitmap.HEIGHT;
+          final int right = Math.min(left + TextureBitmap.STRIDE, pixelsWide);
+          final int bottom = Math.min(top + TextureBitmap.HEIGHT, pixelsHigh);
+          final Tile tile = tiles.get(index);
+          long fingerprint = fingerprint(grid, cellsPerPixel, left, top, right, bottom, seed);
+          if (tile.setFingerprint(fingerprint)) {
+            int[] pixels = scratchPixels.poll();
+            if (pixels == null) {
+              pixels = new int[TextureBitmap.STRIDE * TextureBitmap.HEIGHT];
+            }
+            palette.apply(grid.cells, (top * grid.width + left) * cellsPerPixel,
+                cellsPerPixel * grid.width, cellsPerPixel, right - left, bottom - top, pixels, 0,
+                right - left);
+            tile.update(pixels, bottom - top);
+            scratchPixels.add(pixels);
+            changed.incrementAndGet();
+          }
+        }
+      });
+      final int changedTiles = changed.get();
+      convertedCellsPerPixel = cellsPerPixel;
+      convertedPalette = palette;
+
+      if (changedTiles == 0 && numTiles == tileCount && ready) {
+        return;
+      }
+      tileCount = numTiles;
+      frame = GraphName.of(grid.frameId);
+      ready = true;
+      contentVersion++;
+    }
+
+    /**
+     * @return a hash of everything but the cells that determines how a map is
+     *         drawn
+     */
+    private static long fingerprint(Grid grid, int cellsPerPixel) {
+      geometry_msgs.Point position = grid.info.getOrigin().getPosition();
+      geometry_msgs.Quaternion orientation = grid.info.getOrigin().getOrientation();
+      long hash = grid.frameId.hashCode();
+      hash = mix(hash, Double.doubleToLongBits(position.getX()));
+      hash = mix(hash, Double.doubleToLongBits(position.getY()));
+      hash = mix(hash, Double.doubleToLongBits(position.getZ()));
+      hash = mix(hash, Double.doubleToLongBits(orientation.getX()));
+      hash = mix(hash, Double.doubleToLongBits(orientation.getY()));
+      hash = mix(hash, Double.doubleToLongBits(orientation.getZ()));
+      hash = mix(hash, Double.doubleToLongBits(orientation.getW()));
+      hash = mix(hash, Float.floatToIntBits(grid.info.getResolution()));
+      hash = mix(hash, grid.width);
+      hash = mix(hash, grid.height);
+      return mix(hash, cellsPerPixel);
+    }
+
+    /**
+     * @return a hash of the cells of a tile, starting from the specified seed
+     */
+    private static long fingerprint(Grid grid, int cellsPerPixel, int left, int top, int right,
+        int bottom, long seed) {
+      long hash = seed;
+      for (int y = top; y < bottom; ++y) {
+        final int row = y * cellsPerPixel * grid.width;
+        int x = left;
+        if (cellsPerPixel == 1) {
+          // Full resolution rows are contiguous and hashed eight cells at once.
+          for (; x + 8 <= right; x += 8) {
+            hash = mix(hash, grid.cellBuffer.getLong(row + x));
+          }
+        }
+        for (; x < right; ++x) {
+          hash = mix(hash, grid.cells[row + x * cellsPerPixel]);
+        }
+      }
+      return hash;
+    }
+
+    private static long mix(long hash, long value) {
+      return Long.rotateLeft(hash ^ (value * 0x9e3779b97f4a7c15L), 31) * 0xbf58476d1ce4e5b9L;
+    }
   }
 
-  private final List<Tile> tiles;
+  /**
+   * The tiles to draw, computed by {@link #prepare(FrameContext)}.
+   */
+  private Tile[] preparedTiles;
+  private boolean[] visibleTiles;
+  private int preparedTileCount;
+
+  /**
+   * The number of map cells per texture pixel in each dimension that this
+   * layer asks for.
+   */
+  private volatile int cellsPerPixel;
+
+  /**
+   * Subscribes to the patches of the map, {@code null} if there are none.
+   */
+  private final SubscriberLayer<map_msgs.OccupancyGridUpdate> updateLayer;
+
+  /**
+   * Identifies the {@link SharedMap} of the topics in the
+   * {@link org.ros.android.view.visualization.Scene}.
+   */
+  private final Object mapKey;
+
+  private volatile OccupancyGridPalette palette;
 
-  private boolean ready;
-  private GraphName frame;
-  private GL10 previousGl;
+  private VisualizationView view;
+
+  /**
+   * The map shared with the layers of the other views, {@code null} until the
+   * layer is started.
+   */
+  private volatile SharedMap map;
 
   public OccupancyGridLayer(String topic) {
     this(GraphName.of(topic));
   }
 
   public OccupancyGridLayer(GraphName topic) {
+    this(topic, null);
+  }
+
+  /**
+   * @param updateTopic
+   *          the topic of map_msgs/OccupancyGridUpdate patches of the map,
+   *          usually the map topic followed by "_updates"
+   */
+  public OccupancyGridLayer(String topic, String updateTopic) {
+    this(GraphName.of(topic), GraphName.of(updateTopic));
+  }
+
+  /**
+   * @param updateTopic
+   *          the topic of map_msgs/OccupancyGridUpdate patches of the map,
+   *          usually the map topic followed by "_updates", or {@code null}
+   */
+  public OccupancyGridLayer(GraphName topic, GraphName updateTopic) {
     super(topic, nav_msgs.OccupancyGrid._TYPE);
-    tiles = Lists.newCopyOnWriteArrayList();
-    ready = false;
+    if (updateTopic != null) {
+      updateLayer =
+          new SubscriberLayer<map_msgs.OccupancyGridUpdate>(updateTopic,
+              map_msgs.OccupancyGridUpdate._TYPE);
+      // A dropped patch leaves the map out of date until the next map.
+      updateLayer.setSubscriptionOptions(SubscriptionOptions.newDefault().withQueueLimit(
+          UPDATE_QUEUE_LIMIT));
+    } else {
+      updateLayer = null;
+    }
+    mapKey = Arrays.asList(OccupancyGridLayer.class, topic, updateTopic);
+    palette = OccupancyGridPalette.newDefault();
+    preparedTiles = new Tile[0];
+    visibleTiles = new boolean[0];
+    cellsPerPixel = 1;
   }
 
   @Override
-  public void draw(VisualizationView view, GL10 gl) {
-    if (previousGl != gl) {
-      for (Tile tile : tiles) {
-        tile.clearHandle();
+  public void setLevelOfDetail(float levelOfDetail) {
+    // Lower levels of detail reduce the texture resolution, which cuts the
+    // number of tiles to upload and draw quadratically.
+    int cellsPerPixel = Math.max(1, Math.round(1 / levelOfDetail));
+    if (cellsPerPixel != this.cellsPerPixel) {
+      this.cellsPerPixel = cellsPerPixel;
+      updateCellsPerPixel();
+    }
+  }
+
+  private void updateCellsPerPixel() {
+    SharedMap map = this.map;
+    if (map != null && map.updateCellsPerPixel()) {
+      submitUpdate();
+    }
+  }
+
+  /**
+   * Sets the colors cells are drawn in. The map is converted again if one was
+   * received already. Layers of other views that show the same topics share
+   * the palette set last.
+   */
+  public void setPalette(OccupancyGridPalette palette) {
+    Preconditions.checkNotNull(palette);
+    this.palette = palette;
+    SharedMap map = this.map;
+    if (map != null && map.setPalette(palette)) {
+      submitUpdate();
+    }
+  }
+
+  public OccupancyGridPalette getPalette() {
+    SharedMap map = this.map;
+    return map == null ? palette : map.palette;
+  }
+
+  @Override
+  public void prepare(FrameContext context) {
+    SharedMap map = this.map;
+    if (map == null || !map.ready) {
+      preparedTileCount = 0;
+      return;
+    }
+    BoundingBox visible = context.getVisibleBounds(map.frame);
+    int tileCount = map.tileCount;
+    if (preparedTiles.length < tileCount) {
+      preparedTiles = new Tile[tileCount];
+      visibleTiles = new boolean[tileCount];
+    }
+    // Iterates over a snapshot since the map may shrink meanwhile.
+    int count = 0;
+    for (Tile tile : map.tiles) {
+      if (count == tileCount) {
+        break;
       }
-      previousGl = gl;
+      preparedTiles[count] = tile;
+      visibleTiles[count] = tile.isVisible(visible);
+      count++;
     }
-    if (ready) {
-      for (Tile tile : tiles) {
-        tile.draw(view, gl);
+    preparedTileCount = count;
+  }
+
+  @Override
+  public void draw(VisualizationView view, GL10 gl) {
+    int culled = 0;
+    for (int i = 0; i < preparedTileCount; i++) {
+      if (visibleTiles[i]) {
+        preparedTiles[i].draw(view, gl);
+      } else {
+        culled++;
       }
     }
+    view.getCullingStatistics().record(preparedTileCount - culled, culled);
+    // Tiles retired after this frame was prepared were drawn once more above
+    // and are not part of the next frame.
+    SharedMap map = this.map;
+    if (map != null) {
+      map.deleteRetiredTextures(gl);
+    }
+  }
+
+  @Override
+  public void onDeactivated(VisualizationView view, GL10 gl) {
+    final SharedMap map = this.map;
+    if (map == null) {
+      return;
+    }
+    // Views that still show the map upload the textures again.
+    for (Tile tile : map.tiles) {
+      tile.delete(gl);
+    }
+    map.deleteRetiredTextures(gl);
+    if (!map.isActive()) {
+      view.getPreparationExecutor().submit(this, new Runnable() {
+        @Override
+        public void run() {
+          map.release();
+        }
+      });
+    }
+  }
+
+  @Override
+  public void setEnabled(boolean enabled) {
+    super.setEnabled(enabled);
+    if (updateLayer != null) {
+      updateLayer.setEnabled(enabled);
+    }
+    updateCellsPerPixel();
+  }
+
+  @Override
+  public void setSuspended(boolean suspended) {
+    super.setSuspended(suspended);
+    if (updateLayer != null) {
+      updateLayer.setSuspended(suspended);
+    }
+    updateCellsPerPixel();
+  }
+
+  @Override
+  public MemoryUsage getMemoryUsage() {
+    // The shared map is accounted to the layer that was started first.
+    SharedMap map = this.map;
+    if (map == null || map.layers.isEmpty() || map.layers.get(0) != this) {
+      return MemoryUsage.NONE;
+    }
+    return map.getMemoryUsage();
   }
 
   @Override
   public GraphName getFrame() {
-    return frame;
+    SharedMap map = this.map;
+    return map == null ? null : map.frame;
+  }
+
+  @Override
+  public long getContentVersion() {
+    SharedMap map = this.map;
+    return map == null ? 0 : map.contentVersion;
   }
 
   @Override
-  public void onStart(VisualizationView view, ConnectedNode connectedNode) {
+  public void onStart(final VisualizationView view, ConnectedNode connectedNode) {
     super.onStart(view, connectedNode);
-    previousGl = null;
+    this.view = view;
+    final SharedMap map =
+        view.getScene().acquireSharedData(mapKey, new Supplier<SharedMap>() {
+          @Override
+          public SharedMap get() {
+            return new SharedMap();
+          }
+        });
+    map.addLayer(this);
+    this.map = map;
+    map.setPalette(palette);
+    if (map.updateCellsPerPixel() || map.grid != null) {
+      // Draws the map the other views received already.
+      submitUpdate();
+    }
     getSubscriber().addMessageListener(new MessageListener<nav_msgs.OccupancyGrid>() {
       @Override
       public void onNewMessage(nav_msgs.OccupancyGrid message) {
-        update(message);
+        // The layers of all views receive the same messages.
+        if (map.isFeeding(OccupancyGridLayer.this)) {
+          map.enqueue(message);
+          submitUpdate();
+        }
       }
     });
-  }
-
-  private void update(nav_msgs.OccupancyGrid message) {
-    final float resolution = message.getInfo().getResolution();
-    final int width = message.getInfo().getWidth();
-    final int height = message.getInfo().getHeight();
-    final int numTilesWide = (int) Math.ceil(width / (float) TextureBitmap.STRIDE);
-    final int numTilesHigh = (int) Math.ceil(height / (float) TextureBitmap.STRIDE);
-    final int numTiles = numTilesWide * numTilesHigh;
-    final Transform origin = Transform.fromPoseMessage(message.getInfo().getOrigin());
-
-    while (tiles.size() < numTiles) {
-      tiles.add(new Tile(resolution));
+    if (updateLayer != null) {
+      updateLayer.onStart(view, connectedNode);
+      updateLayer.getSubscriber().addMessageListener(
+          new MessageListener<map_msgs.OccupancyGridUpdate>() {
+            @Override
+            public void onNewMessage(map_msgs.OccupancyGridUpdate update) {
+              if (map.isFeeding(OccupancyGridLayer.this)) {
+                map.enqueue(update);
+                submitUpdate();
+              }
+            }
+          });
     }
+  }
 
-    for (int y = 0; y < numTilesHigh; ++y) {
-      for (int x = 0; x < numTilesWide; ++x) {
-        final int tileIndex = y * numTilesWide + x;
-        tiles.get(tileIndex).setOrigin(origin.multiply(new Transform(new Vector3(x *
-            resolution * TextureBitmap.STRIDE,
-            y * resolution * TextureBitmap.HEIGHT, 0.), Quaternion.identity())));
-        tiles.get(tileIndex).setStride(TextureBitmap.STRIDE);
-      }
+  @Override
+  public void onShutdown(VisualizationView view, Node node) {
+    if (updateLayer != null) {
+      updateLayer.onShutdown(view, node);
     }
-
-    int x = 0;
-    int y = 0;
-    final ChannelBuffer buffer = message.getData();
-    while (buffer.readable()) {
-      Preconditions.checkState(y < height);
-      final int tileIndex = (y / TextureBitmap.STRIDE) * numTilesWide + x / TextureBitmap.STRIDE;
-      final byte pixel = buffer.readByte();
-      if (pixel == -1) {
-        tiles.get(tileIndex).writeInt(COLOR_UNKNOWN);
+    super.onShutdown(view, node);
+    SharedMap map = this.map;
+    if (map != null) {
+      map.removeLayer(this);
+      this.map = null;
+      if (view.getScene().releaseSharedData(mapKey)) {
+        map.release();
       } else {
-        if (pixel < 50) {
-          tiles.get(tileIndex).writeInt(COLOR_FREE);
-        } else {
-          tiles.get(tileIndex).writeInt(COLOR_OCCUPIED);
-        }
-      }
-
-      ++x;
-      if (x == width) {
-        x = 0;
-        ++y;
+        map.updateCellsPerPixel();
       }
     }
+  }
 
-    for (Tile tile : tiles) {
-      tile.update();
+  private void submitUpdate() {
+    final SharedMap map = this.map;
+    if (map == null) {
+      return;
     }
-
-    frame = GraphName.of(message.getHeader().getFrameId());
-    ready = true;
+    // Converting a map takes long enough that newer maps may arrive in the
+    // meantime. Only the latest job runs, which processes everything that
+    // arrived before it.
+    view.getPreparationExecutor().submit(this, new Runnable() {
+      @Override
+      public void run() {
+        map.process();
+        for (OccupancyGridLayer layer : map.layers) {
+          layer.view.requestRender();
+        }
+      }
+    });
   }
 }
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization.layer;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+
+/**
+ * The colors of the cells of a nav_msgs/OccupancyGrid as a table of 256 ARGB
+ * colors indexed by the unsigned cell value. Instances are immutable.
+ * <p>
+ * Cells of -1 are unknown. Other cells below the free threshold are free,
+ * cells at or above the occupied threshold are occupied and cells in between
+ * are uncertain. Individual values may be given their own color with
+ * {@link #withColor(int, int)}, e.g. to draw a costmap gradient.
+ */
+public class OccupancyGridPalette {
+
+  public static final int DEFAULT_FREE_COLOR = 0xffffffff;
+  public static final int DEFAULT_OCCUPIED_COLOR = 0xff111111;
+  public static final int DEFAULT_UNKNOWN_COLOR = 0xffdddddd;
+
+  /**
+   * The threshold between free and occupied cells unless specified otherwise.
+   */
+  public static final int DEFAULT_THRESHOLD = 50;
+
+  private static final int SIZE = 256;
+
+  private static final OccupancyGridPalette DEFAULT_PALETTE = new OccupancyGridPalette(
+      DEFAULT_THRESHOLD, DEFAULT_THRESHOLD, DEFAULT_FREE_COLOR, DEFAULT_UNKNOWN_COLOR,
+      DEFAULT_OCCUPIED_COLOR, DEFAULT_UNKNOWN_COLOR, new int[SIZE], new boolean[SIZE]);
+
+  private final int freeThreshold;
+  private final int occupiedThreshold;
+  private final int freeColor;
+  private final int uncertainColor;
+  private final int occupiedColor;
+  private final int unknownColor;
+
+  /**
+   * Colors set with {@link #withColor(int, int)} by unsigned cell value.
+   */
+  private final int[] overrides;
+  private final boolean[] overridden;
+
+  /**
+   * The color of each unsigned cell value.
+   */
+  private final int[] colors;
+  private final int hashCode;
+
+  private OccupancyGridPalette(int freeThreshold, int occupiedThreshold, int freeColor,
+      int uncertainColor, int occupiedColor, int unknownColor, int[] overrides,
+      boolean[] overridden) {
+    Preconditions.checkArgument(freeThreshold <= occupiedThreshold);
+    this.freeThreshold = freeThreshold;
+    this.occupiedThreshold = occupiedThreshold;
+    this.freeColor = freeColor;
+    this.uncertainColor = uncertainColor;
+    this.occupiedColor = occupiedColor;
+    this.unknownColor = unknownColor;
+    this.overrides = overrides;
+    this.overridden = overridden;
+    colors = new int[SIZE];
+    for (int value = Byte.MIN_VALUE; value <= Byte.MAX_VALUE; value++) {
+      int index = value & 0xff;
+      if (overridden[index]) {
+        colors[index] = overrides[index];
+      } else if (value == -1) {
+        colors[index] = unknownColor;
+      } else if (value < freeThreshold) {
+        colors[index] = freeColor;
+      } else if (value >= occupiedThreshold) {
+        colors[index] = occupiedColor;
+      } else {
+        colors[index] = uncertainColor;
+      }
+    }
+    hashCode = Arrays.hashCode(colors);
+  }
+
+  /**
+   * @return the palette that draws free cells white, occupied cells black and
+   *         unknown cells gray
+   */
+  public static OccupancyGridPalette newDefault() {
+    return DEFAULT_PALETTE;
+  }
+
+  /**
+   * @param freeThreshold
+   *          cells below this are free
+   * @param occupiedThreshold
+   *          cells at or above this are occupied
+   * @return a copy of this palette with the specified thresholds
+   */
+  public OccupancyGridPalette withThresholds(int freeThreshold, int occupiedThreshold) {
+    return new OccupancyGridPalette(freeThreshold, occupiedThreshold, freeColor, uncertainColor,
+        occupiedColor, unknownColor, overrides, overridden);
+  }
+
+  /**
+   * @return a copy of this palette with the specified ARGB colors
+   */
+  public OccupancyGridPalette withColors(int freeColor, int uncertainColor, int occupiedColor,
+      int unknownColor) {
+    return new OccupancyGridPalette(freeThreshold, occupiedThreshold, freeColor, uncertainColor,
+        occupiedColor, unknownColor, overrides, overridden);
+  }
+
+  /**
+   * @param value
+   *          a cell value from -128 to 127
+   * @param color
+   *          the ARGB color of cells of the specified value regardless of the
+   *          thresholds
+   * @return a copy of this palette with the specified color
+   */
+  public OccupancyGridPalette withColor(int value, int color) {
+    Preconditions.checkArgument(Byte.MIN_VALUE <= value && value <= Byte.MAX_VALUE);
+    int[] overrides = Arrays.copyOf(this.overrides, SIZE);
+    boolean[] overridden = Arrays.copyOf(this.overridden, SIZE);
+    overrides[value & 0xff] = color;
+    overridden[value & 0xff] = true;
+    return new OccupancyGridPalette(freeThreshold, occupiedThreshold, freeColor, uncertainColor,
+        occupiedColor, unknownColor, overrides, overridden);
+  }
+
+  /**
+   * @return the ARGB color of the specified cell
+   */
+  public int getColor(byte cell) {
+    return colors[cell & 0xff];
+  }
+
+  /**
+   * Looks up the colors of a rectangle of cells.
+   *
+   * @param cells
+   *          the cells of a map
+   * @param offset
+   *          the index of the first cell
+   * @param rowStride
+   *          the distance between the first cells of two rows
+   * @param columnStride
+   *          the distance between two cells of a row, more than 1 to skip
+   *          cells
+   * @param width
+   *          the number of cells per row
+   * @param height
+   *          the number of rows
+   * @param pixels
+   *          receives the colors row by row
+   * @param pixelOffset
+   *          the index of the first color
+   * @param pixelStride
+   *          the distance between the first colors of two rows
+   */
+  public void apply(byte[] cells, int offset, int rowStride, int columnStride, int width,
+      int height, int[] pixels, int pixelOffset, int pixelStride) {
+    final int[] colors = this.colors;
+    for (int y = 0; y < height; y++) {
+      int source = offset + y * rowStride;
+      int target = pixelOffset + y * pixelStride;
+      final int end = target + width;
+      if (columnStride == 1) {
+        while (target < end) {
+          pixels[target++] = colors[cells[source++] & 0xff];
+        }
+      } else {
+        while (target < end) {
+          pixels[target++] = colors[cells[source] & 0xff];
+          source += columnStride;
+        }
+      }
+    }
+  }
+
+  public int getFreeThreshold() {
+    return freeThreshold;
+  }
+
+  public int getOccupiedThreshold() {
+    return occupiedThreshold;
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode;
+  }
+
+  @Override
+  public boolean equals(Object object) {
+    if (this == object) {
+      return true;
+    }
+    if (!(object instanceof OccupancyGridPalette)) {
+      return false;
+    }
+    OccupancyGridPalette other = (OccupancyGridPalette) object;
+    return hashCode == other.hashCode && Arrays.equals(colors, other.colors);
+  }
+}
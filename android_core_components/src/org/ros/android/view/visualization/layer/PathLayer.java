@@ -16,16 +16,24 @@
 
 package org.ros.android.view.visualization.layer;
 
+import org.ros.android.view.visualization.BoundingBox;
+import org.ros.android.view.visualization.DrawRanges;
+import org.ros.android.view.visualization.FrameContext;
+import org.ros.android.view.visualization.MemoryUsage;
+import org.ros.android.view.visualization.PointChunks;
+import org.ros.android.view.visualization.SpatialIndex;
+import org.ros.android.view.visualization.VertexBuffer;
+import org.ros.android.view.visualization.Vertices;
 import org.ros.android.view.visualization.VisualizationView;
 import org.ros.android.view.visualization.Color;
+import geometry_msgs.Point;
 import geometry_msgs.PoseStamped;
 import org.ros.message.MessageListener;
 import org.ros.namespace.GraphName;
 import org.ros.node.ConnectedNode;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.util.List;
 
 import javax.microedition.khronos.opengles.GL10;
 
@@ -35,15 +43,37 @@ import javax.microedition.khronos.opengles.GL10;
  * @author moesenle@google.com (Lorenz Moesenlechner)
  * @author damonkohler@google.com (Damon Kohler)
  */
-public class PathLayer extends SubscriberLayer<nav_msgs.Path> implements TfLayer {
+public class PathLayer extends SubscriberLayer<nav_msgs.Path> implements TfLayer,
+    LevelOfDetailLayer, PreparedLayer, MemoryAccountingLayer, HitTestLayer {
 
   private static final Color COLOR = Color.fromHexAndAlpha("03dfc9", 0.3f);
   private static final float LINE_WIDTH = 4.0f;
 
-  private FloatBuffer vertexBuffer;
-  private int numPoints;
-  private boolean ready;
-  private GraphName frame;
+  /**
+   * The simplification tolerance in meters is this times the reciprocal of
+   * the level of detail minus one, i.e. 0 at full detail.
+   */
+  private static final double SIMPLIFICATION_TOLERANCE = 0.05;
+
+  private final TripleBuffer<ChunkedVertices> vertices;
+  private final VertexBuffer vertexBuffer;
+
+  /**
+   * The segments to draw, computed by {@link #prepare(FrameContext)}.
+   */
+  private final DrawRanges ranges;
+
+  private volatile GraphName frame;
+
+  /**
+   * The index of the drawn poses of the path last published.
+   */
+  private volatile SpatialIndex spatialIndex;
+
+  /**
+   * Poses closer than this to the previous drawn pose are skipped.
+   */
+  private volatile double tolerance;
 
   public PathLayer(String topic) {
     this(GraphName.of(topic));
@@ -51,55 +81,106 @@ public class PathLayer extends SubscriberLayer<nav_msgs.Path> implements TfLayer
 
   public PathLayer(GraphName topic) {
     super(topic, "nav_msgs/Path");
-    ready = false;
-    numPoints = 0;
+    // Chunks overlap by one vertex so that the segments between them are drawn.
+    vertices =
+        TripleBuffer.newInstance(ChunkedVertices.supplier(PointChunks.DEFAULT_CHUNK_SIZE, 1));
+    vertexBuffer = new VertexBuffer();
+    ranges = new DrawRanges();
+    tolerance = 0;
+  }
+
+  @Override
+  public void setLevelOfDetail(float levelOfDetail) {
+    tolerance = SIMPLIFICATION_TOLERANCE * (1 / levelOfDetail - 1);
+  }
+
+  @Override
+  public void prepare(FrameContext context) {
+    if (vertices.update()) {
+      // Uploaded to the GPU once on the next draw.
+      vertexBuffer.update(vertices.getReadBuffer().getVertices());
+    }
+    if (vertices.hasReadBuffer()) {
+      BoundingBox visible = context.getVisibleBounds(frame);
+      if (visible != null) {
+        visible = visible.expand(LINE_WIDTH / 2 / context.getZoom());
+      }
+      vertices.getReadBuffer().getChunks().cull(visible, ranges);
+    }
   }
 
   @Override
   public void draw(VisualizationView view, GL10 gl) {
-    if (ready) {
-      gl.glEnableClientState(GL10.GL_VERTEX_ARRAY);
-      gl.glVertexPointer(3, GL10.GL_FLOAT, 0, vertexBuffer);
-      COLOR.apply(gl);
-      gl.glLineWidth(LINE_WIDTH);
-      gl.glDrawArrays(GL10.GL_LINE_STRIP, 0, numPoints);
-      gl.glDisableClientState(GL10.GL_VERTEX_ARRAY);
+    if (vertices.hasReadBuffer()) {
+      Vertices.drawLines(gl, vertexBuffer, ranges, COLOR, LINE_WIDTH);
+      int culled = ranges.getCulledCount();
+      view.getCullingStatistics().record(
+          vertices.getReadBuffer().getChunks().getVertexCount() - culled, culled);
     }
   }
 
   @Override
-  public void onStart(VisualizationView view, ConnectedNode connectedNode) {
+  public void onStart(final VisualizationView view, ConnectedNode connectedNode) {
     super.onStart(view, connectedNode);
     getSubscriber().addMessageListener(new MessageListener<nav_msgs.Path>() {
       @Override
       public void onNewMessage(nav_msgs.Path path) {
         updateVertexBuffer(path);
-        ready = true;
+        view.requestRender();
       }
     });
   }
 
   private void updateVertexBuffer(nav_msgs.Path path) {
-    ByteBuffer goalVertexByteBuffer =
-        ByteBuffer.allocateDirect(path.getPoses().size() * 3 * Float.SIZE);
-    goalVertexByteBuffer.order(ByteOrder.nativeOrder());
-    vertexBuffer = goalVertexByteBuffer.asFloatBuffer();
-    int i = 0;
-    if (path.getPoses().size() > 0) {
-      frame = GraphName.of(path.getPoses().get(0).getHeader().getFrameId());
-      for (PoseStamped pose : path.getPoses()) {
-        vertexBuffer.put((float) pose.getPose().getPosition().getX());
-        vertexBuffer.put((float) pose.getPose().getPosition().getY());
-        vertexBuffer.put((float) pose.getPose().getPosition().getZ());
-        i++;
+    ChunkedVertices slot = vertices.getWriteBuffer();
+    FloatBuffer vertices = slot.clear(path.getPoses().size() * 3);
+    List<PoseStamped> poses = path.getPoses();
+    if (poses.size() > 0) {
+      frame = GraphName.of(poses.get(0).getHeader().getFrameId());
+      double squaredTolerance = tolerance * tolerance;
+      Point previous = null;
+      for (int i = 0; i < poses.size(); i++) {
+        Point position = poses.get(i).getPose().getPosition();
+        // The first and last poses are always drawn.
+        if (previous != null && i < poses.size() - 1 && squaredTolerance > 0) {
+          double deltaX = position.getX() - previous.getX();
+          double deltaY = position.getY() - previous.getY();
+          if (deltaX * deltaX + deltaY * deltaY < squaredTolerance) {
+            continue;
+          }
+        }
+        vertices.put((float) position.getX());
+        vertices.put((float) position.getY());
+        vertices.put((float) position.getZ());
+        previous = position;
       }
     }
-    vertexBuffer.position(0);
-    numPoints = i;
+    slot.flip(0);
+    spatialIndex =
+        poses.isEmpty() ? null : SpatialIndex.fromVertices(frame, slot.getVertices(), 0, 0);
+    this.vertices.publish();
+  }
+
+  @Override
+  public void onDeactivated(VisualizationView view, GL10 gl) {
+    vertexBuffer.delete(gl);
+  }
+
+  @Override
+  public MemoryUsage getMemoryUsage() {
+    MemoryUsage memoryUsage =
+        ChunkedVertices.getMemoryUsage(vertices.getSlots()).plus(vertexBuffer.getMemoryUsage());
+    SpatialIndex spatialIndex = this.spatialIndex;
+    return spatialIndex == null ? memoryUsage : memoryUsage.plus(spatialIndex.getMemoryUsage());
   }
 
   @Override
   public GraphName getFrame() {
     return frame;
   }
+
+  @Override
+  public SpatialIndex getSpatialIndex() {
+    return spatialIndex;
+  }
 }
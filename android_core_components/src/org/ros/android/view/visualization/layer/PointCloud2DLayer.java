@@ -19,7 +19,14 @@ package org.ros.android.view.visualization.layer;
 import com.google.common.base.Preconditions;
 
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.ros.android.view.visualization.BoundingBox;
 import org.ros.android.view.visualization.Color;
+import org.ros.android.view.visualization.DrawRanges;
+import org.ros.android.view.visualization.FrameContext;
+import org.ros.android.view.visualization.MemoryUsage;
+import org.ros.android.view.visualization.PointChunks;
+import org.ros.android.view.visualization.SpatialIndex;
+import org.ros.android.view.visualization.VertexBuffer;
 import org.ros.android.view.visualization.Vertices;
 import org.ros.android.view.visualization.VisualizationView;
 import org.ros.message.MessageListener;
@@ -41,17 +48,33 @@ import sensor_msgs.PointField;
  *
  * @author damonkohler@google.com (Damon Kohler)
  */
-public class PointCloud2DLayer extends SubscriberLayer<PointCloud2> implements TfLayer {
+public class PointCloud2DLayer extends SubscriberLayer<PointCloud2> implements TfLayer,
+    LevelOfDetailLayer, PreparedLayer, MemoryAccountingLayer, HitTestLayer {
 
   private static final Color FREE_SPACE_COLOR = Color.fromHexAndAlpha("377dfa", 0.1f);
   private static final Color OCCUPIED_SPACE_COLOR = Color.fromHexAndAlpha("377dfa", 0.3f);
   private static final float POINT_SIZE = 10.f;
 
-  private final Object mutex;
+  private final TripleBuffer<ChunkedVertices> vertices;
+  private final VertexBuffer vertexBuffer;
 
-  private GraphName frame;
-  private FloatBuffer vertexFrontBuffer;
-  private FloatBuffer vertexBackBuffer;
+  /**
+   * The points to draw, computed by {@link #prepare(FrameContext)}.
+   */
+  private final DrawRanges ranges;
+  private boolean fanVisible;
+
+  private volatile GraphName frame;
+
+  /**
+   * The index of the points last published.
+   */
+  private volatile SpatialIndex spatialIndex;
+
+  /**
+   * The fraction of the points of each cloud that are drawn.
+   */
+  private volatile float pointBudget;
 
   public PointCloud2DLayer(String topicName) {
     this(GraphName.of(topicName));
@@ -59,32 +82,71 @@ public class PointCloud2DLayer extends SubscriberLayer<PointCloud2> implements T
 
   public PointCloud2DLayer(GraphName topicName) {
     super(topicName, PointCloud2._TYPE);
-    mutex = new Object();
+    vertices =
+        TripleBuffer.newInstance(ChunkedVertices.supplier(PointChunks.DEFAULT_CHUNK_SIZE, 0));
+    vertexBuffer = new VertexBuffer();
+    ranges = new DrawRanges();
+    pointBudget = 1;
+  }
+
+  @Override
+  public void setLevelOfDetail(float levelOfDetail) {
+    pointBudget = levelOfDetail;
+  }
+
+  @Override
+  public void prepare(FrameContext context) {
+    if (vertices.update()) {
+      // Uploaded to the GPU once on the next draw.
+      vertexBuffer.update(vertices.getReadBuffer().getVertices());
+    }
+    if (!vertices.hasReadBuffer()) {
+      return;
+    }
+    PointChunks chunks = vertices.getReadBuffer().getChunks();
+    BoundingBox visible = context.getVisibleBounds(frame);
+    if (visible != null) {
+      // Points are drawn with a size in pixels around their center.
+      visible = visible.expand(POINT_SIZE / 2 / context.getZoom());
+    }
+    fanVisible = chunks.isVisible(visible);
+    if (fanVisible) {
+      chunks.cull(visible, ranges);
+    }
   }
 
   @Override
   public void draw(VisualizationView view, GL10 gl) {
-    if (vertexFrontBuffer != null) {
-      synchronized (mutex) {
-        Vertices.drawTriangleFan(gl, vertexFrontBuffer, FREE_SPACE_COLOR);
-        // Drop the first point which is required for the triangle fan but is
-        // not a range reading.
-        FloatBuffer pointVertices = vertexFrontBuffer.duplicate();
-        pointVertices.position(3);
-        Vertices.drawPoints(gl, pointVertices, OCCUPIED_SPACE_COLOR, POINT_SIZE);
-      }
+    if (!vertices.hasReadBuffer()) {
+      return;
     }
+    int pointCount = vertices.getReadBuffer().getChunks().getVertexCount();
+    int culled = pointCount;
+    if (fanVisible) {
+      Vertices.drawTriangleFan(gl, vertexBuffer, FREE_SPACE_COLOR);
+      // Drop the first point which is required for the triangle fan but is
+      // not a range reading.
+      Vertices.drawPoints(gl, vertexBuffer, ranges, OCCUPIED_SPACE_COLOR, POINT_SIZE);
+      culled = ranges.getCulledCount();
+    }
+    view.getCullingStatistics().record(pointCount - culled, culled);
   }
 
   @Override
-  public void onStart(VisualizationView view, ConnectedNode connectedNode) {
+  public void onStart(final VisualizationView view, ConnectedNode connectedNode) {
     super.onStart(view, connectedNode);
     Subscriber<PointCloud2> subscriber = getSubscriber();
     subscriber.addMessageListener(new MessageListener<PointCloud2>() {
       @Override
-      public void onNewMessage(PointCloud2 pointCloud) {
-        frame = GraphName.of(pointCloud.getHeader().getFrameId());
-        updateVertexBuffer(pointCloud);
+      public void onNewMessage(final PointCloud2 pointCloud) {
+        view.getPreparationExecutor().submit(PointCloud2DLayer.this, new Runnable() {
+          @Override
+          public void run() {
+            frame = GraphName.of(pointCloud.getHeader().getFrameId());
+            updateVertexBuffer(pointCloud);
+            view.requestRender();
+          }
+        });
       }
     });
   }
@@ -103,17 +165,21 @@ public class PointCloud2DLayer extends SubscriberLayer<PointCloud2> implements T
     Preconditions.checkArgument(pointCloud.getData().order().equals(ByteOrder.LITTLE_ENDIAN));
     final int size = (pointCloud.getRowStep() / pointCloud.getPointStep() +
         1 /* triangle fan origin */) * 3 /* x, y, z */;
-    if (vertexBackBuffer == null || vertexBackBuffer.capacity() < size) {
-      vertexBackBuffer = Vertices.allocateBuffer(size);
-    }
-    vertexBackBuffer.clear();
+    ChunkedVertices slot = vertices.getWriteBuffer();
+    FloatBuffer vertexBackBuffer = slot.clear(size);
     // We start with the origin of the triangle fan.
     vertexBackBuffer.put(0.f);
     vertexBackBuffer.put(0.f);
     vertexBackBuffer.put(0.f);
 
+    // Only every nth point is drawn if the budget is less than all points.
+    final int step = Math.max(1, Math.round(1 / pointBudget));
     final ChannelBuffer buffer = pointCloud.getData();
-    while (buffer.readable()) {
+    for (int i = 0; buffer.readable(); i++) {
+      if (i % step != 0) {
+        buffer.skipBytes(pointCloud.getPointStep());
+        continue;
+      }
       vertexBackBuffer.put(buffer.readFloat());
       vertexBackBuffer.put(buffer.readFloat());
       vertexBackBuffer.put(0.f);
@@ -122,16 +188,31 @@ public class PointCloud2DLayer extends SubscriberLayer<PointCloud2> implements T
       // Discard intensity.
       buffer.readFloat();
     }
-    vertexBackBuffer.position(0);
-    synchronized (mutex) {
-      FloatBuffer tmp = vertexFrontBuffer;
-      vertexFrontBuffer = vertexBackBuffer;
-      vertexBackBuffer = tmp;
-    }
+    slot.flip(1);
+    spatialIndex = SpatialIndex.fromVertices(frame, slot.getVertices(), 1, 0);
+    vertices.publish();
+  }
+
+  @Override
+  public void onDeactivated(VisualizationView view, GL10 gl) {
+    vertexBuffer.delete(gl);
+  }
+
+  @Override
+  public MemoryUsage getMemoryUsage() {
+    MemoryUsage memoryUsage =
+        ChunkedVertices.getMemoryUsage(vertices.getSlots()).plus(vertexBuffer.getMemoryUsage());
+    SpatialIndex spatialIndex = this.spatialIndex;
+    return spatialIndex == null ? memoryUsage : memoryUsage.plus(spatialIndex.getMemoryUsage());
   }
 
   @Override
   public GraphName getFrame() {
     return frame;
   }
+
+  @Override
+  public SpatialIndex getSpatialIndex() {
+    return spatialIndex;
+  }
 }
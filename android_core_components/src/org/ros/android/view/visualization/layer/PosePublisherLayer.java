@@ -20,6 +20,7 @@ import com.google.common.base.Preconditions;
 
 import android.view.GestureDetector;
 import android.view.MotionEvent;
+import org.ros.android.view.visualization.SpatialIndex;
 import org.ros.android.view.visualization.VisualizationView;
 import org.ros.android.view.visualization.shape.PixelSpacePoseShape;
 import org.ros.android.view.visualization.shape.Shape;
@@ -35,7 +36,7 @@ import javax.microedition.khronos.opengles.GL10;
 /**
  * @author moesenle@google.com (Lorenz Moesenlechner)
  */
-public class PosePublisherLayer extends DefaultLayer {
+public class PosePublisherLayer extends DefaultLayer implements BatchedLayer, HitTestLayer {
 
   private Shape shape;
   private Publisher<geometry_msgs.PoseStamped> posePublisher;
@@ -45,6 +46,12 @@ public class PosePublisherLayer extends DefaultLayer {
   private Transform pose;
   private ConnectedNode connectedNode;
 
+  /**
+   * The index of the position of the visible {@link #pose} in the camera frame
+   * it was placed in, {@code null} while no pose is shown.
+   */
+  private volatile SpatialIndex spatialIndex;
+
   public PosePublisherLayer(String topic) {
     this(GraphName.of(topic));
   }
@@ -80,12 +87,15 @@ public class PosePublisherLayer extends DefaultLayer {
             angle(pointerVector.getX(), pointerVector.getY(), poseVector.getX(), poseVector.getY());
         pose = Transform.translation(poseVector).multiply(Transform.zRotation(angle));
         shape.setTransform(pose);
+        view.requestRender();
         return true;
       }
       if (event.getAction() == MotionEvent.ACTION_UP) {
         posePublisher.publish(pose.toPoseStampedMessage(view.getCamera().getFrame(),
             connectedNode.getCurrentTime(), posePublisher.newMessage()));
         visible = false;
+        spatialIndex = null;
+        view.requestRender();
         return true;
       }
     }
@@ -109,7 +119,12 @@ public class PosePublisherLayer extends DefaultLayer {
                     Transform.translation(view.getCamera().toCameraFrame((int) e.getX(),
                         (int) e.getY()));
                 shape.setTransform(pose);
+                GraphName frame = view.getCamera().getFrame();
+                spatialIndex =
+                    frame != null ? SpatialIndex.fromPoint(frame, pose.getTranslation().getX(),
+                        pose.getTranslation().getY(), 0) : null;
                 visible = true;
+                view.requestRender();
               }
             });
       }
@@ -120,4 +135,9 @@ public class PosePublisherLayer extends DefaultLayer {
   public void onShutdown(VisualizationView view, Node node) {
     posePublisher.shutdown();
   }
+
+  @Override
+  public SpatialIndex getSpatialIndex() {
+    return spatialIndex;
+  }
 }
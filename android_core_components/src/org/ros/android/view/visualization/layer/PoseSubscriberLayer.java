@@ -16,6 +16,7 @@
 
 package org.ros.android.view.visualization.layer;
 
+import org.ros.android.view.visualization.SpatialIndex;
 import org.ros.android.view.visualization.VisualizationView;
 import org.ros.android.view.visualization.shape.GoalShape;
 import org.ros.android.view.visualization.shape.Shape;
@@ -24,6 +25,7 @@ import org.ros.namespace.GraphName;
 import org.ros.node.ConnectedNode;
 import org.ros.rosjava_geometry.FrameTransform;
 import org.ros.rosjava_geometry.Transform;
+import org.ros.rosjava_geometry.Vector3;
 
 import javax.microedition.khronos.opengles.GL10;
 
@@ -31,12 +33,23 @@ import javax.microedition.khronos.opengles.GL10;
  * @author moesenle@google.com (Lorenz Moesenlechner)
  */
 public class PoseSubscriberLayer extends SubscriberLayer<geometry_msgs.PoseStamped> implements
-    TfLayer {
+    TfLayer, BatchedLayer, HitTestLayer {
 
   private final GraphName targetFrame;
 
   private Shape shape;
-  private boolean ready;
+
+  /**
+   * The latest pose in the {@link #targetFrame}. {@link Transform}s are
+   * immutable, so publishing the reference hands the pose to the GL thread
+   * without locking.
+   */
+  private volatile Transform latestPose;
+
+  /**
+   * The index of the position of {@link #latestPose}.
+   */
+  private volatile SpatialIndex spatialIndex;
 
   public PoseSubscriberLayer(String topic) {
     this(GraphName.of(topic));
@@ -45,12 +58,13 @@ public class PoseSubscriberLayer extends SubscriberLayer<geometry_msgs.PoseStamp
   public PoseSubscriberLayer(GraphName topic) {
     super(topic, geometry_msgs.PoseStamped._TYPE);
     targetFrame = GraphName.of("map");
-    ready = false;
   }
 
   @Override
   public void draw(VisualizationView view, GL10 gl) {
-    if (ready) {
+    Transform pose = latestPose;
+    if (pose != null) {
+      shape.setTransform(pose);
       shape.draw(view, gl);
     }
   }
@@ -66,8 +80,10 @@ public class PoseSubscriberLayer extends SubscriberLayer<geometry_msgs.PoseStamp
         FrameTransform frameTransform = view.getFrameTransformTree().transform(source, targetFrame);
         if (frameTransform != null) {
           Transform poseTransform = Transform.fromPoseMessage(pose.getPose());
-          shape.setTransform(frameTransform.getTransform().multiply(poseTransform));
-          ready = true;
+          latestPose = frameTransform.getTransform().multiply(poseTransform);
+          Vector3 position = latestPose.getTranslation();
+          spatialIndex = SpatialIndex.fromPoint(targetFrame, position.getX(), position.getY(), 0);
+          view.requestRender();
         }
       }
     });
@@ -77,4 +93,9 @@ public class PoseSubscriberLayer extends SubscriberLayer<geometry_msgs.PoseStamp
   public GraphName getFrame() {
     return targetFrame;
   }
-}
\ No newline at end of file
+
+  @Override
+  public SpatialIndex getSpatialIndex() {
+    return spatialIndex;
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization.layer;
+
+import org.ros.android.view.visualization.FrameContext;
+import org.ros.android.view.visualization.VisualizationView;
+
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * Interface for layers that split their per-frame work into a CPU-only
+ * {@link #prepare(FrameContext)} phase (transform lookups, culling, level of
+ * detail selection) and the GL calls in
+ * {@link #draw(VisualizationView, GL10)}.
+ * <p>
+ * The renderer prepares all prepared layers of a frame in parallel and then
+ * draws all layers in order on the GL thread. Layers that do not implement
+ * this interface do all their work in
+ * {@link #draw(VisualizationView, GL10)} as before.
+ */
+public interface PreparedLayer extends Layer {
+
+  /**
+   * Computes what to draw in the next frame, e.g. a list of visible ranges.
+   * <p>
+   * Called once per frame before {@link #draw(VisualizationView, GL10)},
+   * possibly on a worker thread and concurrently with other layers, but never
+   * concurrently with any drawing. It must not make GL calls. The frame
+   * drawn next always uses the result of the last call.
+   */
+  void prepare(FrameContext context);
+}
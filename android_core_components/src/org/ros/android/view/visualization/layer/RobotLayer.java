@@ -16,6 +16,7 @@
 
 package org.ros.android.view.visualization.layer;
 
+import org.ros.android.view.visualization.SpatialIndex;
 import org.ros.android.view.visualization.VisualizationView;
 import org.ros.android.view.visualization.shape.PixelSpacePoseShape;
 import org.ros.android.view.visualization.shape.Shape;
@@ -27,14 +28,20 @@ import javax.microedition.khronos.opengles.GL10;
 /**
  * @author moesenle@google.com (Lorenz Moesenlechner)
  */
-public class RobotLayer extends DefaultLayer implements TfLayer {
+public class RobotLayer extends DefaultLayer implements TfLayer, BatchedLayer, HitTestLayer {
 
   private final GraphName frame;
 
+  /**
+   * The index of the robot, which is drawn at the origin of its frame.
+   */
+  private final SpatialIndex spatialIndex;
+
   private Shape shape;
 
   public RobotLayer(GraphName frame) {
     this.frame = frame;
+    spatialIndex = SpatialIndex.fromPoint(frame, 0, 0, 0);
   }
 
   public RobotLayer(String frame) {
@@ -57,4 +64,9 @@ public class RobotLayer extends DefaultLayer implements TfLayer {
   public GraphName getFrame() {
     return frame;
   }
+
+  @Override
+  public SpatialIndex getSpatialIndex() {
+    return spatialIndex;
+  }
 }
\ No newline at end of file
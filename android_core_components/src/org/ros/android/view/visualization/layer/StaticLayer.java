@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization.layer;
+
+import org.ros.android.view.visualization.StaticLayerCache;
+
+/**
+ * Interface for layers whose drawing only changes when their data, the camera
+ * or their transform changes (e.g. maps).
+ * <p>
+ * Static layers at the bottom of the layer stack are drawn once into an
+ * offscreen texture that is reused until one of them changes. See
+ * {@link StaticLayerCache}.
+ */
+public interface StaticLayer extends Layer {
+
+  /**
+   * @return a number that changes whenever the layer's data changes, e.g. the
+   *         number of updates published so far
+   */
+  long getContentVersion();
+}
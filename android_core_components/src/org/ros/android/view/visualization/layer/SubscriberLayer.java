@@ -17,42 +17,372 @@
 package org.ros.android.view.visualization.layer;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 
 import org.ros.android.view.visualization.VisualizationView;
+import org.ros.message.MessageListener;
 import org.ros.namespace.GraphName;
 import org.ros.node.ConnectedNode;
 import org.ros.node.Node;
 import org.ros.node.topic.Subscriber;
+import org.ros.node.topic.SubscriberListener;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.microedition.khronos.opengles.GL10;
 
 /**
+ * A {@link Layer} that subscribes to a topic.
+ * <p>
+ * The {@link SubscriptionOptions} limit how many messages the listeners that
+ * subclasses add to {@link #getSubscriber()} receive. Subclasses need not be
+ * aware of them.
+ * <p>
+ * While the layer is inactive (see {@link ToggleableLayer}) it does not
+ * subscribe. It subscribes again with the same message listeners once the
+ * layer becomes active.
+ *
  * @author damonkohler@google.com (Damon Kohler)
  */
-public class SubscriberLayer<T> extends DefaultLayer {
+public class SubscriberLayer<T> extends DefaultLayer implements ToggleableLayer {
+
+  /**
+   * A message listener added to the {@link Subscriber} and its queue limit,
+   * kept to add it again when the layer subscribes again.
+   */
+  private static final class Listener<T> {
+
+    /**
+     * The listener added by the subclass.
+     */
+    private final MessageListener<T> addedListener;
+
+    /**
+     * Wraps {@link #addedListener} and is added to the subscription.
+     */
+    private final MessageListener<T> messageListener;
+    private final int queueLimit;
+
+    Listener(MessageListener<T> addedListener, MessageListener<T> messageListener, int queueLimit) {
+      this.addedListener = addedListener;
+      this.messageListener = messageListener;
+      this.queueLimit = queueLimit;
+    }
+  }
+
+  /**
+   * The {@link Subscriber} returned by {@link #getSubscriber()}. Records the
+   * message listeners of the layer and forwards to the current subscription,
+   * which may be shared with layers of other views.
+   * <p>
+   * Shutting it down removes the message listeners of this layer and releases
+   * the layer's reference to the subscription through
+   * {@link org.ros.android.view.visualization.Scene#releaseSubscriber}. The
+   * shared subscription stays alive while layers of other views still hold
+   * it. The layer does not subscribe again until it is started again.
+   */
+  private final class LayerSubscriber implements Subscriber<T> {
+
+    private final ScheduledExecutorService scheduledExecutorService;
+
+    LayerSubscriber(ScheduledExecutorService scheduledExecutorService) {
+      this.scheduledExecutorService = scheduledExecutorService;
+    }
+
+    @Override
+    public GraphName getTopicName() {
+      return topicName;
+    }
+
+    @Override
+    public String getTopicMessageType() {
+      return messageType;
+    }
+
+    @Override
+    public void addMessageListener(MessageListener<T> messageListener) {
+      addMessageListener(messageListener, subscriptionOptions.getQueueLimit());
+    }
+
+    @Override
+    public void addMessageListener(MessageListener<T> messageListener, int limit) {
+      Preconditions.checkNotNull(messageListener);
+      addListener(new Listener<T>(messageListener, new ThrottledMessageListener<T>(
+          messageListener, subscriptionOptions, subscriptionStatistics,
+          scheduledExecutorService), limit));
+    }
+
+    @Override
+    public boolean removeMessageListener(MessageListener<T> messageListener) {
+      return removeListener(messageListener);
+    }
+
+    @Override
+    public void removeAllMessageListeners() {
+      removeListener(null);
+    }
+
+    @Override
+    public void shutdown(long timeout, TimeUnit unit) {
+      shutdown();
+    }
+
+    @Override
+    public void shutdown() {
+      shutdownSubscriber();
+    }
+
+    @Override
+    public void addSubscriberListener(SubscriberListener<T> listener) {
+      getSubscription().addSubscriberListener(listener);
+    }
+
+    @Override
+    public boolean getLatchMode() {
+      return getSubscription().getLatchMode();
+    }
+
+    @Override
+    public String toString() {
+      return "LayerSubscriber(" + topicName + ")";
+    }
+  }
 
   private final GraphName topicName;
   private final String messageType;
+  private final SubscriptionStatistics subscriptionStatistics;
+
+  /**
+   * Guards the subscription state below.
+   */
+  private final Object mutex;
+  private final List<Listener<T>> listeners;
 
+  private volatile SubscriptionOptions subscriptionOptions;
+  private volatile boolean enabled;
+  private volatile boolean suspended;
+  private VisualizationView view;
+  private ConnectedNode connectedNode;
+
+  /**
+   * The most recent {@link Subscriber}, which is shut down while the layer is
+   * inactive. {@code null} until the layer first subscribes.
+   */
   private Subscriber<T> subscriber;
+  private boolean subscribed;
+
+  /**
+   * {@code true} after {@link LayerSubscriber#shutdown()} until the layer is
+   * started again.
+   */
+  private boolean subscriberShutdown;
+
+  /**
+   * Forwards to {@link #subscriber} and records message listeners.
+   */
+  private LayerSubscriber layerSubscriber;
 
   public SubscriberLayer(GraphName topicName, String messageType) {
     this.topicName = topicName;
     this.messageType = messageType;
+    subscriptionStatistics = new SubscriptionStatistics();
+    subscriptionOptions = SubscriptionOptions.newDefault();
+    mutex = new Object();
+    listeners = Lists.newArrayList();
+    enabled = true;
   }
 
   @Override
   public void onStart(VisualizationView view, ConnectedNode connectedNode) {
     super.onStart(view, connectedNode);
-    subscriber = connectedNode.newSubscriber(topicName, messageType);
+    synchronized (mutex) {
+      this.view = view;
+      this.connectedNode = connectedNode;
+      layerSubscriber = new LayerSubscriber(connectedNode.getScheduledExecutorService());
+      subscriberShutdown = false;
+      if (isActive()) {
+        subscribe();
+      }
+    }
+  }
+
+  private void addListener(Listener<T> listener) {
+    synchronized (mutex) {
+      listeners.add(listener);
+      if (subscribed) {
+        subscriber.addMessageListener(listener.messageListener, listener.queueLimit);
+      }
+    }
+  }
+
+  /**
+   * @param addedListener
+   *          the listener to remove, or {@code null} to remove all listeners
+   *          of this layer
+   * @return {@code true} if a listener was removed
+   */
+  private boolean removeListener(MessageListener<T> addedListener) {
+    boolean removed = false;
+    synchronized (mutex) {
+      for (Iterator<Listener<T>> iterator = listeners.iterator(); iterator.hasNext();) {
+        Listener<T> listener = iterator.next();
+        if (addedListener == null || listener.addedListener == addedListener) {
+          iterator.remove();
+          if (subscribed) {
+            subscriber.removeMessageListener(listener.messageListener);
+          }
+          removed = true;
+          if (addedListener != null) {
+            break;
+          }
+        }
+      }
+    }
+    return removed;
+  }
+
+  private void shutdownSubscriber() {
+    synchronized (mutex) {
+      if (subscribed) {
+        unsubscribe();
+      }
+      listeners.clear();
+      subscriberShutdown = true;
+    }
+  }
+
+  private Subscriber<T> getSubscription() {
+    synchronized (mutex) {
+      Preconditions.checkState(subscriber != null, "The layer has not subscribed yet.");
+      return subscriber;
+    }
+  }
+
+  /**
+   * Must be called while holding {@link #mutex}.
+   */
+  private void subscribe() {
+    // Layers of other views showing the same scene may share the subscription.
+    subscriber = view.getScene().<T>acquireSubscriber(topicName, messageType);
+    // Latched topics deliver their last message to the new subscription.
+    for (Listener<T> listener : listeners) {
+      subscriber.addMessageListener(listener.messageListener, listener.queueLimit);
+    }
+    subscribed = true;
+  }
+
+  /**
+   * Must be called while holding {@link #mutex}.
+   */
+  private void unsubscribe() {
+    List<MessageListener<T>> messageListeners = Lists.newArrayList();
+    for (Listener<T> listener : listeners) {
+      messageListeners.add(listener.messageListener);
+    }
+    view.getScene().releaseSubscriber(topicName, subscriber, messageListeners);
+    view.getPreparationExecutor().cancel(this);
+    subscribed = false;
+  }
+
+  /**
+   * Subscribes or unsubscribes according to {@link #isActive()}.
+   */
+  private void updateSubscription() {
+    VisualizationView view;
+    synchronized (mutex) {
+      if (connectedNode == null || subscriberShutdown || subscribed == isActive()) {
+        return;
+      }
+      if (subscribed) {
+        unsubscribe();
+      } else {
+        subscribe();
+      }
+      view = this.view;
+    }
+    // Shows or hides the layer.
+    view.requestRender();
+  }
+
+  @Override
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+    updateSubscription();
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @Override
+  public void setSuspended(boolean suspended) {
+    this.suspended = suspended;
+    updateSubscription();
+  }
+
+  @Override
+  public boolean isActive() {
+    return enabled && !suspended;
+  }
+
+  @Override
+  public void onDeactivated(VisualizationView view, GL10 gl) {
   }
 
   @Override
   public void onShutdown(VisualizationView view, Node node) {
-    subscriber.shutdown();
+    synchronized (mutex) {
+      if (subscribed) {
+        unsubscribe();
+      }
+      view.getPreparationExecutor().remove(this);
+      listeners.clear();
+      connectedNode = null;
+    }
     super.onShutdown(view, node);
   }
 
+  /**
+   * @return the {@link Subscriber} of this layer, whose message listeners
+   *         receive messages according to the {@link SubscriptionOptions}
+   */
   public Subscriber<T> getSubscriber() {
-    Preconditions.checkNotNull(subscriber);
-    return subscriber;
+    Preconditions.checkNotNull(layerSubscriber);
+    return layerSubscriber;
+  }
+
+  public GraphName getTopicName() {
+    return topicName;
+  }
+
+  /**
+   * Applies to message listeners that are added afterwards. Must therefore be
+   * called before the layer is started.
+   *
+   * @param subscriptionOptions
+   */
+  public void setSubscriptionOptions(SubscriptionOptions subscriptionOptions) {
+    this.subscriptionOptions = Preconditions.checkNotNull(subscriptionOptions);
+  }
+
+  public SubscriptionOptions getSubscriptionOptions() {
+    return subscriptionOptions;
+  }
+
+  /**
+   * @return the {@link SubscriptionStatistics} of all message listeners of
+   *         this layer
+   */
+  public SubscriptionStatistics getSubscriptionStatistics() {
+    return subscriptionStatistics;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(" + topicName + ")";
   }
 }
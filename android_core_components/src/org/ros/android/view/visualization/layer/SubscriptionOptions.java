@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization.layer;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Immutable settings that limit how many messages a {@link SubscriberLayer}
+ * processes.
+ */
+public class SubscriptionOptions {
+
+  /**
+   * What to do with a message that arrives before the
+   * {@link SubscriptionOptions#getMaximumRate() maximum rate} allows it to be
+   * processed.
+   */
+  public enum DropPolicy {
+
+    /**
+     * Keep the newest message and process it as soon as the rate allows,
+     * dropping any older message that is still waiting.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Drop the message. The next message that arrives after the rate allows
+     * it is processed.
+     */
+    DROP_NEWEST
+  }
+
+  /**
+   * The queue limit rosjava uses for message listeners by default.
+   */
+  public static final int DEFAULT_QUEUE_LIMIT = 1;
+
+  private static final SubscriptionOptions DEFAULT_OPTIONS = new SubscriptionOptions(0,
+      DEFAULT_QUEUE_LIMIT, DropPolicy.DROP_OLDEST);
+
+  private final double maximumRate;
+  private final int queueLimit;
+  private final DropPolicy dropPolicy;
+
+  private SubscriptionOptions(double maximumRate, int queueLimit, DropPolicy dropPolicy) {
+    Preconditions.checkArgument(maximumRate >= 0);
+    Preconditions.checkArgument(queueLimit > 0);
+    this.maximumRate = maximumRate;
+    this.queueLimit = queueLimit;
+    this.dropPolicy = Preconditions.checkNotNull(dropPolicy);
+  }
+
+  /**
+   * @return options that process every message rosjava delivers
+   */
+  public static SubscriptionOptions newDefault() {
+    return DEFAULT_OPTIONS;
+  }
+
+  /**
+   * @param maximumRate
+   *          the maximum number of messages to process per second, 0 for no
+   *          limit
+   * @return a copy of these options with the specified maximum rate
+   */
+  public SubscriptionOptions withMaximumRate(double maximumRate) {
+    return new SubscriptionOptions(maximumRate, queueLimit, dropPolicy);
+  }
+
+  /**
+   * @param queueLimit
+   *          the number of incoming messages rosjava buffers for the layer
+   *          before it drops the oldest
+   * @return a copy of these options with the specified queue limit
+   */
+  public SubscriptionOptions withQueueLimit(int queueLimit) {
+    return new SubscriptionOptions(maximumRate, queueLimit, dropPolicy);
+  }
+
+  /**
+   * @return a copy of these options with the specified {@link DropPolicy}
+   */
+  public SubscriptionOptions withDropPolicy(DropPolicy dropPolicy) {
+    return new SubscriptionOptions(maximumRate, queueLimit, dropPolicy);
+  }
+
+  /**
+   * @return the maximum number of messages to process per second, 0 if there
+   *         is no limit
+   */
+  public double getMaximumRate() {
+    return maximumRate;
+  }
+
+  /**
+   * @return the minimum time between processed messages in nanoseconds, 0 if
+   *         there is no limit
+   */
+  public long getMinimumPeriodNanos() {
+    return maximumRate == 0 ? 0 : (long) (1e9 / maximumRate);
+  }
+
+  public int getQueueLimit() {
+    return queueLimit;
+  }
+
+  public DropPolicy getDropPolicy() {
+    return dropPolicy;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("SubscriptionOptions<%s Hz, %d, %s>", maximumRate, queueLimit,
+        dropPolicy);
+  }
+}
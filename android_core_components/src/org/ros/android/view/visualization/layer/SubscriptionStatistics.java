@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization.layer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the messages of a {@link SubscriberLayer}. May be read from any
+ * thread.
+ * <p>
+ * Messages that rosjava drops because the subscriber queue is full never
+ * reach the layer and are not counted.
+ */
+public class SubscriptionStatistics {
+
+  private final AtomicLong receivedCount;
+  private final AtomicLong processedCount;
+  private final AtomicLong droppedCount;
+
+  public SubscriptionStatistics() {
+    receivedCount = new AtomicLong();
+    processedCount = new AtomicLong();
+    droppedCount = new AtomicLong();
+  }
+
+  void received() {
+    receivedCount.incrementAndGet();
+  }
+
+  void processed() {
+    processedCount.incrementAndGet();
+  }
+
+  void dropped() {
+    droppedCount.incrementAndGet();
+  }
+
+  /**
+   * @return the number of messages delivered to the layer by rosjava
+   */
+  public long getReceivedCount() {
+    return receivedCount.get();
+  }
+
+  /**
+   * @return the number of messages passed on to the layer's listeners
+   */
+  public long getProcessedCount() {
+    return processedCount.get();
+  }
+
+  /**
+   * @return the number of messages dropped because of the maximum rate
+   */
+  public long getDroppedCount() {
+    return droppedCount.get();
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization.layer;
+
+import com.google.common.base.Preconditions;
+
+import org.ros.message.MessageListener;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Passes messages on to a {@link MessageListener} no faster than the maximum
+ * rate of the {@link SubscriptionOptions}. The listener is never called
+ * concurrently.
+ */
+class ThrottledMessageListener<T> implements MessageListener<T> {
+
+  private final MessageListener<T> delegate;
+  private final SubscriptionOptions options;
+  private final SubscriptionStatistics statistics;
+  private final ScheduledExecutorService scheduledExecutorService;
+  private final Runnable deliverPending;
+
+  private long previousDeliveryNanos;
+  private boolean delivered;
+  private T pending;
+  private boolean scheduled;
+
+  /**
+   * @param scheduledExecutorService
+   *          delivers messages that were held back, only required if the
+   *          options have a maximum rate and drop the oldest messages
+   */
+  ThrottledMessageListener(MessageListener<T> delegate, SubscriptionOptions options,
+      SubscriptionStatistics statistics, ScheduledExecutorService scheduledExecutorService) {
+    Preconditions.checkArgument(options.getMinimumPeriodNanos() == 0
+        || options.getDropPolicy() == SubscriptionOptions.DropPolicy.DROP_NEWEST
+        || scheduledExecutorService != null);
+    this.delegate = delegate;
+    this.options = options;
+    this.statistics = statistics;
+    this.scheduledExecutorService = scheduledExecutorService;
+    deliverPending = new Runnable() {
+      @Override
+      public void run() {
+        deliverPending();
+      }
+    };
+  }
+
+  @Override
+  public void onNewMessage(T message) {
+    statistics.received();
+    long minimumPeriodNanos = options.getMinimumPeriodNanos();
+    synchronized (this) {
+      long nowNanos = System.nanoTime();
+      long waitNanos =
+          delivered ? previousDeliveryNanos + minimumPeriodNanos - nowNanos : 0;
+      if (waitNanos <= 0 && pending == null) {
+        deliver(message, nowNanos);
+        return;
+      }
+      if (options.getDropPolicy() == SubscriptionOptions.DropPolicy.DROP_NEWEST) {
+        statistics.dropped();
+        return;
+      }
+      if (pending != null) {
+        statistics.dropped();
+      }
+      pending = message;
+      if (!scheduled) {
+        scheduled = true;
+        scheduledExecutorService.schedule(deliverPending, Math.max(0, waitNanos),
+            TimeUnit.NANOSECONDS);
+      }
+    }
+  }
+
+  private synchronized void deliverPending() {
+    scheduled = false;
+    T message = pending;
+    pending = null;
+    if (message != null) {
+      deliver(message, System.nanoTime());
+    }
+  }
+
+  /**
+   * Must be called while holding this listener's lock.
+   */
+  private void deliver(T message, long nowNanos) {
+    previousDeliveryNanos = nowNanos;
+    delivered = true;
+    statistics.processed();
+    delegate.onNewMessage(message);
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization.layer;
+
+import org.ros.android.view.visualization.VisualizationView;
+
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * Interface for layers that can be switched off at runtime, e.g. to stop
+ * receiving data that is not looked at.
+ * <p>
+ * A layer is active while it is enabled and not suspended. Only active layers
+ * are drawn. The {@link VisualizationView} suspends its layers while it is
+ * detached from its window or not shown, independent of whether the user
+ * enabled them.
+ */
+public interface ToggleableLayer extends Layer {
+
+  /**
+   * May be called from any thread. Layers are enabled initially.
+   */
+  void setEnabled(boolean enabled);
+
+  boolean isEnabled();
+
+  /**
+   * Called by the {@link VisualizationView} when it is hidden or shown again.
+   */
+  void setSuspended(boolean suspended);
+
+  /**
+   * @return {@code true} if the layer is enabled and not suspended
+   */
+  boolean isActive();
+
+  /**
+   * Called on the GL thread once the layer is no longer drawn because it
+   * became inactive. Layers release their textures and buffer objects here,
+   * they are created again when the layer is drawn next.
+   */
+  void onDeactivated(VisualizationView view, GL10 gl);
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization.layer;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands data from one writer thread (e.g. a subscriber) to one reader thread
+ * (e.g. the GL thread) without either of them ever waiting for the other.
+ * <p>
+ * The writer fills the write slot and {@link #publish()}es it, which exchanges
+ * it with the ready slot. The reader calls {@link #update()}, which exchanges
+ * its read slot with the ready slot if the writer published since. Both
+ * exchanges are a single atomic operation. Data is only lost when newer data
+ * is published before the reader picks it up.
+ * <p>
+ * Slots are reused, so the writer must overwrite all of the data it
+ * publishes. Each side must only touch its own slot.
+ *
+ * @param <T>
+ *          the type of the slots
+ */
+public class TripleBuffer<T> {
+
+  private static final int INDEX_MASK = 3;
+
+  /**
+   * Set in {@link #ready} when the ready slot was published but not read yet.
+   */
+  private static final int FRESH = 4;
+
+  private final Object[] slots;
+  private final List<T> allSlots;
+
+  /**
+   * The index of the ready slot and the {@link #FRESH} flag.
+   */
+  private final AtomicInteger ready;
+
+  /**
+   * Only accessed by the writer.
+   */
+  private int writeIndex;
+
+  /**
+   * Only accessed by the reader.
+   */
+  private int readIndex;
+  private boolean published;
+
+  public TripleBuffer(T first, T second, T third) {
+    Preconditions.checkNotNull(first);
+    Preconditions.checkNotNull(second);
+    Preconditions.checkNotNull(third);
+    Preconditions.checkArgument(first != second && first != third && second != third);
+    slots = new Object[] { first, second, third };
+    allSlots = ImmutableList.of(first, second, third);
+    writeIndex = 0;
+    ready = new AtomicInteger(1);
+    readIndex = 2;
+  }
+
+  /**
+   * @return a {@link TripleBuffer} with three slots created by the specified
+   *         {@link Supplier}
+   */
+  public static <T> TripleBuffer<T> newInstance(Supplier<T> supplier) {
+    return new TripleBuffer<T>(supplier.get(), supplier.get(), supplier.get());
+  }
+
+  /**
+   * The slots may be inspected by any thread, e.g. to account for their
+   * memory, but only modified as described above.
+   *
+   * @return all three slots
+   */
+  public List<T> getSlots() {
+    return allSlots;
+  }
+
+  /**
+   * Must only be called by the writer.
+   *
+   * @return the slot to fill before calling {@link #publish()}
+   */
+  @SuppressWarnings("unchecked")
+  public T getWriteBuffer() {
+    return (T) slots[writeIndex];
+  }
+
+  /**
+   * Makes the write slot available to the reader and takes over the previous
+   * ready slot for writing. Must only be called by the writer.
+   */
+  public void publish() {
+    writeIndex = ready.getAndSet(writeIndex | FRESH) & INDEX_MASK;
+  }
+
+  /**
+   * Takes over the most recently published slot for reading. Must only be
+   * called by the reader.
+   *
+   * @return {@code true} if the read slot changed
+   */
+  public boolean update() {
+    if ((ready.get() & FRESH) == 0) {
+      return false;
+    }
+    readIndex = ready.getAndSet(readIndex) & INDEX_MASK;
+    published = true;
+    return true;
+  }
+
+  /**
+   * Must only be called by the reader.
+   *
+   * @return the slot with the data published last when {@link #update()} was
+   *         called
+   */
+  @SuppressWarnings("unchecked")
+  public T getReadBuffer() {
+    return (T) slots[readIndex];
+  }
+
+  /**
+   * Must only be called by the reader.
+   *
+   * @return {@code true} if the read slot holds published data
+   */
+  public boolean hasReadBuffer() {
+    return published;
+  }
+}
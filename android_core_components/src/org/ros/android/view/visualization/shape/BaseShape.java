@@ -1,12 +1,16 @@
 package org.ros.android.view.visualization.shape;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.MapMaker;
 
 import org.ros.android.view.visualization.Color;
-import org.ros.android.view.visualization.OpenGlTransform;
+import org.ros.android.view.visualization.RenderQueue;
+import org.ros.android.view.visualization.TransformMatrix;
 import org.ros.android.view.visualization.VisualizationView;
 import org.ros.rosjava_geometry.Transform;
 
+import java.util.Map;
+
 import javax.microedition.khronos.opengles.GL10;
 
 /**
@@ -17,36 +21,106 @@ import javax.microedition.khronos.opengles.GL10;
  */
 abstract class BaseShape implements Shape {
 
+  /**
+   * Whether a class overrides the deprecated
+   * {@link #scale(VisualizationView, GL10)}.
+   */
+  private static final Map<Class<?>, Boolean> OVERRIDES_SCALE = new MapMaker().weakKeys()
+      .makeMap();
+
+  private final TransformMatrix transformMatrix;
+  private final boolean overridesScale;
+
   private Color color;
   private Transform transform;
 
   public BaseShape() {
+    transformMatrix = new TransformMatrix();
+    overridesScale = overridesScale(getClass());
     setTransform(Transform.identity());
   }
 
+  private static boolean overridesScale(Class<?> shapeClass) {
+    Boolean overrides = OVERRIDES_SCALE.get(shapeClass);
+    if (overrides == null) {
+      overrides = false;
+      for (Class<?> c = shapeClass; c != BaseShape.class; c = c.getSuperclass()) {
+        try {
+          c.getDeclaredMethod("scale", VisualizationView.class, GL10.class);
+          overrides = true;
+          break;
+        } catch (NoSuchMethodException e) {
+          // Look at the superclass.
+        }
+      }
+      OVERRIDES_SCALE.put(shapeClass, overrides);
+    }
+    return overrides;
+  }
+
+  /**
+   * Submits the shape to the {@link RenderQueue} of the view in the
+   * coordinate system of the current OpenGL model view matrix.
+   */
   @Override
   public void draw(VisualizationView view, GL10 gl) {
-    gl.glPushMatrix();
-    OpenGlTransform.apply(gl, getTransform());
-    scale(view, gl);
-    drawShape(view, gl);
-    gl.glPopMatrix();
+    RenderQueue queue = view.getRenderQueue();
+    // Only converted to a matrix when the transform changed.
+    transformMatrix.set(getTransform());
+    if (queue.isMirroringGl() && !overridesScale) {
+      queue.pushMatrix();
+      queue.multiply(transformMatrix.getMatrix());
+      float scale = getScale(view);
+      queue.scale(scale, scale, 1.f);
+      drawShape(view, gl);
+      queue.popMatrix();
+    } else {
+      // The caller may have transformed GL before drawing the shape, which
+      // the queue does not know about. The shape is transformed by GL and
+      // drawn right away.
+      gl.glPushMatrix();
+      transformMatrix.apply(gl);
+      scale(view, gl);
+      queue.pushGlRelativeMatrix(gl);
+      drawShape(view, gl);
+      queue.popGlRelativeMatrix(gl);
+      gl.glPopMatrix();
+    }
   }
 
   /**
-   * To be implemented by children. Draws the shape after the shape's
-   * transform and scaling have been applied.
+   * To be implemented by children. Submits the shape to the view's
+   * {@link RenderQueue} after the shape's transform and scaling have been
+   * applied to it.
    */
   abstract protected void drawShape(VisualizationView view, GL10 gl);
 
   /**
-   * Scales the coordinate system.
+   * Returns the uniform scale of the coordinate system in x and y.
+   * <p>
+   * This is applied after transforming the surface according to
+   * {@link #transform}.
+   */
+  protected float getScale(VisualizationView view) {
+    // The default scale is in metric space.
+    return 1.f;
+  }
+
+  /**
+   * Scales the coordinate system of GL by {@link #getScale(VisualizationView)}
+   * for shapes that are drawn directly.
    * <p>
    * This is called after transforming the surface according to
    * {@link #transform}.
+   *
+   * @deprecated Override {@link #getScale(VisualizationView)} instead. Shapes
+   *             that override this method are always drawn directly, which
+   *             costs a draw call each.
    */
+  @Deprecated
   protected void scale(VisualizationView view, GL10 gl) {
-    // The default scale is in metric space.
+    float scale = getScale(view);
+    gl.glScalef(scale, scale, 1.f);
   }
 
   @Override
@@ -20,6 +20,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 
 import org.ros.android.view.visualization.Color;
+import org.ros.android.view.visualization.RenderQueue;
 import org.ros.android.view.visualization.Vertices;
 import org.ros.android.view.visualization.VisualizationView;
 
@@ -65,14 +66,15 @@ public class MetricSpacePolygon extends BaseShape {
 
   @Override
   public void drawShape(VisualizationView view, GL10 gl) {
+    final RenderQueue queue = view.getRenderQueue();
     final Color translucent = getColor();
     translucent.setAlpha(0.3f);
     for (final FloatBuffer triangle : triangles) {
-      Vertices.drawTriangleFan(gl, triangle, translucent);
+      queue.drawTriangleFan(triangle, translucent);
     }
     final Color opaque = getColor();
     opaque.setAlpha(1.f);
-    Vertices.drawLineLoop(gl, vertexBuffer, opaque, 3.f);
-    Vertices.drawPoints(gl, vertexBuffer, opaque, 10.f);
+    queue.drawLineLoop(vertexBuffer, opaque, 3.f);
+    queue.drawPoints(vertexBuffer, opaque, 10.f);
   }
 }
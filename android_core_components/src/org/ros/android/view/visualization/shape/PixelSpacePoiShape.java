@@ -18,8 +18,6 @@ package org.ros.android.view.visualization.shape;
 
 import org.ros.android.view.visualization.VisualizationView;
 
-import javax.microedition.khronos.opengles.GL10;
-
 /**
  * Represents a pose.
  * <p>
@@ -33,11 +31,9 @@ public class PixelSpacePoiShape extends MetricSpacePoiShape {
   private static final float PIXELS_PER_METER = 100.f;
 
   @Override
-  protected void scale(VisualizationView view, GL10 gl) {
-    // Adjust for metric scale definition of MetricSpacePoseShape vertices.
-    gl.glScalef(PIXELS_PER_METER, PIXELS_PER_METER, 1.f);
-    // Counter adjust for the camera zoom.
-    gl.glScalef(1 / (float) view.getCamera().getZoom(), 1 / (float) view.getCamera().getZoom(),
-        1.0f);
+  protected float getScale(VisualizationView view) {
+    // Adjust for metric scale definition of MetricSpacePoseShape vertices and
+    // counter adjust for the camera zoom.
+    return PIXELS_PER_METER / (float) view.getCamera().getZoom();
   }
 }
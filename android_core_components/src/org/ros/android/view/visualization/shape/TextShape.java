@@ -1,5 +1,6 @@
 package org.ros.android.view.visualization.shape;
 
+import org.ros.android.view.visualization.RenderQueue;
 import org.ros.android.view.visualization.Vertices;
 import org.ros.android.view.visualization.VisualizationView;
 
@@ -47,20 +48,26 @@ public class TextShape extends BaseShape {
   }
 
   @Override
-  protected void scale(VisualizationView view, GL10 gl) {
+  protected float getScale(VisualizationView view) {
     // Counter adjust for the camera zoom.
-    gl.glScalef(1 / (float) view.getCamera().getZoom(), 1 / (float) view.getCamera().getZoom(),
-        1.0f);
+    return 1 / (float) view.getCamera().getZoom();
   }
 
   @Override
   protected void drawShape(VisualizationView view, GL10 gl) {
-    Vertices.drawLines(gl, lines, getColor(), 3.f);
+    RenderQueue queue = view.getRenderQueue();
+    queue.drawLines(lines, getColor(), 3.f);
+    // Text is textured and cannot be queued. Draw everything queued so far to
+    // keep the text on top and draw the text in the queue's coordinate system.
+    queue.flush(gl);
+    gl.glPushMatrix();
+    queue.applyMatrix(gl);
     gl.glEnable(GL10.GL_TEXTURE_2D);
     glText.begin(getColor().getRed(), getColor().getGreen(), getColor().getBlue(), getColor()
         .getAlpha());
     glText.draw(text, x, y);
     glText.end();
     gl.glDisable(GL10.GL_TEXTURE_2D);
+    gl.glPopMatrix();
   }
 }
@@ -52,6 +52,6 @@ public class TriangleFanShape extends BaseShape {
 
   @Override
   public void drawShape(VisualizationView view, GL10 gl) {
-    Vertices.drawTriangleFan(gl, vertices, getColor());
+    view.getRenderQueue().drawTriangleFan(vertices, getColor());
   }
 }
@@ -14,9 +14,10 @@ import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Typeface;
-import android.opengl.GLUtils;
 import android.util.Log;
 
+import java.nio.ByteBuffer;
+
 import javax.microedition.khronos.opengles.GL10;
 
 public class GLText {
@@ -209,8 +210,13 @@ public class GLText {
       gl.glTexParameterf( GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_S, GL10.GL_CLAMP_TO_EDGE );  // Set U Wrapping
       gl.glTexParameterf( GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_T, GL10.GL_CLAMP_TO_EDGE );  // Set V Wrapping
 
-      // load the generated bitmap onto the texture
-      GLUtils.texImage2D( GL10.GL_TEXTURE_2D, 0, bitmap, 0 );  // Load Bitmap to Texture
+      // load the generated bitmap onto the texture (through gl, so that GL10 implementations
+      // on top of shaders know that it is alpha only)
+      ByteBuffer pixels = ByteBuffer.allocateDirect( textureSize * textureSize );  // Alpha of Each Pixel
+      bitmap.copyPixelsToBuffer( pixels );            // Copy Bitmap Pixels
+      pixels.rewind();                                // Upload From the First Pixel
+      gl.glTexImage2D( GL10.GL_TEXTURE_2D, 0, GL10.GL_ALPHA, textureSize, textureSize, 0,
+            GL10.GL_ALPHA, GL10.GL_UNSIGNED_BYTE, pixels );  // Load Bitmap to Texture
       gl.glBindTexture( GL10.GL_TEXTURE_2D, 0 );      // Unbind Texture
 
       // release the bitmap
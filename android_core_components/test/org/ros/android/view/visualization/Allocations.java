@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android.view.visualization;
+
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Asserts that code does not allocate once it is warmed up.
+ */
+final class Allocations {
+
+  private static final int ITERATIONS = 10000;
+
+  private Allocations() {
+    // Utility class.
+  }
+
+  private static long getAllocatedBytes() {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+        .getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /**
+   * Fails if running the specified {@link Runnable} on the calling thread
+   * allocates more than a few bytes per iteration after warming up.
+   */
+  static void assertDoesNotAllocate(Runnable runnable) {
+    assertDoesNotAllocate(runnable, ITERATIONS);
+  }
+
+  /**
+   * @param iterations
+   *          the number of times to run the {@link Runnable} to warm up and
+   *          then again to measure
+   */
+  static void assertDoesNotAllocate(Runnable runnable, int iterations) {
+    for (int i = 0; i < iterations; i++) {
+      runnable.run();
+    }
+    long allocatedBytes = getAllocatedBytes();
+    for (int i = 0; i < iterations; i++) {
+      runnable.run();
+    }
+    allocatedBytes = getAllocatedBytes() - allocatedBytes;
+    assertTrue("Allocated " + allocatedBytes + " bytes.", allocatedBytes < iterations);
+  }
+}
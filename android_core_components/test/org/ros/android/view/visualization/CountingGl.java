@@ -0,0 +1,1140 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
+
+/**
+ * A {@link GL11} that draws nothing and only counts the commands it receives.
+ * It requires no EGL context, which allows measuring the CPU cost of drawing
+ * on a JVM without a display. Counting costs a few field increments per call
+ * so that it does not distort the measurements.
+ * <p>
+ * Names returned by {@code glGenTextures} and {@code glGenBuffers} are unique
+ * and all queries return zero except for {@code glGetString(GL_VERSION)}.
+ * Tests override single methods to inspect their arguments.
+ */
+public class CountingGl implements GL11 {
+
+  /**
+   * The version of an OpenGL ES 1.1 context, which supports buffer objects.
+   */
+  public static final String VERSION_1_1 = "OpenGL ES-CM 1.1";
+
+  /**
+   * The version of an OpenGL ES 1.0 context, which only draws from client-side
+   * arrays.
+   */
+  public static final String VERSION_1_0 = "OpenGL ES-CM 1.0";
+
+  private final String version;
+
+  private long callCount;
+  private long matrixOperationCount;
+  private long drawCallCount;
+  private long vertexCount;
+  private long bufferBytes;
+  private int nextName;
+
+  public CountingGl() {
+    this(VERSION_1_1);
+  }
+
+  /**
+   * @param version
+   *          returned by {@code glGetString(GL_VERSION)}
+   */
+  public CountingGl(String version) {
+    this.version = version;
+    nextName = 1;
+  }
+
+  /**
+   * @return the total number of calls
+   */
+  public long getCallCount() {
+    return callCount;
+  }
+
+  /**
+   * @return the number of calls that load, multiply, push or pop a matrix
+   */
+  public long getMatrixOperationCount() {
+    return matrixOperationCount;
+  }
+
+  /**
+   * @return the number of {@code glDrawArrays} and {@code glDrawElements}
+   *         calls
+   */
+  public long getDrawCallCount() {
+    return drawCallCount;
+  }
+
+  /**
+   * @return the number of vertices (or indices) drawn
+   */
+  public long getVertexCount() {
+    return vertexCount;
+  }
+
+  /**
+   * @return the number of bytes remaining in the data passed to calls, e.g.
+   *         client-side vertex arrays, buffer object and texture data
+   */
+  public long getBufferBytes() {
+    return bufferBytes;
+  }
+
+  /**
+   * Clears all counters. Generated names stay unique.
+   */
+  public void reset() {
+    callCount = 0;
+    matrixOperationCount = 0;
+    drawCallCount = 0;
+    vertexCount = 0;
+    bufferBytes = 0;
+  }
+
+  private void call() {
+    callCount++;
+  }
+
+  private void matrixOperation() {
+    callCount++;
+    matrixOperationCount++;
+  }
+
+  private void draw(int count) {
+    callCount++;
+    drawCallCount++;
+    vertexCount += count;
+  }
+
+  private void upload(Buffer data) {
+    if (data == null) {
+      return;
+    }
+    int elementSize;
+    if (data instanceof ByteBuffer) {
+      elementSize = 1;
+    } else if (data instanceof ShortBuffer) {
+      elementSize = 2;
+    } else {
+      // FloatBuffer and IntBuffer.
+      elementSize = 4;
+    }
+    bufferBytes += data.remaining() * elementSize;
+  }
+
+  private void generateNames(int n, int[] names, int offset) {
+    for (int i = 0; i < n; i++) {
+      names[offset + i] = nextName++;
+    }
+  }
+
+  private void generateNames(int n, IntBuffer names) {
+    for (int i = 0; i < n; i++) {
+      names.put(names.position() + i, nextName++);
+    }
+  }
+
+  @Override
+  public void glActiveTexture(int texture) {
+    call();
+  }
+
+  @Override
+  public void glAlphaFunc(int func, float ref) {
+    call();
+  }
+
+  @Override
+  public void glAlphaFuncx(int func, int ref) {
+    call();
+  }
+
+  @Override
+  public void glBindTexture(int target, int texture) {
+    call();
+  }
+
+  @Override
+  public void glBlendFunc(int sfactor, int dfactor) {
+    call();
+  }
+
+  @Override
+  public void glClear(int mask) {
+    call();
+  }
+
+  @Override
+  public void glClearColor(float red, float green, float blue, float alpha) {
+    call();
+  }
+
+  @Override
+  public void glClearColorx(int red, int green, int blue, int alpha) {
+    call();
+  }
+
+  @Override
+  public void glClearDepthf(float depth) {
+    call();
+  }
+
+  @Override
+  public void glClearDepthx(int depth) {
+    call();
+  }
+
+  @Override
+  public void glClearStencil(int s) {
+    call();
+  }
+
+  @Override
+  public void glClientActiveTexture(int texture) {
+    call();
+  }
+
+  @Override
+  public void glColor4f(float red, float green, float blue, float alpha) {
+    call();
+  }
+
+  @Override
+  public void glColor4x(int red, int green, int blue, int alpha) {
+    call();
+  }
+
+  @Override
+  public void glColorMask(boolean red, boolean green, boolean blue, boolean alpha) {
+    call();
+  }
+
+  @Override
+  public void glColorPointer(int size, int type, int stride, Buffer pointer) {
+    call();
+    upload(pointer);
+  }
+
+  @Override
+  public void glCompressedTexImage2D(int target, int level, int internalformat, int width, int height, int border, int imageSize, Buffer data) {
+    call();
+    upload(data);
+  }
+
+  @Override
+  public void glCompressedTexSubImage2D(int target, int level, int xoffset, int yoffset, int width, int height, int format, int imageSize, Buffer data) {
+    call();
+    upload(data);
+  }
+
+  @Override
+  public void glCopyTexImage2D(int target, int level, int internalformat, int x, int y, int width, int height, int border) {
+    call();
+  }
+
+  @Override
+  public void glCopyTexSubImage2D(int target, int level, int xoffset, int yoffset, int x, int y, int width, int height) {
+    call();
+  }
+
+  @Override
+  public void glCullFace(int mode) {
+    call();
+  }
+
+  @Override
+  public void glDeleteTextures(int n, int[] textures, int offset) {
+    call();
+  }
+
+  @Override
+  public void glDeleteTextures(int n, IntBuffer textures) {
+    call();
+  }
+
+  @Override
+  public void glDepthFunc(int func) {
+    call();
+  }
+
+  @Override
+  public void glDepthMask(boolean flag) {
+    call();
+  }
+
+  @Override
+  public void glDepthRangef(float zNear, float zFar) {
+    call();
+  }
+
+  @Override
+  public void glDepthRangex(int zNear, int zFar) {
+    call();
+  }
+
+  @Override
+  public void glDisable(int cap) {
+    call();
+  }
+
+  @Override
+  public void glDisableClientState(int array) {
+    call();
+  }
+
+  @Override
+  public void glDrawArrays(int mode, int first, int count) {
+    draw(count);
+  }
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, Buffer indices) {
+    draw(count);
+    upload(indices);
+  }
+
+  @Override
+  public void glEnable(int cap) {
+    call();
+  }
+
+  @Override
+  public void glEnableClientState(int array) {
+    call();
+  }
+
+  @Override
+  public void glFinish() {
+    call();
+  }
+
+  @Override
+  public void glFlush() {
+    call();
+  }
+
+  @Override
+  public void glFogf(int pname, float param) {
+    call();
+  }
+
+  @Override
+  public void glFogfv(int pname, float[] params, int offset) {
+    call();
+  }
+
+  @Override
+  public void glFogfv(int pname, FloatBuffer params) {
+    call();
+  }
+
+  @Override
+  public void glFogx(int pname, int param) {
+    call();
+  }
+
+  @Override
+  public void glFogxv(int pname, int[] params, int offset) {
+    call();
+  }
+
+  @Override
+  public void glFogxv(int pname, IntBuffer params) {
+    call();
+  }
+
+  @Override
+  public void glFrontFace(int mode) {
+    call();
+  }
+
+  @Override
+  public void glFrustumf(float left, float right, float bottom, float top, float zNear, float zFar) {
+    matrixOperation();
+  }
+
+  @Override
+  public void glFrustumx(int left, int right, int bottom, int top, int zNear, int zFar) {
+    matrixOperation();
+  }
+
+  @Override
+  public void glGenTextures(int n, int[] textures, int offset) {
+    call();
+    generateNames(n, textures, offset);
+  }
+
+  @Override
+  public void glGenTextures(int n, IntBuffer textures) {
+    call();
+    generateNames(n, textures);
+  }
+
+  @Override
+  public int glGetError() {
+    call();
+    return 0;
+  }
+
+  @Override
+  public void glGetIntegerv(int pname, int[] params, int offset) {
+    call();
+  }
+
+  @Override
+  public void glGetIntegerv(int pname, IntBuffer params) {
+    call();
+  }
+
+  @Override
+  public String glGetString(int name) {
+    call();
+    return name == GL10.GL_VERSION ? version : "";
+  }
+
+  @Override
+  public void glHint(int target, int mode) {
+    call();
+  }
+
+  @Override
+  public void glLightModelf(int pname, float param) {
+    call();
+  }
+
+  @Override
+  public void glLightModelfv(int pname, float[] params, int offset) {
+    call();
+  }
+
+  @Override
+  public void glLightModelfv(int pname, FloatBuffer params) {
+    call();
+  }
+
+  @Override
+  public void glLightModelx(int pname, int param) {
+    call();
+  }
+
+  @Override
+  public void glLightModelxv(int pname, int[] params, int offset) {
+    call();
+  }
+
+  @Override
+  public void glLightModelxv(int pname, IntBuffer params) {
+    call();
+  }
+
+  @Override
+  public void glLightf(int light, int pname, float param) {
+    call();
+  }
+
+  @Override
+  public void glLightfv(int light, int pname, float[] params, int offset) {
+    call();
+  }
+
+  @Override
+  public void glLightfv(int light, int pname, FloatBuffer params) {
+    call();
+  }
+
+  @Override
+  public void glLightx(int light, int pname, int param) {
+    call();
+  }
+
+  @Override
+  public void glLightxv(int light, int pname, int[] params, int offset) {
+    call();
+  }
+
+  @Override
+  public void glLightxv(int light, int pname, IntBuffer params) {
+    call();
+  }
+
+  @Override
+  public void glLineWidth(float width) {
+    call();
+  }
+
+  @Override
+  public void glLineWidthx(int width) {
+    call();
+  }
+
+  @Override
+  public void glLoadIdentity() {
+    matrixOperation();
+  }
+
+  @Override
+  public void glLoadMatrixf(float[] m, int offset) {
+    matrixOperation();
+  }
+
+  @Override
+  public void glLoadMatrixf(FloatBuffer m) {
+    matrixOperation();
+  }
+
+  @Override
+  public void glLoadMatrixx(int[] m, int offset) {
+    matrixOperation();
+  }
+
+  @Override
+  public void glLoadMatrixx(IntBuffer m) {
+    matrixOperation();
+  }
+
+  @Override
+  public void glLogicOp(int opcode) {
+    call();
+  }
+
+  @Override
+  public void glMaterialf(int face, int pname, float param) {
+    call();
+  }
+
+  @Override
+  public void glMaterialfv(int face, int pname, float[] params, int offset) {
+    call();
+  }
+
+  @Override
+  public void glMaterialfv(int face, int pname, FloatBuffer params) {
+    call();
+  }
+
+  @Override
+  public void glMaterialx(int face, int pname, int param) {
+    call();
+  }
+
+  @Override
+  public void glMaterialxv(int face, int pname, int[] params, int offset) {
+    call();
+  }
+
+  @Override
+  public void glMaterialxv(int face, int pname, IntBuffer params) {
+    call();
+  }
+
+  @Override
+  public void glMatrixMode(int mode) {
+    call();
+  }
+
+  @Override
+  public void glMultMatrixf(float[] m, int offset) {
+    matrixOperation();
+  }
+
+  @Override
+  public void glMultMatrixf(FloatBuffer m) {
+    matrixOperation();
+  }
+
+  @Override
+  public void glMultMatrixx(int[] m, int offset) {
+    matrixOperation();
+  }
+
+  @Override
+  public void glMultMatrixx(IntBuffer m) {
+    matrixOperation();
+  }
+
+  @Override
+  public void glMultiTexCoord4f(int target, float s, float t, float r, float q) {
+    call();
+  }
+
+  @Override
+  public void glMultiTexCoord4x(int target, int s, int t, int r, int q) {
+    call();
+  }
+
+  @Override
+  public void glNormal3f(float nx, float ny, float nz) {
+    call();
+  }
+
+  @Override
+  public void glNormal3x(int nx, int ny, int nz) {
+    call();
+  }
+
+  @Override
+  public void glNormalPointer(int type, int stride, Buffer pointer) {
+    call();
+    upload(pointer);
+  }
+
+  @Override
+  public void glOrthof(float left, float right, float bottom, float top, float zNear, float zFar) {
+    matrixOperation();
+  }
+
+  @Override
+  public void glOrthox(int left, int right, int bottom, int top, int zNear, int zFar) {
+    matrixOperation();
+  }
+
+  @Override
+  public void glPixelStorei(int pname, int param) {
+    call();
+  }
+
+  @Override
+  public void glPointSize(float size) {
+    call();
+  }
+
+  @Override
+  public void glPointSizex(int size) {
+    call();
+  }
+
+  @Override
+  public void glPolygonOffset(float factor, float units) {
+    call();
+  }
+
+  @Override
+  public void glPolygonOffsetx(int factor, int units) {
+    call();
+  }
+
+  @Override
+  public void glPopMatrix() {
+    matrixOperation();
+  }
+
+  @Override
+  public void glPushMatrix() {
+    matrixOperation();
+  }
+
+  @Override
+  public void glReadPixels(int x, int y, int width, int height, int format, int type, Buffer pixels) {
+    call();
+    upload(pixels);
+  }
+
+  @Override
+  public void glRotatef(float angle, float x, float y, float z) {
+    matrixOperation();
+  }
+
+  @Override
+  public void glRotatex(int angle, int x, int y, int z) {
+    matrixOperation();
+  }
+
+  @Override
+  public void glSampleCoverage(float value, boolean invert) {
+    call();
+  }
+
+  @Override
+  public void glSampleCoveragex(int value, boolean invert) {
+    call();
+  }
+
+  @Override
+  public void glScalef(float x, float y, float z) {
+    matrixOperation();
+  }
+
+  @Override
+  public void glScalex(int x, int y, int z) {
+    matrixOperation();
+  }
+
+  @Override
+  public void glScissor(int x, int y, int width, int height) {
+    call();
+  }
+
+  @Override
+  public void glShadeModel(int mode) {
+    call();
+  }
+
+  @Override
+  public void glStencilFunc(int func, int ref, int mask) {
+    call();
+  }
+
+  @Override
+  public void glStencilMask(int mask) {
+    call();
+  }
+
+  @Override
+  public void glStencilOp(int fail, int zfail, int zpass) {
+    call();
+  }
+
+  @Override
+  public void glTexCoordPointer(int size, int type, int stride, Buffer pointer) {
+    call();
+    upload(pointer);
+  }
+
+  @Override
+  public void glTexEnvf(int target, int pname, float param) {
+    call();
+  }
+
+  @Override
+  public void glTexEnvfv(int target, int pname, float[] params, int offset) {
+    call();
+  }
+
+  @Override
+  public void glTexEnvfv(int target, int pname, FloatBuffer params) {
+    call();
+  }
+
+  @Override
+  public void glTexEnvx(int target, int pname, int param) {
+    call();
+  }
+
+  @Override
+  public void glTexEnvxv(int target, int pname, int[] params, int offset) {
+    call();
+  }
+
+  @Override
+  public void glTexEnvxv(int target, int pname, IntBuffer params) {
+    call();
+  }
+
+  @Override
+  public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format, int type, Buffer pixels) {
+    call();
+    upload(pixels);
+  }
+
+  @Override
+  public void glTexParameterf(int target, int pname, float param) {
+    call();
+  }
+
+  @Override
+  public void glTexParameterx(int target, int pname, int param) {
+    call();
+  }
+
+  @Override
+  public void glTexSubImage2D(int target, int level, int xoffset, int yoffset, int width, int height, int format, int type, Buffer pixels) {
+    call();
+    upload(pixels);
+  }
+
+  @Override
+  public void glTranslatef(float x, float y, float z) {
+    matrixOperation();
+  }
+
+  @Override
+  public void glTranslatex(int x, int y, int z) {
+    matrixOperation();
+  }
+
+  @Override
+  public void glVertexPointer(int size, int type, int stride, Buffer pointer) {
+    call();
+    upload(pointer);
+  }
+
+  @Override
+  public void glViewport(int x, int y, int width, int height) {
+    call();
+  }
+
+  @Override
+  public void glBindBuffer(int target, int buffer) {
+    call();
+  }
+
+  @Override
+  public void glBufferData(int target, int size, Buffer data, int usage) {
+    call();
+    upload(data);
+  }
+
+  @Override
+  public void glBufferSubData(int target, int offset, int size, Buffer data) {
+    call();
+    upload(data);
+  }
+
+  @Override
+  public void glClipPlanef(int plane, float[] equation, int offset) {
+    call();
+  }
+
+  @Override
+  public void glClipPlanef(int plane, FloatBuffer equation) {
+    call();
+  }
+
+  @Override
+  public void glClipPlanex(int plane, int[] equation, int offset) {
+    call();
+  }
+
+  @Override
+  public void glClipPlanex(int plane, IntBuffer equation) {
+    call();
+  }
+
+  @Override
+  public void glColor4ub(byte red, byte green, byte blue, byte alpha) {
+    call();
+  }
+
+  @Override
+  public void glColorPointer(int size, int type, int stride, int offset) {
+    call();
+  }
+
+  @Override
+  public void glDeleteBuffers(int n, int[] buffers, int offset) {
+    call();
+  }
+
+  @Override
+  public void glDeleteBuffers(int n, IntBuffer buffers) {
+    call();
+  }
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, int offset) {
+    draw(count);
+  }
+
+  @Override
+  public void glGenBuffers(int n, int[] buffers, int offset) {
+    call();
+    generateNames(n, buffers, offset);
+  }
+
+  @Override
+  public void glGenBuffers(int n, IntBuffer buffers) {
+    call();
+    generateNames(n, buffers);
+  }
+
+  @Override
+  public void glGetBooleanv(int pname, boolean[] params, int offset) {
+    call();
+  }
+
+  @Override
+  public void glGetBooleanv(int pname, IntBuffer params) {
+    call();
+  }
+
+  @Override
+  public void glGetBufferParameteriv(int target, int pname, int[] params, int offset) {
+    call();
+  }
+
+  @Override
+  public void glGetBufferParameteriv(int target, int pname, IntBuffer params) {
+    call();
+  }
+
+  @Override
+  public void glGetClipPlanef(int pname, float[] eqn, int offset) {
+    call();
+  }
+
+  @Override
+  public void glGetClipPlanef(int pname, FloatBuffer eqn) {
+    call();
+  }
+
+  @Override
+  public void glGetClipPlanex(int pname, int[] eqn, int offset) {
+    call();
+  }
+
+  @Override
+  public void glGetClipPlanex(int pname, IntBuffer eqn) {
+    call();
+  }
+
+  @Override
+  public void glGetFixedv(int pname, int[] params, int offset) {
+    call();
+  }
+
+  @Override
+  public void glGetFixedv(int pname, IntBuffer params) {
+    call();
+  }
+
+  @Override
+  public void glGetFloatv(int pname, float[] params, int offset) {
+    call();
+  }
+
+  @Override
+  public void glGetFloatv(int pname, FloatBuffer params) {
+    call();
+  }
+
+  @Override
+  public void glGetLightfv(int light, int pname, float[] params, int offset) {
+    call();
+  }
+
+  @Override
+  public void glGetLightfv(int light, int pname, FloatBuffer params) {
+    call();
+  }
+
+  @Override
+  public void glGetLightxv(int light, int pname, int[] params, int offset) {
+    call();
+  }
+
+  @Override
+  public void glGetLightxv(int light, int pname, IntBuffer params) {
+    call();
+  }
+
+  @Override
+  public void glGetMaterialfv(int face, int pname, float[] params, int offset) {
+    call();
+  }
+
+  @Override
+  public void glGetMaterialfv(int face, int pname, FloatBuffer params) {
+    call();
+  }
+
+  @Override
+  public void glGetMaterialxv(int face, int pname, int[] params, int offset) {
+    call();
+  }
+
+  @Override
+  public void glGetMaterialxv(int face, int pname, IntBuffer params) {
+    call();
+  }
+
+  @Override
+  public void glGetPointerv(int pname, Buffer[] params) {
+    call();
+  }
+
+  @Override
+  public void glGetTexEnviv(int env, int pname, int[] params, int offset) {
+    call();
+  }
+
+  @Override
+  public void glGetTexEnviv(int env, int pname, IntBuffer params) {
+    call();
+  }
+
+  @Override
+  public void glGetTexEnvxv(int env, int pname, int[] params, int offset) {
+    call();
+  }
+
+  @Override
+  public void glGetTexEnvxv(int env, int pname, IntBuffer params) {
+    call();
+  }
+
+  @Override
+  public void glGetTexParameterfv(int target, int pname, float[] params, int offset) {
+    call();
+  }
+
+  @Override
+  public void glGetTexParameterfv(int target, int pname, FloatBuffer params) {
+    call();
+  }
+
+  @Override
+  public void glGetTexParameteriv(int target, int pname, int[] params, int offset) {
+    call();
+  }
+
+  @Override
+  public void glGetTexParameteriv(int target, int pname, IntBuffer params) {
+    call();
+  }
+
+  @Override
+  public void glGetTexParameterxv(int target, int pname, int[] params, int offset) {
+    call();
+  }
+
+  @Override
+  public void glGetTexParameterxv(int target, int pname, IntBuffer params) {
+    call();
+  }
+
+  @Override
+  public boolean glIsBuffer(int buffer) {
+    call();
+    return false;
+  }
+
+  @Override
+  public boolean glIsEnabled(int cap) {
+    call();
+    return false;
+  }
+
+  @Override
+  public boolean glIsTexture(int texture) {
+    call();
+    return false;
+  }
+
+  @Override
+  public void glNormalPointer(int type, int stride, int offset) {
+    call();
+  }
+
+  @Override
+  public void glPointParameterf(int pname, float param) {
+    call();
+  }
+
+  @Override
+  public void glPointParameterfv(int pname, float[] params, int offset) {
+    call();
+  }
+
+  @Override
+  public void glPointParameterfv(int pname, FloatBuffer params) {
+    call();
+  }
+
+  @Override
+  public void glPointParameterx(int pname, int param) {
+    call();
+  }
+
+  @Override
+  public void glPointParameterxv(int pname, int[] params, int offset) {
+    call();
+  }
+
+  @Override
+  public void glPointParameterxv(int pname, IntBuffer params) {
+    call();
+  }
+
+  @Override
+  public void glPointSizePointerOES(int type, int stride, Buffer pointer) {
+    call();
+    upload(pointer);
+  }
+
+  @Override
+  public void glTexCoordPointer(int size, int type, int stride, int offset) {
+    call();
+  }
+
+  @Override
+  public void glTexEnvi(int target, int pname, int param) {
+    call();
+  }
+
+  @Override
+  public void glTexEnviv(int target, int pname, int[] params, int offset) {
+    call();
+  }
+
+  @Override
+  public void glTexEnviv(int target, int pname, IntBuffer params) {
+    call();
+  }
+
+  @Override
+  public void glTexParameterfv(int target, int pname, float[] params, int offset) {
+    call();
+  }
+
+  @Override
+  public void glTexParameterfv(int target, int pname, FloatBuffer params) {
+    call();
+  }
+
+  @Override
+  public void glTexParameteri(int target, int pname, int param) {
+    call();
+  }
+
+  @Override
+  public void glTexParameteriv(int target, int pname, int[] params, int offset) {
+    call();
+  }
+
+  @Override
+  public void glTexParameteriv(int target, int pname, IntBuffer params) {
+    call();
+  }
+
+  @Override
+  public void glTexParameterxv(int target, int pname, int[] params, int offset) {
+    call();
+  }
+
+  @Override
+  public void glTexParameterxv(int target, int pname, IntBuffer params) {
+    call();
+  }
+
+  @Override
+  public void glVertexPointer(int size, int type, int stride, int offset) {
+    call();
+  }
+}
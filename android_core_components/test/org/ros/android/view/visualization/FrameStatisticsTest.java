@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+import org.ros.android.view.visualization.layer.DefaultLayer;
+import org.ros.android.view.visualization.layer.Layer;
+
+import java.util.List;
+
+public class FrameStatisticsTest {
+
+  private static Layer newLayer() {
+    return new DefaultLayer() {
+    };
+  }
+
+  @Test
+  public void testRemovedLayersArePruned() {
+    FrameStatistics statistics = new FrameStatistics();
+    Layer first = newLayer();
+    Layer second = newLayer();
+    List<Layer> layers = Lists.newArrayList(first, second);
+    statistics.recordLayer(first, 1);
+    statistics.recordLayer(second, 1);
+    statistics.recordFrame(2, layers);
+    assertEquals(2, statistics.getAllLayerTimes().size());
+
+    Layer third = newLayer();
+    layers.set(0, third);
+    statistics.recordLayer(second, 1);
+    statistics.recordLayer(third, 1);
+    statistics.recordFrame(2, layers);
+    assertNull(statistics.getLayerTimes(first));
+    assertNotNull(statistics.getLayerTimes(second));
+    assertNotNull(statistics.getLayerTimes(third));
+    assertEquals(2, statistics.getAllLayerTimes().size());
+  }
+}
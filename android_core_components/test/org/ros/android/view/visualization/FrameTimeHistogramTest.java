@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FrameTimeHistogramTest {
+
+  private static final long MILLISECOND = 1000 * 1000;
+
+  @Test
+  public void testPercentiles() {
+    FrameTimeHistogram histogram = new FrameTimeHistogram();
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i * MILLISECOND);
+    }
+    assertEquals(100, histogram.getCount());
+    assertEquals(100 * MILLISECOND, histogram.getMaximum());
+    // Percentiles are bucket upper bounds with at most 25% error.
+    long p50 = histogram.getPercentile(50);
+    assertTrue(p50 >= 50 * MILLISECOND && p50 <= 63 * MILLISECOND);
+    assertEquals(100 * MILLISECOND, histogram.getPercentile(100));
+  }
+
+  @Test
+  public void testOldDurationsAreDiscarded() {
+    FrameTimeHistogram histogram = new FrameTimeHistogram(10);
+    for (int i = 0; i < 10; i++) {
+      histogram.record(100 * MILLISECOND);
+    }
+    for (int i = 0; i < 10; i++) {
+      histogram.record(MILLISECOND);
+    }
+    // Both windows are still kept.
+    assertEquals(20, histogram.getCount());
+    assertEquals(100 * MILLISECOND, histogram.getMaximum());
+    histogram.record(MILLISECOND);
+    assertEquals(11, histogram.getCount());
+    assertEquals(MILLISECOND, histogram.getMaximum());
+    assertEquals(MILLISECOND, histogram.getMean());
+    assertEquals(MILLISECOND, histogram.getPercentile(99));
+  }
+
+  @Test
+  public void testReset() {
+    FrameTimeHistogram histogram = new FrameTimeHistogram(10);
+    for (int i = 0; i < 15; i++) {
+      histogram.record(MILLISECOND);
+    }
+    histogram.reset();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getPercentile(50));
+    assertEquals(0, histogram.getMaximum());
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android.view.visualization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.ros.message.Time;
+import org.ros.namespace.GraphName;
+import org.ros.rosjava_geometry.FrameTransform;
+import org.ros.rosjava_geometry.FrameTransformTree;
+import org.ros.rosjava_geometry.Transform;
+
+public class FrameTransformCacheTest {
+
+  private static final GraphName MAP = GraphName.of("map");
+  private static final GraphName ODOM = GraphName.of("odom");
+  private static final GraphName BASE_LINK = GraphName.of("base_link");
+  private static final GraphName LASER = GraphName.of("laser");
+
+  private FrameTransformTree frameTransformTree;
+  private FrameTransformCache cache;
+
+  private void update(Transform transform, GraphName source, GraphName target) {
+    frameTransformTree.update(new FrameTransform(transform, source, target, new Time()));
+  }
+
+  @Before
+  public void setup() {
+    frameTransformTree = new FrameTransformTree();
+    update(Transform.translation(1, 0, 0), ODOM, MAP);
+    update(OpenGlTransformTest.TRANSFORM, BASE_LINK, ODOM);
+    update(Transform.translation(0, 0, 1), LASER, BASE_LINK);
+    cache = new FrameTransformCache(frameTransformTree);
+  }
+
+  @Test
+  public void testHitDoesNotAllocate() {
+    float[] matrix = cache.getMatrix(BASE_LINK, MAP);
+    assertNotNull(matrix);
+    assertSame(matrix, cache.getMatrix(BASE_LINK, MAP));
+    Allocations.assertDoesNotAllocate(new Runnable() {
+      @Override
+      public void run() {
+        cache.getMatrix(BASE_LINK, MAP);
+      }
+    });
+  }
+
+  @Test
+  public void testUnavailableTransformIsCached() {
+    GraphName unknown = GraphName.of("unknown");
+    assertNull(cache.get(unknown, MAP));
+    assertNull(cache.getMatrix(unknown, MAP));
+    assertEquals(1, cache.getMissCount());
+    assertEquals(1, cache.getHitCount());
+  }
+
+  @Test
+  public void testInvalidateDiscardsDependentEntries() {
+    Transform laserToMap = cache.get(LASER, MAP);
+    Transform odomToMap = cache.get(ODOM, MAP);
+    assertEquals(2, cache.size());
+    update(Transform.translation(0, 0, 2), LASER, BASE_LINK);
+    cache.invalidate(LASER);
+    assertEquals(1, cache.size());
+    assertSame(odomToMap, cache.get(ODOM, MAP));
+    assertNotSame(laserToMap, cache.get(LASER, MAP));
+    assertEquals(
+        frameTransformTree.transform(LASER, MAP).getTransform().getTranslation().getZ(),
+        cache.get(LASER, MAP).getTranslation().getZ(), 1e-9);
+  }
+
+  @Test
+  public void testInvalidateMatchesRelativeNames() {
+    cache.get(LASER, MAP);
+    cache.invalidate(GraphName.of("/laser"));
+    assertEquals(0, cache.size());
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android.view.visualization;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.ros.rosjava_geometry.Quaternion;
+import org.ros.rosjava_geometry.Transform;
+import org.ros.rosjava_geometry.Vector3;
+
+public class OpenGlTransformTest {
+
+  static final Transform TRANSFORM = new Transform(new Vector3(1, -2, 3),
+      Quaternion.fromAxisAngle(new Vector3(0.2, 0.3, 1), 0.7)).scale(2);
+
+  @Test
+  public void testToMatrixMatchesTransform() {
+    float[] matrix = OpenGlTransform.toMatrix(TRANSFORM, new float[OpenGlTransform.MATRIX_SIZE]);
+    double[] expected = TRANSFORM.toMatrix();
+    for (int i = 0; i < OpenGlTransform.MATRIX_SIZE; i++) {
+      assertEquals(expected[i], matrix[i], 1e-6);
+    }
+  }
+
+  @Test
+  public void testToMatrixDoesNotAllocate() {
+    final float[] matrix = new float[OpenGlTransform.MATRIX_SIZE];
+    Allocations.assertDoesNotAllocate(new Runnable() {
+      @Override
+      public void run() {
+        OpenGlTransform.toMatrix(TRANSFORM, matrix);
+      }
+    });
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.ros.exception.RosRuntimeException;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+public class ParallelLoopTest {
+
+  private static final int COUNT = 64;
+  private static final int RUNS = 200;
+
+  private static void assertRunsOnce(ParallelLoop parallelLoop) {
+    final AtomicIntegerArray runs = new AtomicIntegerArray(COUNT);
+    ParallelLoop.Loop loop = parallelLoop.newLoop(new ParallelLoop.Body() {
+      @Override
+      public void run(int index) {
+        runs.incrementAndGet(index);
+      }
+    });
+    for (int i = 1; i <= RUNS; i++) {
+      // Shrinking and growing the count leaves stale iterations queued.
+      int count = i % 2 == 0 ? COUNT : COUNT / 2;
+      loop.run(count);
+      for (int j = 0; j < COUNT; j++) {
+        int expected = j < COUNT / 2 ? i : i / 2;
+        assertEquals(expected, runs.get(j));
+      }
+    }
+  }
+
+  @Test
+  public void testReusedLoopRunsEachIndexOnce() {
+    assertRunsOnce(new ParallelLoop(3));
+  }
+
+  @Test
+  public void testCallingThreadOnly() {
+    assertRunsOnce(new ParallelLoop(0));
+  }
+
+  @Test
+  public void testFailureIsRethrownAfterAllIterations() {
+    final IllegalStateException failure = new IllegalStateException();
+    final AtomicIntegerArray runs = new AtomicIntegerArray(COUNT);
+    try {
+      new ParallelLoop(3).run(COUNT, new ParallelLoop.Body() {
+        @Override
+        public void run(int index) {
+          runs.incrementAndGet(index);
+          if (index == 0) {
+            throw failure;
+          }
+        }
+      });
+      fail();
+    } catch (RosRuntimeException e) {
+      assertSame(failure, e.getCause());
+    }
+    for (int i = 0; i < COUNT; i++) {
+      assertEquals(1, runs.get(i));
+    }
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PreparationExecutorTest {
+
+  private static final Runnable NOTHING = new Runnable() {
+    @Override
+    public void run() {
+    }
+  };
+
+  @Test
+  public void testRemoveForgetsKey() {
+    PreparationExecutor executor = PreparationExecutor.newInlineExecutor();
+    Object first = new Object();
+    Object second = new Object();
+    executor.submit(first, NOTHING);
+    executor.submit(second, NOTHING);
+    assertEquals(2, executor.getAllStatistics().size());
+    executor.remove(first);
+    assertNull(executor.getStatistics(first));
+    assertNotNull(executor.getStatistics(second));
+    assertEquals(1, executor.getAllStatistics().size());
+    executor.remove(second);
+    assertTrue(executor.getAllStatistics().isEmpty());
+  }
+
+  @Test
+  public void testCancelKeepsKey() {
+    PreparationExecutor executor = PreparationExecutor.newInlineExecutor();
+    Object key = new Object();
+    executor.submit(key, NOTHING);
+    executor.cancel(key);
+    assertNotNull(executor.getStatistics(key));
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.ros.android.view.visualization.layer.Layer;
+
+import java.util.Collections;
+import java.util.List;
+
+public class QualityGovernorTest {
+
+  private static final long MILLISECOND = 1000 * 1000;
+  private static final List<Layer> NO_LAYERS = Collections.emptyList();
+
+  /**
+   * Draws frames back to back that take 2 ms on the GL thread but start
+   * {@code intervalMillis} apart.
+   *
+   * @return the time the last frame ended
+   */
+  private static long drawFrames(QualityGovernor governor, long startNanos, int count,
+      long intervalMillis) {
+    long start = startNanos;
+    for (int i = 0; i < count; i++) {
+      governor.recordFrame(start, start + 2 * MILLISECOND, true, NO_LAYERS);
+      start += intervalMillis * MILLISECOND;
+    }
+    return start - intervalMillis * MILLISECOND + 2 * MILLISECOND;
+  }
+
+  @Test
+  public void testLowersDetailWhenTheGpuIsTheBottleneck() {
+    QualityGovernor governor = new QualityGovernor();
+    governor.setTargetFrameRate(30);
+    // The CPU time is well within budget but frames are 100 ms apart.
+    drawFrames(governor, MILLISECOND, 30, 100);
+    assertTrue(governor.getLevelOfDetail() < 1);
+    assertTrue(governor.isReduced());
+  }
+
+  @Test
+  public void testIdleTimeIsNotCountedAsFrameTime() {
+    QualityGovernor governor = new QualityGovernor();
+    governor.setTargetFrameRate(30);
+    long start = MILLISECOND;
+    for (int i = 0; i < 30; i++) {
+      // Single frames drawn on demand, a second apart.
+      governor.recordFrame(start, start + 2 * MILLISECOND, false, NO_LAYERS);
+      start += 1000 * MILLISECOND;
+    }
+    assertEquals(1, governor.getLevelOfDetail(), 0);
+  }
+
+  @Test
+  public void testRestoresDetailWhileIdle() {
+    QualityGovernor governor = new QualityGovernor();
+    governor.setTargetFrameRate(30);
+    long end = drawFrames(governor, MILLISECOND, 30, 100);
+    float reduced = governor.getLevelOfDetail();
+    assertFalse(governor.restore(end + 10 * MILLISECOND));
+    long now = end;
+    while (governor.isReduced()) {
+      now += QualityGovernor.RESTORE_INTERVAL_MILLIS * MILLISECOND;
+      assertTrue(governor.restore(now));
+      assertTrue(governor.getLevelOfDetail() > reduced);
+    }
+    assertEquals(1, governor.getLevelOfDetail(), 0);
+    assertFalse(governor.restore(now + QualityGovernor.RESTORE_INTERVAL_MILLIS * MILLISECOND));
+  }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * Measures the CPU cost of the draw paths of the layers on a plain JVM. Each
+ * {@link Workload} submits per frame what a layer submits, e.g. a laser scan
+ * is drawn from a {@link VertexBuffer} culled by {@link PointChunks} and robot
+ * and pose shapes are batched by a {@link RenderQueue}. Frames are drawn into
+ * a {@link CountingGl}, so the numbers exclude the driver and the GPU.
+ * <p>
+ * Layers draw with a {@link VisualizationView}, which is a
+ * {@link android.opengl.GLSurfaceView} that requires an Android runtime. The
+ * workloads therefore use the drawing classes the layers delegate to.
+ * Textures are uploaded through {@link android.opengl.GLUtils} and are not
+ * measured.
+ * <p>
+ * Run {@link #main(String[])} with the library and its dependencies on the
+ * class path, optionally passing the number of frames to measure.
+ */
+public class RenderBenchmark {
+
+  private static final int DEFAULT_FRAMES = 2000;
+  private static final int WARM_UP_FRAMES = 500;
+
+  /**
+   * Draws the geometry of one kind of layer.
+   */
+  public interface Workload {
+
+    /**
+     * Updates the data before the specified frame is drawn, e.g. like a new
+     * message. Time spent in this method is not measured.
+     */
+    void update(int frame);
+
+    void draw(GL10 gl);
+  }
+
+  /**
+   * The measurements of a benchmark run, excluding the warm up frames.
+   */
+  public static class Result {
+
+    private final long[] frameNanos;
+    private final long callCount;
+    private final long drawCallCount;
+    private final long vertexCount;
+    private final long matrixOperationCount;
+    private final long bufferBytes;
+
+    private Result(long[] frameNanos, CountingGl gl) {
+      this.frameNanos = frameNanos.clone();
+      Arrays.sort(this.frameNanos);
+      callCount = gl.getCallCount();
+      drawCallCount = gl.getDrawCallCount();
+      vertexCount = gl.getVertexCount();
+      matrixOperationCount = gl.getMatrixOperationCount();
+      bufferBytes = gl.getBufferBytes();
+    }
+
+    public int getFrameCount() {
+      return frameNanos.length;
+    }
+
+    /**
+     * @return the time spent drawing a frame at the specified percentile, in
+     *         nanoseconds
+     */
+    public long getPercentile(int percentile) {
+      int index = (int) Math.ceil(percentile / 100. * frameNanos.length) - 1;
+      return frameNanos[Math.max(0, Math.min(frameNanos.length - 1, index))];
+    }
+
+    public double getMean() {
+      long sum = 0;
+      for (long nanos : frameNanos) {
+        sum += nanos;
+      }
+      return (double) sum / frameNanos.length;
+    }
+
+    public double getCallsPerFrame() {
+      return (double) callCount / frameNanos.length;
+    }
+
+    public double getDrawCallsPerFrame() {
+      return (double) drawCallCount / frameNanos.length;
+    }
+
+    public double getVerticesPerFrame() {
+      return (double) vertexCount / frameNanos.length;
+    }
+
+    public double getMatrixOperationsPerFrame() {
+      return (double) matrixOperationCount / frameNanos.length;
+    }
+
+    public double getBufferBytesPerFrame() {
+      return (double) bufferBytes / frameNanos.length;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(Locale.US,
+          "%d frames: mean %.3f ms, p50 %.3f ms, p95 %.3f ms, max %.3f ms; "
+              + "per frame: %.1f GL calls, %.1f draw calls, %.1f vertices, "
+              + "%.1f matrix operations, %.0f buffer bytes",
+          getFrameCount(), getMean() / 1e6, getPercentile(50) / 1e6, getPercentile(95) / 1e6,
+          getPercentile(100) / 1e6, getCallsPerFrame(), getDrawCallsPerFrame(),
+          getVerticesPerFrame(), getMatrixOperationsPerFrame(), getBufferBytesPerFrame());
+    }
+  }
+
+  /**
+   * Draws the specified frames of a workload.
+   *
+   * @param warmUpFrames
+   *          the number of frames to draw before measuring
+   * @param frames
+   *          the number of frames to measure
+   */
+  public static Result run(Workload workload, int warmUpFrames, int frames) {
+    CountingGl gl = new CountingGl();
+    long[] frameNanos = new long[frames];
+    for (int frame = 0; frame < warmUpFrames + frames; frame++) {
+      workload.update(frame);
+      if (frame == warmUpFrames) {
+        gl.reset();
+      }
+      long start = System.nanoTime();
+      workload.draw(gl);
+      long duration = System.nanoTime() - start;
+      if (frame >= warmUpFrames) {
+        frameNanos[frame - warmUpFrames] = duration;
+      }
+    }
+    return new Result(frameNanos, gl);
+  }
+
+  /**
+   * A laser scan like {@code LaserScanLayer} draws it: a triangle fan of the
+   * free space and the points of the visible chunks. A new scan arrives every
+   * {@code scanInterval} frames.
+   */
+  public static class LaserScanWorkload implements Workload {
+
+    private static final Color FREE_SPACE_COLOR = Color.fromHexAndAlpha("377dfa", 0.1f);
+    private static final Color OCCUPIED_SPACE_COLOR = Color.fromHexAndAlpha("377dfa", 0.3f);
+
+    private final int pointCount;
+    private final int scanInterval;
+    private final FloatBuffer vertices;
+    private final VertexBuffer vertexBuffer;
+    private final PointChunks chunks;
+    private final DrawRanges ranges;
+    private final BoundingBox visible;
+
+    public LaserScanWorkload(int pointCount, int scanInterval) {
+      this.pointCount = pointCount;
+      this.scanInterval = scanInterval;
+      vertices = Vertices.allocateBuffer((pointCount + 1) * 3);
+      vertexBuffer = new VertexBuffer();
+      chunks = new PointChunks(PointChunks.DEFAULT_CHUNK_SIZE, 0);
+      ranges = new DrawRanges();
+      // Shows the half of the scan in front of the robot.
+      visible = new BoundingBox(0, -10, 10, 10);
+    }
+
+    @Override
+    public void update(int frame) {
+      if (frame % scanInterval != 0) {
+        return;
+      }
+      vertices.clear();
+      vertices.put(0).put(0).put(0);
+      for (int i = 0; i < pointCount; i++) {
+        double angle = 2 * Math.PI * i / pointCount;
+        double range = 5 + Math.sin(angle * 7 + frame * 0.01);
+        vertices.put((float) (range * Math.cos(angle))).put((float) (range * Math.sin(angle)))
+            .put(0);
+      }
+      vertices.flip();
+      vertexBuffer.update(vertices);
+      chunks.update(vertices, 1);
+    }
+
+    @Override
+    public void draw(GL10 gl) {
+      chunks.cull(visible, ranges);
+      Vertices.drawTriangleFan(gl, vertexBuffer, FREE_SPACE_COLOR);
+      Vertices.drawPoints(gl, vertexBuffer, ranges, OCCUPIED_SPACE_COLOR, 10.f);
+    }
+  }
+
+  /**
+   * Robot and pose shapes like {@code RobotLayer} and
+   * {@code PoseSubscriberLayer} submit them to the {@link RenderQueue}: one
+   * triangle fan per shape, each with its own transform.
+   */
+  public static class ShapeWorkload implements Workload {
+
+    private static final Color COLOR = Color.fromHexAndAlpha("377dfa", 1.f);
+
+    private final int shapeCount;
+    private final RenderQueue renderQueue;
+    private final FloatBuffer vertices;
+    private final float[] matrix;
+
+    public ShapeWorkload(int shapeCount) {
+      this.shapeCount = shapeCount;
+      renderQueue = new RenderQueue();
+      vertices = Vertices.toFloatBuffer(new float[] { 0.2f, 0.f, 0.f, -0.2f, -0.15f, 0.f,
+          -0.05f, 0.f, 0.f, -0.2f, 0.15f, 0.f });
+      matrix = new float[16];
+      matrix[0] = matrix[5] = matrix[10] = matrix[15] = 1.f;
+    }
+
+    @Override
+    public void update(int frame) {
+    }
+
+    @Override
+    public void draw(GL10 gl) {
+      renderQueue.beginFrame();
+      for (int i = 0; i < shapeCount; i++) {
+        matrix[12] = i % 32;
+        matrix[13] = i / 32;
+        renderQueue.pushMatrix();
+        renderQueue.multiply(matrix);
+        renderQueue.drawTriangleFan(vertices, COLOR);
+        renderQueue.popMatrix();
+      }
+      renderQueue.flush(gl);
+      renderQueue.endFrame();
+    }
+  }
+
+  public static void main(String[] args) {
+    int frames = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_FRAMES;
+    report("laser scan, 1080 points, new scan every frame", new LaserScanWorkload(1080, 1),
+        frames);
+    report("laser scan, 1080 points, new scan every 10 frames", new LaserScanWorkload(1080, 10),
+        frames);
+    report("shapes, 10", new ShapeWorkload(10), frames);
+    report("shapes, 1000", new ShapeWorkload(1000), frames);
+  }
+
+  private static void report(String name, Workload workload, int frames) {
+    System.out.println(name + ": " + run(workload, WARM_UP_FRAMES, frames));
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.util.List;
+
+import javax.microedition.khronos.opengles.GL10;
+
+public class RenderQueueTest {
+
+  private static final Color RED = new Color(1, 0, 0, 0.5f);
+  private static final Color BLUE = new Color(0, 0, 1, 0.5f);
+
+  /**
+   * Records the draw calls and the first vertex of each.
+   */
+  private static class DrawGl extends CountingGl {
+
+    private final List<String> draws;
+    private FloatBuffer vertexPointer;
+    private int identityCount;
+
+    DrawGl() {
+      draws = Lists.newArrayList();
+    }
+
+    @Override
+    public void glLoadIdentity() {
+      identityCount++;
+    }
+
+    @Override
+    public void glVertexPointer(int size, int type, int stride, Buffer pointer) {
+      vertexPointer = (FloatBuffer) pointer;
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count) {
+      draws.add(mode + " " + count + " at " + vertexPointer.get(0) + ", " + vertexPointer.get(1));
+    }
+  }
+
+  private static FloatBuffer square() {
+    return Vertices.toFloatBuffer(new float[] { 0, 0, 0, 1, 0, 0, 1, 1, 0, 0, 1, 0 });
+  }
+
+  @Test
+  public void testMergesAdjacentCompatibleCommands() {
+    RenderQueue queue = new RenderQueue();
+    DrawGl gl = new DrawGl();
+    queue.beginFrame();
+    queue.drawTriangleFan(square(), RED);
+    queue.drawTriangleFan(square(), RED);
+    queue.flush(gl);
+    queue.endFrame();
+    assertEquals(Lists.newArrayList(GL10.GL_TRIANGLES + " 12 at 0.0, 0.0"), gl.draws);
+    assertEquals(2, queue.getSubmittedCommandCount());
+    assertEquals(1, queue.getDrawCallCount());
+  }
+
+  @Test
+  public void testKeepsSubmissionOrder() {
+    RenderQueue queue = new RenderQueue();
+    DrawGl gl = new DrawGl();
+    queue.beginFrame();
+    queue.drawTriangleFan(square(), RED);
+    queue.drawTriangleFan(square(), BLUE);
+    queue.drawLineLoop(square(), RED, 2);
+    queue.drawTriangleFan(square(), RED);
+    queue.flush(gl);
+    queue.endFrame();
+    // Translucent geometry blends in the order it was submitted, so the red
+    // triangles are not merged across the blue ones.
+    assertEquals(Lists.newArrayList(GL10.GL_TRIANGLES + " 6 at 0.0, 0.0", GL10.GL_TRIANGLES
+        + " 6 at 0.0, 0.0", GL10.GL_LINES + " 8 at 0.0, 0.0", GL10.GL_TRIANGLES
+        + " 6 at 0.0, 0.0"), gl.draws);
+    assertEquals(4, queue.getDrawCallCount());
+  }
+
+  @Test
+  public void testGlRelativeMatrix() {
+    RenderQueue queue = new RenderQueue();
+    DrawGl gl = new DrawGl();
+    queue.beginFrame();
+    queue.multiply(new float[] { 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 2, 3, 0, 1 });
+    queue.drawPoints(square(), RED, 1);
+    // Draws the red points in the queue's coordinate system first.
+    queue.pushGlRelativeMatrix(gl);
+    assertEquals(1, gl.identityCount);
+    queue.drawPoints(square(), BLUE, 1);
+    queue.popGlRelativeMatrix(gl);
+    queue.endFrame();
+    // The blue points are drawn in the coordinate system of the OpenGL model
+    // view matrix.
+    assertEquals(1, gl.identityCount);
+    assertEquals(Lists.newArrayList(GL10.GL_POINTS + " 4 at 2.0, 3.0", GL10.GL_POINTS
+        + " 4 at 0.0, 0.0"), gl.draws);
+  }
+
+  @Test
+  public void testMultiplyDoesNotAllocate() {
+    final RenderQueue queue = new RenderQueue();
+    final TransformMatrix transformMatrix = new TransformMatrix();
+    Allocations.assertDoesNotAllocate(new Runnable() {
+      @Override
+      public void run() {
+        queue.loadIdentity();
+        queue.pushMatrix();
+        transformMatrix.set(OpenGlTransformTest.TRANSFORM);
+        queue.multiply(transformMatrix.getMatrix());
+        queue.multiply(OpenGlTransformTest.TRANSFORM);
+        queue.popMatrix();
+      }
+    });
+  }
+}
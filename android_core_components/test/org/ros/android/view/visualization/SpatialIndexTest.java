@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import org.junit.Test;
+import org.ros.namespace.GraphName;
+
+import java.util.List;
+import java.util.Random;
+
+public class SpatialIndexTest {
+
+  private static final GraphName FRAME = GraphName.of("map");
+  private static final int QUERIES = 500;
+
+  private static SpatialIndex newRandomIndex(Random random, int count, float extent) {
+    float[] x = new float[count];
+    float[] y = new float[count];
+    for (int i = 0; i < count; i++) {
+      // Rounded so that some items share a position.
+      x[i] = Math.round(random.nextFloat() * 200) / 10.f;
+      y[i] = Math.round(random.nextFloat() * 100) / 10.f;
+    }
+    return new SpatialIndex(FRAME, x, y, extent);
+  }
+
+  /**
+   * @return the item {@link SpatialIndex#findNearest} should find, by scanning
+   *         all items
+   */
+  private static int findNearestByScan(SpatialIndex index, double x, double y,
+      double maximumDistance) {
+    int nearest = -1;
+    double nearestDistance = maximumDistance;
+    for (int item = 0; item < index.getItemCount(); item++) {
+      double distance = index.getDistance(item, x, y);
+      if (distance < nearestDistance || (distance == nearestDistance && nearest < 0)) {
+        nearest = item;
+        nearestDistance = distance;
+      }
+    }
+    return nearest;
+  }
+
+  private static void assertFindsLikeScan(SpatialIndex index, Random random) {
+    List<Integer> items = Lists.newArrayList();
+    List<Integer> expected = Lists.newArrayList();
+    for (int i = 0; i < QUERIES; i++) {
+      // Some queries lie outside of the items' bounds.
+      double x = random.nextDouble() * 30 - 5;
+      double y = random.nextDouble() * 20 - 5;
+      double maximumDistance = random.nextDouble() * 3;
+      assertEquals(findNearestByScan(index, x, y, maximumDistance),
+          index.findNearest(x, y, maximumDistance));
+      items.clear();
+      index.findWithin(x, y, maximumDistance, items);
+      expected.clear();
+      for (int item = 0; item < index.getItemCount(); item++) {
+        if (index.getDistance(item, x, y) <= maximumDistance) {
+          expected.add(item);
+        }
+      }
+      assertEquals(expected.size(), items.size());
+      assertEquals(Sets.newHashSet(expected), Sets.newHashSet(items));
+    }
+  }
+
+  @Test
+  public void testFindsLikeScanForPoints() {
+    Random random = new Random(1);
+    for (int count : new int[] { 1, 2, 3, 10, 1000 }) {
+      assertFindsLikeScan(newRandomIndex(random, count, 0), random);
+    }
+  }
+
+  @Test
+  public void testFindsLikeScanForSquares() {
+    Random random = new Random(2);
+    assertFindsLikeScan(newRandomIndex(random, 1000, 0.25f), random);
+  }
+
+  @Test
+  public void testFindsLikeScanForItemsOnALine() {
+    float[] x = new float[1000];
+    float[] y = new float[1000];
+    for (int i = 0; i < x.length; i++) {
+      x[i] = i * 0.02f;
+      y[i] = 5;
+    }
+    assertFindsLikeScan(new SpatialIndex(FRAME, x, y, 0), new Random(3));
+  }
+
+  @Test
+  public void testFindNearestPrefersLowestIndexOfEqualItems() {
+    SpatialIndex index =
+        new SpatialIndex(FRAME, new float[] { 1, 3, 1, 1 }, new float[] { 1, 3, 1, 1 }, 0);
+    assertEquals(0, index.findNearest(1, 1, 1));
+    assertEquals(0, index.findNearest(2, 2, 2));
+  }
+
+  @Test
+  public void testFindNearestIgnoresItemsBeyondMaximumDistance() {
+    SpatialIndex index = SpatialIndex.fromPoint(FRAME, 1, 1, 0);
+    assertEquals(-1, index.findNearest(4, 5, 4.9));
+    assertEquals(0, index.findNearest(4, 5, 5));
+    assertEquals(0, index.findNearest(1, 1, 0));
+  }
+
+  @Test
+  public void testFindNearestMeasuresToTheItemSquare() {
+    SpatialIndex index = new SpatialIndex(FRAME, new float[] { 0, 3 }, new float[] { 0, 0 }, 1);
+    assertEquals(0, index.findNearest(1.4, 0, 1));
+    assertEquals(1, index.findNearest(1.6, 0, 1));
+    assertEquals(0.4, index.getDistance(1, 1.6, 0), 1e-9);
+  }
+
+  @Test
+  public void testEmptyIndex() {
+    SpatialIndex index = new SpatialIndex(FRAME, new float[0], new float[0], 0);
+    assertEquals(-1, index.findNearest(0, 0, Double.POSITIVE_INFINITY));
+    List<Integer> items = Lists.newArrayList();
+    index.findWithin(0, 0, Double.POSITIVE_INFINITY, items);
+    assertEquals(0, items.size());
+  }
+
+  @Test
+  public void testFromVerticesSkipsLeadingVertices() {
+    SpatialIndex index =
+        SpatialIndex.fromVertices(FRAME,
+            Vertices.toFloatBuffer(new float[] { 0, 0, 0, 5, 6, 0, 7, 8, 0 }), 1, 0);
+    assertEquals(2, index.getItemCount());
+    assertEquals(5, index.getX(0), 0);
+    assertEquals(8, index.getY(1), 0);
+    assertEquals(1, index.findNearest(7, 7, 2));
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import org.junit.Test;
+import org.ros.android.view.visualization.layer.Layer;
+import org.ros.message.Time;
+import org.ros.namespace.GraphName;
+import org.ros.rosjava_geometry.FrameTransform;
+import org.ros.rosjava_geometry.FrameTransformTree;
+import org.ros.rosjava_geometry.Transform;
+
+import java.nio.FloatBuffer;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Draws frames the way {@link XYOrthographicRenderer#onDrawFrame} does, with
+ * the parts that need no {@link VisualizationView}, and checks that a frame
+ * allocates nothing once nothing changes.
+ */
+public class SteadyStateFrameTest {
+
+  private static final int FRAMES = 2000;
+  private static final int SHAPE_COUNT = 50;
+  private static final Color COLOR = Color.fromHexAndAlpha("377dfa", 1.f);
+  private static final List<Layer> NO_LAYERS = Collections.emptyList();
+  private static final GraphName MAP = GraphName.of("map");
+  private static final GraphName BASE_LINK = GraphName.of("base_link");
+
+  private static class Frame implements Runnable {
+
+    private final CountingGl gl;
+    private final XYOrthographicCamera camera;
+    private final RenderQueue queue;
+    private final CullingStatistics cullingStatistics;
+    private final FrameStatistics frameStatistics;
+    private final QualityGovernor qualityGovernor;
+    private final ParallelLoop.Loop preparation;
+    private final RenderBenchmark.LaserScanWorkload laserScan;
+    private final FloatBuffer shape;
+    private final float[] shapeMatrix;
+
+    Frame() {
+      gl = new CountingGl();
+      FrameTransformTree frameTransformTree = new FrameTransformTree();
+      frameTransformTree.update(new FrameTransform(OpenGlTransformTest.TRANSFORM, BASE_LINK, MAP,
+          new Time()));
+      camera = new XYOrthographicCamera(frameTransformTree);
+      camera.setViewport(new Viewport(640, 480));
+      camera.jumpToFrame(MAP);
+      queue = new RenderQueue();
+      cullingStatistics = new CullingStatistics();
+      frameStatistics = new FrameStatistics();
+      frameStatistics.setEnabled(true);
+      qualityGovernor = new QualityGovernor();
+      // Waiting for a worker may allocate a queue node in the JDK, so layers
+      // are prepared on the calling thread only.
+      preparation = new ParallelLoop(0).newLoop(new ParallelLoop.Body() {
+        @Override
+        public void run(int index) {
+          camera.getVisibleBounds();
+        }
+      });
+      laserScan = new RenderBenchmark.LaserScanWorkload(1080, Integer.MAX_VALUE);
+      laserScan.update(0);
+      shape = Vertices.toFloatBuffer(new float[] { 0.2f, 0.f, 0.f, -0.2f, -0.15f, 0.f, -0.05f,
+          0.f, 0.f, -0.2f, 0.15f, 0.f });
+      shapeMatrix = new float[OpenGlTransform.MATRIX_SIZE];
+      shapeMatrix[0] = shapeMatrix[5] = shapeMatrix[10] = shapeMatrix[15] = 1.f;
+    }
+
+    @Override
+    public void run() {
+      long start = System.nanoTime();
+      cullingStatistics.beginFrame();
+      queue.beginFrame();
+      camera.apply(queue);
+      preparation.run(3);
+      gl.glLoadIdentity();
+      camera.apply(gl);
+      drawDirectLayer();
+      drawBatchedLayer();
+      queue.flush(gl);
+      queue.endFrame();
+      cullingStatistics.endFrame();
+      long end = System.nanoTime();
+      frameStatistics.recordFrame(end - start, NO_LAYERS);
+      qualityGovernor.recordFrame(start, end, false, NO_LAYERS);
+    }
+
+    /**
+     * Like a laser scan layer that draws to GL in its own frame and a shape
+     * that is drawn directly.
+     */
+    private void drawDirectLayer() {
+      queue.flush(gl);
+      gl.glPushMatrix();
+      queue.pushMatrix();
+      float[] matrix = camera.getFrameTransformMatrix(BASE_LINK);
+      gl.glMultMatrixf(matrix, 0);
+      queue.multiply(matrix);
+      laserScan.draw(gl);
+      Vertices.drawTriangleFan(gl, shape, COLOR);
+      queue.popMatrix();
+      gl.glPopMatrix();
+      queue.flush(gl);
+    }
+
+    /**
+     * Like pose shapes that are submitted to the {@link RenderQueue}.
+     */
+    private void drawBatchedLayer() {
+      gl.glPushMatrix();
+      queue.pushMatrix();
+      queue.setMirroringGl(true);
+      for (int i = 0; i < SHAPE_COUNT; i++) {
+        shapeMatrix[12] = i % 8;
+        shapeMatrix[13] = i / 8;
+        queue.pushMatrix();
+        queue.multiply(shapeMatrix);
+        queue.drawTriangleFan(shape, COLOR);
+        queue.popMatrix();
+      }
+      queue.setMirroringGl(false);
+      queue.popMatrix();
+      gl.glPopMatrix();
+    }
+  }
+
+  @Test
+  public void testFrameDoesNotAllocate() {
+    Allocations.assertDoesNotAllocate(new Frame(), FRAMES);
+  }
+}
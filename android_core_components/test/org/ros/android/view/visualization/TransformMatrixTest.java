@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android.view.visualization;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.ros.rosjava_geometry.Transform;
+
+public class TransformMatrixTest {
+
+  @Test
+  public void testConvertsOnlyNewInstances() {
+    TransformMatrix transformMatrix = new TransformMatrix();
+    assertTrue(transformMatrix.set(OpenGlTransformTest.TRANSFORM));
+    assertFalse(transformMatrix.set(OpenGlTransformTest.TRANSFORM));
+    assertSame(OpenGlTransformTest.TRANSFORM, transformMatrix.getTransform());
+    assertTrue(transformMatrix.set(Transform.identity()));
+    assertSame(transformMatrix.getMatrix(), transformMatrix.getMatrix());
+  }
+}
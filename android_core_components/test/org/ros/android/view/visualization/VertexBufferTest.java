@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.util.List;
+
+import javax.microedition.khronos.opengles.GL10;
+
+public class VertexBufferTest {
+
+  /**
+   * Records the buffer object and vertex pointer calls.
+   */
+  private static class BufferGl extends CountingGl {
+
+    private final List<String> calls;
+    private Buffer vertexPointer;
+
+    BufferGl(String version) {
+      super(version);
+      calls = Lists.newArrayList();
+    }
+
+    BufferGl() {
+      this(VERSION_1_1);
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset) {
+      super.glGenBuffers(n, buffers, offset);
+      calls.add("glGenBuffers " + buffers[offset]);
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset) {
+      calls.add("glDeleteBuffers " + buffers[offset]);
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+      calls.add("glBindBuffer " + buffer);
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage) {
+      calls.add("glBufferData " + size + (data == null ? " null" : ""));
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size, Buffer data) {
+      calls.add("glBufferSubData " + offset + " " + size);
+    }
+
+    @Override
+    public void glVertexPointer(int size, int type, int stride, Buffer pointer) {
+      calls.add("glVertexPointer array");
+      vertexPointer = pointer;
+    }
+
+    @Override
+    public void glVertexPointer(int size, int type, int stride, int offset) {
+      calls.add("glVertexPointer " + offset);
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count) {
+      calls.add("glDrawArrays " + first + " " + count);
+    }
+
+    List<String> takeCalls() {
+      List<String> calls = Lists.newArrayList(this.calls);
+      this.calls.clear();
+      return calls;
+    }
+  }
+
+  private static FloatBuffer newVertices(int count) {
+    FloatBuffer vertices = Vertices.allocateBuffer(count * 3);
+    for (int i = 0; i < count * 3; i++) {
+      vertices.put(i);
+    }
+    vertices.flip();
+    return vertices;
+  }
+
+  private static void draw(VertexBuffer vertexBuffer, GL10 gl) {
+    vertexBuffer.draw(gl, GL10.GL_POINTS, 0, vertexBuffer.getVertexCount());
+  }
+
+  @Test
+  public void testUploadsOnceThenOnlyBinds() {
+    BufferGl gl = new BufferGl();
+    VertexBuffer vertexBuffer = new VertexBuffer();
+    vertexBuffer.update(newVertices(4));
+    draw(vertexBuffer, gl);
+    assertEquals(Lists.newArrayList("glGenBuffers 1", "glBindBuffer 1", "glBufferData 48",
+        "glVertexPointer 0", "glDrawArrays 0 4", "glBindBuffer 0"), gl.takeCalls());
+    draw(vertexBuffer, gl);
+    assertEquals(Lists.newArrayList("glBindBuffer 1", "glVertexPointer 0", "glDrawArrays 0 4",
+        "glBindBuffer 0"), gl.takeCalls());
+    assertEquals(48, vertexBuffer.getMemoryUsage().getGpuBytes());
+  }
+
+  @Test
+  public void testOrphansStorageThatFits() {
+    BufferGl gl = new BufferGl();
+    VertexBuffer vertexBuffer = new VertexBuffer();
+    vertexBuffer.update(newVertices(4));
+    draw(vertexBuffer, gl);
+    gl.takeCalls();
+    vertexBuffer.update(newVertices(2));
+    draw(vertexBuffer, gl);
+    assertEquals(Lists.newArrayList("glBindBuffer 1", "glBufferData 48 null",
+        "glBufferSubData 0 24", "glVertexPointer 0", "glDrawArrays 0 2", "glBindBuffer 0"),
+        gl.takeCalls());
+    // The storage keeps its size.
+    assertEquals(48, vertexBuffer.getMemoryUsage().getGpuBytes());
+  }
+
+  @Test
+  public void testGrowsStorageThatDoesNotFit() {
+    BufferGl gl = new BufferGl();
+    VertexBuffer vertexBuffer = new VertexBuffer();
+    vertexBuffer.update(newVertices(2));
+    draw(vertexBuffer, gl);
+    gl.takeCalls();
+    vertexBuffer.update(newVertices(4));
+    draw(vertexBuffer, gl);
+    assertEquals(Lists.newArrayList("glBindBuffer 1", "glBufferData 48", "glVertexPointer 0",
+        "glDrawArrays 0 4", "glBindBuffer 0"), gl.takeCalls());
+    assertEquals(48, vertexBuffer.getMemoryUsage().getGpuBytes());
+  }
+
+  @Test
+  public void testDrawsFromClientArraysWithoutBufferObjects() {
+    BufferGl gl = new BufferGl(CountingGl.VERSION_1_0);
+    VertexBuffer vertexBuffer = new VertexBuffer();
+    FloatBuffer vertices = newVertices(4);
+    vertexBuffer.update(vertices);
+    draw(vertexBuffer, gl);
+    draw(vertexBuffer, gl);
+    assertEquals(Lists.newArrayList("glVertexPointer array", "glDrawArrays 0 4",
+        "glVertexPointer array", "glDrawArrays 0 4"), gl.takeCalls());
+    assertSame(vertices, gl.vertexPointer);
+    assertEquals(0, vertexBuffer.getMemoryUsage().getGpuBytes());
+    vertexBuffer.delete(gl);
+    assertEquals(0, gl.takeCalls().size());
+  }
+
+  @Test
+  public void testDeleteReleasesStorage() {
+    BufferGl gl = new BufferGl();
+    VertexBuffer vertexBuffer = new VertexBuffer();
+    vertexBuffer.update(newVertices(4));
+    draw(vertexBuffer, gl);
+    gl.takeCalls();
+    vertexBuffer.delete(gl);
+    assertEquals(Lists.newArrayList("glDeleteBuffers 1"), gl.takeCalls());
+    assertEquals(0, vertexBuffer.getMemoryUsage().getGpuBytes());
+    // The vertices are kept and uploaded to a new buffer on the next draw.
+    draw(vertexBuffer, gl);
+    assertEquals(Lists.newArrayList("glGenBuffers 2", "glBindBuffer 2", "glBufferData 48",
+        "glVertexPointer 0", "glDrawArrays 0 4", "glBindBuffer 0"), gl.takeCalls());
+  }
+
+  @Test
+  public void testUploadsAgainAfterContextChange() {
+    BufferGl lostGl = new BufferGl();
+    VertexBuffer vertexBuffer = new VertexBuffer();
+    vertexBuffer.update(newVertices(4));
+    draw(vertexBuffer, lostGl);
+    lostGl.takeCalls();
+    BufferGl gl = new BufferGl();
+    draw(vertexBuffer, gl);
+    assertEquals(Lists.newArrayList("glGenBuffers 1", "glBindBuffer 1", "glBufferData 48",
+        "glVertexPointer 0", "glDrawArrays 0 4", "glBindBuffer 0"), gl.takeCalls());
+    // Only the buffer of the current context is deleted.
+    vertexBuffer.delete(gl);
+    assertEquals(Lists.newArrayList("glDeleteBuffers 1"), gl.takeCalls());
+    assertEquals(0, lostGl.takeCalls().size());
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.ros.android.view.visualization.layer;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.ros.android.view.visualization.ParallelLoop;
+import org.ros.android.view.visualization.TextureBitmap;
+import org.ros.internal.message.MessageBuffers;
+
+import java.nio.ByteOrder;
+import java.util.Random;
+
+/**
+ * Measures how many cells per second are converted to pixels, once the way
+ * {@link OccupancyGridLayer} used to convert them and once with an
+ * {@link OccupancyGridPalette}, on the calling thread only and with a
+ * {@link ParallelLoop}.
+ * <p>
+ * Both conversions end with the pixels of each tile in the array a
+ * {@link TextureBitmap} keeps them in. Each thread converts into its own
+ * scratch and texture arrays, so large maps need little memory.
+ * <p>
+ * Run it on a JVM with the library and its dependencies on the class path,
+ * optionally passing the map sizes to measure.
+ */
+public class OccupancyGridBenchmark {
+
+  private static final int[] DEFAULT_SIZES = { 1000, 4000, 10000 };
+  private static final int ITERATIONS = 5;
+
+  private static final int TILE_PIXELS = TextureBitmap.STRIDE * TextureBitmap.HEIGHT;
+
+  /**
+   * The pixel arrays of one tile that a thread converts into.
+   */
+  private static final class Scratch {
+
+    private final int[] pixels = new int[TILE_PIXELS];
+    private final int[] texture = new int[TILE_PIXELS];
+  }
+
+  private static final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+    @Override
+    protected Scratch initialValue() {
+      return new Scratch();
+    }
+  };
+
+  /**
+   * The former conversion: reads each cell from the message buffer, branches
+   * on it, writes the color to a dynamic buffer and reads it back into the
+   * texture.
+   */
+  private static long convertLegacy(ChannelBuffer data, int size, ChannelBuffer pixelBuffer) {
+    final int[] texture = scratch.get().texture;
+    long checksum = 0;
+    final int numTiles = (size + TextureBitmap.STRIDE - 1) / TextureBitmap.STRIDE;
+    for (int tileY = 0; tileY < numTiles; ++tileY) {
+      for (int tileX = 0; tileX < numTiles; ++tileX) {
+        final int left = tileX * TextureBitmap.STRIDE;
+        final int top = tileY * TextureBitmap.HEIGHT;
+        final int right = Math.min(left + TextureBitmap.STRIDE, size);
+        final int bottom = Math.min(top + TextureBitmap.HEIGHT, size);
+        for (int y = top; y < bottom; ++y) {
+          for (int x = left; x < right; ++x) {
+            byte cell = data.getByte(y * size + x);
+            int color;
+            if (cell == -1) {
+              color = OccupancyGridPalette.DEFAULT_UNKNOWN_COLOR;
+            } else if (cell < 50) {
+              color = OccupancyGridPalette.DEFAULT_FREE_COLOR;
+            } else {
+              color = OccupancyGridPalette.DEFAULT_OCCUPIED_COLOR;
+            }
+            pixelBuffer.writeInt(color);
+          }
+        }
+        for (int i = 0; pixelBuffer.readable(); i++) {
+          texture[i] = pixelBuffer.readInt();
+        }
+        checksum += texture[0];
+        pixelBuffer.clear();
+      }
+    }
+    return checksum;
+  }
+
+  /**
+   * The current conversion: looks up the colors of whole rows of a tile and
+   * copies them into the texture, with tiles converted in parallel.
+   */
+  private static long convert(final byte[] cells, final int size,
+      final OccupancyGridPalette palette, ParallelLoop parallelLoop) {
+    final int numTilesWide = (size + TextureBitmap.STRIDE - 1) / TextureBitmap.STRIDE;
+    final long[] checksums = new long[numTilesWide * numTilesWide];
+    parallelLoop.run(checksums.length, new ParallelLoop.Body() {
+      @Override
+      public void run(int index) {
+        final int left = (index % numTilesWide) * TextureBitmap.STRIDE;
+        final int top = (index / numTilesWide) * TextureBitmap.HEIGHT;
+        final int width = Math.min(TextureBitmap.STRIDE, size - left);
+        final int height = Math.min(TextureBitmap.HEIGHT, size - top);
+        Scratch scratch = OccupancyGridBenchmark.scratch.get();
+        palette.apply(cells, top * size + left, size, 1, width, height, scratch.pixels, 0, width);
+        System.arraycopy(scratch.pixels, 0, scratch.texture, 0, width * height);
+        checksums[index] = scratch.texture[0];
+      }
+    });
+    long checksum = 0;
+    for (long value : checksums) {
+      checksum += value;
+    }
+    return checksum;
+  }
+
+  private static void report(String name, int size, long nanoseconds, long checksum) {
+    double cellsPerSecond = (double) size * size * ITERATIONS / (nanoseconds / 1e9);
+    System.out.println(String.format("%-16s %6d x %-6d %8.1f Mcells/s (checksum %d)", name,
+        size, size, cellsPerSecond / 1e6, checksum));
+  }
+
+  public static void main(String[] args) {
+    int[] sizes = DEFAULT_SIZES;
+    if (args.length > 0) {
+      sizes = new int[args.length];
+      for (int i = 0; i < args.length; i++) {
+        sizes[i] = Integer.parseInt(args[i]);
+      }
+    }
+    ParallelLoop callerOnly = new ParallelLoop(0);
+    ParallelLoop parallel = ParallelLoop.getDefault();
+    System.out.println("Conversion threads: " + parallel.getThreadCount() + " plus the caller");
+    OccupancyGridPalette palette = OccupancyGridPalette.newDefault();
+    Random random = new Random(42);
+    for (int size : sizes) {
+      byte[] cells = new byte[size * size];
+      for (int i = 0; i < cells.length; i++) {
+        // Roughly the mix of a typical map.
+        int value = random.nextInt(10);
+        cells[i] = (byte) (value < 5 ? 0 : value < 8 ? -1 : 100);
+      }
+      ChannelBuffer data = ChannelBuffers.wrappedBuffer(ByteOrder.LITTLE_ENDIAN, cells);
+      ChannelBuffer pixelBuffer = MessageBuffers.dynamicBuffer();
+
+      // Warm up all conversions before measuring.
+      long checksum = convertLegacy(data, size, pixelBuffer);
+      checksum += convert(cells, size, palette, callerOnly);
+      checksum += convert(cells, size, palette, parallel);
+
+      long start = System.nanoTime();
+      checksum = 0;
+      for (int i = 0; i < ITERATIONS; i++) {
+        checksum += convertLegacy(data, size, pixelBuffer);
+      }
+      report("before", size, System.nanoTime() - start, checksum);
+
+      start = System.nanoTime();
+      checksum = 0;
+      for (int i = 0; i < ITERATIONS; i++) {
+        checksum += convert(cells, size, palette, callerOnly);
+      }
+      report("after, 1 thread", size, System.nanoTime() - start, checksum);
+
+      start = System.nanoTime();
+      checksum = 0;
+      for (int i = 0; i < ITERATIONS; i++) {
+        checksum += convert(cells, size, palette, parallel);
+      }
+      report("after", size, System.nanoTime() - start, checksum);
+    }
+  }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization.layer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.Lists;
+
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Before;
+import org.junit.Test;
+import org.ros.android.view.visualization.TextureBitmap;
+import org.ros.message.MessageFactory;
+import org.ros.message.Time;
+import org.ros.node.NodeConfiguration;
+import org.ros.rosjava_geometry.Transform;
+
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Feeds maps and patches to the map that {@link OccupancyGridLayer}s share and
+ * checks the pixels its tiles are converted to.
+ */
+public class OccupancyGridLayerTest {
+
+  private static final String FRAME_ID = "map";
+  private static final byte FREE = 0;
+  private static final byte OCCUPIED = 100;
+
+  /**
+   * Keeps the pixels of a tile instead of uploading them.
+   */
+  private static final class RecordingTexture extends TextureBitmap {
+
+    private int[] pixels;
+    private int width;
+    private int updateCount;
+    private int regionUpdateCount;
+    private int releaseCount;
+
+    @Override
+    public void updateFromPixelArray(int[] pixels, int offset, int stride, int width, int height,
+        float resolution, Transform origin, int fillColor) {
+      this.pixels = new int[width * height];
+      this.width = width;
+      for (int y = 0; y < height; y++) {
+        System.arraycopy(pixels, offset + y * stride, this.pixels, y * width, width);
+      }
+      updateCount++;
+    }
+
+    @Override
+    public void updateRegion(int[] pixels, int left, int top, int width, int height) {
+      for (int y = 0; y < height; y++) {
+        System.arraycopy(pixels, y * width, this.pixels, (top + y) * this.width + left, width);
+      }
+      regionUpdateCount++;
+    }
+
+    @Override
+    public void release() {
+      super.release();
+      releaseCount++;
+    }
+  }
+
+  private MessageFactory messageFactory;
+  private List<RecordingTexture> textures;
+  private OccupancyGridLayer.SharedMap map;
+
+  @Before
+  public void setup() {
+    messageFactory = NodeConfiguration.newPrivate().getTopicMessageFactory();
+    textures = Lists.newArrayList();
+    map = new OccupancyGridLayer.SharedMap(new Supplier<TextureBitmap>() {
+      @Override
+      public TextureBitmap get() {
+        RecordingTexture texture = new RecordingTexture();
+        textures.add(texture);
+        return texture;
+      }
+    });
+  }
+
+  private static byte[] newCells(int width, int height, byte value) {
+    byte[] cells = new byte[width * height];
+    Arrays.fill(cells, value);
+    return cells;
+  }
+
+  private nav_msgs.OccupancyGrid newMap(byte[] cells, int width, int height, int secs) {
+    nav_msgs.OccupancyGrid message = messageFactory.newFromType(nav_msgs.OccupancyGrid._TYPE);
+    message.getHeader().setFrameId(FRAME_ID);
+    message.getHeader().setStamp(new Time(secs, 0));
+    message.getInfo().setWidth(width);
+    message.getInfo().setHeight(height);
+    message.getInfo().setResolution(0.05f);
+    message.setData(ChannelBuffers.wrappedBuffer(ByteOrder.LITTLE_ENDIAN, cells.clone()));
+    return message;
+  }
+
+  private map_msgs.OccupancyGridUpdate newPatch(int sequence, int secs, int x, int y, int width,
+      int height, byte value) {
+    map_msgs.OccupancyGridUpdate message =
+        messageFactory.newFromType(map_msgs.OccupancyGridUpdate._TYPE);
+    message.getHeader().setFrameId(FRAME_ID);
+    message.getHeader().setStamp(new Time(secs, 0));
+    message.getHeader().setSeq(sequence);
+    message.setX(x);
+    message.setY(y);
+    message.setWidth(width);
+    message.setHeight(height);
+    message.setData(ChannelBuffers.wrappedBuffer(ByteOrder.LITTLE_ENDIAN,
+        newCells(width, height, value)));
+    return message;
+  }
+
+  /**
+   * Writes a patch into the expected cells.
+   */
+  private static void apply(byte[] cells, int mapWidth, int x, int y, int width, int height,
+      byte value) {
+    for (int row = y; row < y + height; row++) {
+      Arrays.fill(cells, row * mapWidth + x, row * mapWidth + x + width, value);
+    }
+  }
+
+  /**
+   * Checks that the tiles show the specified cells, each pixel the top left
+   * cell of the cells it covers.
+   */
+  private void assertTilesShow(byte[] cells, int width, int height, int cellsPerPixel) {
+    OccupancyGridPalette palette = OccupancyGridPalette.newDefault();
+    int pixelsWide = (width + cellsPerPixel - 1) / cellsPerPixel;
+    int pixelsHigh = (height + cellsPerPixel - 1) / cellsPerPixel;
+    int tilesWide = (pixelsWide + TextureBitmap.STRIDE - 1) / TextureBitmap.STRIDE;
+    int tilesHigh = (pixelsHigh + TextureBitmap.HEIGHT - 1) / TextureBitmap.HEIGHT;
+    assertEquals(tilesWide * tilesHigh, textures.size());
+    for (int y = 0; y < pixelsHigh; y++) {
+      for (int x = 0; x < pixelsWide; x++) {
+        RecordingTexture texture =
+            textures.get(y / TextureBitmap.HEIGHT * tilesWide + x / TextureBitmap.STRIDE);
+        int pixel =
+            texture.pixels[y % TextureBitmap.HEIGHT * texture.width + x % TextureBitmap.STRIDE];
+        byte cell = cells[y * cellsPerPixel * width + x * cellsPerPixel];
+        assertEquals("Pixel " + x + ", " + y, palette.getColor(cell), pixel);
+      }
+    }
+  }
+
+  @Test
+  public void testInOrderPatchesUpdateTheirRegion() {
+    byte[] cells = newCells(40, 30, FREE);
+    map.enqueue(newMap(cells, 40, 30, 1));
+    map.process();
+    assertTilesShow(cells, 40, 30, 1);
+    map.enqueue(newPatch(1, 2, 5, 6, 3, 4, OCCUPIED));
+    map.enqueue(newPatch(2, 3, 30, 20, 10, 10, OCCUPIED));
+    map.process();
+    apply(cells, 40, 5, 6, 3, 4, OCCUPIED);
+    apply(cells, 40, 30, 20, 10, 10, OCCUPIED);
+    assertTilesShow(cells, 40, 30, 1);
+    // The patches were copied into the tile without converting it again.
+    assertEquals(1, textures.get(0).updateCount);
+    assertEquals(2, textures.get(0).regionUpdateCount);
+  }
+
+  @Test
+  public void testOutOfOrderPatchIsIgnoredUntilNextMap() {
+    byte[] cells = newCells(40, 30, FREE);
+    map.enqueue(newMap(cells, 40, 30, 10));
+    map.enqueue(newPatch(0, 5, 0, 0, 10, 10, OCCUPIED));
+    // Would fit, but the map is out of date after the patch above.
+    map.enqueue(newPatch(0, 11, 20, 0, 10, 10, OCCUPIED));
+    map.process();
+    assertTilesShow(cells, 40, 30, 1);
+    byte[] resynced = newCells(40, 30, FREE);
+    apply(resynced, 40, 20, 0, 10, 10, OCCUPIED);
+    map.enqueue(newMap(resynced, 40, 30, 12));
+    map.enqueue(newPatch(0, 13, 0, 20, 5, 5, OCCUPIED));
+    map.process();
+    apply(resynced, 40, 0, 20, 5, 5, OCCUPIED);
+    assertTilesShow(resynced, 40, 30, 1);
+  }
+
+  @Test
+  public void testPatchAfterDroppedPatchIsIgnoredUntilNextMap() {
+    byte[] cells = newCells(40, 30, FREE);
+    map.enqueue(newMap(cells, 40, 30, 1));
+    map.process();
+    map.enqueue(newPatch(7, 2, 0, 0, 4, 4, OCCUPIED));
+    map.process();
+    apply(cells, 40, 0, 0, 4, 4, OCCUPIED);
+    // Patch 8 was dropped.
+    map.enqueue(newPatch(9, 3, 10, 10, 4, 4, OCCUPIED));
+    map.enqueue(newPatch(10, 4, 20, 10, 4, 4, OCCUPIED));
+    map.process();
+    assertTilesShow(cells, 40, 30, 1);
+    // The next map starts a new sequence.
+    map.enqueue(newMap(cells, 40, 30, 5));
+    map.enqueue(newPatch(12, 6, 20, 20, 4, 4, OCCUPIED));
+    map.process();
+    apply(cells, 40, 20, 20, 4, 4, OCCUPIED);
+    assertTilesShow(cells, 40, 30, 1);
+  }
+
+  @Test
+  public void testPatchThatDoesNotFitIsIgnoredUntilNextMap() {
+    byte[] cells = newCells(40, 30, FREE);
+    map.enqueue(newMap(cells, 40, 30, 1));
+    map.enqueue(newPatch(0, 2, 38, 0, 4, 4, OCCUPIED));
+    map.enqueue(newPatch(0, 3, 0, 0, 4, 4, OCCUPIED));
+    map.process();
+    assertTilesShow(cells, 40, 30, 1);
+
+    map.enqueue(newMap(cells, 40, 30, 4));
+    map_msgs.OccupancyGridUpdate otherFrame = newPatch(0, 5, 0, 0, 4, 4, OCCUPIED);
+    otherFrame.getHeader().setFrameId("odom");
+    map.enqueue(otherFrame);
+    map.process();
+    assertTilesShow(cells, 40, 30, 1);
+
+    map.enqueue(newMap(cells, 40, 30, 6));
+    map_msgs.OccupancyGridUpdate truncated = newPatch(0, 7, 0, 0, 4, 4, OCCUPIED);
+    truncated.setHeight(5);
+    map.enqueue(truncated);
+    map.process();
+    assertTilesShow(cells, 40, 30, 1);
+  }
+
+  @Test
+  public void testSameMapAfterPatchIsConvertedAgain() {
+    byte[] cells = newCells(40, 30, FREE);
+    map.enqueue(newMap(cells, 40, 30, 1));
+    map.process();
+    map.enqueue(newPatch(1, 2, 0, 0, 4, 4, OCCUPIED));
+    map.process();
+    // The tile no longer shows the cells of the first map.
+    map.enqueue(newMap(cells, 40, 30, 3));
+    map.process();
+    assertTilesShow(cells, 40, 30, 1);
+  }
+
+  @Test
+  public void testPatchAcrossTileBorderAtTwoCellsPerPixel() {
+    OccupancyGridLayer layer = new OccupancyGridLayer("map");
+    layer.setLevelOfDetail(0.5f);
+    map.addLayer(layer);
+    map.updateCellsPerPixel();
+    // 1025 pixels wide, so the last column of pixels is on a second tile.
+    int width = 2 * TextureBitmap.STRIDE + 2;
+    byte[] cells = newCells(width, 4, FREE);
+    map.enqueue(newMap(cells, width, 4, 1));
+    map.process();
+    assertTilesShow(cells, width, 4, 2);
+    // Covers the cells of pixels 1023 and 1024 in pixel row 1.
+    map.enqueue(newPatch(1, 2, width - 5, 1, 5, 2, OCCUPIED));
+    map.process();
+    apply(cells, width, width - 5, 1, 5, 2, OCCUPIED);
+    assertTilesShow(cells, width, 4, 2);
+    assertTrue(textures.get(0).regionUpdateCount == 1 && textures.get(1).regionUpdateCount == 1);
+  }
+
+  @Test
+  public void testShrinkingMapReleasesRetiredTiles() {
+    int width = TextureBitmap.STRIDE + 1;
+    map.enqueue(newMap(newCells(width, 4, FREE), width, 4, 1));
+    map.process();
+    assertEquals(2, textures.size());
+    byte[] cells = newCells(40, 30, FREE);
+    map.enqueue(newMap(cells, 40, 30, 2));
+    map.process();
+    // The converting thread released the storage of the tile that is no longer
+    // part of the map, without waiting for a view to draw.
+    assertEquals(0, textures.get(0).releaseCount);
+    assertEquals(1, textures.get(1).releaseCount);
+    textures.remove(1);
+    assertTilesShow(cells, 40, 30, 1);
+  }
+}